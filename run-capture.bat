@@ -32,6 +32,6 @@ set "DLL_DIR=lib\jpcap-0.01.16-win32\lib"
 if exist "%DLL_DIR%" set "PATH=%CD%\%DLL_DIR%;%PATH%"
 
 REM Run the PacketCapture program
-"%JAVA_EXE%" -cp "lib\net.sourceforge.jpcap-0.01.16.jar;classes" PacketCapture
+"%JAVA_EXE%" -cp "lib\net.sourceforge.jpcap-0.01.16.jar;classes" PacketCapture %*
 
 pause
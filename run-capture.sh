@@ -24,4 +24,4 @@ echo "Press Enter to continue or Ctrl+C to cancel..."
 read
 
 # Run the PacketCapture program
-java -cp "lib/jpcap.jar:classes" PacketCapture
+java -cp "lib/jpcap.jar:classes" PacketCapture "$@"
@@ -27,7 +27,7 @@ if %errorlevel% neq 0 (
     exit /b 1
 )
 
-javac -cp classes -d classes src\main\java\ExperimentalSetup.java
+javac -cp classes -sourcepath src\main\java -d classes src\main\java\ExperimentalSetup.java
 if %errorlevel% neq 0 (
     echo Compilation of ExperimentalSetup.java failed!
     pause
@@ -38,7 +38,7 @@ echo Compilation successful!
 echo.
 
 REM Run the experimental setup
-java -cp classes ExperimentalSetup
+java -cp classes ExperimentalSetup %*
 
 echo.
 echo Experimental setup complete!
@@ -25,7 +25,7 @@ if [ $? -ne 0 ]; then
     exit 1
 fi
 
-javac -cp classes -d classes src/main/java/ExperimentalSetup.java
+javac -cp classes -sourcepath src/main/java -d classes src/main/java/ExperimentalSetup.java
 if [ $? -ne 0 ]; then
     echo "Compilation of ExperimentalSetup.java failed!"
     exit 1
@@ -35,7 +35,7 @@ echo "Compilation successful!"
 echo ""
 
 # Run the experimental setup
-java -cp classes ExperimentalSetup
+java -cp classes ExperimentalSetup "$@"
 
 echo ""
 echo "Experimental setup complete!"
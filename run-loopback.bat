@@ -0,0 +1,24 @@
+@echo off
+echo Running Loopback Traffic Generator (No JPcap Required)...
+
+REM Create classes directory if it doesn't exist
+if not exist "classes" mkdir classes
+
+REM Compile the generator and the classes it depends on
+echo Compiling required classes...
+javac -cp classes -sourcepath src\main\java -d classes src\main\java\LoopbackTrafficGenerator.java
+if %errorlevel% neq 0 (
+    echo Compilation of LoopbackTrafficGenerator.java failed!
+    pause
+    exit /b 1
+)
+
+echo Compilation successful!
+echo.
+
+REM Run the active measurements (pass options such as --protocol tcp --mode echo --size 1024)
+java -cp classes LoopbackTrafficGenerator %*
+
+echo.
+echo Measurements complete! Check output/loopback_measurements.csv
+pause
@@ -0,0 +1,23 @@
+#!/bin/bash
+
+echo "Running Loopback Traffic Generator (No JPcap Required)..."
+
+# Create classes directory if it doesn't exist
+mkdir -p classes
+
+# Compile the generator and the classes it depends on
+echo "Compiling required classes..."
+javac -cp classes -sourcepath src/main/java -d classes src/main/java/LoopbackTrafficGenerator.java
+if [ $? -ne 0 ]; then
+    echo "Compilation of LoopbackTrafficGenerator.java failed!"
+    exit 1
+fi
+
+echo "Compilation successful!"
+echo ""
+
+# Run the active measurements (pass options such as --protocol tcp --mode echo --size 1024)
+java -cp classes LoopbackTrafficGenerator "$@"
+
+echo ""
+echo "Measurements complete! Check output/loopback_measurements.csv"
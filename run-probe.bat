@@ -0,0 +1,25 @@
+@echo off
+echo Running Active Latency Prober (No JPcap Required)...
+
+REM Create classes directory if it doesn't exist
+if not exist "classes" mkdir classes
+
+REM Compile the prober and the classes it depends on
+echo Compiling required classes...
+javac -cp classes -sourcepath src\main\java -d classes src\main\java\LatencyProber.java
+if %errorlevel% neq 0 (
+    echo Compilation of LatencyProber.java failed!
+    pause
+    exit /b 1
+)
+
+echo Compilation successful!
+echo.
+
+REM Run the prober (no arguments probes a built-in local echo server)
+REM Example: run-probe.bat --targets probe_targets.txt --interval 1000 --duration 60
+java -cp classes LatencyProber %*
+
+echo.
+echo Probing complete! Check output/probe_results.csv
+pause
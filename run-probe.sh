@@ -0,0 +1,24 @@
+#!/bin/bash
+
+echo "Running Active Latency Prober (No JPcap Required)..."
+
+# Create classes directory if it doesn't exist
+mkdir -p classes
+
+# Compile the prober and the classes it depends on
+echo "Compiling required classes..."
+javac -cp classes -sourcepath src/main/java -d classes src/main/java/LatencyProber.java
+if [ $? -ne 0 ]; then
+    echo "Compilation of LatencyProber.java failed!"
+    exit 1
+fi
+
+echo "Compilation successful!"
+echo ""
+
+# Run the prober (no arguments probes a built-in local echo server)
+# Example: ./run-probe.sh --targets probe_targets.txt --interval 1000 --duration 60
+java -cp classes LatencyProber "$@"
+
+echo ""
+echo "Probing complete! Check output/probe_results.csv"
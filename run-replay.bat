@@ -0,0 +1,30 @@
+@echo off
+echo Running Trace Replay (No JPcap Required)...
+
+if "%~1"=="" (
+    echo Usage: run-replay.bat ^<captured_packets.csv ^| trace.pcap^> [--speed N ^| --asap]
+    pause
+    exit /b 1
+)
+
+REM Create classes directory if it doesn't exist
+if not exist "classes" mkdir classes
+
+REM Compile the replayer and the classes it depends on
+echo Compiling required classes...
+javac -cp classes -sourcepath src\main\java -d classes src\main\java\TraceReplayer.java
+if %errorlevel% neq 0 (
+    echo Compilation of TraceReplayer.java failed!
+    pause
+    exit /b 1
+)
+
+echo Compilation successful!
+echo.
+
+REM Replay the stored capture
+java -cp classes TraceReplayer %*
+
+echo.
+echo Replay complete! Check output/replayed_packets.csv
+pause
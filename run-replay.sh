@@ -0,0 +1,28 @@
+#!/bin/bash
+
+echo "Running Trace Replay (No JPcap Required)..."
+
+if [ -z "$1" ]; then
+    echo "Usage: ./run-replay.sh <captured_packets.csv | trace.pcap> [--speed N | --asap]"
+    exit 1
+fi
+
+# Create classes directory if it doesn't exist
+mkdir -p classes
+
+# Compile the replayer and the classes it depends on
+echo "Compiling required classes..."
+javac -cp classes -sourcepath src/main/java -d classes src/main/java/TraceReplayer.java
+if [ $? -ne 0 ]; then
+    echo "Compilation of TraceReplayer.java failed!"
+    exit 1
+fi
+
+echo "Compilation successful!"
+echo ""
+
+# Replay the stored capture
+java -cp classes TraceReplayer "$@"
+
+echo ""
+echo "Replay complete! Check output/replayed_packets.csv"
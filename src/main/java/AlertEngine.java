@@ -0,0 +1,651 @@
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AlertEngine.java
+ *
+ * Evaluates alert rules on every snapshot of a RollingWindowAggregator (once
+ * a second, when a window closes), so a traffic spike or a slow handshake
+ * shows up while the capture runs. A rule watches one metric of
+ * Snapshot.getMetrics(), or a family of them with one "*" (e.g. app.*.pps
+ * watches every application separately):
+ *
+ *   threshold   the value is above and/or below fixed limits
+ *   zscore      the value is more than z standard deviations from its EWMA
+ *               baseline (mean and variance decayed by alpha, not updated
+ *               by breaching values), after a warm-up of that many samples
+ *   change      the value changed by more than percent against its value
+ *               window seconds earlier
+ *
+ * Debouncing: a rule fires after "for" consecutive breaching windows and
+ * resolves after "clear" consecutive normal ones, so a single noisy second
+ * neither raises nor clears an alert. A metric of a "*" family that is
+ * missing from a snapshot counts as 0 (the application sent nothing); a
+ * missing exact metric (handshake RTT with no handshakes) is skipped.
+ *
+ * Evaluation only looks at the snapshot, so its cost depends on the number
+ * of rules and metrics, not on the packet rate. Alerts are written to
+ * logs/alerts.log and POSTed as JSON to the webhook URL, if one is set, by
+ * a notifier thread, so a slow webhook never delays the aggregator.
+ *
+ * Rules come from alerts.properties (see loadRules) or DEFAULT_RULES.
+ */
+public class AlertEngine implements AutoCloseable {
+
+    public static final String DEFAULT_RULES_FILE = "alerts.properties";
+    public static final String DEFAULT_LOG_FILE = "logs/alerts.log";
+    public static final int DEFAULT_RECEIVER_PORT = 9097;
+    static final int MAX_SERIES_PER_RULE = 1000; // Metrics a "*" rule tracks; later ones are ignored
+    static final int MAX_PENDING_ALERTS = 1000; // Notifier queue; alerts beyond it are only counted
+    private static final int WEBHOOK_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Rules used when there is no rules file: application spikes, handshake RTT and overall surges
+     */
+    static final String DEFAULT_RULES =
+        "rule.app_spike.metric = app.*.pps\n" +
+        "rule.app_spike.type = zscore\n" +
+        "rule.app_spike.z = 4\n" +
+        "rule.app_spike.min.stddev = 5\n" +
+        "rule.app_spike.for = 3\n" +
+        "rule.handshake_rtt.metric = handshake_rtt_p99_ms\n" +
+        "rule.handshake_rtt.type = threshold\n" +
+        "rule.handshake_rtt.above = 200\n" +
+        "rule.handshake_rtt.for = 5\n" +
+        "rule.handshake_rtt.clear = 10\n" +
+        "rule.traffic_surge.metric = pps_10s\n" +
+        "rule.traffic_surge.type = change\n" +
+        "rule.traffic_surge.percent = 300\n" +
+        "rule.traffic_surge.window = 30\n" +
+        "rule.traffic_surge.for = 2\n";
+
+    enum Type { THRESHOLD, ZSCORE, CHANGE }
+
+    enum Direction { UP, DOWN, BOTH }
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final String webhookUrl;
+    private final String logFile;
+    private final Writer log;
+    private final BlockingQueue<Alert> pending = new ArrayBlockingQueue<>(MAX_PENDING_ALERTS);
+    private final Thread notifier;
+    private volatile boolean closed = false;
+
+    // Statistics (evaluation counters are only written on the aggregator thread)
+    private volatile long evaluations = 0;
+    private volatile long evaluationNanos = 0;
+    private volatile long alertsFired = 0;
+    private volatile long alertsResolved = 0;
+    private volatile long alertsDropped = 0;
+    private volatile long webhookDelivered = 0;
+    private volatile long webhookFailed = 0;
+
+    /**
+     * @param rules Rule definitions (see loadRules)
+     * @param logFile File alerts are appended to
+     * @param webhookUrl URL alerts are POSTed to, or null for none
+     * @throws IOException if the log file cannot be opened
+     */
+    public AlertEngine(Properties rules, String logFile, String webhookUrl) throws IOException {
+        this.rules.addAll(parseRules(rules));
+        this.webhookUrl = webhookUrl;
+        this.logFile = logFile;
+        if (Paths.get(logFile).toAbsolutePath().getParent() != null) {
+            Files.createDirectories(Paths.get(logFile).toAbsolutePath().getParent());
+        }
+        log = new FileWriter(logFile, true);
+        notifier = new Thread(this::notifyLoop, "alert-notifier");
+        notifier.setDaemon(true);
+        notifier.start();
+    }
+
+    /**
+     * Engine with the rules of a file (or the default rules if it does not exist),
+     * logging to logs/alerts.log and posting to the file's webhook.url, if any
+     */
+    public static AlertEngine fromFile(String rulesFile) throws IOException {
+        Properties properties = loadRules(rulesFile);
+        return new AlertEngine(properties, properties.getProperty("log.file", DEFAULT_LOG_FILE).trim(),
+                               properties.getProperty("webhook.url") == null ? null
+                               : properties.getProperty("webhook.url").trim());
+    }
+
+    /**
+     * Reads a rules file, or returns the default rules if it does not exist. For each rule name:
+     *   rule.<name>.metric      metric name, optionally with one "*" (required)
+     *   rule.<name>.type        threshold, zscore or change (default threshold)
+     *   rule.<name>.above       threshold: fires above this value
+     *   rule.<name>.below       threshold: fires below this value
+     *   rule.<name>.z           zscore: standard deviations from the baseline (default 3)
+     *   rule.<name>.alpha       zscore: EWMA weight of a new sample (default 0.1)
+     *   rule.<name>.warmup      zscore: samples before the rule can fire (default 30)
+     *   rule.<name>.min.stddev  zscore: smallest standard deviation used (default 0)
+     *   rule.<name>.percent     change: relative change in percent (default 100)
+     *   rule.<name>.window      change: seconds between the values compared (default 10)
+     *   rule.<name>.direction   zscore and change: up, down or both (default up)
+     *   rule.<name>.for         breaching windows before firing (default 1)
+     *   rule.<name>.clear       normal windows before resolving (default the "for" value)
+     * plus webhook.url and log.file.
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static Properties loadRules(String file) throws IOException {
+        Properties properties = new Properties();
+        if (file != null && Files.exists(Paths.get(file))) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+        } else {
+            properties.load(new java.io.StringReader(DEFAULT_RULES));
+        }
+        return properties;
+    }
+
+    private static List<Rule> parseRules(Properties properties) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("rule.") && key.endsWith(".metric")) {
+                names.add(key.substring("rule.".length(), key.length() - ".metric".length()));
+            }
+        }
+        List<Rule> parsed = new ArrayList<>();
+        for (String name : names) {
+            try {
+                parsed.add(new Rule(name, properties));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid alert rule " + name + ": " + e.getMessage());
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Evaluates every rule on one snapshot (register with RollingWindowAggregator.addSnapshotListener)
+     */
+    public void evaluate(RollingWindowAggregator.Snapshot snapshot) {
+        long start = System.nanoTime();
+        Map<String, Double> metrics = snapshot.getMetrics();
+        for (Rule rule : rules) {
+            if (rule.prefix == null) {
+                Double value = metrics.get(rule.metric);
+                if (value != null) {
+                    rule.evaluate(rule.metric, value, snapshot.getTime(), this);
+                }
+                continue;
+            }
+            for (Map.Entry<String, Double> entry : metrics.entrySet()) {
+                if (rule.matches(entry.getKey()) && !rule.series.containsKey(entry.getKey()) &&
+                    rule.series.size() < MAX_SERIES_PER_RULE) {
+                    rule.series.put(entry.getKey(), new Series(rule));
+                }
+            }
+            for (String metric : rule.series.keySet()) {
+                rule.evaluate(metric, metrics.getOrDefault(metric, 0.0), snapshot.getTime(), this);
+            }
+        }
+        evaluations++;
+        evaluationNanos += System.nanoTime() - start;
+    }
+
+    private void raise(Alert alert) {
+        if (alert.firing) {
+            alertsFired++;
+        } else {
+            alertsResolved++;
+        }
+        if (!pending.offer(alert)) {
+            alertsDropped++;
+        }
+    }
+
+    /**
+     * Writes queued alerts to the log and the webhook (notifier thread)
+     */
+    private void notifyLoop() {
+        while (!closed || !pending.isEmpty()) {
+            Alert alert;
+            try {
+                alert = pending.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (alert == null) {
+                continue;
+            }
+            try {
+                log.write(alert.toLogLine() + "\n");
+                log.flush();
+            } catch (IOException e) {
+                System.err.println("Error writing alert log: " + e.getMessage());
+            }
+            if (webhookUrl != null) {
+                post(alert.toJson());
+            }
+        }
+    }
+
+    private void post(String json) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(webhookUrl).openConnection();
+            connection.setConnectTimeout(WEBHOOK_TIMEOUT_MILLIS);
+            connection.setReadTimeout(WEBHOOK_TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            connection.disconnect();
+            if (status >= 200 && status < 300) {
+                webhookDelivered++;
+                return;
+            }
+            throw new IOException("HTTP " + status);
+        } catch (IOException e) {
+            if (webhookFailed++ == 0) { // Report the first failure only
+                System.err.println("Warning: could not deliver alert to " + webhookUrl + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One configured rule and the state of each metric it watches
+     */
+    static class Rule {
+        final String name;
+        final String metric;
+        final String prefix; // For "prefix*suffix" families, otherwise null
+        final String suffix;
+        final Type type;
+        final Direction direction;
+        final double above;
+        final double below;
+        final double z;
+        final double alpha;
+        final int warmup;
+        final double minStddev;
+        final double percent;
+        final int window;
+        final int breachesToFire;
+        final int normalsToClear;
+        final Map<String, Series> series = new HashMap<>();
+
+        Rule(String name, Properties properties) {
+            this.name = name;
+            metric = property(properties, "metric", null);
+            int star = metric.indexOf('*');
+            if (star >= 0) {
+                prefix = metric.substring(0, star);
+                suffix = metric.substring(star + 1);
+                if (suffix.contains("*")) {
+                    throw new IllegalArgumentException("only one * is supported in " + metric);
+                }
+            } else {
+                prefix = null;
+                suffix = null;
+            }
+            type = Type.valueOf(property(properties, "type", "threshold").toUpperCase());
+            direction = Direction.valueOf(property(properties, "direction", "up").toUpperCase());
+            above = Double.parseDouble(property(properties, "above", "NaN"));
+            below = Double.parseDouble(property(properties, "below", "NaN"));
+            z = Double.parseDouble(property(properties, "z", "3"));
+            alpha = Double.parseDouble(property(properties, "alpha", "0.1"));
+            warmup = Integer.parseInt(property(properties, "warmup", "30"));
+            minStddev = Double.parseDouble(property(properties, "min.stddev", "0"));
+            percent = Double.parseDouble(property(properties, "percent", "100"));
+            window = Integer.parseInt(property(properties, "window", "10"));
+            breachesToFire = Integer.parseInt(property(properties, "for", "1"));
+            normalsToClear = Integer.parseInt(property(properties, "clear", String.valueOf(breachesToFire)));
+            if (type == Type.THRESHOLD && Double.isNaN(above) && Double.isNaN(below)) {
+                throw new IllegalArgumentException("a threshold rule needs above or below");
+            }
+            if (alpha <= 0 || alpha > 1 || window < 1 || breachesToFire < 1 || normalsToClear < 1) {
+                throw new IllegalArgumentException("alpha must be in (0, 1], window, for and clear at least 1");
+            }
+            if (prefix == null) {
+                series.put(metric, new Series(this));
+            }
+        }
+
+        private String property(Properties properties, String key, String fallback) {
+            String value = properties.getProperty("rule." + name + "." + key, fallback);
+            if (value == null) {
+                throw new IllegalArgumentException("missing " + key);
+            }
+            return value.trim();
+        }
+
+        boolean matches(String candidate) {
+            return candidate.length() > prefix.length() + suffix.length() &&
+                   candidate.startsWith(prefix) && candidate.endsWith(suffix);
+        }
+
+        void evaluate(String metricName, double value, long time, AlertEngine engine) {
+            Series state = series.get(metricName);
+            String breach = state.check(value);
+            Alert alert = state.debounce(breach, value);
+            if (alert != null) {
+                alert.rule = name;
+                alert.metric = metricName;
+                alert.time = time;
+                engine.raise(alert);
+            }
+        }
+
+        boolean breaches(double deviation) {
+            switch (direction) {
+                case DOWN: return deviation < 0;
+                case BOTH: return true;
+                default: return deviation > 0;
+            }
+        }
+    }
+
+    /**
+     * Baseline and debounce state of one metric of a rule
+     */
+    static class Series {
+        private final Rule rule;
+        private long samples = 0;
+        private double mean = 0;
+        private double variance = 0;
+        private final double[] history; // Last window + 1 values for change rules (ring)
+        private boolean firing = false;
+        private int breaches = 0;
+        private int normals = 0;
+        private String reason = null;
+
+        Series(Rule rule) {
+            this.rule = rule;
+            history = rule.type == Type.CHANGE ? new double[rule.window + 1] : null;
+        }
+
+        /**
+         * Updates the baseline with the value
+         * @return Why the value breaches the rule, or null if it does not
+         */
+        String check(double value) {
+            String breach = null;
+            switch (rule.type) {
+                case THRESHOLD:
+                    if (!Double.isNaN(rule.above) && value > rule.above) {
+                        breach = String.format("%.3f above %.3f", value, rule.above);
+                    } else if (!Double.isNaN(rule.below) && value < rule.below) {
+                        breach = String.format("%.3f below %.3f", value, rule.below);
+                    }
+                    break;
+                case ZSCORE:
+                    if (samples >= rule.warmup) {
+                        double stddev = Math.max(Math.sqrt(variance), Math.max(rule.minStddev, 1e-9));
+                        double score = (value - mean) / stddev;
+                        if (Math.abs(score) > rule.z && rule.breaches(score)) {
+                            breach = String.format("%.3f is %.1f standard deviations from baseline %.3f", value, score,
+                                                   mean);
+                        }
+                    }
+                    // EWMA mean and variance; a breaching value is left out so a spike does not become its own baseline
+                    if (samples == 0) {
+                        mean = value;
+                    } else if (breach == null) {
+                        double difference = value - mean;
+                        double increment = rule.alpha * difference;
+                        mean += increment;
+                        variance = (1 - rule.alpha) * (variance + difference * increment);
+                    }
+                    break;
+                case CHANGE:
+                    if (samples > rule.window) {
+                        double earlier = history[(int) ((samples - rule.window) % history.length)];
+                        double change = (value - earlier) / Math.max(Math.abs(earlier), 1e-9) * 100;
+                        if (Math.abs(change) > rule.percent && rule.breaches(change)) {
+                            breach = String.format("%.3f changed %+.0f%% from %.3f %d s earlier", value, change,
+                                                   earlier, rule.window);
+                        }
+                    }
+                    history[(int) (samples % history.length)] = value;
+                    break;
+            }
+            samples++;
+            return breach;
+        }
+
+        /**
+         * Applies the "for" and "clear" counts
+         * @return The alert to raise when the state changes, otherwise null
+         */
+        Alert debounce(String breach, double value) {
+            if (breach != null) {
+                normals = 0;
+                breaches++;
+                if (!firing && breaches >= rule.breachesToFire) {
+                    firing = true;
+                    reason = breach;
+                    return new Alert(true, value, breach);
+                }
+            } else {
+                breaches = 0;
+                normals++;
+                if (firing && normals >= rule.normalsToClear) {
+                    firing = false;
+                    return new Alert(false, value, "back to normal after: " + reason);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A rule starting or stopping to fire for one metric
+     */
+    static class Alert {
+        final boolean firing;
+        final double value;
+        final String detail;
+        String rule;
+        String metric;
+        long time;
+
+        Alert(boolean firing, double value, String detail) {
+            this.firing = firing;
+            this.value = value;
+            this.detail = detail;
+        }
+
+        String toLogLine() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time)) + " " +
+                   (firing ? "FIRING  " : "RESOLVED") + " " + rule + " " + metric + " = " +
+                   String.format("%.3f", value) + " (" + detail + ")";
+        }
+
+        String toJson() {
+            return "{\"time\":\"" + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").format(new Date(time)) +
+                   "\",\"status\":\"" + (firing ? "firing" : "resolved") + "\",\"rule\":" + quote(rule) +
+                   ",\"metric\":" + quote(metric) + ",\"value\":" + value + ",\"detail\":" + quote(detail) + "}";
+        }
+
+        private static String quote(String value) {
+            return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+
+    /**
+     * Delivers the queued alerts and closes the log (safe to call more than once)
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            notifier.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Error closing alert log: " + e.getMessage());
+        }
+    }
+
+    // Getters
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    public long getAlertsFired() {
+        return alertsFired;
+    }
+
+    public long getAlertsResolved() {
+        return alertsResolved;
+    }
+
+    public String getWebhookUrl() {
+        return webhookUrl;
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Mean time one evaluation of all rules took, in microseconds
+     */
+    public double getMeanEvaluationMicros() {
+        return evaluations > 0 ? evaluationNanos / 1000.0 / evaluations : 0.0;
+    }
+
+    /**
+     * Prints the rule and alert summary to the console
+     */
+    public void printSummary() {
+        System.out.println("\n=== ALERTS ===");
+        for (Rule rule : rules) {
+            System.out.println("  " + rule.name + ": " + rule.type.name().toLowerCase() + " on " + rule.metric +
+                               " (" + rule.series.size() + " series)");
+        }
+        System.out.println("Windows evaluated: " + evaluations + String.format(" (%.1f us each)", getMeanEvaluationMicros()));
+        System.out.println("Alerts fired: " + alertsFired + ", resolved: " + alertsResolved +
+                           (alertsDropped > 0 ? ", dropped: " + alertsDropped : ""));
+        if (webhookUrl != null) {
+            System.out.println("Webhook " + webhookUrl + ": " + webhookDelivered + " delivered, " + webhookFailed + " failed");
+        }
+    }
+
+    /**
+     * Starts a local stand-in for an alert webhook that prints every alert POSTed to it
+     */
+    static com.sun.net.httpserver.HttpServer startReceiver(int port) throws IOException {
+        com.sun.net.httpserver.HttpServer receiver =
+            com.sun.net.httpserver.HttpServer.create(new java.net.InetSocketAddress("127.0.0.1", port), 0);
+        receiver.createContext("/alerts", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                java.io.ByteArrayOutputStream body = new java.io.ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+                System.out.println("Webhook received: " + body.toString("UTF-8"));
+                exchange.sendResponseHeaders(204, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        receiver.start();
+        return receiver;
+    }
+
+    /**
+     * Replays a capture file in real time with the alert rules evaluated every second, or runs the
+     * webhook stand-in on its own
+     * Usage: AlertEngine [--rules alerts.properties] [--speed N] <captured_packets.csv | trace.pcap>
+     *        AlertEngine --receiver [--port N]
+     */
+    public static void main(String[] args) {
+        String rulesFile = DEFAULT_RULES_FILE;
+        double speed = 1.0;
+        int port = DEFAULT_RECEIVER_PORT;
+        boolean receiverOnly = false;
+        String file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--rules": rulesFile = args[++i]; break;
+                    case "--speed": speed = Double.parseDouble(args[++i]); break;
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--receiver": receiverOnly = true; break;
+                    default: file = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            file = null;
+            receiverOnly = false;
+        }
+        if (receiverOnly) {
+            try {
+                startReceiver(port);
+                System.out.println("=== Alert Webhook Receiver ===");
+                System.out.println("Listening on http://127.0.0.1:" + port + "/alerts (Ctrl+C to stop)");
+                new java.util.concurrent.CountDownLatch(1).await();
+            } catch (Exception e) {
+                System.err.println("Error running webhook receiver: " + e.getMessage());
+            }
+            return;
+        }
+        if (file == null) {
+            System.out.println("Usage: AlertEngine [--rules alerts.properties] [--speed N] <captured_packets.csv | trace.pcap>");
+            System.out.println("       AlertEngine --receiver [--port N]");
+            return;
+        }
+
+        System.out.println("=== Alert Engine ===");
+        RollingWindowAggregator aggregator = new RollingWindowAggregator();
+        try (PacketRecordSource source = TraceReplayer.openSource(file, new String[0])) {
+            AlertEngine engine = fromFile(rulesFile);
+            System.out.println("Rules: " + (Files.exists(Paths.get(rulesFile)) ? rulesFile : "defaults") + " (" +
+                               engine.getRuleCount() + "), alerts to " + engine.getLogFile() +
+                               (engine.getWebhookUrl() != null ? " and " + engine.getWebhookUrl() : ""));
+            aggregator.addSnapshotListener(engine::evaluate);
+            try {
+                TraceReplayer replayer = new TraceReplayer(speed);
+                replayer.addListener(aggregator);
+                replayer.replay(source);
+                Thread.sleep(1500); // Let the last window close
+                replayer.printReport();
+            } finally {
+                aggregator.close();
+                engine.close(); // Delivers the queued alerts before the summary
+            }
+            engine.printSummary();
+        } catch (Exception e) {
+            System.err.println("Error evaluating alerts: " + e.getMessage());
+        } finally {
+            aggregator.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * BlockGzipInputStream.java
+ *
+ * Reads gzip files written by BlockGzipOutputStream. Member boundaries are
+ * taken from the "PB" size subfield, so the next members are read ahead
+ * and inflated in parallel on the worker pool while the caller consumes
+ * the current one. Output is returned in file order.
+ *
+ * Ordinary gzip files (or members without the size subfield) are read
+ * sequentially through GZIPInputStream, so any .gz export can be opened.
+ */
+public class BlockGzipInputStream extends InputStream {
+
+    private final InputStream in;
+    private final ExecutorService pool;
+    private final int maxReadAhead;
+    private final Deque<Future<byte[]>> readAhead = new ArrayDeque<>();
+    private byte[] current = new byte[0];
+    private int position = 0;
+    private boolean endOfMembers = false;
+    private InputStream fallback = null;  // Sequential reader for non-block gzip data
+    private byte[] fallbackPrefix = null; // Header bytes already read from the non-block member
+    private long membersRead = 0;
+
+    public BlockGzipInputStream(InputStream in) {
+        this(in, BlockGzipOutputStream.sharedPool());
+    }
+
+    /**
+     * @param in Gzip data
+     * @param pool Workers that inflate the members
+     */
+    public BlockGzipInputStream(InputStream in, ExecutorService pool) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16);
+        this.pool = pool;
+        this.maxReadAhead = 2 * Runtime.getRuntime().availableProcessors() + 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == current.length && !nextBlock()) {
+            return fallback != null ? fallback.read() : -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == current.length && !nextBlock()) {
+            return fallback != null ? fallback.read(buffer, offset, length) : -1;
+        }
+        int n = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Moves to the next inflated block, keeping the read-ahead queue full
+     * @return false when no more block members are available
+     */
+    private boolean nextBlock() throws IOException {
+        do {
+            fillReadAhead();
+            if (readAhead.isEmpty()) {
+                if (fallbackPrefix != null && fallback == null) {
+                    fallback = new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(fallbackPrefix), in),
+                                                   1 << 16);
+                }
+                return false;
+            }
+            current = await(readAhead.poll());
+            position = 0;
+        } while (current.length == 0);
+        return true;
+    }
+
+    private void fillReadAhead() throws IOException {
+        while (!endOfMembers && readAhead.size() < maxReadAhead) {
+            byte[] member = readMember();
+            if (member == null) {
+                endOfMembers = true;
+            } else {
+                membersRead++;
+                readAhead.add(pool.submit(() -> inflateMember(member)));
+            }
+        }
+    }
+
+    /**
+     * Reads the next complete block member
+     * @return The member bytes, or null at end of data or at a member without the size subfield
+     */
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[BlockGzipOutputStream.HEADER_LENGTH];
+        int n = readFully(in, header, 0, header.length);
+        if (n == 0) {
+            return null;
+        }
+        if (n < header.length || !isBlockHeader(header)) {
+            fallbackPrefix = java.util.Arrays.copyOf(header, n);
+            return null;
+        }
+
+        int size = getIntLE(header, 16);
+        if (size < BlockGzipOutputStream.HEADER_LENGTH + BlockGzipOutputStream.TRAILER_LENGTH) {
+            throw new IOException("Corrupt gzip block size: " + size);
+        }
+        byte[] member = new byte[size];
+        System.arraycopy(header, 0, member, 0, header.length);
+        if (readFully(in, member, header.length, size - header.length) < size - header.length) {
+            throw new EOFException("Truncated gzip block " + (membersRead + 1));
+        }
+        return member;
+    }
+
+    static boolean isBlockHeader(byte[] header) {
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && header[3] == 4 &&
+               header[10] == 8 && header[11] == 0 &&
+               header[12] == BlockGzipOutputStream.SUBFIELD_ID1 && header[13] == BlockGzipOutputStream.SUBFIELD_ID2 &&
+               header[14] == 4 && header[15] == 0;
+    }
+
+    /**
+     * Inflates one member and checks its CRC and length
+     */
+    static byte[] inflateMember(byte[] member) throws IOException {
+        int dataEnd = member.length - BlockGzipOutputStream.TRAILER_LENGTH;
+        int expectedCrc = getIntLE(member, dataEnd);
+        int expectedSize = getIntLE(member, dataEnd + 4);
+        if (expectedSize < 0) {
+            throw new IOException("Gzip block too large");
+        }
+
+        byte[] data = new byte[expectedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            int headerLength = BlockGzipOutputStream.HEADER_LENGTH;
+            inflater.setInput(member, headerLength, dataEnd - headerLength);
+            int size = 0;
+            while (size < expectedSize && !inflater.finished()) {
+                int n = inflater.inflate(data, size, expectedSize - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != expectedSize) {
+                throw new IOException("Corrupt gzip block: expected " + expectedSize + " bytes, got " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Gzip block CRC mismatch");
+        }
+        return data;
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Block decompression failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    static int getIntLE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8 |
+               (buffer[offset + 2] & 0xff) << 16 | (buffer[offset + 3] & 0xff) << 24;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(buffer, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Number of block members read so far (0 for ordinary gzip files)
+     */
+    public long getMembersRead() {
+        return membersRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : readAhead) {
+            future.cancel(true);
+        }
+        readAhead.clear();
+        if (fallback != null) {
+            fallback.close();
+        }
+        in.close();
+    }
+
+    /**
+     * Decompresses a file to measure read throughput (output is discarded)
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: BlockGzipInputStream <file.gz>");
+            return;
+        }
+        System.out.println("=== Block Gzip Decompression ===");
+        long start = System.nanoTime();
+        long bytes = 0;
+        long members;
+        try (BlockGzipInputStream in = new BlockGzipInputStream(new FileInputStream(args[0]))) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes += n;
+            }
+            members = in.getMembersRead();
+        } catch (IOException e) {
+            System.err.println("Error decompressing file: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Decompressed " + bytes + " bytes from " + members + " block(s)");
+        System.out.println("Throughput: " + String.format("%.1f", bytes / (1024.0 * 1024.0) / seconds) + " MB/s");
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * BlockGzipOutputStream.java
+ *
+ * Writes gzip output as a sequence of independent gzip members (one per
+ * block of input, 1 MB by default) that are compressed in parallel on a
+ * worker pool. The writing thread only copies bytes into the current block
+ * and writes finished members in order, so the compression CPU stays off
+ * the capture/export thread.
+ *
+ * The result is a normal multi-member gzip file (gunzip, zcat, Power Query
+ * and GZIPInputStream read it). Like BGZF, every member carries its total
+ * size in a gzip extra subfield ("PB"), which lets BlockGzipInputStream
+ * find the member boundaries without inflating and decompress members in
+ * parallel.
+ *
+ * Member layout:
+ *   1f 8b 08 04 | mtime(4)=0 | xfl | os=255 | xlen=8 | 'P' 'B' len=4 member-size(4)
+ *   raw deflate data | CRC32(4) | ISIZE(4)          (all integers little-endian)
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    static final int HEADER_LENGTH = 20;
+    static final int TRAILER_LENGTH = 8;
+    static final byte SUBFIELD_ID1 = 'P';
+    static final byte SUBFIELD_ID2 = 'B';
+
+    private static ExecutorService sharedPool;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int blockSize;
+    private final int level;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    // Statistics
+    private long uncompressedBytes = 0;
+    private long compressedBytes = 0;
+
+    /**
+     * Creates a stream with 1 MB blocks, default compression and the shared worker pool
+     */
+    public BlockGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, sharedPool());
+    }
+
+    /**
+     * @param out Destination of the gzip data
+     * @param blockSize Uncompressed bytes per gzip member
+     * @param level Deflate level (Deflater.BEST_SPEED .. Deflater.BEST_COMPRESSION)
+     * @param pool Workers that compress the blocks
+     */
+    public BlockGzipOutputStream(OutputStream out, int blockSize, int level, ExecutorService pool) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.pool = pool;
+        this.block = new byte[blockSize];
+        // Bounds memory and keeps the writer from running ahead of the workers
+        this.maxPendingBlocks = 2 * Runtime.getRuntime().availableProcessors() + 2;
+    }
+
+    /**
+     * Worker pool shared by all block gzip streams (daemon threads, one per CPU)
+     */
+    static synchronized ExecutorService sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "block-gzip-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedPool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+            int n = Math.min(length, blockSize - blockLength);
+            System.arraycopy(data, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Hands the current block to the pool and writes members that are ready
+     */
+    private void submitBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (blockLength == 0) {
+            return;
+        }
+        final byte[] data = block;
+        final int length = blockLength;
+        uncompressedBytes += length;
+        pendingBlocks.add(pool.submit(() -> compressBlock(data, length, level)));
+        block = new byte[blockSize];
+        blockLength = 0;
+
+        while (pendingBlocks.size() > maxPendingBlocks || (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone())) {
+            writeMember(pendingBlocks.poll());
+        }
+    }
+
+    private void writeMember(Future<byte[]> future) throws IOException {
+        byte[] member;
+        try {
+            member = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Block compression failed: " + e.getCause(), e.getCause());
+        }
+        out.write(member);
+        compressedBytes += member.length;
+    }
+
+    /**
+     * Compresses one block into a complete gzip member
+     */
+    static byte[] compressBlock(byte[] data, int length, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            byte[] member = new byte[HEADER_LENGTH + length + length / 1000 + 64 + TRAILER_LENGTH];
+            int size = HEADER_LENGTH;
+            while (!deflater.finished()) {
+                if (size == member.length - TRAILER_LENGTH) {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                size += deflater.deflate(member, size, member.length - TRAILER_LENGTH - size);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            size = putIntLE(member, size, (int) crc.getValue());
+            size = putIntLE(member, size, length);
+
+            // Header
+            member[0] = 0x1f;
+            member[1] = (byte) 0x8b;
+            member[2] = 8;                 // Deflate
+            member[3] = 4;                 // FEXTRA
+            member[8] = (byte) (level == Deflater.BEST_SPEED ? 4 : level == Deflater.BEST_COMPRESSION ? 2 : 0);
+            member[9] = (byte) 255;        // Unknown OS
+            member[10] = 8;                // XLEN
+            member[12] = SUBFIELD_ID1;
+            member[13] = SUBFIELD_ID2;
+            member[14] = 4;                // Subfield length
+            putIntLE(member, 16, size);    // Total member size
+            return size == member.length ? member : Arrays.copyOf(member, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int putIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+
+    /**
+     * Ends the current (partial) block as its own member and writes everything pending
+     */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!pendingBlocks.isEmpty()) {
+            writeMember(pendingBlocks.poll());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            for (Future<byte[]> future : pendingBlocks) {
+                future.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    // Statistics getters
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public double getCompressionRatio() {
+        return compressedBytes == 0 ? 0 : (double) uncompressedBytes / compressedBytes;
+    }
+
+    /**
+     * Compresses an existing export, e.g. output/captured_packets.csv -> output/captured_packets.csv.gz
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: BlockGzipOutputStream <file> [output.gz]");
+            return;
+        }
+        String source = args[0];
+        String target = args.length > 1 ? args[1] : source + ".gz";
+
+        System.out.println("=== Block Gzip Compression ===");
+        long start = System.nanoTime();
+        BlockGzipOutputStream gzip;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source), 1 << 16)) {
+            gzip = new BlockGzipOutputStream(new FileOutputStream(target));
+            try (OutputStream out = gzip) {
+                byte[] buffer = new byte[1 << 16];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error compressing file: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Input: " + source + " (" + gzip.getUncompressedBytes() + " bytes)");
+        System.out.println("Output: " + target + " (" + gzip.getCompressedBytes() + " bytes)");
+        System.out.println("Compression ratio: " + String.format("%.1f", gzip.getCompressionRatio()) + ":1");
+        System.out.println("Throughput: " + String.format("%.1f", gzip.getUncompressedBytes() / (1024.0 * 1024.0) / seconds) +
+                         " MB/s on " + Runtime.getRuntime().availableProcessors() + " worker(s)");
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Map;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * CaptureEvents.java
+ *
+ * Java Flight Recorder events for the capture pipeline, to tell whether a
+ * pipeline that falls behind spends its time decoding, enriching, handing
+ * batches to a sink or writing CSV:
+ *
+ *   PacketAnalyzer.PacketDecode     processPacket turning a jpcap packet into a PacketRecord
+ *   PacketAnalyzer.Enrichment       direction and application lookups of one record
+ *   PacketAnalyzer.BatchHandoff     a batch handed to the capture store or the database
+ *   PacketAnalyzer.CsvWrite         a CSV export or a completed rolling segment
+ *   PacketAnalyzer.CaptureCounters  the CaptureMetrics counters, once a second
+ *
+ * The per-packet events only record when they take longer than their
+ * threshold (DECODE_THRESHOLD and ENRICHMENT_THRESHOLD), and carry no
+ * stack trace, so a healthy capture writes almost none of them; batch and
+ * CSV events are recorded above 10 ms. When no recording is running the
+ * events are disabled and shouldCommit() is false straight away.
+ *
+ * startRecording begins a recording with the JDK "default" settings (the
+ * low-overhead profile meant for production) plus these events, and
+ * stopRecording writes it to the file given, e.g. logs/experiment_<id>.jfr
+ * next to the experiment log. Open it with JDK Mission Control or
+ * "jfr print --events PacketAnalyzer.* file.jfr".
+ */
+public final class CaptureEvents {
+
+    static final Duration DECODE_THRESHOLD = Duration.ofMillis(1);
+    static final Duration ENRICHMENT_THRESHOLD = Duration.ofMillis(1);
+    static final Duration BATCH_THRESHOLD = Duration.ofMillis(10);
+
+    private static Recording recording = null;
+    private static Path destination = null;
+
+    static {
+        FlightRecorder.addPeriodicEvent(CaptureCountersEvent.class, CaptureEvents::emitCounters);
+    }
+
+    private CaptureEvents() {
+    }
+
+    @Name("PacketAnalyzer.PacketDecode")
+    @Label("Packet Decode")
+    @Category({ "Packet Analyzer", "Capture" })
+    @Description("Decoding of one captured packet into a PacketRecord")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class PacketDecodeEvent extends Event {
+        @Label("Protocol")
+        String protocol;
+    }
+
+    @Name("PacketAnalyzer.Enrichment")
+    @Label("Enrichment")
+    @Category({ "Packet Analyzer", "Capture" })
+    @Description("Direction and application lookups of one record")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class EnrichmentEvent extends Event {
+        @Label("Destination Port")
+        int destinationPort;
+    }
+
+    @Name("PacketAnalyzer.BatchHandoff")
+    @Label("Batch Handoff")
+    @Category({ "Packet Analyzer", "Output" })
+    @Description("A batch of records handed to a sink")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class BatchHandoffEvent extends Event {
+        @Label("Sink")
+        String sink;
+        @Label("Records")
+        int records;
+        @Label("Queued Records")
+        int queued;
+    }
+
+    @Name("PacketAnalyzer.CsvWrite")
+    @Label("CSV Write")
+    @Category({ "Packet Analyzer", "Output" })
+    @Description("A CSV export or completed rolling segment")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class CsvWriteEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Rows")
+        long rows;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("PacketAnalyzer.CaptureCounters")
+    @Label("Capture Counters")
+    @Category({ "Packet Analyzer" })
+    @Description("CaptureMetrics counters and gauges")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class CaptureCountersEvent extends Event {
+        @Label("Packets Received")
+        long packetsReceived;
+        @Label("Packets Processed")
+        long packetsProcessed;
+        @Label("Packets Dropped")
+        long packetsDropped;
+        @Label("Bytes Received")
+        @DataAmount
+        long bytesReceived;
+        @Label("Rows Written")
+        long rowsWritten;
+        @Label("Queue Depth")
+        long queueDepth;
+        @Label("Flows Active")
+        @Description("Open flows of the JDBC sink (0 without --jdbc)")
+        long flowsActive;
+    }
+
+    /**
+     * Ends a CSV write event and records it if it took longer than its threshold
+     */
+    static void csvWritten(CsvWriteEvent event, String file, long rows, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.rows = rows;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Ends a batch hand-off event and records it if it took longer than its threshold
+     */
+    static void batchHandedOff(BatchHandoffEvent event, String sink, int records, int queued) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.sink = sink;
+            event.records = records;
+            event.queued = queued;
+            event.commit();
+        }
+    }
+
+    private static void emitCounters() {
+        Map<String, Long> values = CaptureMetrics.get().snapshot();
+        CaptureCountersEvent event = new CaptureCountersEvent();
+        event.packetsReceived = values.getOrDefault(CaptureMetrics.PACKETS_RECEIVED, 0L);
+        event.packetsProcessed = values.getOrDefault(CaptureMetrics.PACKETS_PROCESSED, 0L);
+        event.packetsDropped = values.getOrDefault(CaptureMetrics.PACKETS_DROPPED, 0L);
+        event.bytesReceived = values.getOrDefault(CaptureMetrics.BYTES_RECEIVED, 0L);
+        event.rowsWritten = values.getOrDefault(CaptureMetrics.ROWS_WRITTEN, 0L);
+        event.queueDepth = values.getOrDefault(CaptureMetrics.QUEUE_DEPTH, 0L);
+        event.flowsActive = values.getOrDefault(CaptureMetrics.FLOWS_ACTIVE, 0L);
+        event.commit();
+    }
+
+    /**
+     * Starts a recording with the default settings and the capture events
+     * (does nothing if one is already running)
+     * @param filename File the recording is written to when it is stopped
+     * @return false if JFR is unavailable in this JVM
+     */
+    public static synchronized boolean startRecording(String filename) {
+        if (recording != null) {
+            return true;
+        }
+        try {
+            Recording started = new Recording(Configuration.getConfiguration("default"));
+            started.setName("PacketAnalyzer");
+            started.enable(PacketDecodeEvent.class).withThreshold(DECODE_THRESHOLD).withoutStackTrace();
+            started.enable(EnrichmentEvent.class).withThreshold(ENRICHMENT_THRESHOLD).withoutStackTrace();
+            started.enable(BatchHandoffEvent.class).withThreshold(BATCH_THRESHOLD).withoutStackTrace();
+            started.enable(CsvWriteEvent.class).withThreshold(BATCH_THRESHOLD).withoutStackTrace();
+            started.enable(CaptureCountersEvent.class).withPeriod(Duration.ofSeconds(1));
+            destination = Paths.get(filename).toAbsolutePath();
+            if (destination.getParent() != null) {
+                Files.createDirectories(destination.getParent());
+            }
+            started.setToDisk(true);
+            started.start();
+            recording = started;
+            return true;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            System.err.println("Warning: could not start flight recording: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to its file
+     * @return The file written, or null if no recording was running or it could not be written
+     */
+    public static synchronized String stopRecording() {
+        if (recording == null) {
+            return null;
+        }
+        Recording stopped = recording;
+        recording = null;
+        try {
+            stopped.stop();
+            stopped.dump(destination);
+            return destination.toString();
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Warning: could not save flight recording: " + e.getMessage());
+            return null;
+        } finally {
+            stopped.close();
+        }
+    }
+
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+}
@@ -0,0 +1,274 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * CaptureMetrics.java
+ *
+ * Process-wide registry of live capture pipeline metrics, readable over JMX
+ * (jconsole, VisualVM or any JMX scraper) under PacketAnalyzer:type=CaptureMetrics
+ * while a capture runs, so the packet path needs no console output:
+ *
+ *   counters     striped LongAdders, cheap to increment from any thread
+ *                (packets_received, packets_processed, packets_dropped, bytes_received, rows_written)
+ *   gauges       read from their owner when scraped (queue_depth, flows_active);
+ *                both belong to JdbcSink, the only component that tracks flows
+ *                during a capture, so they are listed only while --jdbc is open
+ *   histograms   LatencyHistogram of nanosecond durations (export_latency),
+ *                published as name_count, name_p50_us, name_p99_us and name_max_us
+ *
+ * Components register the metrics they own; registering a name again
+ * returns the existing counter or histogram, and replaces a gauge (the
+ * latest sink to open reports its queue). The MBean attributes are built
+ * from the registry each time they are listed, so metrics registered after
+ * the MBean still show up.
+ */
+public final class CaptureMetrics implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "PacketAnalyzer:type=CaptureMetrics";
+
+    // Standard metric names
+    public static final String PACKETS_RECEIVED = "packets_received";
+    public static final String PACKETS_PROCESSED = "packets_processed";
+    public static final String PACKETS_DROPPED = "packets_dropped";
+    public static final String BYTES_RECEIVED = "bytes_received";
+    public static final String ROWS_WRITTEN = "rows_written";
+    public static final String QUEUE_DEPTH = "queue_depth";
+    public static final String FLOWS_ACTIVE = "flows_active"; // Registered by JdbcSink only (--jdbc)
+    public static final String EXPORT_LATENCY = "export_latency";
+
+    private static final CaptureMetrics INSTANCE = new CaptureMetrics();
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final long startMillis = System.currentTimeMillis();
+    private boolean registered = false;
+
+    private CaptureMetrics() {
+        for (String name : new String[] { PACKETS_RECEIVED, PACKETS_PROCESSED, PACKETS_DROPPED, BYTES_RECEIVED,
+                                          ROWS_WRITTEN }) {
+            counter(name);
+        }
+        histogram(EXPORT_LATENCY);
+    }
+
+    /**
+     * The registry shared by the whole capture pipeline
+     */
+    public static CaptureMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * The counter with this name, created on first use
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Registers (or replaces) a gauge read whenever the metrics are scraped
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Removes a gauge whose owner has closed, unless another owner replaced it since
+     */
+    public void removeGauge(String name, LongSupplier supplier) {
+        gauges.remove(name, supplier);
+    }
+
+    /**
+     * The histogram with this name, created on first use
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Records one export step: its duration in the export latency histogram and its rows
+     */
+    public void recordExport(long startNanos, long rows) {
+        histogram(EXPORT_LATENCY).record(System.nanoTime() - startNanos);
+        counter(ROWS_WRITTEN).add(rows);
+    }
+
+    /**
+     * Registers the registry with the platform MBean server (safe to call more than once)
+     * @return false if JMX is unavailable
+     */
+    public synchronized boolean register() {
+        if (registered) {
+            return true;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+            registered = true;
+        } catch (JMException | SecurityException e) {
+            System.err.println("Warning: could not register capture metrics with JMX: " + e.getMessage());
+        }
+        return registered;
+    }
+
+    /**
+     * All metrics as name/value pairs, histograms expanded into count, p50, p99 and max (microseconds)
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = counterValues();
+        values.putAll(gaugeValues());
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            values.put(entry.getKey() + "_count", histogram.getCount());
+            values.put(entry.getKey() + "_p50_us", histogram.getPercentile(50) / 1000);
+            values.put(entry.getKey() + "_p99_us", histogram.getPercentile(99) / 1000);
+            values.put(entry.getKey() + "_max_us", histogram.getMax() / 1000);
+        }
+        values.put("uptime_seconds", (System.currentTimeMillis() - startMillis) / 1000);
+        return values;
+    }
+
+    /**
+     * Current counter values by name (for exporters that need the metric type)
+     */
+    Map<String, Long> counterValues() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    /**
+     * Current gauge values by name
+     */
+    Map<String, Long> gaugeValues() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), readGauge(entry.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * The registered histograms by name (live, not copies)
+     */
+    Map<String, LatencyHistogram> histograms() {
+        return java.util.Collections.unmodifiableMap(histograms);
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    private static long readGauge(LongSupplier supplier) {
+        try {
+            return supplier.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // DynamicMBean
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Capture metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("No operations: " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : snapshot().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", name.replace('_', ' '), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Live capture pipeline metrics",
+                             attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    /**
+     * Prints all metrics to the console
+     */
+    public void printSummary() {
+        System.out.println("\n=== CAPTURE METRICS ===");
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Prints the metrics of a running capture over a remote JMX connection
+     * Usage: CaptureMetrics <host:port>   (the capture JVM started with -Dcom.sun.management.jmxremote.port=...)
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: CaptureMetrics <host:port>");
+            return;
+        }
+        System.out.println("=== Capture Metrics ===");
+        String address = "service:jmx:rmi:///jndi/rmi://" + args[0] + "/jmxrmi";
+        try (javax.management.remote.JMXConnector connector = javax.management.remote.JMXConnectorFactory.connect(
+                 new javax.management.remote.JMXServiceURL(address))) {
+            javax.management.MBeanServerConnection connection = connector.getMBeanServerConnection();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            for (MBeanAttributeInfo attribute : connection.getMBeanInfo(name).getAttributes()) {
+                System.out.println("  " + attribute.getName() + ": " + connection.getAttribute(name, attribute.getName()));
+            }
+        } catch (Exception e) {
+            System.err.println("Error reading capture metrics from " + args[0] + ": " + e.getMessage());
+        }
+    }
+}
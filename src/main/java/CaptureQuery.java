@@ -0,0 +1,1170 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * CaptureQuery.java
+ *
+ * A small query engine over stored captures: CSV exports and rolling
+ * segments (*.csv, *.csv.gz) and columnar captures (*.pcol). A query is a
+ * filter expression plus optional group-by columns and aggregates, e.g.
+ *
+ *   where    host=10.0.0.0/8 dport=443,8443 proto=TCP from="2025-10-10 14:00:00"
+ *   group by src, minute
+ *   compute  count, sum(bytes), p95(bytes)
+ *
+ * Predicates are pushed down before rows are parsed: the time range prunes
+ * TimeRangeIndex blocks and columnar row groups, exact hosts and small port
+ * sets prune blocks through the SecondaryIndex bitmaps (and skip files by
+ * their Bloom filters), and port and length ranges prune columnar row groups
+ * by their min/max statistics. The remaining work is split into tasks (runs
+ * of CSV blocks, columnar row groups, whole compressed files) that run in
+ * parallel on a fork-join pool; each task aggregates into its own table and
+ * the tables are merged at the end. CSV indexes come from the .tidx and
+ * .sidx sidecars when they are current and are built in memory otherwise,
+ * so a query never writes files next to the captures.
+ *
+ * Filter terms (all terms must match; comma-separated values are alternatives):
+ *   host= src= dst=          IPv4 address or CIDR block (10.0.0.0/8), or an exact IPv6 address
+ *   port= sport= dport=      port or range (1024-2048)
+ *   bytes=                   packet length or range
+ *   proto= app= dir=         exact value, case-insensitive (proto=TCP,UDP)
+ *   flags=                   TCP flags that must all be set (flags=SYN, flags=SYN+ACK)
+ *   from= to=                inclusive bounds, "yyyy-MM-dd HH:mm:ss[.SSS]"; to= without
+ *                            milliseconds includes the whole second
+ *
+ * Group-by columns: src dst sport dport proto app dir flags second minute hour day
+ * Aggregates: count sum(bytes) avg(bytes) min(bytes) max(bytes) p<N>(bytes)
+ * Percentiles come from a LatencyHistogram and are accurate to about 6%.
+ */
+public class CaptureQuery {
+
+    private static final int BLOCKS_PER_TASK = 16;
+    private static final int MAX_INDEXED_PORTS = 64;
+    private static final int MAX_NEEDLE_VALUES = 16;
+    private static final List<String> GROUP_COLUMNS = Arrays.asList(
+        "src", "dst", "sport", "dport", "proto", "app", "dir", "flags", "second", "minute", "hour", "day");
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final String CAPTURE_PREFIX = "captured_packets"; // Main export and rolling segments
+
+    private final ForkJoinPool pool;
+    private final List<Term> terms = new ArrayList<>();
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+    private final List<String> groupBy = new ArrayList<>();
+    private final List<Aggregate> aggregates = new ArrayList<>();
+    private int top = 0;
+
+    // Statistics from the last execution
+    private int filesScanned;
+    private int filesSkipped;
+    private long blocksTotal;
+    private long blocksScanned;
+    private int rowGroupsTotal;
+    private int rowGroupsScanned;
+    private long rowsMatched;
+    private long elapsedNanos;
+
+    /**
+     * Creates a query running on the common fork-join pool
+     * @param where Filter expression (null or empty = all rows)
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public CaptureQuery(String where) {
+        this(where, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param where Filter expression (null or empty = all rows)
+     * @param pool Pool on which the scan tasks run
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public CaptureQuery(String where, ForkJoinPool pool) {
+        this.pool = pool;
+        for (String token : tokenize(where == null ? "" : where)) {
+            if (!token.equalsIgnoreCase("and")) {
+                parseTerm(token);
+            }
+        }
+        aggregates.add(parseAggregate("count"));
+    }
+
+    /**
+     * Splits an expression on whitespace outside double quotes (the quotes are dropped)
+     */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in filter: " + expression);
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private void parseTerm(String token) {
+        int equals = token.indexOf('=');
+        if (equals <= 0) {
+            throw new IllegalArgumentException("Invalid filter term (expected field=value): " + token);
+        }
+        String field = token.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+        String value = token.substring(equals + 1).trim();
+        switch (field) {
+            case "from":
+                fromMillis = Math.max(fromMillis, parseTime(value));
+                break;
+            case "to":
+                long to = parseTime(value);
+                if (!value.contains(".")) {
+                    to += 999; // Include the whole last second, as TimeRangeIndex does
+                }
+                toMillis = Math.min(toMillis, to);
+                break;
+            case "host": case "src": case "dst":
+            case "port": case "sport": case "dport": case "bytes":
+            case "proto": case "app": case "dir": case "flags":
+                terms.add(new Term(field, value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown filter field: " + field);
+        }
+    }
+
+    private static long parseTime(String value) {
+        String text = value.replace('T', ' ');
+        try {
+            return new SimpleDateFormat(text.contains(".") ? TIME_FORMAT + ".SSS" : TIME_FORMAT).parse(text).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid time (expected " + TIME_FORMAT + "[.SSS]): " + value);
+        }
+    }
+
+    /**
+     * Sets the group-by columns (none = one row over all matches)
+     */
+    public void setGroupBy(String... columns) {
+        groupBy.clear();
+        for (String column : columns) {
+            String name = column.trim().toLowerCase(Locale.ROOT);
+            if (!GROUP_COLUMNS.contains(name)) {
+                throw new IllegalArgumentException("Unknown group-by column: " + column + " (expected one of " + GROUP_COLUMNS + ")");
+            }
+            groupBy.add(name);
+        }
+    }
+
+    /**
+     * Sets the aggregates computed per group (default: count)
+     */
+    public void setAggregates(String... specs) {
+        aggregates.clear();
+        for (String spec : specs) {
+            aggregates.add(parseAggregate(spec));
+        }
+        if (aggregates.isEmpty()) {
+            aggregates.add(parseAggregate("count"));
+        }
+    }
+
+    /**
+     * Keeps only the n groups with the largest first aggregate (0 = all groups, ordered by group key)
+     */
+    public void setTop(int n) {
+        top = Math.max(0, n);
+    }
+
+    private static Aggregate parseAggregate(String spec) {
+        String text = spec.trim().toLowerCase(Locale.ROOT).replace(" ", "");
+        if (text.equals("count") || text.equals("count(*)")) {
+            return new Aggregate("count", "count", 0);
+        }
+        int open = text.indexOf('(');
+        if (open <= 0 || !text.endsWith(")")) {
+            throw new IllegalArgumentException("Invalid aggregate: " + spec);
+        }
+        String function = text.substring(0, open);
+        String argument = text.substring(open + 1, text.length() - 1);
+        if (!argument.equals("bytes") && !argument.equals("length")) {
+            throw new IllegalArgumentException("Aggregates are computed over bytes (packet length): " + spec);
+        }
+        switch (function) {
+            case "sum": case "avg": case "min": case "max":
+                return new Aggregate(function + "_bytes", function, 0);
+            default:
+                if (function.startsWith("p")) {
+                    try {
+                        double percentile = Double.parseDouble(function.substring(1));
+                        if (percentile > 0 && percentile <= 100) {
+                            return new Aggregate(function.replace('.', '_') + "_bytes", "percentile", percentile);
+                        }
+                    } catch (NumberFormatException e) {
+                        // Reported below
+                    }
+                }
+                throw new IllegalArgumentException("Unknown aggregate function: " + spec);
+        }
+    }
+
+    // Execution
+
+    /**
+     * Runs the query as a group-by over the given files and directories
+     * @param paths CSV exports, rolling segment directories, columnar captures
+     * @return One row per group: the group-by columns followed by the aggregates
+     */
+    public Result execute(List<String> paths) throws IOException {
+        long start = System.nanoTime();
+        List<Callable<Map<List<Object>, Group>>> tasks = new ArrayList<>();
+        for (ScanTask task : plan(paths)) {
+            tasks.add(() -> {
+                Map<List<Object>, Group> groups = new HashMap<>();
+                Map<String, Long> cache = new HashMap<>();
+                task.scan(record -> {
+                    if (matches(record, cache)) {
+                        groups.computeIfAbsent(groupKey(record), k -> newGroup()).add(record.getPacketLength());
+                    }
+                });
+                return groups;
+            });
+        }
+
+        Map<List<Object>, Group> merged = new HashMap<>();
+        for (Map<List<Object>, Group> partial : runAll(tasks)) {
+            for (Map.Entry<List<Object>, Group> entry : partial.entrySet()) {
+                Group group = merged.get(entry.getKey());
+                if (group == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    group.merge(entry.getValue());
+                }
+            }
+        }
+        if (groupBy.isEmpty() && merged.isEmpty()) {
+            merged.put(Collections.emptyList(), newGroup());
+        }
+
+        rowsMatched = 0;
+        for (Group group : merged.values()) {
+            rowsMatched += group.count;
+        }
+        Result result = buildResult(merged);
+        elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Reads the matching rows (in file order) of the given files and directories
+     */
+    public List<PacketRecord> select(List<String> paths) throws IOException {
+        long start = System.nanoTime();
+        List<Callable<List<PacketRecord>>> tasks = new ArrayList<>();
+        for (ScanTask task : plan(paths)) {
+            tasks.add(() -> {
+                List<PacketRecord> records = new ArrayList<>();
+                Map<String, Long> cache = new HashMap<>();
+                task.scan(record -> {
+                    if (matches(record, cache)) {
+                        records.add(record);
+                    }
+                });
+                return records;
+            });
+        }
+        List<PacketRecord> records = new ArrayList<>();
+        for (List<PacketRecord> partial : runAll(tasks)) {
+            records.addAll(partial);
+        }
+        rowsMatched = records.size();
+        elapsedNanos = System.nanoTime() - start;
+        return records;
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Query interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Whether a record passes the time range and every filter term
+     * @param cache Per-thread cache of parsed IPv4 addresses and TCP flag masks
+     */
+    private boolean matches(PacketRecord record, Map<String, Long> cache) {
+        if (fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE) {
+            long timestamp = record.getTimestamp() == null ? 0 : record.getTimestamp().getTime();
+            if (timestamp < fromMillis || timestamp > toMillis) {
+                return false;
+            }
+        }
+        for (Term term : terms) {
+            if (!term.test(record, cache)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Planning
+
+    /**
+     * A unit of parallel work: scans part of one file and hands its rows to the consumer
+     */
+    private interface ScanTask {
+        void scan(Consumer<PacketRecord> consumer) throws IOException;
+    }
+
+    /**
+     * Prunes files, blocks and row groups using the indexes and statistics, and splits the rest into tasks
+     */
+    private List<ScanTask> plan(List<String> paths) throws IOException {
+        filesScanned = 0;
+        filesSkipped = 0;
+        blocksTotal = 0;
+        blocksScanned = 0;
+        rowGroupsTotal = 0;
+        rowGroupsScanned = 0;
+
+        List<ScanTask> tasks = new ArrayList<>();
+        for (String file : expand(paths)) {
+            String name = file.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".pcol")) {
+                planColumnar(file, tasks);
+            } else if (name.endsWith(".csv")) {
+                planCsv(file, tasks);
+            } else {
+                // Compressed CSVs have no indexes: one sequential scan per file
+                filesScanned++;
+                tasks.add(consumer -> {
+                    try (CsvPacketReader reader = new CsvPacketReader(file)) {
+                        PacketRecord record;
+                        while ((record = reader.readNext()) != null) {
+                            consumer.accept(record);
+                        }
+                    }
+                });
+            }
+        }
+        return tasks;
+    }
+
+    private void planCsv(String file, List<ScanTask> tasks) throws IOException {
+        // Current sidecars are used; otherwise the indexes are built in memory, so a query never adds files
+        TimeRangeIndex timeIndex = TimeRangeIndex.loadOrBuild(file);
+        List<TimeRangeIndex.Block> blocks = timeIndex.getBlocks();
+        blocksTotal += blocks.size();
+
+        // Host and port terms narrow the blocks through the secondary index (intersected across terms)
+        boolean sidecar = SecondaryIndex.isCurrent(file);
+        SecondaryIndex memoryIndex = null;
+        BitSet candidates = null;
+        byte[][] needles = null;
+        for (Term term : terms) {
+            List<String> addresses = term.indexedAddresses();
+            List<Integer> ports = term.indexedPorts();
+            if (addresses == null && ports == null) {
+                continue;
+            }
+            if (!sidecar && memoryIndex == null) {
+                memoryIndex = SecondaryIndex.build(file, timeIndex);
+            }
+            BitSet termBlocks = new BitSet();
+            if (addresses != null) {
+                for (String address : addresses) {
+                    termBlocks.or(sidecar ? SecondaryIndex.blocksForIP(file, address) : memoryIndex.getBlocksForIP(address));
+                }
+            } else {
+                for (int port : ports) {
+                    termBlocks.or(sidecar ? SecondaryIndex.blocksForPort(file, port) : memoryIndex.getBlocksForPort(port));
+                }
+            }
+            if (candidates == null) {
+                candidates = termBlocks;
+            } else {
+                candidates.and(termBlocks);
+            }
+            if (needles == null && (addresses != null ? addresses.size() : ports.size()) <= MAX_NEEDLE_VALUES) {
+                needles = addresses != null ? SecondaryIndex.hostNeedles(addresses) : SecondaryIndex.portNeedles(ports);
+            }
+        }
+
+        List<TimeRangeIndex.Block> selected = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            TimeRangeIndex.Block block = blocks.get(i);
+            if (block.getMaxTimestamp() >= fromMillis && block.getMinTimestamp() <= toMillis &&
+                (candidates == null || candidates.get(i))) {
+                selected.add(block);
+            }
+        }
+        if (selected.isEmpty()) {
+            filesSkipped++;
+            return;
+        }
+        filesScanned++;
+        blocksScanned += selected.size();
+
+        byte[][] fileNeedles = needles;
+        for (int i = 0; i < selected.size(); i += BLOCKS_PER_TASK) {
+            List<TimeRangeIndex.Block> run = selected.subList(i, Math.min(selected.size(), i + BLOCKS_PER_TASK));
+            tasks.add(consumer -> TimeRangeIndex.scanBlocks(file, run, fromMillis, toMillis, fileNeedles, consumer));
+        }
+    }
+
+    private void planColumnar(String file, List<ScanTask> tasks) throws IOException {
+        List<Integer> selected = new ArrayList<>();
+        try (ColumnarCaptureReader reader = new ColumnarCaptureReader(file)) {
+            List<ColumnarCaptureReader.RowGroupStats> groups = reader.getRowGroupStats();
+            rowGroupsTotal += groups.size();
+            for (int i = 0; i < groups.size(); i++) {
+                ColumnarCaptureReader.RowGroupStats stats = groups.get(i);
+                boolean candidate = stats.getMaxTimestamp() >= fromMillis && stats.getMinTimestamp() <= toMillis;
+                for (Term term : terms) {
+                    candidate = candidate && term.mayMatch(stats);
+                }
+                if (candidate) {
+                    selected.add(i);
+                }
+            }
+        }
+        if (selected.isEmpty()) {
+            filesSkipped++;
+            return;
+        }
+        filesScanned++;
+        rowGroupsScanned += selected.size();
+
+        for (int group : selected) {
+            tasks.add(consumer -> {
+                try (ColumnarCaptureReader reader = new ColumnarCaptureReader(file)) {
+                    PacketColumns rows = reader.readRowGroup(group);
+                    for (int row = 0; row < rows.size(); row++) {
+                        consumer.accept(rows.toPacketRecord(row));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Lists the capture files of the given paths. Files are taken as given; directories contribute
+     * their primary captures only: captured_packets*.csv[.gz] (the main export and rolling segments),
+     * columnar captures and the packet CSVs of partition subdirectories (key=value, see
+     * PartitionedExporter). Derived copies of the same packets (per-protocol and per-direction
+     * exports, incremental exports, query results) and summary CSVs are left out, so no packet is
+     * counted twice.
+     */
+    private static List<String> expand(List<String> paths) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                addDirectory(file, files);
+            } else if (file.isFile()) {
+                files.add(file.getPath());
+            } else {
+                throw new IOException("No such file or directory: " + path);
+            }
+        }
+        return files;
+    }
+
+    private static void addDirectory(File directory, List<String> files) {
+        boolean partition = directory.getName().contains("=");
+        File[] children = directory.listFiles((dir, name) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (name.contains("=") && new File(dir, name).isDirectory()) {
+                return true;
+            }
+            boolean csv = lower.endsWith(".csv") || lower.endsWith(".csv.gz");
+            return lower.endsWith(".pcol") || (csv && (partition || lower.startsWith(CAPTURE_PREFIX)));
+        });
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addDirectory(child, files);
+            } else if (!child.getName().toLowerCase(Locale.ROOT).endsWith(".csv") || hasPacketHeader(child)) {
+                files.add(child.getPath());
+            }
+        }
+    }
+
+    private static boolean hasPacketHeader(File csv) {
+        byte[] expected = CsvExporter.CSV_HEADER.getBytes(StandardCharsets.UTF_8);
+        byte[] head = new byte[expected.length + 3];
+        try (InputStream in = new FileInputStream(csv)) {
+            int length = 0;
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+            String text = new String(head, 0, length, StandardCharsets.UTF_8);
+            return (text.startsWith("\ufeff") ? text.substring(1) : text).startsWith(CsvExporter.CSV_HEADER);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Grouping
+
+    private List<Object> groupKey(PacketRecord record) {
+        if (groupBy.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] key = new Object[groupBy.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = groupValue(groupBy.get(i), record);
+        }
+        return Arrays.asList(key);
+    }
+
+    private static Object groupValue(String column, PacketRecord record) {
+        switch (column) {
+            case "src": return text(record.getSourceIP());
+            case "dst": return text(record.getDestinationIP());
+            case "sport": return record.getSourcePort();
+            case "dport": return record.getDestinationPort();
+            case "proto": return text(record.getProtocol());
+            case "app": return text(record.getApplicationGuess());
+            case "dir": return text(record.getDirection());
+            case "flags": return text(record.getTcpFlags());
+            default: break;
+        }
+        long timestamp = record.getTimestamp() == null ? 0 : record.getTimestamp().getTime();
+        switch (column) {
+            case "second": return timestamp - Math.floorMod(timestamp, 1000L);
+            case "minute": return timestamp - Math.floorMod(timestamp, 60_000L);
+            case "hour": return truncate(timestamp, ChronoUnit.HOURS);
+            default: return truncate(timestamp, ChronoUnit.DAYS);
+        }
+    }
+
+    private static String text(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static long truncate(long timestamp, ChronoUnit unit) {
+        return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).truncatedTo(unit).toInstant().toEpochMilli();
+    }
+
+    private Group newGroup() {
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.function.equals("percentile")) {
+                return new Group(true);
+            }
+        }
+        return new Group(false);
+    }
+
+    private Result buildResult(Map<List<Object>, Group> groups) {
+        List<Map.Entry<List<Object>, Group>> entries = new ArrayList<>(groups.entrySet());
+        if (top > 0) {
+            Aggregate first = aggregates.get(0);
+            entries.sort((a, b) -> Double.compare(b.getValue().value(first), a.getValue().value(first)));
+            entries = entries.subList(0, Math.min(top, entries.size()));
+        } else {
+            entries.sort((a, b) -> compareKeys(a.getKey(), b.getKey()));
+        }
+
+        List<String> columns = new ArrayList<>(groupBy);
+        for (Aggregate aggregate : aggregates) {
+            columns.add(aggregate.name);
+        }
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+        List<String[]> rows = new ArrayList<>(entries.size());
+        for (Map.Entry<List<Object>, Group> entry : entries) {
+            String[] row = new String[columns.size()];
+            for (int i = 0; i < groupBy.size(); i++) {
+                Object value = entry.getKey().get(i);
+                switch (groupBy.get(i)) {
+                    case "second": case "minute": case "hour":
+                        row[i] = timeFormat.format(new java.util.Date((Long) value));
+                        break;
+                    case "day":
+                        row[i] = dayFormat.format(new java.util.Date((Long) value));
+                        break;
+                    default:
+                        row[i] = String.valueOf(value);
+                }
+            }
+            for (int i = 0; i < aggregates.size(); i++) {
+                Aggregate aggregate = aggregates.get(i);
+                double value = entry.getValue().value(aggregate);
+                row[groupBy.size() + i] = aggregate.function.equals("avg")
+                    ? String.format(Locale.ROOT, "%.2f", value) : String.valueOf((long) value);
+            }
+            rows.add(row);
+        }
+        return new Result(columns, groupBy.size(), rows);
+    }
+
+    private static int compareKeys(List<Object> a, List<Object> b) {
+        for (int i = 0; i < a.size(); i++) {
+            Object x = a.get(i);
+            Object y = b.get(i);
+            int compare;
+            if (x instanceof Long) {
+                compare = Long.compare((Long) x, (Long) y);
+            } else if (x instanceof Integer) {
+                compare = Integer.compare((Integer) x, (Integer) y);
+            } else {
+                compare = ((String) x).compareTo((String) y);
+            }
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    // Statistics
+
+    public int getFilesScanned() {
+        return filesScanned;
+    }
+
+    public int getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    public long getBlocksScanned() {
+        return blocksScanned;
+    }
+
+    public long getBlocksTotal() {
+        return blocksTotal;
+    }
+
+    public int getRowGroupsScanned() {
+        return rowGroupsScanned;
+    }
+
+    public int getRowGroupsTotal() {
+        return rowGroupsTotal;
+    }
+
+    public long getRowsMatched() {
+        return rowsMatched;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    /**
+     * Prints how much of the data the last execution had to read
+     */
+    public void printSummary() {
+        System.out.println("Files scanned: " + filesScanned + " (" + filesSkipped + " skipped by indexes)");
+        if (blocksTotal > 0) {
+            System.out.println("CSV blocks read: " + blocksScanned + " of " + blocksTotal);
+        }
+        if (rowGroupsTotal > 0) {
+            System.out.println("Columnar row groups read: " + rowGroupsScanned + " of " + rowGroupsTotal);
+        }
+        System.out.println("Rows matched: " + rowsMatched);
+        System.out.printf("Elapsed: %.1f ms%n", getElapsedMillis());
+    }
+
+    /**
+     * One filter term: a field and its alternative values
+     */
+    private static final class Term {
+        private final String field;
+        private final List<String> exactAddresses = new ArrayList<>();
+        private final List<long[]> networks = new ArrayList<>();   // IPv4 {network, mask}
+        private final List<int[]> ranges = new ArrayList<>();      // {low, high}, inclusive
+        private final List<String> values = new ArrayList<>();
+        private final List<Integer> flagMasks = new ArrayList<>();
+
+        Term(String field, String value) {
+            this.field = field;
+            for (String alternative : value.split(",")) {
+                String text = alternative.trim();
+                if (text.isEmpty()) {
+                    continue;
+                }
+                switch (field) {
+                    case "host": case "src": case "dst":
+                        addAddress(text);
+                        break;
+                    case "port": case "sport": case "dport": case "bytes":
+                        addRange(text);
+                        break;
+                    case "flags":
+                        int mask = PacketRecord.tcpFlagsToMask(text.toUpperCase(Locale.ROOT).replace('+', ' '));
+                        if (mask <= 0) {
+                            throw new IllegalArgumentException("Unknown TCP flags: " + text);
+                        }
+                        flagMasks.add(mask);
+                        break;
+                    default:
+                        values.add(text);
+                }
+            }
+            if (exactAddresses.isEmpty() && networks.isEmpty() && ranges.isEmpty() && values.isEmpty() && flagMasks.isEmpty()) {
+                throw new IllegalArgumentException("No value given for " + field);
+            }
+        }
+
+        private void addAddress(String text) {
+            int slash = text.indexOf('/');
+            String address = slash < 0 ? text : text.substring(0, slash);
+            long ip = PacketRecordCodec.parseIPv4(address);
+            if (slash < 0) {
+                exactAddresses.add(address);
+                return;
+            }
+            if (ip < 0) {
+                throw new IllegalArgumentException("CIDR blocks are supported for IPv4 addresses only: " + text);
+            }
+            int prefix;
+            try {
+                prefix = Integer.parseInt(text.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+            if (prefix < 0 || prefix > 32) {
+                throw new IllegalArgumentException("Invalid CIDR prefix: " + text);
+            }
+            if (prefix == 32) {
+                exactAddresses.add(address);
+            } else {
+                long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+                networks.add(new long[] {ip & mask, mask});
+            }
+        }
+
+        private void addRange(String text) {
+            int dash = text.indexOf('-', 1);
+            try {
+                int low = Integer.parseInt(dash < 0 ? text : text.substring(0, dash).trim());
+                int high = dash < 0 ? low : Integer.parseInt(text.substring(dash + 1).trim());
+                if (low > high) {
+                    throw new IllegalArgumentException("Empty range: " + text);
+                }
+                ranges.add(new int[] {low, high});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + field + " value: " + text);
+            }
+        }
+
+        /**
+         * @param cache Per-thread cache of parsed IPv4 addresses and TCP flag masks
+         */
+        boolean test(PacketRecord record, Map<String, Long> cache) {
+            switch (field) {
+                case "host":
+                    return matchesAddress(record.getSourceIP(), cache) || matchesAddress(record.getDestinationIP(), cache);
+                case "src":
+                    return matchesAddress(record.getSourceIP(), cache);
+                case "dst":
+                    return matchesAddress(record.getDestinationIP(), cache);
+                case "port":
+                    return inRange(record.getSourcePort()) || inRange(record.getDestinationPort());
+                case "sport":
+                    return inRange(record.getSourcePort());
+                case "dport":
+                    return inRange(record.getDestinationPort());
+                case "bytes":
+                    return inRange(record.getPacketLength());
+                case "proto":
+                    return matchesValue(record.getProtocol());
+                case "app":
+                    return matchesValue(record.getApplicationGuess());
+                case "dir":
+                    return matchesValue(record.getDirection());
+                default:
+                    String flags = record.getTcpFlags() == null ? "" : record.getTcpFlags();
+                    long mask = cache.computeIfAbsent(flags, f -> (long) PacketRecord.tcpFlagsToMask(f));
+                    for (int required : flagMasks) {
+                        if (mask > 0 && (mask & required) == required) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        private boolean matchesAddress(String ip, Map<String, Long> cache) {
+            if (ip == null) {
+                return false;
+            }
+            for (String address : exactAddresses) {
+                if (address.equals(ip)) {
+                    return true;
+                }
+            }
+            if (networks.isEmpty()) {
+                return false;
+            }
+            long value = cache.computeIfAbsent(ip, PacketRecordCodec::parseIPv4);
+            if (value < 0) {
+                return false;
+            }
+            for (long[] network : networks) {
+                if ((value & network[1]) == network[0]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean inRange(int value) {
+            for (int[] range : ranges) {
+                if (value >= range[0] && value <= range[1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean overlaps(int min, int max) {
+            for (int[] range : ranges) {
+                if (range[1] >= min && range[0] <= max) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesValue(String value) {
+            for (String expected : values) {
+                if (expected.equalsIgnoreCase(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The exact addresses of a host term, or null if it is not a host term or includes a CIDR block
+         */
+        List<String> indexedAddresses() {
+            boolean hostTerm = field.equals("host") || field.equals("src") || field.equals("dst");
+            return hostTerm && networks.isEmpty() ? exactAddresses : null;
+        }
+
+        /**
+         * The ports of a port term, or null if it is not a port term or its ranges are too wide to look up one by one
+         */
+        List<Integer> indexedPorts() {
+            if (!field.equals("port") && !field.equals("sport") && !field.equals("dport")) {
+                return null;
+            }
+            long count = 0;
+            for (int[] range : ranges) {
+                count += (long) range[1] - range[0] + 1;
+            }
+            if (count > MAX_INDEXED_PORTS) {
+                return null;
+            }
+            List<Integer> ports = new ArrayList<>();
+            for (int[] range : ranges) {
+                for (int port = range[0]; port <= range[1]; port++) {
+                    ports.add(port);
+                }
+            }
+            return ports;
+        }
+
+        /**
+         * Whether a columnar row group may contain matching rows, judged by its min/max statistics
+         */
+        boolean mayMatch(ColumnarCaptureReader.RowGroupStats stats) {
+            switch (field) {
+                case "port":
+                    return overlaps(stats.getMinSourcePort(), stats.getMaxSourcePort()) ||
+                           overlaps(stats.getMinDestinationPort(), stats.getMaxDestinationPort());
+                case "sport":
+                    return overlaps(stats.getMinSourcePort(), stats.getMaxSourcePort());
+                case "dport":
+                    return overlaps(stats.getMinDestinationPort(), stats.getMaxDestinationPort());
+                case "bytes":
+                    return overlaps(stats.getMinPacketLength(), stats.getMaxPacketLength());
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * An aggregate column: count, sum, avg, min, max or a percentile of the packet length
+     */
+    private static final class Aggregate {
+        private final String name;
+        private final String function;
+        private final double percentile;
+
+        Aggregate(String name, String function, double percentile) {
+            this.name = name;
+            this.function = function;
+            this.percentile = percentile;
+        }
+    }
+
+    /**
+     * Running aggregates of one group
+     */
+    private static final class Group {
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private final LatencyHistogram lengths;
+
+        Group(boolean percentiles) {
+            lengths = percentiles ? new LatencyHistogram() : null;
+        }
+
+        void add(int length) {
+            count++;
+            sum += length;
+            min = Math.min(min, length);
+            max = Math.max(max, length);
+            if (lengths != null) {
+                lengths.record(length);
+            }
+        }
+
+        void merge(Group other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            if (lengths != null) {
+                lengths.merge(other.lengths);
+            }
+        }
+
+        double value(Aggregate aggregate) {
+            switch (aggregate.function) {
+                case "count": return count;
+                case "sum": return sum;
+                case "avg": return count == 0 ? 0 : (double) sum / count;
+                case "min": return count == 0 ? 0 : min;
+                case "max": return count == 0 ? 0 : max;
+                default: return lengths.getPercentile(aggregate.percentile);
+            }
+        }
+    }
+
+    /**
+     * Result table of a group-by query
+     */
+    public static class Result {
+        private final List<String> columns;
+        private final int keyColumns;
+        private final List<String[]> rows;
+
+        Result(List<String> columns, int keyColumns, List<String[]> rows) {
+            this.columns = Collections.unmodifiableList(columns);
+            this.keyColumns = keyColumns;
+            this.rows = rows;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public List<String[]> getRows() {
+            return Collections.unmodifiableList(rows);
+        }
+
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        /**
+         * Prints the first rows as an aligned table
+         */
+        public void print(int maxRows) {
+            int[] widths = new int[columns.size()];
+            for (int c = 0; c < widths.length; c++) {
+                widths[c] = columns.get(c).length();
+                for (int r = 0; r < Math.min(maxRows, rows.size()); r++) {
+                    widths[c] = Math.max(widths[c], rows.get(r)[c].length());
+                }
+            }
+            StringBuilder line = new StringBuilder();
+            for (int c = 0; c < widths.length; c++) {
+                line.append(String.format("%-" + (widths[c] + 2) + "s", columns.get(c)));
+            }
+            System.out.println(line.toString().trim());
+            for (int r = 0; r < Math.min(maxRows, rows.size()); r++) {
+                line.setLength(0);
+                for (int c = 0; c < widths.length; c++) {
+                    line.append(String.format("%-" + (widths[c] + 2) + "s", rows.get(r)[c]));
+                }
+                System.out.println(line.toString().trim());
+            }
+            if (rows.size() > maxRows) {
+                System.out.println("... " + (rows.size() - maxRows) + " more row(s)");
+            }
+        }
+
+        /**
+         * Writes the table to output/<filename>.csv for Power BI (UTF-8 BOM, group-by columns quoted)
+         * @return true if export was successful, false otherwise
+         */
+        public boolean exportToCsv(String filename) {
+            if (!CsvExporter.createOutputDirectory()) {
+                return false;
+            }
+            String fullFilename = CsvExporter.getOutputDirectory() + "/" + filename + ".csv";
+            try (FileWriter writer = new FileWriter(fullFilename, StandardCharsets.UTF_8)) {
+                writer.write('\ufeff');
+                writer.write(String.join(",", columns));
+                writer.write("\n");
+                StringBuilder line = new StringBuilder();
+                for (String[] row : rows) {
+                    line.setLength(0);
+                    for (int c = 0; c < row.length; c++) {
+                        if (c > 0) {
+                            line.append(',');
+                        }
+                        if (c < keyColumns) {
+                            line.append('"').append(row[c].replace("\"", "\"\"")).append('"');
+                        } else {
+                            line.append(row[c]);
+                        }
+                    }
+                    writer.write(line.append('\n').toString());
+                }
+                System.out.println("Successfully exported " + rows.size() + " result rows to " + fullFilename);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error writing query result: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Runs a query from the command line
+     * Usage: CaptureQuery [file.csv | file.pcol | directory]... [--where "terms"] [--group-by cols]
+     *                     [--agg aggregates] [--top n] [--export name]
+     */
+    public static void main(String[] args) {
+        List<String> paths = new ArrayList<>();
+        String where = "";
+        String groupBy = null;
+        String aggregates = null;
+        int top = 0;
+        String exportName = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--where": where = args[++i]; break;
+                    case "--group-by": groupBy = args[++i]; break;
+                    case "--agg": aggregates = args[++i]; break;
+                    case "--top": top = Integer.parseInt(args[++i]); break;
+                    case "--export": exportName = args[++i]; break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        paths.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println("Usage: CaptureQuery [file.csv | file.pcol | directory]... [--where \"terms\"] " +
+                             "[--group-by cols] [--agg aggregates] [--top n] [--export name]");
+            System.out.println("Example: CaptureQuery output --where \"host=10.0.0.0/8 dport=443 proto=TCP\" " +
+                             "--group-by src,minute --agg count,sum(bytes),p95(bytes)");
+            return;
+        }
+        if (paths.isEmpty()) {
+            paths.add(CsvExporter.getOutputDirectory());
+        }
+
+        System.out.println("=== Capture Query ===");
+        try {
+            CaptureQuery query = new CaptureQuery(where);
+            if (groupBy == null && aggregates == null) {
+                // Plain filter: export the matching rows like exportToCsvByProtocol does
+                List<PacketRecord> records = query.select(paths);
+                for (int i = 0; i < Math.min(10, records.size()); i++) {
+                    System.out.println(records.get(i).toCompactString());
+                }
+                query.printSummary();
+                if (exportName != null) {
+                    CsvExporter.exportToCsvForPowerBI(records, exportName);
+                }
+                return;
+            }
+            if (groupBy != null) {
+                query.setGroupBy(groupBy.split(","));
+            }
+            if (aggregates != null) {
+                query.setAggregates(aggregates.split(","));
+            }
+            query.setTop(top);
+            Result result = query.execute(paths);
+            result.print(20);
+            query.printSummary();
+            if (exportName != null) {
+                result.exportToCsv(exportName);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error running query: " + e.getMessage());
+        }
+    }
+}
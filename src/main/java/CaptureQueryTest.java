@@ -0,0 +1,271 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * CaptureQueryTest.java
+ *
+ * A repeatable test program for CaptureQuery filters.
+ * Writes one seeded set of packet records as an indexed CSV export and as a
+ * columnar .pcol file with small row groups, runs a list of filter
+ * expressions against each file, and compares the matching rows with a
+ * brute-force filter over the in-memory records. A copy of the CSV without
+ * sidecars checks that queries build their indexes in memory and leave no
+ * .tidx/.sidx files behind, and a directory holding the CSV next to derived
+ * exports of the same packets checks that each packet is counted once.
+ * Exits with status 1 if any query disagrees.
+ */
+public class CaptureQueryTest {
+
+    private static final int RECORD_COUNT = 40000;
+    private static final long START_MILLIS = 1_760_000_000_000L;
+    private static final String NAME = "capture_query_test";
+    private static final String[] FLAGS = { "SYN", "SYN ACK", "ACK", "ACK PSH", "FIN ACK", "RST", "RST ACK" };
+
+    private static int passed = 0;
+    private static int failed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Capture Query Test ===");
+
+        List<PacketRecord> records = createRecords(new Random(42));
+        System.out.println("Created " + records.size() + " packet records.");
+
+        // Indexed CSV export, so host, port and time filters prune blocks
+        CsvExporter.setWriteIndexes(true);
+        if (!CsvExporter.exportToCsv(records, NAME)) {
+            System.out.println("✗ CSV export failed!");
+            System.exit(1);
+        }
+        CsvExporter.setWriteIndexes(false);
+        String csvFile = CsvExporter.getOutputDirectory() + "/" + NAME + ".csv";
+
+        // Columnar file with small row groups, so port and length filters skip some of them
+        String pcolFile = CsvExporter.getOutputDirectory() + "/" + NAME + ".pcol";
+        try (ColumnarCaptureWriter writer = new ColumnarCaptureWriter(pcolFile, 2000)) {
+            writer.writeAll(records);
+        }
+
+        SimpleDateFormat seconds = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat millis = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        long from = START_MILLIS + 30_000;
+        long to = START_MILLIS + 61_000;
+        String fromText = seconds.format(new Date(from));
+        String toText = seconds.format(new Date(to));
+        long toMillisExact = to + 250;
+
+        check(records, csvFile, pcolFile, "host=10.0.0.7",
+              r -> r.getSourceIP().equals("10.0.0.7") || r.getDestinationIP().equals("10.0.0.7"));
+        check(records, csvFile, pcolFile, "src=10.0.0.7,10.0.0.9",
+              r -> r.getSourceIP().equals("10.0.0.7") || r.getSourceIP().equals("10.0.0.9"));
+        check(records, csvFile, pcolFile, "dst=192.168.1.0/24",
+              r -> r.getDestinationIP().startsWith("192.168.1."));
+        check(records, csvFile, pcolFile, "host=10.0.0.0/29",
+              r -> inNetwork(r.getSourceIP(), 0, 7) || inNetwork(r.getDestinationIP(), 0, 7));
+        check(records, csvFile, pcolFile, "host=2001:db8::5",
+              r -> r.getSourceIP().equals("2001:db8::5") || r.getDestinationIP().equals("2001:db8::5"));
+        check(records, csvFile, pcolFile, "port=443,53",
+              r -> hasPort(r, 443) || hasPort(r, 53));
+        check(records, csvFile, pcolFile, "dport=8000-8100",
+              r -> r.getDestinationPort() >= 8000 && r.getDestinationPort() <= 8100);
+        check(records, csvFile, pcolFile, "sport=53 dport=1024-65535",
+              r -> r.getSourcePort() == 53 && r.getDestinationPort() >= 1024);
+        check(records, csvFile, pcolFile, "host=192.168.0.0/16 bytes=1000-1500",
+              r -> (r.getSourceIP().startsWith("192.168.") || r.getDestinationIP().startsWith("192.168.")) &&
+                   r.getPacketLength() >= 1000 && r.getPacketLength() <= 1500);
+        check(records, csvFile, pcolFile, "flags=SYN",
+              r -> hasFlags(r, "SYN"));
+        check(records, csvFile, pcolFile, "flags=SYN+ACK",
+              r -> hasFlags(r, "SYN", "ACK"));
+        check(records, csvFile, pcolFile, "flags=RST,FIN proto=tcp",
+              r -> hasFlags(r, "RST") || hasFlags(r, "FIN"));
+        check(records, csvFile, pcolFile, "proto=UDP,ICMPv6 dir=incoming",
+              r -> (r.getProtocol().equals("UDP") || r.getProtocol().equals("ICMPv6")) && r.getDirection().equals("Incoming"));
+        check(records, csvFile, pcolFile, "app=DNS",
+              r -> r.getApplicationGuess().equals("DNS"));
+        check(records, csvFile, pcolFile, "\"from=" + fromText + "\" \"to=" + toText + "\"",
+              r -> r.getTimestamp().getTime() >= from && r.getTimestamp().getTime() <= to + 999);
+        check(records, csvFile, pcolFile, "\"from=" + fromText + "\" \"to=" + millis.format(new Date(toMillisExact)) + "\"",
+              r -> r.getTimestamp().getTime() >= from && r.getTimestamp().getTime() <= toMillisExact);
+        check(records, csvFile, pcolFile, "\"from=" + fromText + "\" \"to=" + toText + "\" host=10.0.0.3 port=443",
+              r -> r.getTimestamp().getTime() >= from && r.getTimestamp().getTime() <= to + 999 &&
+                   (r.getSourceIP().equals("10.0.0.3") || r.getDestinationIP().equals("10.0.0.3")) && hasPort(r, 443));
+        check(records, csvFile, pcolFile, "host=10.9.9.9",
+              r -> false);
+
+        // A CSV without sidecars: indexes are built in memory and nothing is written next to it
+        String plainFile = CsvExporter.getOutputDirectory() + "/" + NAME + "_plain.csv";
+        Files.copy(new File(csvFile).toPath(), new File(plainFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        checkFile(records, plainFile, "host=10.0.0.7 port=443",
+                  r -> (r.getSourceIP().equals("10.0.0.7") || r.getDestinationIP().equals("10.0.0.7")) && hasPort(r, 443));
+        boolean noSidecars = !new File(plainFile + TimeRangeIndex.SUFFIX).exists() &&
+                             !new File(plainFile + SecondaryIndex.SUFFIX).exists();
+        report("no sidecars written by the query", noSidecars);
+        new File(plainFile).delete();
+
+        // A directory with the main export next to derived copies of the same packets: only the export is read
+        File directory = new File(CsvExporter.getOutputDirectory(), NAME + "_dir");
+        File incremental = new File(directory, IncrementalExporter.DEFAULT_DIRECTORY_NAME);
+        incremental.mkdirs();
+        String[] copies = { "captured_packets.csv", "packet_capture_tcp_20251010_120000.csv",
+                            "packet_capture_incoming_20251010_120000.csv", "https_by_host.csv",
+                            IncrementalExporter.DEFAULT_DIRECTORY_NAME + "/packets_delta_000001.csv" };
+        for (String copy : copies) {
+            Files.copy(new File(csvFile).toPath(), new File(directory, copy).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        checkFile(records, directory.getPath(), "proto=TCP", r -> r.getProtocol().equals("TCP"));
+        for (String copy : copies) {
+            new File(directory, copy).delete();
+        }
+        incremental.delete();
+        directory.delete();
+
+        new File(csvFile).delete();
+        new File(csvFile + TimeRangeIndex.SUFFIX).delete();
+        new File(csvFile + SecondaryIndex.SUFFIX).delete();
+        new File(pcolFile).delete();
+
+        System.out.println("\n=== Test Complete: " + passed + " passed, " + failed + " failed ===");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the filter against each file and compares the rows with the brute-force result
+     */
+    private static void check(List<PacketRecord> records, String csvFile, String pcolFile,
+                              String where, Predicate<PacketRecord> expected) throws Exception {
+        checkFile(records, csvFile, where, expected);
+        checkFile(records, pcolFile, where, expected);
+    }
+
+    /**
+     * Runs the filter against one file or directory and compares the rows with the brute-force result
+     */
+    private static void checkFile(List<PacketRecord> records, String path, String where,
+                                  Predicate<PacketRecord> expected) throws Exception {
+        List<String> expectedRows = new ArrayList<>();
+        for (PacketRecord record : records) {
+            if (expected.test(record)) {
+                expectedRows.add(key(record));
+            }
+        }
+        CaptureQuery query = new CaptureQuery(where);
+        List<String> rows = new ArrayList<>();
+        for (PacketRecord record : query.select(Arrays.asList(path))) {
+            rows.add(key(record));
+        }
+        String type = new File(path).isDirectory() ? "dir " : path.endsWith(".pcol") ? "pcol" : "csv ";
+        report(type + " " + where + " (" + rows.size() + " rows" +
+               (rows.equals(expectedRows) ? "" : ", expected " + expectedRows.size()) + ")", rows.equals(expectedRows));
+    }
+
+    private static void report(String message, boolean ok) {
+        if (ok) {
+            passed++;
+            System.out.println("✓ " + message);
+        } else {
+            failed++;
+            System.out.println("✗ " + message);
+        }
+    }
+
+    /**
+     * Identifies a row independently of the file format it was read back from
+     */
+    private static String key(PacketRecord record) {
+        return record.getTimestamp().getTime() + "|" + record.getSourceIP() + "|" + record.getDestinationIP() + "|" +
+               record.getSourcePort() + "|" + record.getDestinationPort() + "|" + record.getProtocol() + "|" +
+               record.getPacketLength() + "|" + record.getDirection() + "|" + record.getTcpFlags() + "|" +
+               record.getApplicationGuess();
+    }
+
+    private static boolean hasPort(PacketRecord record, int port) {
+        return record.getSourcePort() == port || record.getDestinationPort() == port;
+    }
+
+    private static boolean hasFlags(PacketRecord record, String... flags) {
+        List<String> set = Arrays.asList(record.getTcpFlags().split(" "));
+        for (String flag : flags) {
+            if (!set.contains(flag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether an address is 10.0.0.low to 10.0.0.high
+     */
+    private static boolean inNetwork(String ip, int low, int high) {
+        if (!ip.startsWith("10.0.0.")) {
+            return false;
+        }
+        int last = Integer.parseInt(ip.substring("10.0.0.".length()));
+        return last >= low && last <= high;
+    }
+
+    /**
+     * Creates time-ordered records over about seven minutes: IPv4 hosts in two
+     * networks and a few IPv6 hosts, TCP with varied flags, UDP, ICMPv6 and ARP
+     */
+    private static List<PacketRecord> createRecords(Random random) {
+        List<PacketRecord> records = new ArrayList<>(RECORD_COUNT);
+        long time = START_MILLIS;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            time += random.nextInt(21);
+            PacketRecord record = new PacketRecord();
+            record.setTimestamp(new Date(time));
+            int kind = random.nextInt(20);
+            boolean incoming = random.nextBoolean();
+            String local;
+            String remote;
+            if (kind == 0) {
+                local = "2001:db8::" + (1 + random.nextInt(8));
+                remote = "2001:db8:1::" + (1 + random.nextInt(4));
+            } else {
+                local = "10.0.0." + random.nextInt(16);
+                remote = "192.168." + random.nextInt(4) + "." + random.nextInt(256);
+            }
+            record.setSourceIP(incoming ? remote : local);
+            record.setDestinationIP(incoming ? local : remote);
+            record.setDirection(incoming ? "Incoming" : "Outgoing");
+            record.setPacketLength(40 + random.nextInt(1461));
+
+            if (kind == 1) {
+                record.setProtocol(local.contains(":") ? "ICMPv6" : "ARP");
+                record.setSourcePort(-1);
+                record.setDestinationPort(-1);
+                record.setTcpFlags("");
+                record.setApplicationGuess("Unknown");
+            } else if (kind < 7) {
+                int service = random.nextBoolean() ? 53 : 8000 + random.nextInt(200);
+                int ephemeral = 1024 + random.nextInt(64512);
+                record.setProtocol("UDP");
+                record.setSourcePort(incoming ? service : ephemeral);
+                record.setDestinationPort(incoming ? ephemeral : service);
+                record.setTcpFlags("");
+                record.setApplicationGuess(service == 53 ? "DNS" : "Unknown");
+            } else {
+                int service = random.nextInt(4) == 0 ? 80 : 443;
+                int ephemeral = 1024 + random.nextInt(64512);
+                record.setProtocol("TCP");
+                record.setSourcePort(incoming ? service : ephemeral);
+                record.setDestinationPort(incoming ? ephemeral : service);
+                record.setTcpFlags(FLAGS[random.nextInt(FLAGS.length)]);
+                record.setApplicationGuess(service == 80 ? "HTTP" : "HTTPS");
+            }
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ColumnEncoding.java
+ *
+ * Encoders and decoders for the column chunks of the columnar capture format
+ * (see ColumnarCaptureWriter):
+ * - DELTA_VARINT   first value, then zigzag varint deltas (timestamps; exports are not sorted)
+ * - FOR_BITPACKED  frame of reference: min, max, bit width, (value - min) packed MSB first
+ * - DICT_BITPACKED dictionary of distinct strings + bit-packed dictionary indices
+ * - DICT_RLE       dictionary + (run length, index) pairs for long runs of one value
+ * - FLAG_MASK      TCP flag strings as PacketRecord.tcpFlagsToMask masks, bit-packed like FOR_BITPACKED
+ */
+final class ColumnEncoding {
+
+    static final byte DELTA_VARINT = 1;
+    static final byte FOR_BITPACKED = 2;
+    static final byte DICT_BITPACKED = 3;
+    static final byte DICT_RLE = 4;
+    static final byte FLAG_MASK = 5;
+
+    private ColumnEncoding() {
+    }
+
+    // Varints
+
+    static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    // Timestamps
+
+    static void putDeltaVarint(ByteArrayOutputStream out, long[] values, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            putVarLong(out, zigzag(values[i] - previous));
+            previous = values[i];
+        }
+    }
+
+    static void getDeltaVarint(ByteBuffer in, long[] values, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unzigzag(getVarLong(in));
+            values[i] = previous;
+        }
+    }
+
+    // Frame of reference + bit packing
+
+    /**
+     * Bits needed to store values in [0, range]
+     */
+    static int bitWidth(long range) {
+        return range == 0 ? 0 : 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    static void putFrameOfReference(ByteArrayOutputStream out, int[] values, int count) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        if (count == 0) {
+            min = 0;
+            max = 0;
+        }
+        int width = bitWidth((long) max - min);
+        putInt(out, min);
+        putInt(out, max);
+        out.write(width);
+        putBitPacked(out, values, count, min, width);
+    }
+
+    /**
+     * @return {min, max} of the decoded column
+     */
+    static int[] getFrameOfReference(ByteBuffer in, int[] values, int count) {
+        int min = in.getInt();
+        int max = in.getInt();
+        int width = in.get();
+        getBitPacked(in, values, count, min, width);
+        return new int[] {min, max};
+    }
+
+    private static void putBitPacked(ByteArrayOutputStream out, int[] values, int count, int base, int width) {
+        if (width == 0) {
+            return;
+        }
+        long buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            buffer = (buffer << width) | (((long) values[i] - base) & ((1L << width) - 1));
+            bits += width;
+            while (bits >= 8) {
+                out.write((int) (buffer >>> (bits - 8)));
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.write((int) (buffer << (8 - bits)));
+        }
+    }
+
+    private static void getBitPacked(ByteBuffer in, int[] values, int count, int base, int width) {
+        if (width == 0) {
+            for (int i = 0; i < count; i++) {
+                values[i] = base;
+            }
+            return;
+        }
+        long buffer = 0;
+        int bits = 0;
+        long mask = (1L << width) - 1;
+        for (int i = 0; i < count; i++) {
+            while (bits < width) {
+                buffer = (buffer << 8) | (in.get() & 0xFF);
+                bits += 8;
+            }
+            values[i] = (int) (((buffer >>> (bits - width)) & mask) + base);
+            bits -= width;
+        }
+    }
+
+    // Dictionary columns
+
+    /**
+     * Writes a string column as DICT_BITPACKED or DICT_RLE, whichever is smaller
+     * @return The encoding used
+     */
+    static byte putDictionary(ByteArrayOutputStream out, String[] values, int count) {
+        Map<String, Integer> ids = new HashMap<>();
+        int[] indices = new int[count];
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            String value = values[i] == null ? "" : values[i];
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+            }
+            indices[i] = id;
+            if (i == 0 || indices[i] != indices[i - 1]) {
+                runs++;
+            }
+        }
+
+        String[] dictionary = new String[ids.size()];
+        ids.forEach((value, id) -> dictionary[id] = value);
+        putVarLong(out, dictionary.length);
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        int width = bitWidth(dictionary.length - 1);
+        long packedBytes = ((long) count * width + 7) / 8;
+        long rleBytes = runs * 2L; // One-byte run length and index for typical runs
+        if (rleBytes < packedBytes) {
+            putVarLong(out, runs);
+            int i = 0;
+            while (i < count) {
+                int runStart = i;
+                while (i < count && indices[i] == indices[runStart]) {
+                    i++;
+                }
+                putVarLong(out, i - runStart);
+                putVarLong(out, indices[runStart]);
+            }
+            return DICT_RLE;
+        }
+        out.write(width);
+        putBitPacked(out, indices, count, 0, width);
+        return DICT_BITPACKED;
+    }
+
+    /**
+     * Decodes a dictionary column; every row shares the dictionary's String instances
+     * @return The dictionary (the distinct values of the column)
+     */
+    static String[] getDictionary(ByteBuffer in, byte encoding, String[] values, int count) {
+        String[] dictionary = new String[(int) getVarLong(in)];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[(int) getVarLong(in)];
+            in.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        if (encoding == DICT_RLE) {
+            long runs = getVarLong(in);
+            int row = 0;
+            for (long r = 0; r < runs; r++) {
+                int length = (int) getVarLong(in);
+                String value = dictionary[(int) getVarLong(in)];
+                for (int i = 0; i < length; i++) {
+                    values[row++] = value;
+                }
+            }
+        } else {
+            int width = in.get();
+            int[] indices = new int[count];
+            getBitPacked(in, indices, count, 0, width);
+            for (int i = 0; i < count; i++) {
+                values[i] = dictionary[indices[i]];
+            }
+        }
+        return dictionary;
+    }
+
+    // TCP flags
+
+    /**
+     * Writes TCP flags as bit-packed masks if every value is a canonical flag string
+     * @return true if written, false if the column must be dictionary-encoded instead
+     */
+    static boolean putFlagMasks(ByteArrayOutputStream out, String[] values, int count) {
+        int[] masks = new int[count];
+        for (int i = 0; i < count; i++) {
+            String flags = values[i] == null ? "" : values[i];
+            masks[i] = PacketRecord.tcpFlagsToMask(flags);
+            if (masks[i] < 0 || !PacketRecord.maskToTcpFlags(masks[i]).equals(flags)) {
+                return false; // Not losslessly representable
+            }
+        }
+        putFrameOfReference(out, masks, count);
+        return true;
+    }
+
+    static void getFlagMasks(ByteBuffer in, String[] values, int count) {
+        int[] masks = new int[count];
+        getFrameOfReference(in, masks, count);
+        String[] names = new String[64];
+        for (int i = 0; i < count; i++) {
+            int mask = masks[i];
+            if (names[mask] == null) {
+                names[mask] = PacketRecord.maskToTcpFlags(mask);
+            }
+            values[i] = names[mask];
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ColumnarCaptureReader.java
+ *
+ * Reads .pcol files written by ColumnarCaptureWriter. The footer is read on
+ * open, so row group statistics (time range, port and length ranges) are
+ * available before any data is decoded and row groups outside a time range
+ * can be skipped.
+ *
+ * Row groups decode into PacketColumns batches; as a PacketRecordSource the
+ * reader also streams PacketRecords (e.g. for TraceReplayer). convertToCsv()
+ * materializes the Power BI CSV when a BI refresh needs it.
+ */
+public class ColumnarCaptureReader implements PacketRecordSource {
+
+    private final String filename;
+    private final FileChannel channel;
+    private final List<RowGroupStats> rowGroups;
+    private long footerOffset;
+
+    // Record streaming state
+    private int nextRowGroup = 0;
+    private PacketColumns currentGroup;
+    private int nextRow = 0;
+
+    /**
+     * Opens a columnar capture and reads its footer
+     * @param filename Path of the .pcol file
+     * @throws IOException if the file cannot be read or is not a complete columnar capture
+     */
+    public ColumnarCaptureReader(String filename) throws IOException {
+        this.filename = filename;
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            this.rowGroups = readFooter();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e
+                                           : new IOException("Corrupt columnar capture " + filename + ": " + e, e);
+        }
+    }
+
+    private List<RowGroupStats> readFooter() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = readAt(0, ColumnarCaptureWriter.HEADER_LENGTH);
+        if (size < ColumnarCaptureWriter.HEADER_LENGTH + 16 || !hasMagic(header, 0)) {
+            throw new IOException("Not a columnar capture file: " + filename);
+        }
+        int version = header.get(4);
+        if (version != ColumnarCaptureWriter.VERSION) {
+            throw new IOException("Unsupported columnar capture version " + version + ": " + filename);
+        }
+
+        ByteBuffer trailer = readAt(size - 12, 12);
+        if (!hasMagic(trailer, 8)) {
+            throw new IOException("Columnar capture is incomplete (writer not closed): " + filename);
+        }
+        footerOffset = trailer.getLong(0);
+        ByteBuffer footer = readAt(footerOffset, (int) (size - 12 - footerOffset));
+        int count = footer.getInt();
+        List<RowGroupStats> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(RowGroupStats.readFrom(footer));
+        }
+        return groups;
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < ColumnarCaptureWriter.MAGIC.length; i++) {
+            if (buffer.get(offset + i) != ColumnarCaptureWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of columnar capture: " + filename);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int getRowGroupCount() {
+        return rowGroups.size();
+    }
+
+    public RowGroupStats getRowGroupStats(int index) {
+        return rowGroups.get(index);
+    }
+
+    public List<RowGroupStats> getRowGroupStats() {
+        return Collections.unmodifiableList(rowGroups);
+    }
+
+    public long getRowCount() {
+        long rows = 0;
+        for (RowGroupStats stats : rowGroups) {
+            rows += stats.rowCount;
+        }
+        return rows;
+    }
+
+    /**
+     * Decodes one row group
+     * @param index Row group number
+     * @return The rows as a columnar batch
+     */
+    public PacketColumns readRowGroup(int index) throws IOException {
+        RowGroupStats stats = rowGroups.get(index);
+        long end = index + 1 < rowGroups.size() ? rowGroups.get(index + 1).offset : footerOffset;
+        ByteBuffer data = readAt(stats.offset, (int) (end - stats.offset));
+
+        int count = data.getInt();
+        PacketColumns columns = new PacketColumns(count);
+        try {
+            for (int c = 0; c < ColumnarCaptureWriter.COLUMN_COUNT; c++) {
+                int column = data.get();
+                byte encoding = data.get();
+                int length = data.getInt();
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                data.position(data.position() + length);
+                decodeColumn(column, encoding, payload, columns, count);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt row group " + index + " in " + filename + ": " + e, e);
+        }
+        columns.setSize(count);
+        return columns;
+    }
+
+    private static void decodeColumn(int column, byte encoding, ByteBuffer in, PacketColumns out, int count) {
+        switch (column) {
+            case ColumnarCaptureWriter.COL_TIMESTAMP:
+                ColumnEncoding.getDeltaVarint(in, out.timestamps, count);
+                break;
+            case ColumnarCaptureWriter.COL_SOURCE_IP:
+                ColumnEncoding.getDictionary(in, encoding, out.sourceIPs, count);
+                break;
+            case ColumnarCaptureWriter.COL_DESTINATION_IP:
+                ColumnEncoding.getDictionary(in, encoding, out.destinationIPs, count);
+                break;
+            case ColumnarCaptureWriter.COL_SOURCE_PORT:
+                ColumnEncoding.getFrameOfReference(in, out.sourcePorts, count);
+                break;
+            case ColumnarCaptureWriter.COL_DESTINATION_PORT:
+                ColumnEncoding.getFrameOfReference(in, out.destinationPorts, count);
+                break;
+            case ColumnarCaptureWriter.COL_PROTOCOL:
+                ColumnEncoding.getDictionary(in, encoding, out.protocols, count);
+                break;
+            case ColumnarCaptureWriter.COL_PACKET_LENGTH:
+                ColumnEncoding.getFrameOfReference(in, out.packetLengths, count);
+                break;
+            case ColumnarCaptureWriter.COL_DIRECTION:
+                ColumnEncoding.getDictionary(in, encoding, out.directions, count);
+                break;
+            case ColumnarCaptureWriter.COL_TCP_FLAGS:
+                if (encoding == ColumnEncoding.FLAG_MASK) {
+                    ColumnEncoding.getFlagMasks(in, out.tcpFlags, count);
+                } else {
+                    ColumnEncoding.getDictionary(in, encoding, out.tcpFlags, count);
+                }
+                break;
+            case ColumnarCaptureWriter.COL_APPLICATION:
+                ColumnEncoding.getDictionary(in, encoding, out.applications, count);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown column id " + column);
+        }
+    }
+
+    /**
+     * Decodes only the row groups whose time range overlaps [fromMillis, toMillis]
+     */
+    public PacketColumns readTimeRange(long fromMillis, long toMillis) throws IOException {
+        List<PacketColumns> parts = new ArrayList<>();
+        for (int i = 0; i < rowGroups.size(); i++) {
+            RowGroupStats stats = rowGroups.get(i);
+            if (stats.maxTimestamp >= fromMillis && stats.minTimestamp <= toMillis) {
+                PacketColumns group = readRowGroup(i);
+                PacketColumns matching = new PacketColumns(group.size());
+                for (int row = 0; row < group.size(); row++) {
+                    long timestamp = group.timestamps[row];
+                    if (timestamp >= fromMillis && timestamp <= toMillis) {
+                        matching.add(group.toPacketRecord(row));
+                    }
+                }
+                parts.add(stats.minTimestamp >= fromMillis && stats.maxTimestamp <= toMillis ? group : matching);
+            }
+        }
+        return PacketColumns.concat(parts);
+    }
+
+    /**
+     * Streams the capture record by record
+     */
+    @Override
+    public PacketRecord readNext() throws IOException {
+        while (currentGroup == null || nextRow == currentGroup.size()) {
+            if (nextRowGroup == rowGroups.size()) {
+                return null;
+            }
+            currentGroup = readRowGroup(nextRowGroup++);
+            nextRow = 0;
+        }
+        return currentGroup.toPacketRecord(nextRow++);
+    }
+
+    /**
+     * Writes the capture as a Power BI CSV (UTF-8 BOM + CsvExporter header), one row group at a time
+     * @param csvFilename Path of the CSV file to create
+     * @return Number of rows written
+     */
+    public long convertToCsv(String csvFilename) throws IOException {
+        long rows = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFilename),
+                                                                       StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write('\ufeff');
+            writer.write(CsvExporter.CSV_HEADER);
+            writer.write("\n");
+            for (int i = 0; i < rowGroups.size(); i++) {
+                PacketColumns group = readRowGroup(i);
+                for (int row = 0; row < group.size(); row++) {
+                    writer.write(CsvExporter.formatRecordForPowerBI(group.toPacketRecord(row)));
+                    writer.write("\n");
+                }
+                rows += group.size();
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Footer entry of one row group: position and per-column min/max statistics
+     */
+    public static class RowGroupStats {
+        final long offset;
+        final int rowCount;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        int minSourcePort = Integer.MAX_VALUE;
+        int maxSourcePort = Integer.MIN_VALUE;
+        int minDestinationPort = Integer.MAX_VALUE;
+        int maxDestinationPort = Integer.MIN_VALUE;
+        int minPacketLength = Integer.MAX_VALUE;
+        int maxPacketLength = Integer.MIN_VALUE;
+
+        RowGroupStats(long offset, int rowCount) {
+            this.offset = offset;
+            this.rowCount = rowCount;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(offset);
+            out.writeInt(rowCount);
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            out.writeInt(minSourcePort);
+            out.writeInt(maxSourcePort);
+            out.writeInt(minDestinationPort);
+            out.writeInt(maxDestinationPort);
+            out.writeInt(minPacketLength);
+            out.writeInt(maxPacketLength);
+        }
+
+        static RowGroupStats readFrom(ByteBuffer in) {
+            RowGroupStats stats = new RowGroupStats(in.getLong(), in.getInt());
+            stats.minTimestamp = in.getLong();
+            stats.maxTimestamp = in.getLong();
+            stats.minSourcePort = in.getInt();
+            stats.maxSourcePort = in.getInt();
+            stats.minDestinationPort = in.getInt();
+            stats.maxDestinationPort = in.getInt();
+            stats.minPacketLength = in.getInt();
+            stats.maxPacketLength = in.getInt();
+            return stats;
+        }
+
+        // Getters
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        public int getMinSourcePort() {
+            return minSourcePort;
+        }
+
+        public int getMaxSourcePort() {
+            return maxSourcePort;
+        }
+
+        public int getMinDestinationPort() {
+            return minDestinationPort;
+        }
+
+        public int getMaxDestinationPort() {
+            return maxDestinationPort;
+        }
+
+        public int getMinPacketLength() {
+            return minPacketLength;
+        }
+
+        public int getMaxPacketLength() {
+            return maxPacketLength;
+        }
+    }
+
+    /**
+     * Prints the row group statistics and converts the capture to a Power BI CSV
+     * Usage: ColumnarCaptureReader <capture.pcol> [csv name]
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: ColumnarCaptureReader <capture.pcol> [csv name]");
+            return;
+        }
+        String name = args.length > 1 ? args[1] : "captured_packets";
+        String csvFilename = CsvExporter.getOutputDirectory() + "/" + name + ".csv";
+
+        System.out.println("=== Columnar Capture ===");
+        try (ColumnarCaptureReader reader = new ColumnarCaptureReader(args[0])) {
+            java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            System.out.println("File: " + args[0]);
+            System.out.println("Rows: " + reader.getRowCount() + " in " + reader.getRowGroupCount() + " row group(s)");
+            for (int i = 0; i < reader.getRowGroupCount(); i++) {
+                RowGroupStats stats = reader.getRowGroupStats(i);
+                System.out.println("  Group " + i + ": " + stats.rowCount + " rows, " +
+                                 dateFormat.format(new java.util.Date(stats.minTimestamp)) + " .. " +
+                                 dateFormat.format(new java.util.Date(stats.maxTimestamp)) +
+                                 ", length " + stats.minPacketLength + ".." + stats.maxPacketLength);
+            }
+
+            if (!CsvExporter.createOutputDirectory()) {
+                return;
+            }
+            long start = System.nanoTime();
+            long rows = reader.convertToCsv(csvFilename);
+            System.out.println("\nConverted " + rows + " rows to " + csvFilename + " in " +
+                             (System.nanoTime() - start) / 1_000_000 + " ms (Power BI format)");
+        } catch (IOException e) {
+            System.err.println("Error reading columnar capture: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColumnarCaptureWriter.java
+ *
+ * Writes packet captures in a compact columnar binary format (.pcol) instead
+ * of CSV. Rows are buffered into row groups (64K rows by default); each row
+ * group stores every column separately with an encoding suited to it:
+ * - Timestamp                      delta + zigzag varint
+ * - Source/destination port,
+ *   packet length                  frame of reference + bit packing
+ * - TCP flags                      6-bit flag masks, bit-packed
+ * - IPs, protocol, direction,
+ *   application                    dictionary + bit-packed indices or run-length encoding
+ *
+ * File layout (big-endian):
+ *   "PCOL" version(1) reserved(3)
+ *   row group*: rowCount(4) then per column: id(1) encoding(1) length(4) payload
+ *   footer: rowGroupCount(4) then per row group: offset(8) rowCount(4)
+ *           min/max timestamp(8+8) min/max source port, destination port, length(4 each)
+ *   footerOffset(8) "PCOL"
+ *
+ * The footer statistics let ColumnarCaptureReader skip row groups (e.g. by
+ * time range) without decoding them. Use ColumnarCaptureReader to read the
+ * file back or convert it to the Power BI CSV format.
+ */
+public class ColumnarCaptureWriter implements PacketRecordListener, AutoCloseable {
+
+    static final byte[] MAGIC = {'P', 'C', 'O', 'L'};
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    // Column ids (CSV column order)
+    static final int COL_TIMESTAMP = 0;
+    static final int COL_SOURCE_IP = 1;
+    static final int COL_DESTINATION_IP = 2;
+    static final int COL_SOURCE_PORT = 3;
+    static final int COL_DESTINATION_PORT = 4;
+    static final int COL_PROTOCOL = 5;
+    static final int COL_PACKET_LENGTH = 6;
+    static final int COL_DIRECTION = 7;
+    static final int COL_TCP_FLAGS = 8;
+    static final int COL_APPLICATION = 9;
+    static final int COLUMN_COUNT = 10;
+
+    private final String filename;
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final PacketColumns buffer;
+    private final List<ColumnarCaptureReader.RowGroupStats> rowGroups = new ArrayList<>();
+    private long position;
+    private boolean closed = false;
+
+    // Statistics
+    private long rowsWritten = 0;
+
+    public ColumnarCaptureWriter(String filename) throws IOException {
+        this(filename, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Creates a columnar capture file (an existing file is replaced)
+     * @param filename Path of the .pcol file
+     * @param rowGroupSize Rows per row group
+     * @throws IOException if the file cannot be created
+     */
+    public ColumnarCaptureWriter(String filename, int rowGroupSize) throws IOException {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Invalid row group size: " + rowGroupSize);
+        }
+        this.filename = filename;
+        this.rowGroupSize = rowGroupSize;
+        this.buffer = new PacketColumns(rowGroupSize);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.write(new byte[3]);
+        position = HEADER_LENGTH;
+    }
+
+    /**
+     * Adds one record, writing a row group whenever the buffer is full
+     */
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        try {
+            write(record);
+        } catch (IOException e) {
+            System.err.println("Error writing columnar capture: " + e.getMessage());
+        }
+    }
+
+    public synchronized void write(PacketRecord record) throws IOException {
+        checkOpen();
+        buffer.add(record);
+        if (buffer.size() == rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    public synchronized void writeAll(List<PacketRecord> records) throws IOException {
+        for (PacketRecord record : records) {
+            write(record);
+        }
+    }
+
+    /**
+     * Appends all rows of a columnar batch (e.g. from ParallelCsvReader) without creating PacketRecords
+     */
+    public synchronized void writeColumns(PacketColumns columns) throws IOException {
+        checkOpen();
+        int row = 0;
+        while (row < columns.size()) {
+            int n = Math.min(columns.size() - row, rowGroupSize - buffer.size());
+            int at = buffer.size();
+            System.arraycopy(columns.timestamps, row, buffer.timestamps, at, n);
+            System.arraycopy(columns.sourceIPs, row, buffer.sourceIPs, at, n);
+            System.arraycopy(columns.destinationIPs, row, buffer.destinationIPs, at, n);
+            System.arraycopy(columns.sourcePorts, row, buffer.sourcePorts, at, n);
+            System.arraycopy(columns.destinationPorts, row, buffer.destinationPorts, at, n);
+            System.arraycopy(columns.protocols, row, buffer.protocols, at, n);
+            System.arraycopy(columns.packetLengths, row, buffer.packetLengths, at, n);
+            System.arraycopy(columns.directions, row, buffer.directions, at, n);
+            System.arraycopy(columns.tcpFlags, row, buffer.tcpFlags, at, n);
+            System.arraycopy(columns.applications, row, buffer.applications, at, n);
+            buffer.setSize(at + n);
+            row += n;
+            if (buffer.size() == rowGroupSize) {
+                writeRowGroup();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Columnar capture already closed: " + filename);
+        }
+    }
+
+    /**
+     * Encodes the buffered rows as one row group
+     */
+    private void writeRowGroup() throws IOException {
+        int count = buffer.size();
+        if (count == 0) {
+            return;
+        }
+        ColumnarCaptureReader.RowGroupStats stats = new ColumnarCaptureReader.RowGroupStats(position, count);
+        out.writeInt(count);
+        position += 4;
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(count * 4);
+
+        ColumnEncoding.putDeltaVarint(chunk, buffer.timestamps, count);
+        for (int i = 0; i < count; i++) {
+            stats.minTimestamp = Math.min(stats.minTimestamp, buffer.timestamps[i]);
+            stats.maxTimestamp = Math.max(stats.maxTimestamp, buffer.timestamps[i]);
+        }
+        writeColumn(COL_TIMESTAMP, ColumnEncoding.DELTA_VARINT, chunk);
+
+        writeColumn(COL_SOURCE_IP, ColumnEncoding.putDictionary(chunk, buffer.sourceIPs, count), chunk);
+        writeColumn(COL_DESTINATION_IP, ColumnEncoding.putDictionary(chunk, buffer.destinationIPs, count), chunk);
+
+        ColumnEncoding.putFrameOfReference(chunk, buffer.sourcePorts, count);
+        for (int i = 0; i < count; i++) {
+            stats.minSourcePort = Math.min(stats.minSourcePort, buffer.sourcePorts[i]);
+            stats.maxSourcePort = Math.max(stats.maxSourcePort, buffer.sourcePorts[i]);
+        }
+        writeColumn(COL_SOURCE_PORT, ColumnEncoding.FOR_BITPACKED, chunk);
+
+        ColumnEncoding.putFrameOfReference(chunk, buffer.destinationPorts, count);
+        for (int i = 0; i < count; i++) {
+            stats.minDestinationPort = Math.min(stats.minDestinationPort, buffer.destinationPorts[i]);
+            stats.maxDestinationPort = Math.max(stats.maxDestinationPort, buffer.destinationPorts[i]);
+        }
+        writeColumn(COL_DESTINATION_PORT, ColumnEncoding.FOR_BITPACKED, chunk);
+
+        writeColumn(COL_PROTOCOL, ColumnEncoding.putDictionary(chunk, buffer.protocols, count), chunk);
+
+        ColumnEncoding.putFrameOfReference(chunk, buffer.packetLengths, count);
+        for (int i = 0; i < count; i++) {
+            stats.minPacketLength = Math.min(stats.minPacketLength, buffer.packetLengths[i]);
+            stats.maxPacketLength = Math.max(stats.maxPacketLength, buffer.packetLengths[i]);
+        }
+        writeColumn(COL_PACKET_LENGTH, ColumnEncoding.FOR_BITPACKED, chunk);
+
+        writeColumn(COL_DIRECTION, ColumnEncoding.putDictionary(chunk, buffer.directions, count), chunk);
+
+        if (ColumnEncoding.putFlagMasks(chunk, buffer.tcpFlags, count)) {
+            writeColumn(COL_TCP_FLAGS, ColumnEncoding.FLAG_MASK, chunk);
+        } else {
+            chunk.reset();
+            writeColumn(COL_TCP_FLAGS, ColumnEncoding.putDictionary(chunk, buffer.tcpFlags, count), chunk);
+        }
+
+        writeColumn(COL_APPLICATION, ColumnEncoding.putDictionary(chunk, buffer.applications, count), chunk);
+
+        rowGroups.add(stats);
+        rowsWritten += count;
+        buffer.setSize(0);
+    }
+
+    private void writeColumn(int column, byte encoding, ByteArrayOutputStream chunk) throws IOException {
+        out.writeByte(column);
+        out.writeByte(encoding);
+        out.writeInt(chunk.size());
+        chunk.writeTo(out);
+        position += 6 + chunk.size();
+        chunk.reset();
+    }
+
+    /**
+     * Writes the remaining rows and the footer
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            writeRowGroup();
+            long footerOffset = position;
+            out.writeInt(rowGroups.size());
+            for (ColumnarCaptureReader.RowGroupStats stats : rowGroups) {
+                stats.writeTo(out);
+            }
+            out.writeLong(footerOffset);
+            out.write(MAGIC);
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    public synchronized long getRowsWritten() {
+        return rowsWritten + buffer.size();
+    }
+
+    /**
+     * Converts a CSV export to the columnar format
+     * Usage: ColumnarCaptureWriter <captured_packets.csv> [output.pcol]
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: ColumnarCaptureWriter <captured_packets.csv> [output.pcol]");
+            return;
+        }
+        String source = args[0];
+        String target = args.length > 1 ? args[1] : source.replaceAll("\\.csv(\\.gz)?$", "") + ".pcol";
+
+        System.out.println("=== CSV to Columnar Conversion ===");
+        try {
+            long start = System.nanoTime();
+            PacketColumns columns;
+            if (source.toLowerCase().endsWith(".gz")) {
+                List<PacketRecord> records = new ArrayList<>();
+                try (CsvPacketReader reader = new CsvPacketReader(source)) {
+                    PacketRecord record;
+                    while ((record = reader.readNext()) != null) {
+                        records.add(record);
+                    }
+                }
+                columns = PacketColumns.fromRecords(records);
+            } else {
+                columns = new ParallelCsvReader().readColumns(source);
+            }
+            long parsed = System.nanoTime();
+
+            try (ColumnarCaptureWriter writer = new ColumnarCaptureWriter(target)) {
+                writer.writeColumns(columns);
+            }
+            long written = System.nanoTime();
+
+            long csvBytes = new java.io.File(source).length();
+            long columnarBytes = new java.io.File(target).length();
+            System.out.println("Rows: " + columns.size());
+            System.out.println("CSV: " + source + " (" + csvBytes + " bytes, read in " + (parsed - start) / 1_000_000 + " ms)");
+            System.out.println("Columnar: " + target + " (" + columnarBytes + " bytes, written in " +
+                             (written - parsed) / 1_000_000 + " ms)");
+            System.out.println("Size ratio: " + String.format("%.1f", (double) csvBytes / Math.max(1, columnarBytes)) + ":1");
+        } catch (IOException e) {
+            System.err.println("Error converting to columnar format: " + e.getMessage());
+        }
+    }
+}
@@ -14,8 +14,30 @@ import java.util.Date;
 public class CsvExporter {
     
     private static final String OUTPUT_DIR = "output";
-    private static final String CSV_HEADER = "Timestamp,SourceIP,DestinationIP,SourcePort,DestinationPort,Protocol,PacketLength,Direction,TCPFlags,ApplicationGuess";
+    static final String CSV_HEADER = "Timestamp,SourceIP,DestinationIP,SourcePort,DestinationPort,Protocol,PacketLength,Direction,TCPFlags,ApplicationGuess";
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private static volatile CsvValidator inlineValidator = null;
+    private static volatile boolean writeIndexes = false;
+    
+    /**
+     * Enables validation of every line as it is written (null disables it).
+     * Each export then prints a validation summary for its file.
+     * @param validator The validator to check written lines with
+     */
+    public static void setInlineValidator(CsvValidator validator) {
+        inlineValidator = validator;
+    }
+    
+    /**
+     * Enables the time and host/port index sidecars (filename.csv.tidx, filename.csv.sidx)
+     * of full exports. They are off by default so that folder sources over output/ only see
+     * CSV files; TimeRangeIndex and SecondaryIndex build a missing sidecar on first use.
+     * Per-protocol and per-direction exports are never indexed.
+     * @param enabled true to write the sidecars with each export
+     */
+    public static void setWriteIndexes(boolean enabled) {
+        writeIndexes = enabled;
+    }
     
     /**
      * Exports a list of PacketRecord objects to a CSV file with Power BI compatibility
@@ -24,6 +46,13 @@ public class CsvExporter {
      * @return true if export was successful, false otherwise
      */
     public static boolean exportToCsv(List<PacketRecord> packetRecords, String filename) {
+        return writeCsv(packetRecords, filename, writeIndexes);
+    }
+    
+    /**
+     * Writes the CSV file of an export, with index sidecars if requested
+     */
+    private static boolean writeCsv(List<PacketRecord> packetRecords, String filename, boolean indexed) {
         if (packetRecords == null || packetRecords.isEmpty()) {
             System.out.println("No packet records to export.");
             return false;
@@ -35,19 +64,44 @@ public class CsvExporter {
         }
         
         String fullFilename = OUTPUT_DIR + "/" + filename + ".csv";
+        CsvValidator validator = inlineValidator;
+        if (validator != null) {
+            validator.reset();
+        }
         
+        long start = System.nanoTime();
+        CaptureEvents.CsvWriteEvent csvEvent = new CaptureEvents.CsvWriteEvent();
+        csvEvent.begin();
         try (FileWriter writer = new FileWriter(fullFilename, java.nio.charset.StandardCharsets.UTF_8)) {
             // Write CSV header
             writer.write(CSV_HEADER);
             writer.write("\n");
             
-            // Write each packet record
+            // Write each packet record, indexing row offsets by time if enabled
+            TimeRangeIndex index = indexed ? new TimeRangeIndex() : null;
+            SecondaryIndex secondaryIndex = indexed ? new SecondaryIndex() : null;
+            long offset = CSV_HEADER.length() + 1;
             for (PacketRecord record : packetRecords) {
-                writer.write(formatRecordForCsv(record));
+                String line = formatRecordForCsv(record);
+                if (validator != null) {
+                    validator.validateLine(line);
+                }
+                writer.write(line);
                 writer.write("\n");
+                if (indexed) {
+                    index.addRow(offset, record.getTimestamp().getTime());
+                    secondaryIndex.addRow(record);
+                }
+                offset += TimeRangeIndex.utf8Length(line) + 1;
+            }
+            if (indexed) {
+                saveIndexes(index, secondaryIndex, offset, fullFilename);
             }
+            CaptureMetrics.get().recordExport(start, packetRecords.size());
+            CaptureEvents.csvWritten(csvEvent, fullFilename, packetRecords.size(), offset);
             
             System.out.println("Successfully exported " + packetRecords.size() + " packet records to " + fullFilename);
+            printInlineValidation(validator);
             return true;
             
         } catch (IOException e) {
@@ -68,11 +122,25 @@ public class CsvExporter {
         return exportToCsv(packetRecords, filename);
     }
     
+    /**
+     * Writes the index sidecars (filename.tidx, filename.sidx) of an export; a failure only loses the index
+     */
+    private static void saveIndexes(TimeRangeIndex index, SecondaryIndex secondaryIndex, long fileLength, String filename) {
+        try {
+            index.finish(fileLength);
+            index.save(filename + TimeRangeIndex.SUFFIX);
+            secondaryIndex.finish(fileLength);
+            secondaryIndex.save(filename + SecondaryIndex.SUFFIX);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write indexes for " + filename + ": " + e.getMessage());
+        }
+    }
+    
     /**
      * Creates the output directory if it doesn't exist
      * @return true if directory exists or was created successfully, false otherwise
      */
-    private static boolean createOutputDirectory() {
+    static boolean createOutputDirectory() {
         try {
             java.io.File outputDir = new java.io.File(OUTPUT_DIR);
             if (!outputDir.exists()) {
@@ -165,6 +233,10 @@ public class CsvExporter {
         }
         
         String fullFilename = OUTPUT_DIR + "/" + filename + ".csv";
+        CsvValidator validator = inlineValidator;
+        if (validator != null) {
+            validator.reset();
+        }
         
         try (FileWriter writer = new FileWriter(fullFilename)) {
             // Write CSV header if requested
@@ -175,11 +247,16 @@ public class CsvExporter {
             
             // Write each packet record
             for (PacketRecord record : packetRecords) {
-                writer.write(formatRecordForCsv(record));
+                String line = formatRecordForCsv(record);
+                if (validator != null) {
+                    validator.validateLine(line);
+                }
+                writer.write(line);
                 writer.write("\n");
             }
             
             System.out.println("Successfully exported " + packetRecords.size() + " packet records to " + fullFilename);
+            printInlineValidation(validator);
             return true;
             
         } catch (IOException e) {
@@ -214,7 +291,7 @@ public class CsvExporter {
         String filename = "packet_capture_" + protocol.toLowerCase() + "_" + 
                          new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
         
-        return exportToCsv(filteredRecords, filename);
+        return writeCsv(filteredRecords, filename, false);
     }
     
     /**
@@ -242,7 +319,7 @@ public class CsvExporter {
         String filename = "packet_capture_" + direction.toLowerCase() + "_" + 
                          new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
         
-        return exportToCsv(filteredRecords, filename);
+        return writeCsv(filteredRecords, filename, false);
     }
     
     /**
@@ -263,7 +340,14 @@ public class CsvExporter {
         }
         
         String fullFilename = OUTPUT_DIR + "/" + filename + ".csv";
+        CsvValidator validator = inlineValidator;
+        if (validator != null) {
+            validator.reset();
+        }
         
+        long start = System.nanoTime();
+        CaptureEvents.CsvWriteEvent csvEvent = new CaptureEvents.CsvWriteEvent();
+        csvEvent.begin();
         try (FileWriter writer = new FileWriter(fullFilename, java.nio.charset.StandardCharsets.UTF_8)) {
             // Write UTF-8 BOM for better Power BI compatibility
             writer.write('\ufeff');
@@ -272,13 +356,32 @@ public class CsvExporter {
             writer.write(CSV_HEADER);
             writer.write("\n");
             
-            // Write each packet record with Power BI optimized formatting
+            // Write each packet record with Power BI optimized formatting, indexing row offsets by time if enabled
+            boolean indexed = writeIndexes;
+            TimeRangeIndex index = indexed ? new TimeRangeIndex() : null;
+            SecondaryIndex secondaryIndex = indexed ? new SecondaryIndex() : null;
+            long offset = 3 + CSV_HEADER.length() + 1;
             for (PacketRecord record : packetRecords) {
-                writer.write(formatRecordForPowerBI(record));
+                String line = formatRecordForPowerBI(record);
+                if (validator != null) {
+                    validator.validateLine(line);
+                }
+                writer.write(line);
                 writer.write("\n");
+                if (indexed) {
+                    index.addRow(offset, record.getTimestamp().getTime());
+                    secondaryIndex.addRow(record);
+                }
+                offset += TimeRangeIndex.utf8Length(line) + 1;
             }
+            if (indexed) {
+                saveIndexes(index, secondaryIndex, offset, fullFilename);
+            }
+            CaptureMetrics.get().recordExport(start, packetRecords.size());
+            CaptureEvents.csvWritten(csvEvent, fullFilename, packetRecords.size(), offset);
             
             System.out.println("Successfully exported " + packetRecords.size() + " packet records to " + fullFilename + " (Power BI optimized)");
+            printInlineValidation(validator);
             return true;
             
         } catch (IOException e) {
@@ -288,12 +391,81 @@ public class CsvExporter {
         }
     }
     
+    /**
+     * Exports packet records in the Power BI format as a gzip file (filename.csv.gz).
+     * Rows are compressed in 1 MB blocks on a worker pool (see BlockGzipOutputStream),
+     * so the calling thread only formats rows.
+     * @param packetRecords List of PacketRecord objects to export
+     * @param filename The name of the file (without extension)
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean exportToCsvGzip(List<PacketRecord> packetRecords, String filename) {
+        if (packetRecords == null || packetRecords.isEmpty()) {
+            System.out.println("No packet records to export.");
+            return false;
+        }
+        
+        // Ensure output directory exists
+        if (!createOutputDirectory()) {
+            return false;
+        }
+        
+        String fullFilename = OUTPUT_DIR + "/" + filename + ".csv.gz";
+        CsvValidator validator = inlineValidator;
+        if (validator != null) {
+            validator.reset();
+        }
+        
+        long start = System.nanoTime();
+        CaptureEvents.CsvWriteEvent csvEvent = new CaptureEvents.CsvWriteEvent();
+        csvEvent.begin();
+        BlockGzipOutputStream gzip;
+        try {
+            gzip = new BlockGzipOutputStream(new java.io.FileOutputStream(fullFilename));
+        } catch (IOException e) {
+            System.err.println("Error writing to CSV file: " + e.getMessage());
+            return false;
+        }
+        
+        try (java.io.Writer writer = new java.io.BufferedWriter(
+                new java.io.OutputStreamWriter(gzip, java.nio.charset.StandardCharsets.UTF_8), 1 << 16)) {
+            // Write UTF-8 BOM for better Power BI compatibility
+            writer.write('\ufeff');
+            
+            // Write CSV header
+            writer.write(CSV_HEADER);
+            writer.write("\n");
+            
+            // Write each packet record with Power BI optimized formatting
+            for (PacketRecord record : packetRecords) {
+                String line = formatRecordForPowerBI(record);
+                if (validator != null) {
+                    validator.validateLine(line);
+                }
+                writer.write(line);
+                writer.write("\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to CSV file: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+        // Recorded once the writer is closed, so the time includes the last compressed blocks
+        CaptureMetrics.get().recordExport(start, packetRecords.size());
+        CaptureEvents.csvWritten(csvEvent, fullFilename, packetRecords.size(), gzip.getCompressedBytes());
+        
+        System.out.println("Successfully exported " + packetRecords.size() + " packet records to " + fullFilename +
+                           " (" + String.format("%.1f", gzip.getCompressionRatio()) + ":1 compression)");
+        printInlineValidation(validator);
+        return true;
+    }
+    
     /**
      * Formats a PacketRecord object for Power BI CSV output
      * @param record The PacketRecord to format
      * @return Formatted CSV line optimized for Power BI
      */
-    private static String formatRecordForPowerBI(PacketRecord record) {
+    static String formatRecordForPowerBI(PacketRecord record) {
         StringBuilder csvLine = new StringBuilder();
         
         // Timestamp - Power BI friendly format
@@ -332,6 +504,21 @@ public class CsvExporter {
         return csvLine.toString();
     }
     
+    /**
+     * Prints the inline validation summary of the file just written
+     * @param validator The validator used for the export, or null
+     */
+    private static void printInlineValidation(CsvValidator validator) {
+        if (validator == null) {
+            return;
+        }
+        System.out.println("Inline validation: " + validator.getRowsChecked() + " rows checked, " +
+                           validator.getInvalidRows() + " invalid");
+        for (String issue : validator.getIssues()) {
+            System.out.println("   " + issue);
+        }
+    }
+    
     /**
      * Gets the output directory path
      * @return The output directory path
@@ -0,0 +1,164 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvPacketReader.java
+ *
+ * Reads packet records back from CSV files written by CsvExporter.
+ * Both the plain format (ports written as -1) and the Power BI format
+ * (UTF-8 BOM, empty ports) are accepted. The file is streamed line by line,
+ * so arbitrarily large exports can be read with constant memory. Files
+ * ending in .gz are decompressed on the fly (see BlockGzipInputStream).
+ */
+public class CsvPacketReader implements PacketRecordSource {
+
+    private static final int COLUMN_COUNT = 10;
+
+    private final BufferedReader reader;
+    private final String filename;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final List<String> fields = new ArrayList<>(COLUMN_COUNT);
+    private long lineNumber = 0;
+    private long skippedLines = 0;
+
+    /**
+     * Opens a CSV export for reading and skips the BOM and header row
+     * @param filename Path of the CSV file (optionally gzip-compressed, *.gz)
+     * @throws IOException if the file cannot be opened
+     */
+    public CsvPacketReader(String filename) throws IOException {
+        this.filename = filename;
+        java.io.InputStream input = new FileInputStream(filename);
+        if (filename.toLowerCase().endsWith(".gz")) {
+            input = new BlockGzipInputStream(input);
+        }
+        this.reader = new BufferedReader(new InputStreamReader(input, java.nio.charset.StandardCharsets.UTF_8));
+
+        // Skip optional BOM and the header row
+        reader.mark(1);
+        if (reader.read() != '\ufeff') {
+            reader.reset();
+        }
+        reader.mark(4096);
+        String firstLine = reader.readLine();
+        if (firstLine != null && firstLine.startsWith("Timestamp,")) {
+            lineNumber = 1;
+        } else {
+            reader.reset(); // Exported without header
+        }
+    }
+
+    /**
+     * Reads the next packet record, skipping lines that cannot be parsed
+     * @return The next record, or null at end of file
+     */
+    @Override
+    public PacketRecord readNext() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            PacketRecord record = parseLine(line);
+            if (record != null) {
+                return record;
+            }
+            skippedLines++;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a single CSV data line
+     * @param line The CSV line without line terminator
+     * @return The packet record, or null if the line is malformed
+     */
+    public PacketRecord parseLine(String line) {
+        splitCsvLine(line, fields);
+        if (fields.size() != COLUMN_COUNT) {
+            return null;
+        }
+
+        try {
+            PacketRecord record = new PacketRecord();
+            record.setTimestamp(dateFormat.parse(fields.get(0)));
+            record.setSourceIP(fields.get(1));
+            record.setDestinationIP(fields.get(2));
+            record.setSourcePort(parsePort(fields.get(3)));
+            record.setDestinationPort(parsePort(fields.get(4)));
+            record.setProtocol(fields.get(5));
+            record.setPacketLength(Integer.parseInt(fields.get(6).trim()));
+            record.setDirection(fields.get(7));
+            record.setTcpFlags(fields.get(8));
+            record.setApplicationGuess(fields.get(9));
+            return record;
+        } catch (ParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits a CSV line into unquoted field values (quotes doubled inside a field are unescaped)
+     */
+    static void splitCsvLine(String line, List<String> out) {
+        out.clear();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                out.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        out.add(field.toString());
+    }
+
+    /**
+     * Parses a port column; empty values (Power BI format) become -1
+     */
+    private static int parsePort(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? -1 : Integer.parseInt(trimmed);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,607 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CsvValidator.java
+ *
+ * Validates packet CSV files against the exporter's own schema
+ * (CsvExporter.CSV_HEADER) for Power BI compatibility. Replaces the old
+ * validate-csv.py script:
+ * - header and UTF-8 BOM check
+ * - per-row column count, timestamp, IP address, port and length checks
+ * - per-column error counts and the first N offending lines
+ * - protocol distribution, localhost packet count and rows/s
+ *
+ * Files are validated in one streaming pass: the file is memory-mapped in
+ * newline-aligned chunks (the same chunking as ParallelCsvReader) and the
+ * chunks are checked in parallel without building any PacketRecords.
+ * The same checks can run inline while CsvExporter writes, see
+ * CsvExporter.setInlineValidator.
+ */
+public class CsvValidator {
+
+    private static final String[] COLUMN_NAMES = CsvExporter.CSV_HEADER.split(",");
+    private static final int COLUMN_COUNT = COLUMN_NAMES.length;
+    private static final long DEFAULT_CHUNK_SIZE = 16L * 1024 * 1024;
+    private static final int DEFAULT_MAX_REPORTED = 10;
+
+    // Column positions in CSV_HEADER
+    private static final int TIMESTAMP = 0;
+    private static final int SOURCE_IP = 1;
+    private static final int DESTINATION_IP = 2;
+    private static final int SOURCE_PORT = 3;
+    private static final int DESTINATION_PORT = 4;
+    private static final int PROTOCOL = 5;
+    private static final int PACKET_LENGTH = 6;
+
+    private final int maxReportedIssues;
+
+    // Results
+    private boolean bomPresent;
+    private boolean headerValid;
+    private String headerFound = "";
+    private long rowsChecked;
+    private long invalidRows;
+    private long columnCountErrors;
+    private long localhostPackets;
+    private final long[] columnErrors = new long[COLUMN_COUNT];
+    private final List<String> issues = new ArrayList<>();
+    private final Map<String, Long> protocolCounts = new HashMap<>();
+    private long elapsedNanos;
+
+    // Inline validation state, reused for every line so checking a row allocates nothing
+    private final RowChecker inlineChecker = new RowChecker(new ParallelCsvReader.TimestampDecoder(),
+                                                            new ParallelCsvReader.ByteStringCache());
+    private final ChunkResult inlineResult = new ChunkResult();
+    private byte[] inlineBytes = new byte[256];
+    private ByteBuffer inlineBuffer = ByteBuffer.wrap(inlineBytes);
+    private long inlineLineNumber = 1; // Line 1 is the header
+
+    public CsvValidator() {
+        this(DEFAULT_MAX_REPORTED);
+    }
+
+    /**
+     * @param maxReportedIssues How many offending lines to keep for the report
+     */
+    public CsvValidator(int maxReportedIssues) {
+        this.maxReportedIssues = maxReportedIssues;
+    }
+
+    /**
+     * Clears all results (called by CsvExporter before each inline-validated export)
+     */
+    public synchronized void reset() {
+        bomPresent = false;
+        headerValid = false;
+        headerFound = "";
+        rowsChecked = 0;
+        invalidRows = 0;
+        columnCountErrors = 0;
+        localhostPackets = 0;
+        java.util.Arrays.fill(columnErrors, 0);
+        issues.clear();
+        protocolCounts.clear();
+        elapsedNanos = 0;
+        inlineLineNumber = 1;
+    }
+
+    /**
+     * Validates a whole CSV file in a parallel streaming pass
+     * @param filename Path of the CSV file
+     * @return true if the header matches and no row has issues
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized boolean validateFile(String filename) throws IOException {
+        reset();
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            checkHeader(channel);
+            long dataStart = ParallelCsvReader.findDataStart(channel);
+            boolean headerSkipped = dataStart > (bomPresent ? 3 : 0);
+
+            List<ChunkValidator> tasks = new ArrayList<>();
+            for (long[] chunk : ParallelCsvReader.splitIntoChunks(channel, dataStart, channel.size(), DEFAULT_CHUNK_SIZE)) {
+                tasks.add(new ChunkValidator(channel, chunk[0], chunk[1], maxReportedIssues));
+            }
+            ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+
+            // Chunks report chunk-relative line numbers; convert them in file order
+            long lineOffset = headerSkipped ? 1 : 0;
+            for (ChunkValidator task : tasks) {
+                mergeChunk(task.join(), lineOffset);
+                lineOffset += task.lines;
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return isValid();
+    }
+
+    /**
+     * Validates one data line as it is written (used by CsvExporter's inline validation)
+     * @param line A formatted CSV line without line terminator
+     * @return true if the line is valid
+     */
+    public synchronized boolean validateLine(String line) {
+        long start = System.nanoTime();
+        headerValid = true; // The exporter always writes CSV_HEADER
+        inlineLineNumber++;
+        int length = encodeInline(line);
+        inlineResult.clear();
+        inlineChecker.check(inlineBuffer, 0, length, 1, inlineResult, maxReportedIssues);
+        mergeChunk(inlineResult, inlineLineNumber - 1);
+        elapsedNanos += System.nanoTime() - start;
+        return inlineResult.invalidRows == 0;
+    }
+
+    /**
+     * Copies the UTF-8 bytes of a line into the reused inline buffer
+     * @return Number of bytes
+     */
+    private int encodeInline(String line) {
+        int length = line.length();
+        ensureInlineCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                // Non-ASCII text (rare in packet rows): encode the whole line
+                byte[] bytes = line.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                ensureInlineCapacity(bytes.length);
+                System.arraycopy(bytes, 0, inlineBytes, 0, bytes.length);
+                return bytes.length;
+            }
+            inlineBytes[i] = (byte) c;
+        }
+        return length;
+    }
+
+    private void ensureInlineCapacity(int length) {
+        if (length > inlineBytes.length) {
+            inlineBytes = new byte[Math.max(length, 2 * inlineBytes.length)];
+            inlineBuffer = ByteBuffer.wrap(inlineBytes);
+        }
+    }
+
+    private void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(4096, channel.size()));
+        channel.read(head, 0);
+        head.flip();
+        byte[] bytes = new byte[head.remaining()];
+        head.get(bytes);
+        String text = new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+
+        bomPresent = text.startsWith("\ufeff");
+        if (bomPresent) {
+            text = text.substring(1);
+        }
+        int newline = text.indexOf('\n');
+        headerFound = (newline >= 0 ? text.substring(0, newline) : text).replace("\r", "");
+        headerValid = headerFound.equals(CsvExporter.CSV_HEADER);
+    }
+
+    private void mergeChunk(ChunkResult result, long lineOffset) {
+        rowsChecked += result.rows;
+        invalidRows += result.invalidRows;
+        columnCountErrors += result.columnCountErrors;
+        localhostPackets += result.localhostPackets;
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            columnErrors[i] += result.columnErrors[i];
+        }
+        for (int i = 0; i < result.issueLines.size() && issues.size() < maxReportedIssues; i++) {
+            issues.add("Row " + (lineOffset + result.issueLines.get(i)) + ": " + result.issueMessages.get(i));
+        }
+        result.protocolCounts.forEach((protocol, count) -> protocolCounts.merge(protocol, count, Long::sum));
+    }
+
+    // Result getters
+    public boolean isValid() {
+        return headerValid && invalidRows == 0;
+    }
+
+    public boolean isHeaderValid() {
+        return headerValid;
+    }
+
+    public long getRowsChecked() {
+        return rowsChecked;
+    }
+
+    public long getInvalidRows() {
+        return invalidRows;
+    }
+
+    public long getColumnErrors(int column) {
+        return columnErrors[column];
+    }
+
+    public List<String> getIssues() {
+        return new ArrayList<>(issues);
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsChecked / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Prints the validation report to the console
+     */
+    public synchronized void printReport() {
+        System.out.println(bomPresent ? "\u2713 UTF-8 BOM detected (Power BI compatible)"
+                                      : "\u2717 No UTF-8 BOM detected (may cause encoding issues)");
+        if (headerValid) {
+            System.out.println("\u2713 Header matches expected Power BI format");
+        } else {
+            System.out.println("\u2717 Header does not match expected format");
+            System.out.println("   Expected: " + CsvExporter.CSV_HEADER);
+            System.out.println("   Found:    " + headerFound);
+        }
+
+        System.out.println("\u2713 Data validation complete");
+        System.out.println("   Total rows: " + rowsChecked);
+        System.out.println("   Valid rows: " + (rowsChecked - invalidRows));
+        System.out.println("   Invalid rows: " + invalidRows);
+        System.out.println("   Throughput: " + String.format("%.0f rows/s", getRowsPerSecond()));
+
+        if (invalidRows > 0) {
+            System.out.println("\nErrors by column:");
+            if (columnCountErrors > 0) {
+                System.out.println("   (column count mismatch): " + columnCountErrors);
+            }
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                if (columnErrors[i] > 0) {
+                    System.out.println("   " + COLUMN_NAMES[i] + ": " + columnErrors[i]);
+                }
+            }
+            System.out.println("\n\u2717 Issues found (first " + issues.size() + "):");
+            for (String issue : issues) {
+                System.out.println("   " + issue);
+            }
+        } else {
+            System.out.println("\u2713 No data validation issues found");
+        }
+
+        System.out.println("\n=== Power BI Compatibility Check ===");
+        System.out.println("\u2713 Localhost traffic detected: " + localhostPackets + " packets");
+        System.out.println("\u2713 Protocol distribution:");
+        protocolCounts.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> System.out.println("   " + entry.getKey() + ": " + entry.getValue()));
+    }
+
+    /**
+     * Per-chunk (or per-line) validation results
+     */
+    private static class ChunkResult {
+        long rows;
+        long invalidRows;
+        long columnCountErrors;
+        long localhostPackets;
+        final long[] columnErrors = new long[COLUMN_COUNT];
+        final List<Long> issueLines = new ArrayList<>();
+        final List<String> issueMessages = new ArrayList<>();
+        final Map<String, Long> protocolCounts = new HashMap<>();
+
+        /**
+         * Empties the result for reuse (inline validation checks every line into the same result)
+         */
+        void clear() {
+            rows = 0;
+            invalidRows = 0;
+            columnCountErrors = 0;
+            localhostPackets = 0;
+            java.util.Arrays.fill(columnErrors, 0);
+            issueLines.clear();
+            issueMessages.clear();
+            protocolCounts.clear();
+        }
+    }
+
+    /**
+     * Validates one newline-aligned chunk of the mapped file
+     */
+    private static class ChunkValidator extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int maxIssues;
+        long lines;
+
+        ChunkValidator(FileChannel channel, long start, long end, int maxIssues) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.maxIssues = maxIssues;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            ChunkResult result = new ChunkResult();
+            RowChecker checker = new RowChecker(new ParallelCsvReader.TimestampDecoder(),
+                                                new ParallelCsvReader.ByteStringCache());
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                int limit = buffer.limit();
+                int pos = 0;
+                while (pos < limit) {
+                    int lineEnd = pos;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    lines++;
+                    int contentEnd = lineEnd;
+                    if (contentEnd > pos && buffer.get(contentEnd - 1) == '\r') {
+                        contentEnd--;
+                    }
+                    if (contentEnd > pos) {
+                        checker.check(buffer, pos, contentEnd, lines, result, maxIssues);
+                    }
+                    pos = lineEnd + 1;
+                }
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Checks single rows held in a byte buffer
+     */
+    private static class RowChecker {
+        private final ParallelCsvReader.TimestampDecoder timestamps;
+        private final ParallelCsvReader.ByteStringCache strings;
+        private final int[] fieldStarts = new int[COLUMN_COUNT];
+        private final int[] fieldEnds = new int[COLUMN_COUNT];
+
+        RowChecker(ParallelCsvReader.TimestampDecoder timestamps, ParallelCsvReader.ByteStringCache strings) {
+            this.timestamps = timestamps;
+            this.strings = strings;
+        }
+
+        void check(ByteBuffer buffer, int lineStart, int lineEnd, long lineNumber, ChunkResult result, int maxIssues) {
+            result.rows++;
+            int fields = splitFields(buffer, lineStart, lineEnd);
+            if (fields != COLUMN_COUNT) {
+                result.invalidRows++;
+                result.columnCountErrors++;
+                addIssue(result, lineNumber, "Column count mismatch (" + Math.abs(fields) + " vs " + COLUMN_COUNT + ")",
+                         maxIssues);
+                return;
+            }
+
+            String firstIssue = null;
+            if (timestamps.decode(buffer, fieldStarts[TIMESTAMP], fieldEnds[TIMESTAMP]) == Long.MIN_VALUE) {
+                firstIssue = columnError(result, TIMESTAMP, "Invalid timestamp format", buffer, firstIssue);
+            }
+            if (!isValidAddress(buffer, fieldStarts[SOURCE_IP], fieldEnds[SOURCE_IP])) {
+                firstIssue = columnError(result, SOURCE_IP, "Invalid source IP", buffer, firstIssue);
+            }
+            if (!isValidAddress(buffer, fieldStarts[DESTINATION_IP], fieldEnds[DESTINATION_IP])) {
+                firstIssue = columnError(result, DESTINATION_IP, "Invalid destination IP", buffer, firstIssue);
+            }
+            if (!isValidPort(buffer, fieldStarts[SOURCE_PORT], fieldEnds[SOURCE_PORT])) {
+                firstIssue = columnError(result, SOURCE_PORT, "Invalid source port", buffer, firstIssue);
+            }
+            if (!isValidPort(buffer, fieldStarts[DESTINATION_PORT], fieldEnds[DESTINATION_PORT])) {
+                firstIssue = columnError(result, DESTINATION_PORT, "Invalid destination port", buffer, firstIssue);
+            }
+            if (ParallelCsvReader.parseInt(buffer, fieldStarts[PACKET_LENGTH], fieldEnds[PACKET_LENGTH], -1) < 0) {
+                firstIssue = columnError(result, PACKET_LENGTH, "Invalid packet length", buffer, firstIssue);
+            }
+
+            if (firstIssue != null) {
+                result.invalidRows++;
+                addIssue(result, lineNumber, firstIssue, maxIssues);
+            }
+
+            String protocol = strings.get(buffer, fieldStarts[PROTOCOL], fieldEnds[PROTOCOL]);
+            result.protocolCounts.merge(protocol, 1L, Long::sum);
+            if (isLocalhost(buffer, fieldStarts[SOURCE_IP], fieldEnds[SOURCE_IP]) ||
+                isLocalhost(buffer, fieldStarts[DESTINATION_IP], fieldEnds[DESTINATION_IP])) {
+                result.localhostPackets++;
+            }
+        }
+
+        private String columnError(ChunkResult result, int column, String message, ByteBuffer buffer, String firstIssue) {
+            result.columnErrors[column]++;
+            if (firstIssue != null) {
+                return firstIssue;
+            }
+            byte[] value = new byte[fieldEnds[column] - fieldStarts[column]];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = buffer.get(fieldStarts[column] + i);
+            }
+            return message + ": " + new String(value, java.nio.charset.StandardCharsets.UTF_8);
+        }
+
+        private static void addIssue(ChunkResult result, long lineNumber, String message, int maxIssues) {
+            if (result.issueLines.size() < maxIssues) {
+                result.issueLines.add(lineNumber);
+                result.issueMessages.add(message);
+            }
+        }
+
+        /**
+         * Records the (unquoted) bounds of each field
+         * @return Number of fields, or the negated count if the line is malformed
+         */
+        private int splitFields(ByteBuffer buffer, int lineStart, int lineEnd) {
+            int count = 0;
+            int pos = lineStart;
+            while (true) {
+                int start;
+                int end;
+                if (pos < lineEnd && buffer.get(pos) == '"') {
+                    int i = pos + 1;
+                    while (i < lineEnd && !(buffer.get(i) == '"' && (i + 1 >= lineEnd || buffer.get(i + 1) != '"'))) {
+                        i += buffer.get(i) == '"' ? 2 : 1;
+                    }
+                    if (i >= lineEnd) {
+                        return -(count + 1); // Unterminated quote
+                    }
+                    start = pos + 1;
+                    end = i;
+                    pos = i + 1;
+                    if (pos < lineEnd && buffer.get(pos) != ',') {
+                        return -(count + 1);
+                    }
+                } else {
+                    int i = pos;
+                    while (i < lineEnd && buffer.get(i) != ',') {
+                        i++;
+                    }
+                    start = pos;
+                    end = i;
+                    pos = i;
+                }
+                if (count < COLUMN_COUNT) {
+                    fieldStarts[count] = start;
+                    fieldEnds[count] = end;
+                }
+                count++;
+                if (pos >= lineEnd) {
+                    return count;
+                }
+                pos++; // Skip the comma
+            }
+        }
+    }
+
+    /**
+     * Accepts dotted IPv4, IPv6 literals, "Unknown" and empty values
+     */
+    static boolean isValidAddress(ByteBuffer buffer, int from, int to) {
+        if (from == to || matches(buffer, from, to, "Unknown")) {
+            return true;
+        }
+        boolean hasColon = false;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == ':') {
+                hasColon = true;
+                break;
+            }
+        }
+        return hasColon ? isValidIPv6(buffer, from, to) : isValidIPv4(buffer, from, to);
+    }
+
+    private static boolean isValidIPv4(ByteBuffer buffer, int from, int to) {
+        int parts = 0;
+        int value = -1;
+        int digits = 0;
+        for (int i = from; i <= to; i++) {
+            byte b = i < to ? buffer.get(i) : (byte) '.';
+            if (b == '.') {
+                if (digits == 0 || value > 255) {
+                    return false;
+                }
+                parts++;
+                value = -1;
+                digits = 0;
+            } else if (b >= '0' && b <= '9' && digits < 3) {
+                value = (value < 0 ? 0 : value * 10) + (b - '0');
+                digits++;
+            } else {
+                return false;
+            }
+        }
+        return parts == 4;
+    }
+
+    private static boolean isValidIPv6(ByteBuffer buffer, int from, int to) {
+        if (to - from > 45) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            boolean hex = (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+            if (!hex && b != ':' && b != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ports may be empty (Power BI format), -1 (plain format) or 0-65535
+     */
+    private static boolean isValidPort(ByteBuffer buffer, int from, int to) {
+        int port = ParallelCsvReader.parseInt(buffer, from, to, -1);
+        return port >= -1 && port <= 65535;
+    }
+
+    private static boolean isLocalhost(ByteBuffer buffer, int from, int to) {
+        return matches(buffer, from, to, "127.0.0.1") || matches(buffer, from, to, "localhost");
+    }
+
+    private static boolean matches(ByteBuffer buffer, int from, int to, String text) {
+        if (to - from != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(from + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== Power BI CSV Validation Tool ===");
+        System.out.println("Validating generated CSV file for Power BI compatibility\n");
+
+        String csvFile = args.length > 0 ? args[0] : CsvExporter.getOutputDirectory() + "/captured_packets.csv";
+        int maxIssues = DEFAULT_MAX_REPORTED;
+        if (args.length > 1) {
+            try {
+                maxIssues = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid issue limit: " + args[1]);
+            }
+        }
+
+        if (!new java.io.File(csvFile).exists()) {
+            System.out.println("\u2717 ERROR: File not found: " + csvFile);
+            System.exit(1);
+        }
+
+        System.out.println("=== Validating CSV File: " + csvFile + " ===");
+        CsvValidator validator = new CsvValidator(maxIssues);
+        boolean valid;
+        try {
+            valid = validator.validateFile(csvFile);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("\u2717 ERROR reading file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        validator.printReport();
+
+        if (valid) {
+            System.out.println("\n\u2713 SUCCESS: CSV file is Power BI compatible!");
+            System.out.println("You can now import this file into Power BI for visualization.");
+        } else {
+            System.out.println("\n\u2717 FAILURE: CSV file has compatibility issues.");
+            System.out.println("Please check the issues above and regenerate the file.");
+        }
+        System.out.println("\nFile location: " + new java.io.File(csvFile).getAbsolutePath());
+        System.exit(valid ? 0 : 2);
+    }
+}
@@ -37,6 +37,12 @@ public class ExperimentalSetup {
     private static long experimentDurationMs;
     private static List<PacketRecord> capturedPackets = new ArrayList<>();
     private static String experimentId;
+    private static List<LoopbackMeasurement> activeMeasurements = new ArrayList<>();
+    private static List<ProbeTarget> probeResults = new ArrayList<>();
+    private static JdbcSink databaseSink = null; // Set with --jdbc <url>
+    private static String flightRecording = null; // JFR file of the experiment, next to its log
+    private static ProcessingCostTracker costTracker = null; // Per-stage processing cost of the run
+    private static CsvValidator csvValidator = new CsvValidator(); // Checks the exported lines as they are written
     
     // Summary statistics
     private static int totalPacketsCaptured;
@@ -64,6 +70,18 @@ public class ExperimentalSetup {
         // Simulate packet capture (replace with actual capture in real scenario)
         simulatePacketCapture();
         
+        // Optionally drive real loopback traffic alongside the passive results
+        if (java.util.Arrays.asList(args).contains("--active")) {
+            runActiveMeasurements();
+        }
+        if (java.util.Arrays.asList(args).contains("--probe")) {
+            runLatencyProbes();
+        }
+        int jdbcOption = java.util.Arrays.asList(args).indexOf("--jdbc");
+        if (jdbcOption >= 0 && jdbcOption + 1 < args.length) {
+            loadIntoDatabase(args[jdbcOption + 1]);
+        }
+        
         // End experiment
         endExperiment();
         
@@ -77,6 +95,15 @@ public class ExperimentalSetup {
         System.out.println("Experiment ID: " + experimentId);
         System.out.println("Log file: " + LOG_DIR + "/experiment_" + experimentId + ".log");
         System.out.println("CSV file: output/captured_packets.csv");
+        if (!activeMeasurements.isEmpty()) {
+            System.out.println("Loopback results: output/loopback_measurements.csv");
+        }
+        if (!probeResults.isEmpty()) {
+            System.out.println("Probe results: output/probe_results.csv");
+        }
+        if (flightRecording != null) {
+            System.out.println("Flight recording: " + flightRecording);
+        }
     }
     
     /**
@@ -166,9 +193,13 @@ public class ExperimentalSetup {
      */
     private static void startExperiment() {
         experimentStartTime = new Date();
+        costTracker = new ProcessingCostTracker();
         System.out.println("=== EXPERIMENT STARTED ===");
         System.out.println("Start Time: " + LOG_DATE_FORMAT.format(experimentStartTime));
         System.out.println("Experiment ID: " + experimentId);
+        if (CaptureEvents.startRecording(LOG_DIR + "/experiment_" + experimentId + ".jfr")) {
+            System.out.println("Flight recording: " + LOG_DIR + "/experiment_" + experimentId + ".jfr");
+        }
         System.out.println();
     }
     
@@ -183,7 +214,10 @@ public class ExperimentalSetup {
         generateSimulatedPackets();
         
         // Update statistics
+        ProcessingCostTracker.Stage statistics = costTracker.stage("statistics");
+        statistics.begin();
         updateStatistics();
+        statistics.end(capturedPackets.size());
         
         System.out.println("Packet capture simulation complete.");
         System.out.println("Total packets captured: " + totalPacketsCaptured);
@@ -256,7 +290,15 @@ public class ExperimentalSetup {
         }
         
         // Export to CSV
-        CsvExporter.exportToCsvForPowerBI(capturedPackets, "captured_packets");
+        ProcessingCostTracker.Stage export = costTracker.batchStage("csv_export");
+        export.begin();
+        CsvExporter.setInlineValidator(csvValidator);
+        try {
+            CsvExporter.exportToCsvForPowerBI(capturedPackets, "captured_packets");
+        } finally {
+            CsvExporter.setInlineValidator(null);
+        }
+        export.end(capturedPackets.size());
     }
     
     /**
@@ -266,6 +308,9 @@ public class ExperimentalSetup {
                                                     int sourcePort, int destPort, 
                                                     String protocol, String direction, 
                                                     String application, Random random) {
+        // Building and enriching the record is the per-packet work a capture does for each packet
+        ProcessingCostTracker.Stage recordStage = costTracker.stage("record");
+        recordStage.begin();
         PacketRecord packet = new PacketRecord();
         
         // Set timestamp (spread over last 2 minutes)
@@ -285,15 +330,61 @@ public class ExperimentalSetup {
         int baseLength = protocol.equals("TCP") ? 64 : 32;
         packet.setPacketLength(baseLength + random.nextInt(1000));
         
+        recordStage.end(1);
         return packet;
     }
     
+    /**
+     * Runs the active loopback measurement suite (enabled with --active)
+     */
+    private static void runActiveMeasurements() {
+        System.out.println("=== ACTIVE LOOPBACK MEASUREMENTS ===");
+        activeMeasurements = LoopbackTrafficGenerator.runDefaultSuite(512, 4, 0, 3);
+        LoopbackTrafficGenerator.printResults(activeMeasurements);
+        LoopbackTrafficGenerator.exportResults(activeMeasurements);
+        System.out.println();
+    }
+    
+    /**
+     * Runs scheduled TCP-connect and UDP-echo probes against a local echo server (enabled with --probe)
+     */
+    private static void runLatencyProbes() {
+        System.out.println("=== ACTIVE LATENCY PROBES ===");
+        probeResults = LatencyProber.runLocalProbes(5, 200, 1000);
+        LatencyProber.printResults(probeResults);
+        LatencyProber.exportResults(probeResults);
+        System.out.println();
+    }
+    
+    /**
+     * Loads the captured packets, their flows and rollups into a database (enabled with --jdbc <url>)
+     */
+    private static void loadIntoDatabase(String url) {
+        System.out.println("=== DATABASE LOAD ===");
+        try {
+            JdbcSink sink = new JdbcSink(url);
+            try {
+                for (PacketRecord packet : capturedPackets) {
+                    sink.recordArrived(packet);
+                }
+            } finally {
+                sink.close();
+            }
+            databaseSink = sink;
+            sink.printSummary();
+        } catch (java.sql.SQLException e) {
+            System.err.println("Error loading packets into database: " + e.getMessage());
+        }
+        System.out.println();
+    }
+    
     /**
      * Ends the experiment and logs end time
      */
     private static void endExperiment() {
         experimentEndTime = new Date();
         experimentDurationMs = experimentEndTime.getTime() - experimentStartTime.getTime();
+        flightRecording = CaptureEvents.stopRecording();
         
         System.out.println("=== EXPERIMENT ENDED ===");
         System.out.println("End Time: " + LOG_DATE_FORMAT.format(experimentEndTime));
@@ -374,6 +465,16 @@ public class ExperimentalSetup {
         System.out.println("  Packets per Second: " + String.format("%.2f", packetsPerSecond));
         System.out.println("  Average Packet Size: " + String.format("%.2f", 
             capturedPackets.stream().mapToInt(PacketRecord::getPacketLength).average().orElse(0)) + " bytes");
+        System.out.println("  Sustainable Packets per Second (est.): " +
+                         String.format("%.0f", costTracker.getSustainablePacketsPerSecond()) +
+                         " (CPU " + String.format("%.0f", costTracker.getCpuNanosPerPacket()) + " ns/packet in " +
+                         costTracker.describePerPacketStages() + "; the CSV export is a batch stage and not included)");
+        System.out.println("  CSV Validation: " + csvValidator.getRowsChecked() + " rows checked, " +
+                         csvValidator.getInvalidRows() + " invalid");
+        if (databaseSink != null) {
+            System.out.println("  Database Rows Inserted: " + databaseSink.getRowsWritten());
+            System.out.println("  Database Rows per Second: " + String.format("%.0f", databaseSink.getRowsPerSecond()));
+        }
         
         System.out.println();
     }
@@ -429,13 +530,23 @@ public class ExperimentalSetup {
             writer.write("=== EXPERIMENT DETAILS ===\n");
             writer.write("Start Time: " + LOG_DATE_FORMAT.format(experimentStartTime) + "\n");
             writer.write("End Time: " + LOG_DATE_FORMAT.format(experimentEndTime) + "\n");
-            writer.write("Duration: " + formatDuration(experimentDurationMs) + "\n\n");
+            writer.write("Duration: " + formatDuration(experimentDurationMs) + "\n");
+            if (flightRecording != null) {
+                writer.write("Flight Recording: " + flightRecording + "\n");
+            }
+            writer.write("\n");
             
             // Summary statistics
             writer.write("=== SUMMARY STATISTICS ===\n");
             writer.write("Total Packets: " + totalPacketsCaptured + "\n");
             writer.write("Unique Source IPs: " + uniqueSourceIPs.size() + "\n");
-            writer.write("Unique Destination IPs: " + uniqueDestinationIPs.size() + "\n\n");
+            writer.write("Unique Destination IPs: " + uniqueDestinationIPs.size() + "\n");
+            writer.write("CSV Validation: " + csvValidator.getRowsChecked() + " rows checked, " +
+                       csvValidator.getInvalidRows() + " invalid\n");
+            for (String issue : csvValidator.getIssues()) {
+                writer.write("  " + issue + "\n");
+            }
+            writer.write("\n");
             
             // Protocol distribution
             writer.write("Protocol Distribution:\n");
@@ -445,6 +556,35 @@ public class ExperimentalSetup {
                            " (" + String.format("%.1f", percentage) + "%)\n");
             }
             
+            // Active loopback measurements
+            if (!activeMeasurements.isEmpty()) {
+                writer.write("\n=== ACTIVE LOOPBACK MEASUREMENTS ===\n");
+                for (LoopbackMeasurement measurement : activeMeasurements) {
+                    writer.write("  " + measurement.toCompactString() + "\n");
+                }
+            }
+            
+            // Active latency probes
+            if (!probeResults.isEmpty()) {
+                writer.write("\n=== ACTIVE LATENCY PROBES ===\n");
+                for (ProbeTarget target : probeResults) {
+                    writer.write("  " + target.toCompactString() + "\n");
+                }
+            }
+            
+            // Processing cost and headroom
+            writer.write("\n=== PROCESSING COST ===\n");
+            costTracker.writeReport(writer, (double) totalPacketsCaptured / (experimentDurationMs / 1000.0));
+            
+            // Database load
+            if (databaseSink != null) {
+                writer.write("\n=== DATABASE LOAD ===\n");
+                writer.write("Database: " + databaseSink.getUrl() + "\n");
+                writer.write("Rows Inserted: " + databaseSink.getPacketRows() + " packets, " +
+                           databaseSink.getFlowRows() + " flows, " + databaseSink.getRollupRows() + " rollups\n");
+                writer.write("Rows per Second: " + String.format("%.0f", databaseSink.getRowsPerSecond()) + "\n");
+            }
+            
             writer.write("\nExperiment log saved to: " + logFilename + "\n");
             
         } catch (IOException e) {
@@ -0,0 +1,532 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * FlightRecorderBuffer.java
+ *
+ * An always-on "flight recorder" for captures that cannot be written to disk
+ * continuously. Every record is written into a fixed-size slot of a
+ * memory-mapped circular file (output/flight_recorder.ring), overwriting the
+ * oldest packet once the ring is full, so disk usage and per-packet cost stay
+ * constant however long the capture runs.
+ *
+ * A dump marks the newest packet of the current window; a background thread
+ * then copies the window out of the ring and writes it, oldest packet first, to
+ *   output/flight_<yyyyMMdd_HHmmss>_<reason>.prec   (PacketRecordCodec file)
+ *   output/flight_<yyyyMMdd_HHmmss>_<reason>.csv    (Power BI CSV)
+ * Dumps are triggered by:
+ * - threshold rules: N matching packets within a time window (see addThresholdTrigger)
+ * - a control command: creating output/flight_recorder.trigger,
+ *   e.g. with "java -cp classes FlightRecorderBuffer --trigger"
+ *
+ * The capture thread never copies the ring: a trigger only records the
+ * newest sequence number. The dump thread copies the ring and checks every
+ * slot's sequence (cleared before a slot is rewritten and set again last),
+ * so a slot the capture overwrote before or during the copy is skipped
+ * rather than torn; the dump reports how many were lost that way.
+ *
+ * The ring survives a crash of the capturing process; running
+ * "java -cp classes FlightRecorderBuffer output/flight_recorder.ring" dumps it.
+ *
+ * Ring layout (big-endian): "PFLR" version(2) slotSize(2) slotCount(4) created(8), padded to 64 bytes,
+ * then slotCount slots of: sequence+1(8, 0 = empty, written last) timestamp(8) source port(4)
+ * destination port(4) packet length(4) and source IP, destination IP, protocol, direction,
+ * TCP flags, application as length(1) + UTF-8 bytes (truncated to fit the slot).
+ */
+public class FlightRecorderBuffer implements PacketRecordListener, AutoCloseable {
+
+    private static final byte[] MAGIC = {'P', 'F', 'L', 'R'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 64;
+    private static final int SLOT_SIZE = 192;
+    private static final int FIXED_FIELDS_LENGTH = 28;
+    private static final String TRIGGER_FILE = "flight_recorder.trigger";
+
+    public static final long DEFAULT_RING_BYTES = 64L * 1024 * 1024;
+
+    private final String filename;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer ring;
+    private final int slotCount;
+    private final List<ThresholdTrigger> triggers = new ArrayList<>();
+    private final ScheduledExecutorService controlTimer;
+    private final ExecutorService dumpCopier;
+    private final ExecutorService dumpWriter;
+    private long nextSequence;
+    private long lastDumpMillis = 0;
+    private long minDumpIntervalMillis = 10_000;
+    private boolean closed = false;
+    private boolean slotTruncated;
+
+    // Statistics
+    private long recordsWritten = 0;
+    private long truncatedRecords = 0;
+    private int dumpsWritten = 0;
+
+    /**
+     * Opens output/flight_recorder.ring with the default size
+     */
+    public FlightRecorderBuffer() throws IOException {
+        this(CsvExporter.getOutputDirectory() + "/flight_recorder.ring", DEFAULT_RING_BYTES);
+    }
+
+    /**
+     * Opens (or creates) a ring file. An existing ring with the same geometry
+     * keeps its contents and new packets continue after its newest one.
+     * @param filename Path of the ring file
+     * @param ringBytes Total file size; the number of slots is derived from it
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public FlightRecorderBuffer(String filename, long ringBytes) throws IOException {
+        long slots = (ringBytes - HEADER_LENGTH) / SLOT_SIZE;
+        if (slots < 1 || slots > Integer.MAX_VALUE || HEADER_LENGTH + slots * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid ring size: " + ringBytes);
+        }
+        this.filename = filename;
+        this.slotCount = (int) slots;
+        File parent = new File(filename).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        this.file = new RandomAccessFile(filename, "rw");
+        long length = HEADER_LENGTH + (long) slotCount * SLOT_SIZE;
+        boolean reuse = file.length() == length && hasHeader(file, slotCount);
+        file.setLength(length);
+        this.ring = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        if (reuse) {
+            nextSequence = newestSequence(ring, slotCount) + 1;
+        } else {
+            clearSlots();
+            ring.position(0);
+            ring.put(MAGIC).putShort((short) VERSION).putShort((short) SLOT_SIZE).putInt(slotCount)
+                .putLong(System.currentTimeMillis());
+            nextSequence = 0;
+        }
+
+        controlTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "flight-recorder-control");
+            thread.setDaemon(true);
+            return thread;
+        });
+        controlTimer.scheduleAtFixedRate(this::checkTriggerFile, 1, 1, TimeUnit.SECONDS);
+        // Copies start right away, not behind the file writes of an earlier dump
+        dumpCopier = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "flight-recorder-copy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpCopier.submit(() -> { }); // Start the thread now rather than on the capture thread's first trigger
+        dumpWriter = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "flight-recorder-dump");
+            thread.setDaemon(false); // Let a running dump finish when the capture exits
+            return thread;
+        });
+    }
+
+    private void clearSlots() {
+        for (int slot = 0; slot < slotCount; slot++) {
+            ring.putLong(HEADER_LENGTH + slot * SLOT_SIZE, 0);
+        }
+    }
+
+    private static boolean hasHeader(RandomAccessFile file, int slotCount) throws IOException {
+        byte[] header = new byte[12];
+        file.seek(0);
+        if (file.read(header) < header.length) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return buffer.getShort(4) == VERSION && buffer.getShort(6) == SLOT_SIZE && buffer.getInt(8) == slotCount;
+    }
+
+    private static long newestSequence(ByteBuffer ring, int slotCount) {
+        long newest = -1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            newest = Math.max(newest, ring.getLong(HEADER_LENGTH + slot * SLOT_SIZE) - 1);
+        }
+        return newest;
+    }
+
+    /**
+     * Adds a threshold rule: dump when at least count matching packets arrive within windowMillis
+     * @param name Rule name, used in the dump file name
+     * @param match Packets counted by the rule
+     */
+    public synchronized void addThresholdTrigger(String name, Predicate<PacketRecord> match, int count, long windowMillis) {
+        if (count <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Invalid threshold: " + count + " packets in " + windowMillis + " ms");
+        }
+        triggers.add(new ThresholdTrigger(name, match, count, windowMillis));
+    }
+
+    /**
+     * Minimum time between two dumps, so a sustained incident does not produce a dump per packet
+     */
+    public synchronized void setMinDumpInterval(long millis) {
+        this.minDumpIntervalMillis = millis;
+    }
+
+    /**
+     * Writes one record into the next slot, overwriting the oldest packet when the ring is full
+     */
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        if (closed) {
+            return;
+        }
+        long sequence = nextSequence++;
+        int base = HEADER_LENGTH + (int) (sequence % slotCount) * SLOT_SIZE;
+        ring.putLong(base, 0); // Invalidate while the slot is rewritten
+        VarHandle.storeStoreFence();
+        ring.putLong(base + 8, record.getTimestamp().getTime());
+        ring.putInt(base + 16, record.getSourcePort());
+        ring.putInt(base + 20, record.getDestinationPort());
+        ring.putInt(base + 24, record.getPacketLength());
+        int position = base + FIXED_FIELDS_LENGTH;
+        int end = base + SLOT_SIZE;
+        slotTruncated = false;
+        String[] strings = {record.getSourceIP(), record.getDestinationIP(), record.getProtocol(),
+                            record.getDirection(), record.getTcpFlags(), record.getApplicationGuess()};
+        for (int i = 0; i < strings.length; i++) {
+            int reserved = strings.length - 1 - i; // Length bytes of the remaining strings
+            position = putString(strings[i], position, end - reserved);
+        }
+        if (slotTruncated) {
+            truncatedRecords++;
+        }
+        VarHandle.releaseFence(); // The fields are visible before the sequence that validates them
+        ring.putLong(base, sequence + 1);
+        recordsWritten++;
+
+        long now = System.currentTimeMillis();
+        for (ThresholdTrigger trigger : triggers) {
+            if (trigger.match.test(record) && trigger.fired(now)) {
+                dump(trigger.name);
+            }
+        }
+    }
+
+    /**
+     * Writes length(1) + bytes of a string, truncated to end
+     * @return The position after the string
+     */
+    private int putString(String value, int position, int end) {
+        String text = value == null ? "" : value;
+        int max = Math.min(255, end - position - 1);
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        int length;
+        if (ascii) {
+            length = Math.min(text.length(), max);
+            for (int i = 0; i < length; i++) {
+                ring.put(position + 1 + i, (byte) text.charAt(i));
+            }
+            slotTruncated |= length < text.length();
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            length = Math.min(bytes.length, max);
+            if (length < bytes.length) {
+                slotTruncated = true;
+                // Do not leave half of a multi-byte character
+                while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                    length--;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                ring.put(position + 1 + i, bytes[i]);
+            }
+        }
+        ring.put(position, (byte) length);
+        return position + 1 + length;
+    }
+
+    /**
+     * Marks the current window and writes it to a capture file and CSV in the background
+     * (cheap enough to call from the capture thread: nothing is copied here)
+     * @param reason Short label for the dump file name (e.g. "rst_storm", "command")
+     * @return false if skipped because the previous dump was too recent
+     */
+    public boolean dump(String reason) {
+        long newest;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (closed || (lastDumpMillis > 0 && now - lastDumpMillis < minDumpIntervalMillis)) {
+                return false;
+            }
+            lastDumpMillis = now;
+            newest = nextSequence - 1;
+        }
+        dumpCopier.submit(() -> copyDump(newest, now, reason));
+        return true;
+    }
+
+    private void copyDump(long newest, long triggerMillis, String reason) {
+        long[] overwritten = new long[1];
+        List<PacketRecord> records = copySlots(newest, overwritten);
+        String name = "flight_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(triggerMillis)) + "_" +
+                      reason.replaceAll("[^A-Za-z0-9_-]", "_");
+        System.out.println("Flight recorder: dump triggered by " + reason + " (" + records.size() + " packets" +
+                         (overwritten[0] > 0 ? ", " + overwritten[0] + " older ones overwritten before the copy" : "") +
+                         ")");
+        dumpWriter.submit(() -> writeDump(records, name));
+    }
+
+    private void writeDump(List<PacketRecord> records, String name) {
+        try {
+            if (!CsvExporter.createOutputDirectory()) {
+                return;
+            }
+            String captureFile = CsvExporter.getOutputDirectory() + "/" + name + ".prec";
+            PacketRecordCodec.writeFile(captureFile, records, 65536);
+            CsvExporter.exportToCsv(records, name);
+            synchronized (this) {
+                dumpsWritten++;
+            }
+            if (!records.isEmpty()) {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+                System.out.println("Flight recorder: " + records.size() + " packets from " +
+                                 format.format(records.get(0).getTimestamp()) + " to " +
+                                 format.format(records.get(records.size() - 1).getTimestamp()) + " -> " + captureFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing flight recorder dump: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the window ending at newest out of the live ring (dump thread), oldest first.
+     * The ring is copied in one bulk read; a slot of the copy is kept only if its sequence is the
+     * expected one both in the copy and in the live ring afterwards (a rewrite clears it first).
+     * @param overwritten Receives the number of slots the capture rewrote before they were copied
+     */
+    private List<PacketRecord> copySlots(long newest, long[] overwritten) {
+        ByteBuffer view = ring.duplicate(); // Own position; the capture thread only uses absolute puts
+        ByteBuffer image = ByteBuffer.allocate(view.capacity());
+        view.position(0);
+        image.put(view);
+        VarHandle.acquireFence();
+        List<PacketRecord> records = new ArrayList<>();
+        for (long sequence = Math.max(0, newest - slotCount + 1); sequence <= newest; sequence++) {
+            int base = HEADER_LENGTH + (int) (sequence % slotCount) * SLOT_SIZE;
+            if (image.getLong(base) != sequence + 1 || view.getLong(base) != sequence + 1) {
+                overwritten[0]++; // Holds a newer packet, or was rewritten while it was copied
+                continue;
+            }
+            records.add(decodeSlot(image, base));
+        }
+        return records;
+    }
+
+    /**
+     * Decodes the valid slots of a ring image, oldest first
+     */
+    static List<PacketRecord> readSlots(ByteBuffer ring) {
+        int slotCount = ring.getInt(8);
+        int slotSize = ring.getShort(6);
+        long newest = -1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            newest = Math.max(newest, ring.getLong(HEADER_LENGTH + slot * slotSize) - 1);
+        }
+        List<PacketRecord> records = new ArrayList<>();
+        long oldest = Math.max(0, newest - slotCount + 1);
+        for (long sequence = oldest; sequence <= newest; sequence++) {
+            int base = HEADER_LENGTH + (int) (sequence % slotCount) * slotSize;
+            if (ring.getLong(base) != sequence + 1) {
+                continue; // Empty or torn slot
+            }
+            records.add(decodeSlot(ring, base));
+        }
+        return records;
+    }
+
+    /**
+     * Decodes the slot starting at base
+     */
+    private static PacketRecord decodeSlot(ByteBuffer ring, int base) {
+        String[] strings = new String[6];
+        int position = base + FIXED_FIELDS_LENGTH;
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[ring.get(position) & 0xFF];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = ring.get(position + 1 + j);
+            }
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 1 + bytes.length;
+        }
+        PacketRecord record = new PacketRecord(strings[0], strings[1], ring.getInt(base + 16),
+                                               ring.getInt(base + 20), strings[2], ring.getInt(base + 24));
+        record.setTimestamp(new Date(ring.getLong(base + 8)));
+        record.setDirection(strings[3]);
+        record.setTcpFlags(strings[4]);
+        record.setApplicationGuess(strings[5]);
+        return record;
+    }
+
+    /**
+     * Dumps when the control file (output/flight_recorder.trigger) appears
+     */
+    private void checkTriggerFile() {
+        File trigger = new File(CsvExporter.getOutputDirectory(), TRIGGER_FILE);
+        if (trigger.exists() && trigger.delete()) {
+            dump("command");
+        }
+    }
+
+    // Getters
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getCapacity() {
+        return slotCount;
+    }
+
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized int getDumpsWritten() {
+        return dumpsWritten;
+    }
+
+    /**
+     * Flushes the ring to disk and waits for running dumps to finish
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        controlTimer.shutdownNow();
+        dumpCopier.shutdown();
+        try {
+            dumpCopier.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dumpWriter.shutdown();
+        try {
+            dumpWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ring.force();
+        file.close();
+    }
+
+    /**
+     * Prints the flight recorder summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== FLIGHT RECORDER ===");
+        System.out.println("Ring: " + filename + " (" + slotCount + " packets)");
+        System.out.println("Records written: " + recordsWritten + (truncatedRecords > 0 ?
+                         " (" + truncatedRecords + " with truncated fields)" : ""));
+        System.out.println("Packets in window: " + Math.min(nextSequence, slotCount));
+        System.out.println("Dumps written: " + dumpsWritten);
+    }
+
+    /**
+     * Counts matching packets in a sliding time window
+     */
+    private static class ThresholdTrigger {
+        final String name;
+        final Predicate<PacketRecord> match;
+        final int count;
+        final long windowMillis;
+        final ArrayDeque<Long> matches = new ArrayDeque<>();
+
+        ThresholdTrigger(String name, Predicate<PacketRecord> match, int count, long windowMillis) {
+            this.name = name;
+            this.match = match;
+            this.count = count;
+            this.windowMillis = windowMillis;
+        }
+
+        /**
+         * Records a match at now
+         * @return true if the threshold was reached (the window then starts over)
+         */
+        boolean fired(long now) {
+            while (!matches.isEmpty() && now - matches.peekFirst() > windowMillis) {
+                matches.pollFirst();
+            }
+            matches.addLast(now);
+            if (matches.size() >= count) {
+                matches.clear();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Dumps an existing ring file (e.g. left by a crashed capture), or requests a dump from a running capture
+     * Usage: FlightRecorderBuffer [ring file] | --trigger
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--trigger")) {
+            File trigger = new File(CsvExporter.getOutputDirectory(), TRIGGER_FILE);
+            try {
+                if (CsvExporter.createOutputDirectory() && (trigger.createNewFile() || trigger.exists())) {
+                    System.out.println("Dump requested; the running capture writes it within a second");
+                }
+            } catch (IOException e) {
+                System.err.println("Error requesting flight recorder dump: " + e.getMessage());
+            }
+            return;
+        }
+
+        String filename = args.length > 0 ? args[0] : CsvExporter.getOutputDirectory() + "/flight_recorder.ring";
+        System.out.println("=== Flight Recorder Dump ===");
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            if (file.length() < HEADER_LENGTH || file.length() > Integer.MAX_VALUE) {
+                System.err.println("Error: " + filename + " is not a flight recorder ring");
+                return;
+            }
+            ByteBuffer ring = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            boolean valid = file.length() == HEADER_LENGTH + (long) ring.getInt(8) * ring.getShort(6);
+            for (int i = 0; i < MAGIC.length; i++) {
+                valid &= ring.get(i) == MAGIC[i];
+            }
+            if (!valid) {
+                System.err.println("Error: " + filename + " is not a flight recorder ring");
+                return;
+            }
+            List<PacketRecord> records = readSlots(ring);
+            System.out.println("Packets in ring: " + records.size());
+            String name = "flight_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + "_offline";
+            CsvExporter.exportToCsv(records, name);
+        } catch (IOException e) {
+            System.err.println("Error reading flight recorder ring: " + e.getMessage());
+        }
+    }
+}
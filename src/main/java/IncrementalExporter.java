@@ -0,0 +1,464 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IncrementalExporter.java
+ *
+ * Exports only what is new since the last export, so a Power BI refresh
+ * ingests a small delta instead of the whole dataset. The source is the
+ * crash-safe capture store (PacketCapture --store); each record there has a
+ * stable sequence number (its position in the append log), which is the
+ * watermark. Every run writes the records after the watermark to:
+ *
+ *   output/incremental/packets_delta_<n>.csv   the new packets (Power BI format)
+ *   output/incremental/flows_delta_<n>.csv     5-tuple flows of the new packets
+ *   output/incremental/rollups_delta_<n>.csv   per-minute protocol/application/direction totals
+ *   output/incremental/_watermark.properties   last exported sequence, packet time and delta number
+ *
+ * The delta files are written first and the watermark is only advanced
+ * after them, so a crash repeats the last delta under the same number
+ * instead of losing or duplicating it. The store is read without opening it
+ * for writing, so exports can run while the capture is appending.
+ *
+ * A flow or minute that continues past the end of one delta appears again
+ * in the next one; flow and rollup rows are additive. Compaction merges
+ * all exported deltas into packets_base_<n>.csv, flows_base_<n>.csv
+ * (flows of the same 5-tuple less than the idle timeout apart are joined)
+ * and rollups_base_<n>.csv (rows of the same minute and key are summed),
+ * where <n> is the last delta merged. A new base is complete before the
+ * files it replaces are deleted; after a crash the highest base of each
+ * kind wins and leftovers are cleaned up on the next run.
+ *
+ * A Power BI folder source over output/incremental picks up base and delta
+ * files alike; filter the file names on "packets_", "flows_" or "rollups_".
+ */
+public class IncrementalExporter {
+
+    private static final String WATERMARK_FILE = "_watermark.properties";
+    private static final String LOCK_FILE = ".lock";
+    private static final String[] KINDS = {"packets", "flows", "rollups"};
+
+    public static final String DEFAULT_DIRECTORY_NAME = "incremental";
+    public static final long DEFAULT_FLOW_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String storeDirectory;
+    private final String directory;
+    private final long flowIdleMillis;
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Watermark
+    private long sequence = 0;
+    private long lastPacket = Long.MIN_VALUE;
+    private int lastDelta = 0;
+
+    // Statistics
+    private long packetsExported = 0;
+    private int deltasWritten = 0;
+    private int deltasCompacted = 0;
+
+    /**
+     * Exports from output/capture_store to output/incremental
+     */
+    public IncrementalExporter() throws IOException {
+        this(CsvExporter.getOutputDirectory() + "/capture_store",
+             CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME, DEFAULT_FLOW_IDLE_MILLIS);
+    }
+
+    /**
+     * @param storeDirectory Directory of the SegmentedCaptureStore to export from
+     * @param directory Directory of the delta and base files and the watermark
+     * @param flowIdleMillis Gap after which packets of the same 5-tuple start a new flow
+     * @throws IOException if the directory cannot be created or the watermark cannot be read
+     */
+    public IncrementalExporter(String storeDirectory, String directory, long flowIdleMillis) throws IOException {
+        this.storeDirectory = storeDirectory;
+        this.directory = directory;
+        this.flowIdleMillis = flowIdleMillis;
+        Files.createDirectories(Paths.get(directory));
+        loadWatermark();
+    }
+
+    // Export
+
+    /**
+     * Writes the records committed to the store since the watermark as the next delta
+     * @return The number of packets exported (0 if nothing was new; no files are written then)
+     * @throws IOException if the store cannot be read, the files cannot be written or another
+     *                     export or compaction of the directory is running
+     */
+    public synchronized long exportNew() throws IOException {
+        FileLock lock = lockDirectory();
+        try {
+            loadWatermark();
+            removeCompactedFiles();
+
+            int delta = lastDelta + 1;
+            Path packetsPath = Paths.get(directory, fileName("packets", "delta", delta));
+            Path packetsTemp = Paths.get(packetsPath + ".tmp");
+            TrafficAggregator aggregator = new TrafficAggregator(flowIdleMillis);
+            long[] maxTimestamp = {lastPacket};
+
+            long next;
+            try (Writer writer = TrafficAggregator.openCsv(packetsTemp, CsvExporter.CSV_HEADER)) {
+                next = SegmentedCaptureStore.readCommitted(storeDirectory, sequence, records -> {
+                    try {
+                        for (PacketRecord record : records) {
+                            writer.write(CsvExporter.formatRecordForPowerBI(record));
+                            writer.write("\n");
+                            aggregator.add(record);
+                            maxTimestamp[0] = Math.max(maxTimestamp[0], record.getTimestamp().getTime());
+                        }
+                    } catch (IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                });
+            } catch (java.io.UncheckedIOException e) {
+                Files.deleteIfExists(packetsTemp);
+                throw e.getCause();
+            }
+            if (next < sequence) {
+                Files.deleteIfExists(packetsTemp);
+                throw new IOException("Capture store " + storeDirectory + " holds " + next + " records but " + sequence +
+                                      " were already exported (was the store replaced? delete " + WATERMARK_FILE + " to start over)");
+            }
+            long count = aggregator.getPackets();
+            if (count == 0) {
+                Files.deleteIfExists(packetsTemp);
+                return 0;
+            }
+
+            Path flowsTemp = Paths.get(directory, fileName("flows", "delta", delta) + ".tmp");
+            TrafficAggregator.writeFlows(flowsTemp, aggregator.getFlows());
+            Path rollupsTemp = Paths.get(directory, fileName("rollups", "delta", delta) + ".tmp");
+            TrafficAggregator.writeRollups(rollupsTemp, TrafficAggregator.MINUTE_HEADER, aggregator.getRollups());
+
+            RollingCsvWriter.moveAtomically(packetsTemp, packetsPath);
+            RollingCsvWriter.moveAtomically(flowsTemp, Paths.get(directory, fileName("flows", "delta", delta)));
+            RollingCsvWriter.moveAtomically(rollupsTemp, Paths.get(directory, fileName("rollups", "delta", delta)));
+
+            sequence = next;
+            lastPacket = maxTimestamp[0];
+            lastDelta = delta;
+            saveWatermark();
+            packetsExported += count;
+            deltasWritten++;
+            return count;
+        } finally {
+            unlockDirectory(lock);
+        }
+    }
+
+    // Compaction
+
+    /**
+     * Merges the base files and all exported deltas into new base files and deletes the merged files
+     * @return The number of deltas merged (0 if there were none)
+     * @throws IOException if a file cannot be read or written or another export or compaction is running
+     */
+    public synchronized int compact() throws IOException {
+        FileLock lock = lockDirectory();
+        try {
+            loadWatermark();
+            removeCompactedFiles();
+            int merged = 0;
+            for (String kind : KINDS) {
+                int base = latestBase(kind);
+                List<Path> inputs = new ArrayList<>();
+                if (base > 0) {
+                    inputs.add(Paths.get(directory, fileName(kind, "base", base)));
+                }
+                int deltas = 0;
+                for (int delta = base + 1; delta <= lastDelta; delta++) {
+                    Path path = Paths.get(directory, fileName(kind, "delta", delta));
+                    if (Files.exists(path)) {
+                        inputs.add(path);
+                        deltas++;
+                    }
+                }
+                if (deltas == 0) {
+                    continue;
+                }
+                Path target = Paths.get(directory, fileName(kind, "base", lastDelta));
+                Path temp = Paths.get(target + ".tmp");
+                switch (kind) {
+                    case "packets": concatenate(inputs, temp, CsvExporter.CSV_HEADER); break;
+                    case "flows": mergeFlows(inputs, temp); break;
+                    default: mergeRollups(inputs, temp); break;
+                }
+                RollingCsvWriter.moveAtomically(temp, target);
+                merged = Math.max(merged, deltas);
+            }
+            removeCompactedFiles();
+            deltasCompacted += merged;
+            return merged;
+        } finally {
+            unlockDirectory(lock);
+        }
+    }
+
+    /**
+     * Appends the rows of each file (without its BOM and header) to one new file
+     */
+    private static void concatenate(List<Path> inputs, Path target, String header) throws IOException {
+        try (OutputStream out = new FileOutputStream(target.toFile())) {
+            out.write(("\ufeff" + header + "\n").getBytes(StandardCharsets.UTF_8));
+            byte[] buffer = new byte[1 << 16];
+            for (Path input : inputs) {
+                try (InputStream in = new java.io.BufferedInputStream(new FileInputStream(input.toFile()), 1 << 16)) {
+                    int b;
+                    while ((b = in.read()) != -1 && b != '\n') {
+                        // Skip the header line
+                    }
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+    }
+
+    private void mergeFlows(List<Path> inputs, Path target) throws IOException {
+        List<TrafficAggregator.Flow> flows = new ArrayList<>();
+        for (Path input : inputs) {
+            flows.addAll(TrafficAggregator.readFlows(input));
+        }
+        TrafficAggregator.writeFlows(target, TrafficAggregator.mergeFlows(flows, flowIdleMillis));
+    }
+
+    private static void mergeRollups(List<Path> inputs, Path target) throws IOException {
+        TreeMap<String, long[]> rollups = new TreeMap<>();
+        for (Path input : inputs) {
+            TrafficAggregator.readRollups(input, rollups);
+        }
+        TrafficAggregator.writeRollups(target, TrafficAggregator.MINUTE_HEADER, rollups);
+    }
+
+    /**
+     * Deletes base files superseded by a newer base of the same kind and the deltas a base already contains
+     */
+    private void removeCompactedFiles() {
+        for (String kind : KINDS) {
+            int base = latestBase(kind);
+            File[] files = new File(directory).listFiles((dir, name) -> name.startsWith(kind + "_"));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                int number = fileNumber(name);
+                boolean superseded = (name.startsWith(kind + "_base_") && number >= 0 && number < base) ||
+                                     (name.startsWith(kind + "_delta_") && number >= 0 && number <= base);
+                if (superseded && !file.delete()) {
+                    System.err.println("Warning: could not delete compacted file " + file);
+                }
+            }
+        }
+    }
+
+    private int latestBase(String kind) {
+        int latest = 0;
+        File[] files = new File(directory).listFiles((dir, name) -> name.startsWith(kind + "_base_") && name.endsWith(".csv"));
+        if (files != null) {
+            for (File file : files) {
+                latest = Math.max(latest, fileNumber(file.getName()));
+            }
+        }
+        return latest;
+    }
+
+    private static String fileName(String kind, String type, int number) {
+        return String.format("%s_%s_%06d.csv", kind, type, number);
+    }
+
+    /**
+     * The number of a kind_type_n.csv file, or -1 for other files (including .tmp files)
+     */
+    private static int fileNumber(String name) {
+        if (!name.endsWith(".csv")) {
+            return -1;
+        }
+        int underscore = name.lastIndexOf('_');
+        try {
+            return Integer.parseInt(name.substring(underscore + 1, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Files
+
+    /**
+     * Locks the directory against other exports and compactions (release with unlockDirectory)
+     */
+    private FileLock lockDirectory() throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(directory, LOCK_FILE),
+                                               StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Another incremental export or compaction is running in " + directory);
+        }
+        return lock;
+    }
+
+    private static void unlockDirectory(FileLock lock) throws IOException {
+        try {
+            lock.release();
+        } finally {
+            lock.channel().close();
+        }
+    }
+
+    private void loadWatermark() throws IOException {
+        Path path = Paths.get(directory, WATERMARK_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path.toFile())) {
+            properties.load(in);
+        }
+        try {
+            sequence = Long.parseLong(properties.getProperty("sequence", "0"));
+            lastPacket = Long.parseLong(properties.getProperty("lastPacketMillis", String.valueOf(Long.MIN_VALUE)));
+            lastDelta = Integer.parseInt(properties.getProperty("lastDelta", "0"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt watermark " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void saveWatermark() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("sequence", String.valueOf(sequence));
+        properties.setProperty("lastPacketMillis", String.valueOf(lastPacket));
+        if (lastPacket != Long.MIN_VALUE) {
+            properties.setProperty("lastPacket", timestampFormat.format(new Date(lastPacket)));
+        }
+        properties.setProperty("lastDelta", String.valueOf(lastDelta));
+        properties.setProperty("store", storeDirectory);
+        Path path = Paths.get(directory, WATERMARK_FILE);
+        Path temp = Paths.get(path + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp.toFile())) {
+            properties.store(out, "IncrementalExporter watermark (records of the capture store already exported)");
+        }
+        RollingCsvWriter.moveAtomically(temp, path);
+    }
+
+    // Getters
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized int getLastDelta() {
+        return lastDelta;
+    }
+
+    /**
+     * Exported deltas not yet merged into the base files
+     */
+    public synchronized int getPendingDeltas() {
+        return lastDelta - latestBase("packets");
+    }
+
+    /**
+     * Prints the incremental export summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== INCREMENTAL EXPORT ===");
+        System.out.println("Store: " + storeDirectory);
+        System.out.println("Watermark: " + sequence + " records exported" +
+                         (lastPacket != Long.MIN_VALUE ? ", last packet " + timestampFormat.format(new Date(lastPacket)) : ""));
+        System.out.println("This run: " + packetsExported + " packets in " + deltasWritten + " delta(s), " +
+                         deltasCompacted + " delta(s) compacted");
+        System.out.println("Deltas waiting for compaction: " + getPendingDeltas());
+        System.out.println("Directory: " + directory);
+    }
+
+    /**
+     * Exports the new records of a capture store, compacts the deltas, or both on a schedule
+     * Usage: IncrementalExporter [--store <dir>] [--compact] [--compact-after <deltas>] [--every <minutes>]
+     */
+    public static void main(String[] args) {
+        String store = CsvExporter.getOutputDirectory() + "/capture_store";
+        boolean compactOnly = false;
+        int compactAfter = 0;
+        long everyMillis = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--store": store = args[++i]; break;
+                    case "--compact": compactOnly = true; break;
+                    case "--compact-after": compactAfter = Integer.parseInt(args[++i]); break;
+                    case "--every": everyMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(args[++i])); break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: IncrementalExporter [--store <dir>] [--compact] [--compact-after <deltas>] " +
+                             "[--every <minutes>]");
+            return;
+        }
+
+        System.out.println("=== Incremental Export ===");
+        try {
+            IncrementalExporter exporter = new IncrementalExporter(store,
+                CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME, DEFAULT_FLOW_IDLE_MILLIS);
+            while (true) {
+                if (compactOnly) {
+                    int merged = exporter.compact();
+                    System.out.println(merged > 0 ? "Compacted " + merged + " delta(s)" : "Nothing to compact");
+                } else {
+                    long start = System.nanoTime();
+                    long exported = exporter.exportNew();
+                    System.out.println(exported > 0
+                        ? "Exported " + exported + " new packets to delta " + exporter.getLastDelta() + " in " +
+                          (System.nanoTime() - start) / 1_000_000 + " ms"
+                        : "No new packets since sequence " + exporter.getSequence());
+                    if (compactAfter > 0 && exporter.getPendingDeltas() >= compactAfter) {
+                        System.out.println("Compacted " + exporter.compact() + " delta(s)");
+                    }
+                }
+                if (everyMillis <= 0) {
+                    break;
+                }
+                Thread.sleep(everyMillis);
+            }
+            exporter.printSummary();
+        } catch (IOException e) {
+            System.err.println("Error in incremental export: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,583 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JdbcSink.java
+ *
+ * Loads packets into a database over JDBC, plus the flows and per-minute
+ * rollups of the same packets:
+ *
+ *   packets   captured_at,source_ip,destination_ip,source_port,destination_port,protocol,application,
+ *             direction,packet_length,tcp_flags
+ *   flows     first_packet,last_packet,source_ip,destination_ip,source_port,destination_port,protocol,
+ *             application,packets,bytes
+ *   rollups   minute_start,protocol,application,direction,packets,bytes
+ *
+ * The tables are created if they do not exist. Packets are handed to a
+ * bounded queue and written by a background flusher thread, so the capture
+ * thread never waits for the database unless the queue is full - then
+ * recordArrived blocks until the flusher has caught up (backpressure
+ * instead of unbounded memory). The flusher inserts with prepared multi-row
+ * INSERT statements (ROWS_PER_STATEMENT rows each), sends them as one JDBC
+ * batch per batchRows packets, and commits every commitRows rows.
+ *
+ * Every SUMMARY_INTERVAL_MILLIS the flusher also inserts the flows that have
+ * ended (idle for FLOW_IDLE_MILLIS as of the newest packet) and the rollups
+ * of finished minutes, and drops them from memory, so a long capture keeps
+ * only its open flows and last two minutes. The rest is inserted on close.
+ * A packet that arrives after its minute was inserted (more than a minute
+ * late) adds a second row for that minute, so queries sum rollup rows.
+ *
+ * Any JDBC 4 driver on the classpath works; the SQL is plain enough for
+ * H2, HSQLDB, Derby, SQLite, PostgreSQL and MySQL, e.g.
+ *   java -cp classes:lib/h2-2.2.224.jar JdbcSink jdbc:h2:./output/packets output/captured_packets_*.csv
+ * JdbcSinkTest checks row counts, commit cadence and backpressure against
+ * an in-memory H2 database.
+ */
+public class JdbcSink implements PacketRecordListener, AutoCloseable {
+
+    public static final int DEFAULT_BATCH_ROWS = 1000;
+    public static final int DEFAULT_COMMIT_ROWS = 10_000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 50_000;
+    // 50 rows x 10 columns stays below SQLite's limit of 999 parameters per statement
+    static final int ROWS_PER_STATEMENT = 50;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long FLOW_IDLE_MILLIS = 60_000;
+    static final long SUMMARY_INTERVAL_MILLIS = 10_000;
+
+    private static final String PACKET_COLUMNS = "captured_at,source_ip,destination_ip,source_port,destination_port," +
+                                                 "protocol,application,direction,packet_length,tcp_flags";
+    private static final String FLOW_COLUMNS = "first_packet,last_packet,source_ip,destination_ip,source_port," +
+                                               "destination_port,protocol,application,packets,bytes";
+    private static final String ROLLUP_COLUMNS = "minute_start,protocol,application,direction,packets,bytes";
+
+    private final String url;
+    private final Connection connection;
+    private final int batchRows;
+    private final int commitRows;
+    private final BlockingQueue<PacketRecord> queue;
+    private final TrafficAggregator aggregator = new TrafficAggregator(FLOW_IDLE_MILLIS);
+    private final Thread flusher;
+    private volatile boolean closed = false;
+    private volatile SQLException failure = null;
+    private int uncommittedRows = 0;
+    private final java.util.function.LongSupplier queueGauge = this::getQueuedRecords;
+    private final java.util.function.LongSupplier flowGauge = aggregator::getOpenFlowCount;
+
+    // Statistics
+    private volatile long packetRows = 0;
+    private long flowRows = 0;
+    private long rollupRows = 0;
+    private long batches = 0;
+    private long commits = 0;
+    private long insertNanos = 0;
+    private long backpressureWaits = 0;
+    private long backpressureNanos = 0;
+    private long recordsDropped = 0;
+
+    /**
+     * Opens a sink with the default batch and commit sizes
+     * @param url JDBC URL, e.g. jdbc:h2:./output/packets
+     * @throws SQLException if the database cannot be opened or the tables cannot be created
+     */
+    public JdbcSink(String url) throws SQLException {
+        this(url, null, null, DEFAULT_BATCH_ROWS, DEFAULT_COMMIT_ROWS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param url JDBC URL
+     * @param user Database user (null if the URL carries the credentials or none are needed)
+     * @param password Database password
+     * @param batchRows Packets per JDBC batch (rounded up to whole multi-row statements)
+     * @param commitRows Rows after which the transaction is committed
+     * @param queueCapacity Packets buffered before recordArrived blocks
+     */
+    public JdbcSink(String url, String user, String password, int batchRows, int commitRows, int queueCapacity)
+            throws SQLException {
+        if (batchRows <= 0 || commitRows <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Batch, commit and queue sizes must be positive");
+        }
+        this.url = url;
+        this.batchRows = (batchRows + ROWS_PER_STATEMENT - 1) / ROWS_PER_STATEMENT * ROWS_PER_STATEMENT;
+        this.commitRows = commitRows;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        connection = user == null ? DriverManager.getConnection(url) : DriverManager.getConnection(url, user, password);
+        try {
+            connection.setAutoCommit(false);
+            createTables();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        CaptureMetrics.get().gauge(CaptureMetrics.QUEUE_DEPTH, queueGauge);
+        CaptureMetrics.get().gauge(CaptureMetrics.FLOWS_ACTIVE, flowGauge);
+        flusher = new Thread(this::runFlusher, "jdbc-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Loads a list of records into the database at url
+     * @return true if the load was successful, false otherwise
+     */
+    public static boolean export(List<PacketRecord> packetRecords, String url) {
+        if (packetRecords == null || packetRecords.isEmpty()) {
+            System.out.println("No packet records to export.");
+            return false;
+        }
+        try {
+            JdbcSink sink = new JdbcSink(url);
+            try {
+                for (PacketRecord record : packetRecords) {
+                    sink.recordArrived(record);
+                }
+            } finally {
+                sink.close(); // Waits for the flusher, so the counts below are final
+            }
+            System.out.printf("Successfully loaded %d packet records into %s (%.0f rows/s)%n",
+                            sink.getPacketRows(), url, sink.getRowsPerSecond());
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error loading packets into database: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Queues a packet for the flusher, blocking while the queue is full.
+     * Not synchronized: capture threads only contend on the queue itself.
+     */
+    @Override
+    public void recordArrived(PacketRecord record) {
+        if (closed || failure != null) {
+            synchronized (this) {
+                recordsDropped++;
+            }
+            CaptureMetrics.get().counter(CaptureMetrics.PACKETS_DROPPED).increment();
+            return;
+        }
+        if (queue.offer(record)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                recordsDropped++;
+            }
+            CaptureMetrics.get().counter(CaptureMetrics.PACKETS_DROPPED).increment();
+            return;
+        }
+        synchronized (this) {
+            backpressureWaits++;
+            backpressureNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void createTables() throws SQLException {
+        createTable("packets", "captured_at TIMESTAMP, source_ip VARCHAR(64), destination_ip VARCHAR(64), " +
+                               "source_port INTEGER, destination_port INTEGER, protocol VARCHAR(16), " +
+                               "application VARCHAR(64), direction VARCHAR(16), packet_length INTEGER, " +
+                               "tcp_flags VARCHAR(32)");
+        createTable("flows", "first_packet TIMESTAMP, last_packet TIMESTAMP, source_ip VARCHAR(64), " +
+                             "destination_ip VARCHAR(64), source_port INTEGER, destination_port INTEGER, " +
+                             "protocol VARCHAR(16), application VARCHAR(64), packets BIGINT, bytes BIGINT");
+        createTable("rollups", "minute_start TIMESTAMP, protocol VARCHAR(16), application VARCHAR(64), " +
+                               "direction VARCHAR(16), packets BIGINT, bytes BIGINT");
+        connection.commit();
+    }
+
+    /**
+     * Creates a table unless it exists (checked through the metadata, since Derby has no IF NOT EXISTS)
+     */
+    private void createTable(String name, String columns) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String candidate : new String[] { name, name.toUpperCase() }) {
+            try (ResultSet tables = metaData.getTables(null, null, candidate, null)) {
+                if (tables.next()) {
+                    return;
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + name + " (" + columns + ")");
+        }
+    }
+
+    /**
+     * INSERT INTO table (columns) VALUES (?,...),(?,...) for the given number of rows
+     */
+    static String insertSql(String table, String columns, int rows) {
+        int columnCount = columns.split(",").length;
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columnCount; i++) {
+            row.append(i == 0 ? "?" : ",?");
+        }
+        row.append(')');
+        StringBuilder sql = new StringBuilder("INSERT INTO " + table + " (" + columns + ") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ",").append(row);
+        }
+        return sql.toString();
+    }
+
+    // Flusher thread
+
+    private void runFlusher() {
+        List<PacketRecord> pending = new ArrayList<>(batchRows);
+        try (PreparedStatement multiRow = connection.prepareStatement(
+                 insertSql("packets", PACKET_COLUMNS, ROWS_PER_STATEMENT));
+             PreparedStatement singleRow = connection.prepareStatement(insertSql("packets", PACKET_COLUMNS, 1))) {
+            long lastFlush = System.currentTimeMillis();
+            long lastSummary = lastFlush;
+            while (!closed || !queue.isEmpty()) {
+                PacketRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    pending.add(record);
+                    queue.drainTo(pending, batchRows - pending.size());
+                }
+                long now = System.currentTimeMillis();
+                if (pending.size() >= batchRows || (!pending.isEmpty() && now - lastFlush >= FLUSH_INTERVAL_MILLIS)) {
+                    insertPackets(pending, multiRow, singleRow);
+                    pending.clear();
+                    lastFlush = now;
+                }
+                if (now - lastSummary >= SUMMARY_INTERVAL_MILLIS) {
+                    insertSummaries(aggregator.takeClosedFlows(), aggregator.takeFinishedRollups());
+                    lastSummary = now;
+                }
+            }
+            if (!pending.isEmpty()) {
+                insertPackets(pending, multiRow, singleRow);
+            }
+            insertSummaries(aggregator.getFlows(), aggregator.getRollups());
+            connection.commit();
+            commits++;
+        } catch (SQLException e) {
+            failure = e;
+            System.err.println("Error writing to database: " + e.getMessage());
+            queue.clear();
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // The connection is closed with the failure reported
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void insertPackets(List<PacketRecord> records, PreparedStatement multiRow, PreparedStatement singleRow)
+            throws SQLException {
+        long start = System.nanoTime();
+        CaptureEvents.BatchHandoffEvent handoffEvent = new CaptureEvents.BatchHandoffEvent();
+        handoffEvent.begin();
+        int whole = records.size() / ROWS_PER_STATEMENT * ROWS_PER_STATEMENT;
+        for (int i = 0; i < whole; i += ROWS_PER_STATEMENT) {
+            for (int row = 0; row < ROWS_PER_STATEMENT; row++) {
+                setPacket(multiRow, row * 10, records.get(i + row));
+            }
+            multiRow.addBatch();
+        }
+        for (int i = whole; i < records.size(); i++) {
+            setPacket(singleRow, 0, records.get(i));
+            singleRow.addBatch();
+        }
+        if (whole > 0) {
+            multiRow.executeBatch();
+        }
+        if (whole < records.size()) {
+            singleRow.executeBatch();
+        }
+        for (PacketRecord record : records) {
+            aggregator.add(record);
+        }
+        synchronized (this) {
+            packetRows += records.size();
+            batches++;
+            insertNanos += System.nanoTime() - start;
+        }
+        CaptureMetrics.get().recordExport(start, records.size());
+        CaptureEvents.batchHandedOff(handoffEvent, "jdbc", records.size(), queue.size());
+        rowsWritten(records.size());
+    }
+
+    private static void setPacket(PreparedStatement statement, int offset, PacketRecord record) throws SQLException {
+        statement.setTimestamp(offset + 1, new Timestamp(record.getTimestamp().getTime()));
+        statement.setString(offset + 2, record.getSourceIP());
+        statement.setString(offset + 3, record.getDestinationIP());
+        setPort(statement, offset + 4, record.getSourcePort());
+        setPort(statement, offset + 5, record.getDestinationPort());
+        statement.setString(offset + 6, record.getProtocol());
+        statement.setString(offset + 7, record.getApplicationGuess());
+        statement.setString(offset + 8, record.getDirection());
+        statement.setInt(offset + 9, record.getPacketLength());
+        statement.setString(offset + 10, record.getTcpFlags());
+    }
+
+    private static void setPort(PreparedStatement statement, int index, int port) throws SQLException {
+        if (port == -1) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, port);
+        }
+    }
+
+    /**
+     * Inserts flows and rollups (those finished so far, or all that remain after the last packet)
+     */
+    private void insertSummaries(List<TrafficAggregator.Flow> flows, Map<String, long[]> rollups) throws SQLException {
+        if (flows.isEmpty() && rollups.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement(insertSql("flows", FLOW_COLUMNS, 1))) {
+            int batched = 0;
+            for (TrafficAggregator.Flow flow : flows) {
+                statement.setTimestamp(1, new Timestamp(flow.first));
+                statement.setTimestamp(2, new Timestamp(flow.last));
+                statement.setString(3, flow.source);
+                statement.setString(4, flow.destination);
+                setPort(statement, 5, flow.sourcePort);
+                setPort(statement, 6, flow.destinationPort);
+                statement.setString(7, flow.protocol);
+                statement.setString(8, flow.application);
+                statement.setLong(9, flow.packets);
+                statement.setLong(10, flow.bytes);
+                statement.addBatch();
+                if (++batched == batchRows) {
+                    statement.executeBatch();
+                    batched = 0;
+                    rowsWritten(batchRows);
+                }
+            }
+            statement.executeBatch();
+            rowsWritten(batched);
+        }
+
+        SimpleDateFormat minuteFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        List<String> fields = new ArrayList<>();
+        long rollupCount = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insertSql("rollups", ROLLUP_COLUMNS, 1))) {
+            int batched = 0;
+            for (Map.Entry<String, long[]> entry : rollups.entrySet()) {
+                // Key: "yyyy-MM-dd HH:mm","protocol","application","direction"
+                CsvPacketReader.splitCsvLine(entry.getKey(), fields);
+                if (fields.size() < 4) {
+                    continue;
+                }
+                try {
+                    statement.setTimestamp(1, new Timestamp(minuteFormat.parse(fields.get(0)).getTime()));
+                } catch (ParseException e) {
+                    System.err.println("Warning: skipping rollup with unreadable minute: " + entry.getKey());
+                    continue;
+                }
+                statement.setString(2, fields.get(1));
+                statement.setString(3, fields.get(2));
+                statement.setString(4, fields.get(3));
+                statement.setLong(5, entry.getValue()[0]);
+                statement.setLong(6, entry.getValue()[1]);
+                statement.addBatch();
+                rollupCount++;
+                if (++batched == batchRows) {
+                    statement.executeBatch();
+                    batched = 0;
+                    rowsWritten(batchRows);
+                }
+            }
+            statement.executeBatch();
+            rowsWritten(batched);
+        }
+        synchronized (this) {
+            flowRows += flows.size();
+            rollupRows += rollupCount;
+            insertNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Commits once commitRows rows have been inserted since the last commit
+     */
+    private void rowsWritten(int rows) throws SQLException {
+        uncommittedRows += rows;
+        if (uncommittedRows >= commitRows) {
+            long start = System.nanoTime();
+            connection.commit();
+            uncommittedRows = 0;
+            synchronized (this) {
+                commits++;
+                insertNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Writes the queued packets, inserts the flows and rollups, commits and closes the connection
+     * (safe to call more than once)
+     * @throws SQLException if writing failed at any point
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        CaptureMetrics.get().removeGauge(CaptureMetrics.QUEUE_DEPTH, queueGauge);
+        CaptureMetrics.get().removeGauge(CaptureMetrics.FLOWS_ACTIVE, flowGauge);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Getters
+    public String getUrl() {
+        return url;
+    }
+
+    public long getPacketRows() {
+        return packetRows;
+    }
+
+    public synchronized long getFlowRows() {
+        return flowRows;
+    }
+
+    public synchronized long getRollupRows() {
+        return rollupRows;
+    }
+
+    public synchronized long getRowsWritten() {
+        return packetRows + flowRows + rollupRows;
+    }
+
+    public synchronized long getRecordsDropped() {
+        return recordsDropped;
+    }
+
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    /**
+     * How often recordArrived had to wait for the flusher because the queue was full
+     */
+    public synchronized long getBackpressureWaits() {
+        return backpressureWaits;
+    }
+
+    public int getQueuedRecords() {
+        return queue.size();
+    }
+
+    /**
+     * Rows inserted per second of database time (inserts and commits, not idle waiting)
+     */
+    public synchronized double getRowsPerSecond() {
+        return insertNanos > 0 ? (packetRows + flowRows + rollupRows) / (insertNanos / 1e9) : 0.0;
+    }
+
+    /**
+     * Prints the database load summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== DATABASE SINK ===");
+        System.out.println("Database: " + url);
+        System.out.println("Rows inserted: " + packetRows + " packets, " + flowRows + " flows, " +
+                         rollupRows + " rollups");
+        System.out.printf("Throughput: %.0f rows/s (%d batches of up to %d rows, %d commits)%n",
+                        getRowsPerSecond(), batches, batchRows, commits);
+        if (backpressureWaits > 0) {
+            System.out.printf("Backpressure: capture blocked %d times, %.1f s in total%n",
+                            backpressureWaits, backpressureNanos / 1e9);
+        }
+        if (recordsDropped > 0) {
+            System.out.println("Records dropped after close or failure: " + recordsDropped);
+        }
+        if (failure != null) {
+            System.out.println("Failed: " + failure.getMessage());
+        }
+    }
+
+    /**
+     * Loads existing CSV exports into a database
+     * Usage: JdbcSink <jdbc-url> [--user U --password P] [--batch N] [--commit N] <file.csv>...
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: JdbcSink <jdbc-url> [--user U --password P] [--batch N] [--commit N] <file.csv>...");
+            return;
+        }
+        System.out.println("=== JDBC Load ===");
+        String user = null;
+        String password = null;
+        int batch = DEFAULT_BATCH_ROWS;
+        int commit = DEFAULT_COMMIT_ROWS;
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--user": user = args[++i]; break;
+                    case "--password": password = args[++i]; break;
+                    case "--batch": batch = Integer.parseInt(args[++i]); break;
+                    case "--commit": commit = Integer.parseInt(args[++i]); break;
+                    default: files.add(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: JdbcSink <jdbc-url> [--user U --password P] [--batch N] [--commit N] <file.csv>...");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            JdbcSink sink = new JdbcSink(args[0], user, password, batch, commit, DEFAULT_QUEUE_CAPACITY);
+            try {
+                for (String file : files) {
+                    try (CsvPacketReader reader = new CsvPacketReader(file)) {
+                        PacketRecord record;
+                        while ((record = reader.readNext()) != null) {
+                            sink.recordArrived(record);
+                        }
+                    } catch (java.io.IOException e) {
+                        System.err.println("Error reading " + file + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                sink.close();
+            }
+            System.out.printf("Loaded %d rows in %.1f s%n", sink.getRowsWritten(), (System.nanoTime() - start) / 1e9);
+            sink.printSummary();
+        } catch (SQLException e) {
+            System.err.println("Error loading packets into database: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * JdbcSinkTest.java
+ *
+ * A repeatable test program for JdbcSink against an embedded H2 database:
+ *   java -cp classes:lib/h2-2.2.224.jar JdbcSinkTest
+ *
+ * Loads one seeded set of packet records into in-memory databases and checks
+ * the row counts and totals of the packets, flows and rollups tables against
+ * TrafficAggregator, that finished flows and minutes are inserted while the
+ * sink is still open, that commits happen every commitRows rows, and that a
+ * small queue makes the producer wait instead of dropping records. Exits
+ * with status 1 if any check fails.
+ */
+public class JdbcSinkTest {
+
+    private static final int RECORD_COUNT = 20000;
+    private static final long START_MILLIS = 1_760_000_000_000L;
+    private static final String[] APPLICATIONS = { "HTTPS", "DNS", "HTTP", "SSH" };
+
+    private static int passed = 0;
+    private static int failed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== JDBC Sink Test ===");
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            System.out.println("✗ H2 driver not found; run with -cp classes:lib/h2-2.2.224.jar");
+            System.exit(1);
+        }
+
+        List<PacketRecord> records = createRecords(new Random(7));
+        long totalBytes = 0;
+        TrafficAggregator expected = new TrafficAggregator(60_000);
+        for (PacketRecord record : records) {
+            totalBytes += record.getPacketLength();
+            expected.add(record);
+        }
+        System.out.println("Created " + records.size() + " packet records (" + expected.getFlows().size() + " flows, " +
+                         expected.getRollups().size() + " rollup rows).");
+
+        // Row counts and totals
+        System.out.println("\nTesting row counts...");
+        String url = "jdbc:h2:mem:jdbc_sink_counts;DB_CLOSE_DELAY=-1";
+        JdbcSink sink = load(records, url, JdbcSink.DEFAULT_BATCH_ROWS, JdbcSink.DEFAULT_COMMIT_ROWS,
+                             JdbcSink.DEFAULT_QUEUE_CAPACITY);
+        try (Connection connection = DriverManager.getConnection(url)) {
+            check("packets rows", query(connection, "SELECT COUNT(*) FROM packets"), records.size());
+            check("packets bytes", query(connection, "SELECT SUM(packet_length) FROM packets"), totalBytes);
+            check("flows rows", query(connection, "SELECT COUNT(*) FROM flows"), expected.getFlows().size());
+            check("flows packets", query(connection, "SELECT SUM(packets) FROM flows"), records.size());
+            check("flows bytes", query(connection, "SELECT SUM(bytes) FROM flows"), totalBytes);
+            check("rollups rows", query(connection, "SELECT COUNT(*) FROM rollups"), expected.getRollups().size());
+            check("rollups packets", query(connection, "SELECT SUM(packets) FROM rollups"), records.size());
+            check("rollups bytes", query(connection, "SELECT SUM(bytes) FROM rollups"), totalBytes);
+            check("rollup minutes", query(connection, "SELECT COUNT(DISTINCT minute_start) FROM rollups"),
+                  countMinutes(records));
+            check("sink counters", sink.getRowsWritten(),
+                  records.size() + expected.getFlows().size() + expected.getRollups().size());
+            check("records dropped", sink.getRecordsDropped(), 0);
+        }
+
+        // Periodic summaries: finished flows and minutes reach the database before close (commit every row to see them)
+        System.out.println("\nTesting periodic summaries...");
+        url = "jdbc:h2:mem:jdbc_sink_periodic;DB_CLOSE_DELAY=-1";
+        sink = new JdbcSink(url, null, null, JdbcSink.DEFAULT_BATCH_ROWS, 1, JdbcSink.DEFAULT_QUEUE_CAPACITY);
+        try (Connection connection = DriverManager.getConnection(url)) {
+            try {
+                int half = records.size() / 2;
+                for (PacketRecord record : records.subList(0, half)) {
+                    sink.recordArrived(record);
+                }
+                long deadline = System.currentTimeMillis() + JdbcSink.SUMMARY_INTERVAL_MILLIS + 5000;
+                long flowsBeforeClose = 0;
+                long rollupsBeforeClose = 0;
+                while (System.currentTimeMillis() < deadline && (flowsBeforeClose == 0 || rollupsBeforeClose == 0)) {
+                    Thread.sleep(200);
+                    flowsBeforeClose = query(connection, "SELECT COUNT(*) FROM flows");
+                    rollupsBeforeClose = query(connection, "SELECT COUNT(*) FROM rollups");
+                }
+                report("flows inserted before close: " + flowsBeforeClose, flowsBeforeClose > 0);
+                report("rollups inserted before close: " + rollupsBeforeClose, rollupsBeforeClose > 0);
+                for (PacketRecord record : records.subList(half, records.size())) {
+                    sink.recordArrived(record);
+                }
+            } finally {
+                sink.close();
+            }
+            check("flows rows", query(connection, "SELECT COUNT(*) FROM flows"), expected.getFlows().size());
+            check("flows bytes", query(connection, "SELECT SUM(bytes) FROM flows"), totalBytes);
+            check("rollups rows", query(connection, "SELECT COUNT(*) FROM rollups"), expected.getRollups().size());
+            check("rollups bytes", query(connection, "SELECT SUM(bytes) FROM rollups"), totalBytes);
+        }
+
+        // Commit cadence: one commit after every commitRows to commitRows + batchRows rows, plus the final one
+        System.out.println("\nTesting commit cadence...");
+        int batchRows = 100;
+        int commitRows = 1000;
+        sink = load(records, "jdbc:h2:mem:jdbc_sink_commits", batchRows, commitRows, JdbcSink.DEFAULT_QUEUE_CAPACITY);
+        long rows = sink.getRowsWritten();
+        long commits = sink.getCommits();
+        boolean cadence = commits - 1 >= rows / (commitRows + batchRows) && commits - 1 <= rows / commitRows;
+        report("commits: " + commits + " for " + rows + " rows (commit every " + commitRows + ")", cadence);
+
+        // Backpressure: a queue far smaller than the load makes recordArrived wait, and nothing is lost
+        System.out.println("\nTesting backpressure...");
+        url = "jdbc:h2:mem:jdbc_sink_backpressure;DB_CLOSE_DELAY=-1";
+        sink = load(records, url, JdbcSink.DEFAULT_BATCH_ROWS, JdbcSink.DEFAULT_COMMIT_ROWS, 16);
+        report("producer waited " + sink.getBackpressureWaits() + " times", sink.getBackpressureWaits() > 0);
+        check("records dropped", sink.getRecordsDropped(), 0);
+        try (Connection connection = DriverManager.getConnection(url)) {
+            check("packets rows", query(connection, "SELECT COUNT(*) FROM packets"), records.size());
+        }
+
+        System.out.println("\n=== Test Complete: " + passed + " passed, " + failed + " failed ===");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads the records through a new sink and closes it, so its counters are final
+     */
+    private static JdbcSink load(List<PacketRecord> records, String url, int batchRows, int commitRows,
+                                 int queueCapacity) throws SQLException {
+        JdbcSink sink = new JdbcSink(url, null, null, batchRows, commitRows, queueCapacity);
+        try {
+            for (PacketRecord record : records) {
+                sink.recordArrived(record);
+            }
+        } finally {
+            sink.close();
+        }
+        return sink;
+    }
+
+    private static long query(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            return result.next() ? result.getLong(1) : -1;
+        }
+    }
+
+    private static void check(String name, long actual, long expected) {
+        report(name + ": " + actual + (actual == expected ? "" : ", expected " + expected), actual == expected);
+    }
+
+    private static void report(String message, boolean ok) {
+        if (ok) {
+            passed++;
+            System.out.println("✓ " + message);
+        } else {
+            failed++;
+            System.out.println("✗ " + message);
+        }
+    }
+
+    private static long countMinutes(List<PacketRecord> records) {
+        return records.stream().mapToLong(r -> Math.floorDiv(r.getTimestamp().getTime(), 60_000L)).distinct().count();
+    }
+
+    /**
+     * Creates time-ordered records over about seven minutes between a few hosts, so
+     * that some 5-tuples go idle for longer than the flow timeout and start new flows
+     */
+    private static List<PacketRecord> createRecords(Random random) {
+        List<PacketRecord> records = new ArrayList<>(RECORD_COUNT);
+        long time = START_MILLIS;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            time += random.nextInt(41);
+            PacketRecord record = new PacketRecord();
+            record.setTimestamp(new Date(time));
+            int service = random.nextInt(APPLICATIONS.length);
+            boolean incoming = random.nextBoolean();
+            String local = "10.0.0." + random.nextInt(4);
+            String remote = "192.168.1." + random.nextInt(8);
+            int localPort = 40000 + random.nextInt(4);
+            int remotePort = new int[] { 443, 53, 80, 22 }[service];
+            record.setSourceIP(incoming ? remote : local);
+            record.setDestinationIP(incoming ? local : remote);
+            record.setSourcePort(incoming ? remotePort : localPort);
+            record.setDestinationPort(incoming ? localPort : remotePort);
+            record.setProtocol(service == 1 ? "UDP" : "TCP");
+            record.setPacketLength(40 + random.nextInt(1461));
+            record.setDirection(incoming ? "Incoming" : "Outgoing");
+            record.setTcpFlags(service == 1 ? "" : "ACK");
+            record.setApplicationGuess(APPLICATIONS[service]);
+            records.add(record);
+        }
+        return records;
+    }
+}
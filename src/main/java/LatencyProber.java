@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LatencyProber.java
+ *
+ * Periodic active probing for SLA monitoring. Every target is probed on a
+ * fixed interval from a scheduled executor; the probes themselves run on a
+ * separate worker pool so a slow or unreachable target never delays the
+ * schedule of the others.
+ *
+ * Probe types:
+ * - tcp://host:port  TCP connect time (connection is closed immediately)
+ * - udp://host:port  UDP echo round trip (target must echo the datagram)
+ *
+ * Per-target RTT histograms, loss and timeout rates are appended to
+ * output/probe_results.csv. With --local the prober starts a LocalEchoServer
+ * and probes it, so the whole subsystem can be exercised offline.
+ */
+public class LatencyProber {
+
+    private static final String RESULTS_FILENAME = "probe_results";
+    private static final String RESULTS_HEADER = "Timestamp,ProbeType,TargetHost,TargetPort,ProbesSent,ProbesSucceeded," +
+        "Timeouts,Errors,LossRate,TimeoutRate,RttMinMs,RttP50Ms,RttP95Ms,RttP99Ms,RttMaxMs,RttMeanMs";
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final int UDP_PROBE_SIZE = 32;
+    private static final int MAX_WORKERS = 256;
+
+    private final List<ProbeTarget> targets;
+    private final long intervalMs;
+    private final int timeoutMs;
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+
+    /**
+     * @param targets Targets to probe
+     * @param intervalMs Time between two probes of the same target
+     * @param timeoutMs Time after which a probe counts as timed out
+     */
+    public LatencyProber(List<ProbeTarget> targets, long intervalMs, int timeoutMs) {
+        this.targets = new ArrayList<>(targets);
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public List<ProbeTarget> getTargets() {
+        return new ArrayList<>(targets);
+    }
+
+    /**
+     * Starts probing all targets. Initial delays are spread over one interval
+     * so probes do not all fire in the same instant.
+     */
+    public void start() {
+        int workerCount = Math.max(4, Math.min(MAX_WORKERS, targets.size() * 2));
+        workers = Executors.newFixedThreadPool(workerCount, daemonThreads("probe-worker"));
+        scheduler = Executors.newScheduledThreadPool(1, daemonThreads("probe-scheduler"));
+
+        Random random = new Random();
+        for (ProbeTarget target : targets) {
+            long initialDelay = intervalMs > 1 ? random.nextInt((int) Math.min(intervalMs, Integer.MAX_VALUE)) : 0;
+            scheduler.scheduleAtFixedRate(() -> workers.execute(() -> probe(target)),
+                                          initialDelay, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops scheduling new probes and waits for in-flight probes to finish
+     */
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeoutMs + 1000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Runs one probe against the target and records the outcome
+     */
+    private void probe(ProbeTarget target) {
+        if ("tcp".equals(target.getType())) {
+            probeTcpConnect(target);
+        } else {
+            probeUdpEcho(target);
+        }
+    }
+
+    private void probeTcpConnect(ProbeTarget target) {
+        InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+        if (address.isUnresolved()) {
+            target.recordError("Unresolved host " + target.getHost());
+            return;
+        }
+        try (Socket socket = new Socket()) {
+            long start = System.nanoTime();
+            socket.connect(address, timeoutMs);
+            target.recordSuccess(System.nanoTime() - start);
+        } catch (SocketTimeoutException e) {
+            target.recordTimeout();
+        } catch (IOException e) {
+            target.recordError(describe(e));
+        }
+    }
+
+    private void probeUdpEcho(ProbeTarget target) {
+        InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+        if (address.isUnresolved()) {
+            target.recordError("Unresolved host " + target.getHost());
+            return;
+        }
+        long probeId = sequence.incrementAndGet();
+        byte[] payload = ByteBuffer.allocate(UDP_PROBE_SIZE).putLong(probeId).array();
+        byte[] reply = new byte[UDP_PROBE_SIZE];
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(address);
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            socket.send(new DatagramPacket(payload, payload.length));
+
+            // Ignore stray datagrams until the reply carrying our probe id arrives
+            while (true) {
+                int remainingMs = (int) TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    target.recordTimeout();
+                    return;
+                }
+                socket.setSoTimeout(remainingMs);
+                DatagramPacket response = new DatagramPacket(reply, reply.length);
+                socket.receive(response);
+                if (response.getLength() >= 8 && ByteBuffer.wrap(reply).getLong() == probeId) {
+                    target.recordSuccess(System.nanoTime() - start);
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            target.recordTimeout();
+        } catch (IOException e) {
+            target.recordError(describe(e));
+        }
+    }
+
+    private static String describe(IOException e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static java.util.concurrent.ThreadFactory daemonThreads(String name) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Probes a freshly started LocalEchoServer (TCP and UDP) for the given time
+     * @return The probed targets with their statistics, or an empty list on error
+     */
+    public static List<ProbeTarget> runLocalProbes(int durationSeconds, long intervalMs, int timeoutMs) {
+        try (LocalEchoServer server = new LocalEchoServer()) {
+            server.start();
+            List<ProbeTarget> targets = new ArrayList<>();
+            targets.add(new ProbeTarget("tcp", server.getAddress(), server.getTcpEchoPort()));
+            targets.add(new ProbeTarget("udp", server.getAddress(), server.getUdpEchoPort()));
+            return runProbes(targets, durationSeconds, intervalMs, timeoutMs);
+        } catch (IOException e) {
+            System.err.println("Error starting local echo server: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Probes the given targets for the given time and returns them with statistics
+     */
+    public static List<ProbeTarget> runProbes(List<ProbeTarget> targets, int durationSeconds,
+                                              long intervalMs, int timeoutMs) {
+        LatencyProber prober = new LatencyProber(targets, intervalMs, timeoutMs);
+        System.out.println("Probing " + targets.size() + " targets every " + intervalMs + " ms for " +
+                         durationSeconds + "s (timeout " + timeoutMs + " ms)...");
+        prober.start();
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        prober.stop();
+        return prober.getTargets();
+    }
+
+    /**
+     * Reads targets from a file, one per line; blank lines and lines starting with # are ignored
+     */
+    public static List<ProbeTarget> loadTargets(String filename) throws IOException {
+        List<ProbeTarget> targets = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(filename), java.nio.charset.StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                targets.add(ProbeTarget.parse(trimmed));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Prints per-target statistics to the console
+     */
+    public static void printResults(List<ProbeTarget> targets) {
+        System.out.println("\n=== PROBE RESULTS ===");
+        for (ProbeTarget target : targets) {
+            System.out.println("  " + target.toCompactString());
+            if (target.getErrors() > 0) {
+                System.out.println("    Last error: " + target.getLastError());
+            }
+        }
+    }
+
+    /**
+     * Appends per-target statistics to output/probe_results.csv
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean exportResults(List<ProbeTarget> targets) {
+        if (targets == null || targets.isEmpty()) {
+            System.out.println("No probe results to export.");
+            return false;
+        }
+        if (!CsvExporter.createOutputDirectory()) {
+            return false;
+        }
+
+        String fullFilename = CsvExporter.getOutputDirectory() + "/" + RESULTS_FILENAME + ".csv";
+        boolean writeHeader = !new File(fullFilename).exists();
+        String timestamp = DATE_FORMAT.format(new Date());
+
+        try (FileWriter writer = new FileWriter(fullFilename, java.nio.charset.StandardCharsets.UTF_8, true)) {
+            if (writeHeader) {
+                writer.write(RESULTS_HEADER);
+                writer.write("\n");
+            }
+            for (ProbeTarget t : targets) {
+                LatencyHistogram rtt = t.getRttHistogram();
+                writer.write(String.format(java.util.Locale.ROOT,
+                    "\"%s\",\"%s\",\"%s\",%d,%d,%d,%d,%d,%.4f,%.4f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                    timestamp, t.getType().toUpperCase(), t.getHost().replace("\"", "\"\""), t.getPort(),
+                    t.getProbesSent(), t.getProbesSucceeded(), t.getTimeouts(), t.getErrors(),
+                    t.getLossRate(), t.getTimeoutRate(), rtt.getMin() / 1e6, rtt.getPercentile(50) / 1e6,
+                    rtt.getPercentile(95) / 1e6, rtt.getPercentile(99) / 1e6, rtt.getMax() / 1e6,
+                    rtt.getMean() / 1e6));
+            }
+            System.out.println("Successfully exported " + targets.size() + " probe targets to " + fullFilename);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing probe results: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== Active Latency Prober ===");
+
+        List<ProbeTarget> targets = new ArrayList<>();
+        boolean local = false;
+        long intervalMs = 1000;
+        int timeoutMs = 1000;
+        int durationSeconds = 10;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--targets": targets.addAll(loadTargets(args[++i])); break;
+                    case "--interval": intervalMs = Long.parseLong(args[++i]); break;
+                    case "--timeout": timeoutMs = Integer.parseInt(args[++i]); break;
+                    case "--duration": durationSeconds = Integer.parseInt(args[++i]); break;
+                    case "--local": local = true; break;
+                    default: targets.add(ProbeTarget.parse(args[i])); break;
+                }
+            }
+            if (intervalMs <= 0 || timeoutMs <= 0) {
+                throw new IllegalArgumentException("--interval and --timeout must be greater than 0");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.out.println("Usage: LatencyProber [--local] [--targets file] [--interval ms] [--timeout ms]");
+            System.out.println("                     [--duration seconds] [tcp://host:port | udp://host:port ...]");
+            return;
+        }
+
+        List<ProbeTarget> results = new ArrayList<>();
+        if (local || targets.isEmpty()) {
+            results.addAll(runLocalProbes(durationSeconds, intervalMs, timeoutMs));
+        }
+        if (!targets.isEmpty()) {
+            results.addAll(runProbes(targets, durationSeconds, intervalMs, timeoutMs));
+        }
+
+        printResults(results);
+        exportResults(results);
+    }
+}
@@ -0,0 +1,284 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LiveFeedServer.java
+ *
+ * Streams the RollingWindowAggregator snapshots to dashboards as
+ * Server-Sent Events, one event per second while a capture runs:
+ *
+ *   GET /feed     text/event-stream; each event is "event: stats" with the
+ *                 snapshot JSON as data (pps, bps, 10 s and 60 s rates,
+ *                 protocol mix, top talkers, handshake RTT percentiles)
+ *   GET /latest   the last snapshot as a single JSON object, for clients
+ *                 that poll (e.g. a Power BI streaming dataset fed by a script)
+ *
+ * Every client has a one-snapshot mailbox and its own thread writing to
+ * the socket. The aggregator only replaces the snapshot in each mailbox,
+ * so a slow or stalled client never holds up the aggregator or the
+ * capture: it skips to the newest snapshot when it is ready again, and the
+ * skipped ones are counted as coalesced. Idle connections get a comment
+ * line every KEEPALIVE_MILLIS so proxies keep them open.
+ *
+ * The server binds to localhost unless another address is given.
+ */
+public class LiveFeedServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 9096;
+    static final int MAX_CLIENTS = 32;
+    static final long KEEPALIVE_MILLIS = 15_000;
+    private static final int RETRY_MILLIS = 2000; // Reconnect delay suggested to EventSource clients
+
+    private final RollingWindowAggregator aggregator;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final LongAdder clientsConnected = new LongAdder();
+    private final LongAdder clientsRejected = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder snapshotsCoalesced = new LongAdder();
+
+    /**
+     * Starts a server on localhost:port fed by the aggregator
+     * @throws IOException if the port cannot be bound
+     */
+    public LiveFeedServer(RollingWindowAggregator aggregator, int port) throws IOException {
+        this(aggregator, new InetSocketAddress("127.0.0.1", port));
+    }
+
+    /**
+     * @param address Address and port to bind (port 0 picks a free port)
+     */
+    public LiveFeedServer(RollingWindowAggregator aggregator, InetSocketAddress address) throws IOException {
+        this.aggregator = aggregator;
+        server = HttpServer.create(address, 0);
+        server.createContext("/feed", this::stream);
+        server.createContext("/latest", this::latest);
+        // Each feed client occupies a thread for as long as it is connected
+        executor = StatsHttpServer.newRequestExecutor("live-feed", MAX_CLIENTS + 2);
+        server.setExecutor(executor);
+        aggregator.addSnapshotListener(this::publish);
+        server.start();
+    }
+
+    /**
+     * Hands a snapshot to every client (called on the aggregator thread; never blocks on a socket)
+     */
+    private void publish(RollingWindowAggregator.Snapshot snapshot) {
+        for (Client client : clients) {
+            client.offer(snapshot);
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (closed || clients.size() >= MAX_CLIENTS) {
+                clientsRejected.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*"); // Dashboards served from elsewhere
+            exchange.sendResponseHeaders(200, 0);
+
+            Client client = new Client();
+            clients.add(client);
+            clientsConnected.increment();
+            try {
+                OutputStream out = exchange.getResponseBody();
+                write(out, "retry: " + RETRY_MILLIS + "\n\n");
+                RollingWindowAggregator.Snapshot snapshot = aggregator.getLatest();
+                while (!closed) {
+                    if (snapshot != null) {
+                        write(out, "id: " + snapshot.getTime() + "\nevent: stats\ndata: " + snapshot.toJson() + "\n\n");
+                        eventsSent.increment();
+                    } else {
+                        write(out, ": keepalive\n\n");
+                    }
+                    snapshot = client.take(KEEPALIVE_MILLIS);
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client went away (or the server is closing)
+            } finally {
+                clients.remove(client);
+                snapshotsCoalesced.add(client.coalesced);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void latest(HttpExchange exchange) throws IOException {
+        try {
+            RollingWindowAggregator.Snapshot snapshot = aggregator.getLatest();
+            if (snapshot == null) {
+                exchange.sendResponseHeaders(204, -1); // Nothing aggregated yet
+                return;
+            }
+            byte[] body = snapshot.toJson().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Mailbox of one connected client: holds only the newest snapshot not yet written
+     */
+    private static class Client {
+        private RollingWindowAggregator.Snapshot pending = null;
+        private long coalesced = 0;
+        private boolean closed = false;
+
+        synchronized void offer(RollingWindowAggregator.Snapshot snapshot) {
+            if (pending != null) {
+                coalesced++; // The client has not written the previous one yet
+            }
+            pending = snapshot;
+            notifyAll();
+        }
+
+        /**
+         * The next snapshot, or null if none arrived within the timeout
+         */
+        synchronized RollingWindowAggregator.Snapshot take(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (pending == null && !closed && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            RollingWindowAggregator.Snapshot snapshot = pending;
+            pending = null;
+            return snapshot;
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Disconnects the clients and stops the server (safe to call more than once)
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Client client : clients) {
+            client.close();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // Getters
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getAddress() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort();
+    }
+
+    public int getConnectedClients() {
+        return clients.size();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    /**
+     * Snapshots skipped because a client was still writing an earlier one
+     */
+    public long getSnapshotsCoalesced() {
+        long total = snapshotsCoalesced.sum();
+        for (Client client : clients) {
+            synchronized (client) {
+                total += client.coalesced;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Prints the live feed summary to the console
+     */
+    public void printSummary() {
+        System.out.println("\n=== LIVE FEED SERVER ===");
+        System.out.println("Endpoints: " + getAddress() + "/feed (Server-Sent Events), " + getAddress() + "/latest");
+        System.out.println("Snapshots published: " + aggregator.getSnapshotsPublished());
+        System.out.println("Clients: " + clientsConnected.sum() + " connected, " + clientsRejected.sum() + " rejected");
+        System.out.println("Events sent: " + getEventsSent());
+        System.out.println("Snapshots coalesced for slow clients: " + getSnapshotsCoalesced());
+    }
+
+    /**
+     * Replays a capture file in real time while streaming its rolling aggregates, to try dashboards
+     * Usage: LiveFeedServer [--port N] [--speed N] <captured_packets.csv | trace.pcap>
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        double speed = 1.0;
+        String file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--speed": speed = Double.parseDouble(args[++i]); break;
+                    default: file = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            file = null;
+        }
+        if (file == null) {
+            System.out.println("Usage: LiveFeedServer [--port N] [--speed N] <captured_packets.csv | trace.pcap>");
+            return;
+        }
+
+        System.out.println("=== Live Feed Server ===");
+        try (RollingWindowAggregator aggregator = new RollingWindowAggregator();
+             LiveFeedServer server = new LiveFeedServer(aggregator, port);
+             PacketRecordSource source = TraceReplayer.openSource(file, new String[0])) {
+            System.out.println("Streaming " + server.getAddress() + "/feed");
+            TraceReplayer replayer = new TraceReplayer(speed);
+            replayer.addListener(aggregator);
+            replayer.replay(source);
+            replayer.printReport();
+            server.printSummary();
+            System.out.println("Replay finished; still streaming (Ctrl+C to stop)");
+            new java.util.concurrent.CountDownLatch(1).await();
+        } catch (Exception e) {
+            System.err.println("Error streaming live feed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * LocalEchoServer.java
+ *
+ * A small NIO server bound to the loopback interface that provides:
+ * - a TCP echo port (every byte received is written back)
+ * - a TCP sink port (every byte received is discarded)
+ * - a UDP echo port (every datagram is sent back to its sender)
+ *
+ * All channels are served by a single selector thread so the server adds
+ * very little noise to the measurements taken against it.
+ */
+public class LocalEchoServer implements AutoCloseable {
+
+    private static final String LOOPBACK_ADDRESS = "127.0.0.1";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final Selector selector;
+    private final ServerSocketChannel tcpEchoChannel;
+    private final ServerSocketChannel tcpSinkChannel;
+    private final DatagramChannel udpEchoChannel;
+    private final ByteBuffer datagramBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer sinkBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a server on ephemeral loopback ports
+     */
+    public LocalEchoServer() throws IOException {
+        this(0, 0, 0);
+    }
+
+    /**
+     * Creates a server on the given loopback ports (0 picks a free port)
+     */
+    public LocalEchoServer(int tcpEchoPort, int tcpSinkPort, int udpEchoPort) throws IOException {
+        selector = Selector.open();
+
+        tcpEchoChannel = ServerSocketChannel.open();
+        tcpEchoChannel.bind(new InetSocketAddress(LOOPBACK_ADDRESS, tcpEchoPort), ACCEPT_BACKLOG);
+        tcpEchoChannel.configureBlocking(false);
+        tcpEchoChannel.register(selector, SelectionKey.OP_ACCEPT, Boolean.TRUE);
+
+        tcpSinkChannel = ServerSocketChannel.open();
+        tcpSinkChannel.bind(new InetSocketAddress(LOOPBACK_ADDRESS, tcpSinkPort), ACCEPT_BACKLOG);
+        tcpSinkChannel.configureBlocking(false);
+        tcpSinkChannel.register(selector, SelectionKey.OP_ACCEPT, Boolean.FALSE);
+
+        udpEchoChannel = DatagramChannel.open();
+        udpEchoChannel.bind(new InetSocketAddress(LOOPBACK_ADDRESS, udpEchoPort));
+        udpEchoChannel.configureBlocking(false);
+        udpEchoChannel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Starts the selector thread
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        selectorThread = new Thread(this::runSelectorLoop, "local-echo-server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public int getTcpEchoPort() {
+        return tcpEchoChannel.socket().getLocalPort();
+    }
+
+    public int getTcpSinkPort() {
+        return tcpSinkChannel.socket().getLocalPort();
+    }
+
+    public int getUdpEchoPort() {
+        return udpEchoChannel.socket().getLocalPort();
+    }
+
+    public String getAddress() {
+        return LOOPBACK_ADDRESS;
+    }
+
+    /**
+     * Main selector loop: accepts connections and services reads/writes
+     */
+    private void runSelectorLoop() {
+        while (running) {
+            try {
+                selector.select(500);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        handleKey(key);
+                    } catch (IOException e) {
+                        closeKey(key);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Echo server selector error: " + e.getMessage());
+                }
+            } catch (java.nio.channels.ClosedSelectorException e) {
+                return;
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            acceptConnection(key);
+        } else if (key.channel() == udpEchoChannel) {
+            echoDatagram();
+        } else if (key.attachment() instanceof ByteBuffer) {
+            serviceEchoConnection(key);
+        } else if (key.isReadable()) {
+            drainSinkConnection(key);
+        }
+    }
+
+    private void acceptConnection(SelectionKey key) throws IOException {
+        ServerSocketChannel server = (ServerSocketChannel) key.channel();
+        SocketChannel client = server.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        boolean echo = (Boolean) key.attachment();
+        // Echo connections carry their own buffer; sink connections share one
+        client.register(selector, SelectionKey.OP_READ, echo ? ByteBuffer.allocate(BUFFER_SIZE) : null);
+    }
+
+    private void serviceEchoConnection(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+
+        if (key.isReadable() && buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                closeKey(key);
+                return;
+            }
+        }
+
+        // Write back whatever has been read so far
+        buffer.flip();
+        channel.write(buffer);
+        buffer.compact();
+
+        // While data is unsent wait for writability only: reading stops until it has been written,
+        // so a client that does not read its echoes cannot make the selector spin on a full buffer
+        key.interestOps(buffer.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void drainSinkConnection(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        sinkBuffer.clear();
+        if (channel.read(sinkBuffer) < 0) {
+            closeKey(key);
+        }
+    }
+
+    private void echoDatagram() throws IOException {
+        datagramBuffer.clear();
+        SocketAddress sender = udpEchoChannel.receive(datagramBuffer);
+        if (sender != null) {
+            datagramBuffer.flip();
+            udpEchoChannel.send(datagramBuffer, sender);
+        }
+    }
+
+    private void closeKey(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Channel is already unusable
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes all channels
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing echo server: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (LocalEchoServer server = new LocalEchoServer(7007, 7009, 7007)) {
+            server.start();
+            System.out.println("=== Local Echo Server ===");
+            System.out.println("TCP echo: " + LOOPBACK_ADDRESS + ":" + server.getTcpEchoPort());
+            System.out.println("TCP sink: " + LOOPBACK_ADDRESS + ":" + server.getTcpSinkPort());
+            System.out.println("UDP echo: " + LOOPBACK_ADDRESS + ":" + server.getUdpEchoPort());
+            System.out.println("Press Ctrl+C to stop.");
+            Thread.currentThread().join();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * LoopbackMeasurement.java
+ *
+ * Holds the configuration and results of one active loopback measurement run
+ * performed by LoopbackTrafficGenerator.
+ */
+public class LoopbackMeasurement {
+
+    // Configuration
+    private final String protocol;
+    private final String mode;
+    private final int messageSize;
+    private final int concurrency;
+    private final int targetRatePerConnection;
+
+    // Results
+    private long durationMs;
+    private long messagesSent;
+    private long messagesReceived;
+    private long bytesSent;
+    private long bytesReceived;
+    private long errors;
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final LatencyHistogram connectHistogram = new LatencyHistogram();
+
+    public LoopbackMeasurement(String protocol, String mode, int messageSize,
+                               int concurrency, int targetRatePerConnection) {
+        this.protocol = protocol;
+        this.mode = mode;
+        this.messageSize = messageSize;
+        this.concurrency = concurrency;
+        this.targetRatePerConnection = targetRatePerConnection;
+    }
+
+    // Getters
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public int getMessageSize() {
+        return messageSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getTargetRatePerConnection() {
+        return targetRatePerConnection;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public LatencyHistogram getConnectHistogram() {
+        return connectHistogram;
+    }
+
+    // Result accumulation (called once per worker when it finishes)
+    synchronized void addWorkerTotals(long sent, long received, long bytesOut, long bytesIn, long errorCount) {
+        this.messagesSent += sent;
+        this.messagesReceived += received;
+        this.bytesSent += bytesOut;
+        this.bytesReceived += bytesIn;
+        this.errors += errorCount;
+    }
+
+    void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * Achieved throughput in megabits per second (payload sent plus received)
+     */
+    public double getThroughputMbps() {
+        if (durationMs <= 0) {
+            return 0;
+        }
+        return (bytesSent + bytesReceived) * 8.0 / 1_000_000.0 / (durationMs / 1000.0);
+    }
+
+    /**
+     * Achieved message rate across all connections
+     */
+    public double getMessagesPerSecond() {
+        if (durationMs <= 0) {
+            return 0;
+        }
+        return messagesSent / (durationMs / 1000.0);
+    }
+
+    /**
+     * Fraction of request messages with no matching response, for both echo modes: lost or timed-out
+     * datagrams for UDP, requests whose connection failed before the echo arrived for TCP (0 in sink mode)
+     */
+    public double getLossRate() {
+        if (!"echo".equals(mode) || messagesSent == 0) {
+            return 0;
+        }
+        return (double) (messagesSent - messagesReceived) / messagesSent;
+    }
+
+    /**
+     * Returns a compact string representation for logging
+     */
+    public String toCompactString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s %s size=%d conc=%d rate=%s: %.2f Mbps, %.0f msg/s, errors=%d",
+                                protocol, mode, messageSize, concurrency,
+                                targetRatePerConnection > 0 ? targetRatePerConnection + "/s" : "max",
+                                getThroughputMbps(), getMessagesPerSecond(), errors));
+        if ("echo".equals(mode)) {
+            sb.append(String.format(", loss=%.2f%%", getLossRate() * 100));
+            sb.append("\n    RTT: ").append(latencyHistogram.toSummaryString());
+        }
+        if (connectHistogram.getCount() > 0) {
+            sb.append("\n    Connect: ").append(connectHistogram.toSummaryString());
+        }
+        return sb.toString();
+    }
+}
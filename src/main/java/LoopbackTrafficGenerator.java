@@ -0,0 +1,429 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoopbackTrafficGenerator.java
+ *
+ * Active measurement mode that puts real bytes on the loopback interface.
+ * Unlike the simulators, which only fabricate PacketRecord objects, this
+ * program opens TCP and UDP connections to a built-in LocalEchoServer and
+ * measures:
+ * - achieved throughput (Mbps and messages/s)
+ * - request/response latency histograms (echo mode)
+ * - TCP connection setup times (connect mode and per-connection setup)
+ *
+ * Supported modes:
+ *   tcp echo    - request/response round trips over persistent connections
+ *   tcp sink    - one-way streaming for raw throughput
+ *   tcp connect - repeated connect/close cycles for setup latency
+ *   udp echo    - datagram round trips with loss/timeout accounting
+ *
+ * Results are appended to output/loopback_measurements.csv, next to the
+ * passive capture export.
+ */
+public class LoopbackTrafficGenerator {
+
+    private static final String RESULTS_FILENAME = "loopback_measurements";
+    private static final String RESULTS_HEADER = "Timestamp,Protocol,Mode,MessageSize,Concurrency,TargetRate,DurationMs," +
+        "MessagesSent,MessagesReceived,BytesSent,BytesReceived,ThroughputMbps,MessagesPerSecond,LossRate," +
+        "RttP50Ms,RttP95Ms,RttP99Ms,RttMaxMs,ConnectP50Ms,ConnectP99Ms,Errors";
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final int UDP_TIMEOUT_MS = 200;
+    private static final int MAX_UDP_PAYLOAD = 65507;
+    private static final int MAX_TCP_ECHO_SIZE = 64 * 1024;
+
+    // Defaults used when no arguments are given
+    private static final int DEFAULT_MESSAGE_SIZE = 512;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_DURATION_SECONDS = 5;
+
+    public static void main(String[] args) {
+        System.out.println("=== Loopback Traffic Generator ===");
+
+        String protocol = "all";
+        String mode = null;
+        int messageSize = DEFAULT_MESSAGE_SIZE;
+        int concurrency = DEFAULT_CONCURRENCY;
+        int rate = 0;
+        int durationSeconds = DEFAULT_DURATION_SECONDS;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--protocol": protocol = args[++i].toLowerCase(); break;
+                    case "--mode": mode = args[++i].toLowerCase(); break;
+                    case "--size": messageSize = Integer.parseInt(args[++i]); break;
+                    case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                    case "--rate": rate = Integer.parseInt(args[++i]); break;
+                    case "--duration": durationSeconds = Integer.parseInt(args[++i]); break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+        } catch (RuntimeException e) {
+            printUsage();
+            return;
+        }
+
+        List<LoopbackMeasurement> results;
+        if ("all".equals(protocol)) {
+            results = runDefaultSuite(messageSize, concurrency, rate, durationSeconds);
+        } else {
+            results = new ArrayList<>();
+            try (LocalEchoServer server = new LocalEchoServer()) {
+                server.start();
+                results.add(runMeasurement(server, protocol, mode == null ? "echo" : mode,
+                                           messageSize, concurrency, rate, durationSeconds));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Measurement failed: " + e.getMessage());
+                return;
+            }
+        }
+
+        printResults(results);
+        exportResults(results);
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: LoopbackTrafficGenerator [--protocol tcp|udp|all] [--mode echo|sink|connect]");
+        System.out.println("                                [--size bytes] [--concurrency n] [--rate msgs/s per connection]");
+        System.out.println("                                [--duration seconds]");
+    }
+
+    /**
+     * Runs TCP echo, TCP sink, TCP connect and UDP echo measurements against a fresh local server
+     * @return List of measurement results (empty if the server could not be started)
+     */
+    public static List<LoopbackMeasurement> runDefaultSuite(int messageSize, int concurrency,
+                                                            int rate, int durationSeconds) {
+        List<LoopbackMeasurement> results = new ArrayList<>();
+        try (LocalEchoServer server = new LocalEchoServer()) {
+            server.start();
+            System.out.println("Local echo server listening on " + server.getAddress() +
+                             " (tcp echo " + server.getTcpEchoPort() + ", tcp sink " + server.getTcpSinkPort() +
+                             ", udp echo " + server.getUdpEchoPort() + ")\n");
+
+            results.add(runMeasurement(server, "tcp", "echo", messageSize, concurrency, rate, durationSeconds));
+            results.add(runMeasurement(server, "tcp", "sink", messageSize, concurrency, rate, durationSeconds));
+            results.add(runMeasurement(server, "tcp", "connect", messageSize, concurrency, rate, durationSeconds));
+            results.add(runMeasurement(server, "udp", "echo", messageSize, concurrency, rate, durationSeconds));
+        } catch (IOException e) {
+            System.err.println("Error starting local echo server: " + e.getMessage());
+        }
+        return results;
+    }
+
+    /**
+     * Runs a single measurement against the given server
+     * @param protocol "tcp" or "udp"
+     * @param mode "echo", "sink" or "connect" (udp supports echo only)
+     * @param messageSize Payload size per message in bytes
+     * @param concurrency Number of parallel connections
+     * @param rate Target messages per second per connection (0 = as fast as possible)
+     * @param durationSeconds How long to drive traffic
+     * @return The filled-in measurement
+     */
+    public static LoopbackMeasurement runMeasurement(LocalEchoServer server, String protocol, String mode,
+                                                     int messageSize, int concurrency, int rate,
+                                                     int durationSeconds) {
+        validate(protocol, mode, messageSize, concurrency);
+
+        LoopbackMeasurement measurement = new LoopbackMeasurement(protocol, mode, messageSize, concurrency, rate);
+        System.out.println("Running " + protocol + " " + mode + " for " + durationSeconds + "s...");
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        long durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (int i = 0; i < concurrency; i++) {
+            pool.execute(() -> {
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long deadline = System.nanoTime() + durationNanos;
+                if ("udp".equals(protocol)) {
+                    runUdpEchoWorker(server, measurement, deadline);
+                } else if ("connect".equals(mode)) {
+                    runTcpConnectWorker(server, measurement, deadline);
+                } else {
+                    runTcpStreamWorker(server, measurement, deadline);
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        startSignal.countDown();
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(durationSeconds + 30L, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        measurement.setDurationMs(System.currentTimeMillis() - start);
+        return measurement;
+    }
+
+    private static void validate(String protocol, String mode, int messageSize, int concurrency) {
+        if (!"tcp".equals(protocol) && !"udp".equals(protocol)) {
+            throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        }
+        if (!"echo".equals(mode) && !"sink".equals(mode) && !"connect".equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        if ("udp".equals(protocol) && !"echo".equals(mode)) {
+            throw new IllegalArgumentException("UDP supports echo mode only");
+        }
+        // Echo requests are written in full before the reply is read, so they must fit in socket buffers
+        int maxSize = "udp".equals(protocol) ? MAX_UDP_PAYLOAD : "echo".equals(mode) ? MAX_TCP_ECHO_SIZE : Integer.MAX_VALUE;
+        if (messageSize < 8 || messageSize > maxSize) {
+            throw new IllegalArgumentException("Invalid message size: " + messageSize);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+    }
+
+    /**
+     * Persistent TCP connection driving echo round trips or one-way sink traffic
+     */
+    private static void runTcpStreamWorker(LocalEchoServer server, LoopbackMeasurement measurement, long deadline) {
+        boolean echo = "echo".equals(measurement.getMode());
+        int port = echo ? server.getTcpEchoPort() : server.getTcpSinkPort();
+        int size = measurement.getMessageSize();
+        long interval = intervalNanos(measurement.getTargetRatePerConnection());
+        long sent = 0, received = 0, errors = 0;
+
+        long connectStart = System.nanoTime();
+        try (SocketChannel channel = SocketChannel.open()) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(server.getAddress(), port));
+            measurement.getConnectHistogram().record(System.nanoTime() - connectStart);
+
+            ByteBuffer request = createPayload(size);
+            ByteBuffer response = ByteBuffer.allocate(size);
+            long nextSend = System.nanoTime();
+
+            while (true) {
+                long sendStart = pace(nextSend, interval);
+                if (sendStart >= deadline) {
+                    break;
+                }
+
+                request.clear();
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+                sent++;
+
+                if (echo) {
+                    response.clear();
+                    while (response.hasRemaining()) {
+                        if (channel.read(response) < 0) {
+                            throw new EOFException("Echo server closed the connection");
+                        }
+                    }
+                    received++;
+                    // Measured from the scheduled send time so a stalled response
+                    // is not hidden by the next request being sent late
+                    measurement.getLatencyHistogram().record(System.nanoTime() - sendStart);
+                }
+                nextSend = sendStart + interval;
+            }
+        } catch (IOException e) {
+            errors++;
+        }
+        measurement.addWorkerTotals(sent, received, sent * size, received * size, errors);
+    }
+
+    /**
+     * Repeated connect/close cycles measuring TCP connection setup time
+     */
+    private static void runTcpConnectWorker(LocalEchoServer server, LoopbackMeasurement measurement, long deadline) {
+        InetSocketAddress target = new InetSocketAddress(server.getAddress(), server.getTcpSinkPort());
+        long interval = intervalNanos(measurement.getTargetRatePerConnection());
+        long connections = 0, errors = 0;
+        long nextConnect = System.nanoTime();
+
+        while (true) {
+            long start = pace(nextConnect, interval);
+            if (start >= deadline) {
+                break;
+            }
+            try (SocketChannel channel = SocketChannel.open()) {
+                channel.connect(target);
+                measurement.getConnectHistogram().record(System.nanoTime() - start);
+                connections++;
+            } catch (IOException e) {
+                errors++;
+            }
+            nextConnect = start + interval;
+        }
+        measurement.addWorkerTotals(connections, connections, 0, 0, errors);
+    }
+
+    /**
+     * UDP echo round trips; datagrams carry a sequence number so late replies
+     * to timed-out requests are not mistaken for the current one
+     */
+    private static void runUdpEchoWorker(LocalEchoServer server, LoopbackMeasurement measurement, long deadline) {
+        int size = measurement.getMessageSize();
+        long interval = intervalNanos(measurement.getTargetRatePerConnection());
+        long sent = 0, received = 0, errors = 0;
+
+        try (DatagramChannel channel = DatagramChannel.open();
+             Selector selector = Selector.open()) {
+            channel.connect(new InetSocketAddress(server.getAddress(), server.getUdpEchoPort()));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+
+            ByteBuffer request = createPayload(size);
+            ByteBuffer response = ByteBuffer.allocate(size);
+            long nextSend = System.nanoTime();
+
+            while (true) {
+                long sendStart = pace(nextSend, interval);
+                if (sendStart >= deadline) {
+                    break;
+                }
+
+                long sequence = sent;
+                request.clear();
+                request.putLong(0, sequence);
+                channel.write(request);
+                sent++;
+
+                long timeoutAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(UDP_TIMEOUT_MS);
+                boolean matched = false;
+                while (!matched) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(timeoutAt - System.nanoTime());
+                    if (remainingMs <= 0 || selector.select(remainingMs) == 0) {
+                        break; // timed out, counted as lost
+                    }
+                    selector.selectedKeys().clear();
+                    response.clear();
+                    while (channel.read(response) > 0) {
+                        if (response.position() >= 8 && response.getLong(0) == sequence) {
+                            matched = true;
+                            break;
+                        }
+                        response.clear();
+                    }
+                }
+
+                if (matched) {
+                    received++;
+                    measurement.getLatencyHistogram().record(System.nanoTime() - sendStart);
+                }
+                nextSend = sendStart + interval;
+            }
+        } catch (IOException e) {
+            errors++;
+        }
+        measurement.addWorkerTotals(sent, received, sent * size, received * size, errors);
+    }
+
+    private static long intervalNanos(int ratePerSecond) {
+        return ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+    }
+
+    /**
+     * Waits until the scheduled time (when rate limited) and returns the send timestamp
+     */
+    private static long pace(long scheduled, long interval) {
+        if (interval == 0) {
+            return System.nanoTime();
+        }
+        long wait = scheduled - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return scheduled;
+    }
+
+    private static ByteBuffer createPayload(int size) {
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            payload.put((byte) ('a' + i % 26));
+        }
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * Prints measurement results to the console
+     */
+    public static void printResults(List<LoopbackMeasurement> results) {
+        System.out.println("\n=== LOOPBACK MEASUREMENT RESULTS ===");
+        for (LoopbackMeasurement result : results) {
+            System.out.println("  " + result.toCompactString());
+        }
+    }
+
+    /**
+     * Appends measurement results to output/loopback_measurements.csv
+     * @param results Measurements to export
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean exportResults(List<LoopbackMeasurement> results) {
+        if (results == null || results.isEmpty()) {
+            System.out.println("No loopback measurements to export.");
+            return false;
+        }
+        if (!CsvExporter.createOutputDirectory()) {
+            return false;
+        }
+
+        String fullFilename = CsvExporter.getOutputDirectory() + "/" + RESULTS_FILENAME + ".csv";
+        boolean writeHeader = !new File(fullFilename).exists();
+        String timestamp = DATE_FORMAT.format(new Date());
+
+        try (FileWriter writer = new FileWriter(fullFilename, java.nio.charset.StandardCharsets.UTF_8, true)) {
+            if (writeHeader) {
+                writer.write(RESULTS_HEADER);
+                writer.write("\n");
+            }
+            for (LoopbackMeasurement m : results) {
+                LatencyHistogram rtt = m.getLatencyHistogram();
+                LatencyHistogram connect = m.getConnectHistogram();
+                writer.write(String.format(java.util.Locale.ROOT,
+                    "\"%s\",\"%s\",\"%s\",%d,%d,%d,%d,%d,%d,%d,%d,%.3f,%.1f,%.4f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d\n",
+                    timestamp, m.getProtocol().toUpperCase(), m.getMode(), m.getMessageSize(), m.getConcurrency(),
+                    m.getTargetRatePerConnection(), m.getDurationMs(), m.getMessagesSent(), m.getMessagesReceived(),
+                    m.getBytesSent(), m.getBytesReceived(), m.getThroughputMbps(), m.getMessagesPerSecond(),
+                    m.getLossRate(), rtt.getPercentile(50) / 1e6, rtt.getPercentile(95) / 1e6,
+                    rtt.getPercentile(99) / 1e6, rtt.getMax() / 1e6, connect.getPercentile(50) / 1e6,
+                    connect.getPercentile(99) / 1e6, m.getErrors()));
+            }
+            System.out.println("Successfully exported " + results.size() + " loopback measurements to " + fullFilename);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing loopback measurements: " + e.getMessage());
+            return false;
+        }
+    }
+}
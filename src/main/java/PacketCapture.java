@@ -25,17 +25,62 @@ public class PacketCapture {
     
     private static net.sourceforge.jpcap.capture.PacketCapture pcap;
     private static int packetCount = 0;
-    private static final int CAPTURE_DURATION_MINUTES = 2; // Capture for 2 minutes
-    private static final int CAPTURE_DURATION_MS = CAPTURE_DURATION_MINUTES * 60 * 1000; // Convert to milliseconds
+    // Live metrics (JMX PacketAnalyzer:type=CaptureMetrics) instead of printing on the packet path
+    private static final CaptureMetrics metrics = CaptureMetrics.get();
+    private static final java.util.concurrent.atomic.LongAdder packetsReceived =
+        metrics.counter(CaptureMetrics.PACKETS_RECEIVED);
+    private static final java.util.concurrent.atomic.LongAdder packetsProcessed =
+        metrics.counter(CaptureMetrics.PACKETS_PROCESSED);
+    private static final java.util.concurrent.atomic.LongAdder packetsDropped =
+        metrics.counter(CaptureMetrics.PACKETS_DROPPED);
+    private static final java.util.concurrent.atomic.LongAdder bytesReceived =
+        metrics.counter(CaptureMetrics.BYTES_RECEIVED);
+    private static final int DEFAULT_CAPTURE_DURATION_MINUTES = 2; // Capture for 2 minutes by default
+    private static int captureDurationMinutes = DEFAULT_CAPTURE_DURATION_MINUTES; // 0 = until Ctrl+C
     private static List<PacketRecord> packetRecords = new ArrayList<>();
+    private static final List<PacketRecordListener> sinks = new ArrayList<>(); // Fed every record, in the order added
+    private static boolean bufferInMemory = true; // False once a sink writes the records out instead
+    private static RollingCsvWriter rollingWriter = null; // Set with --rolling for always-on capture
+    private static boolean gzipExport = false; // Set with --gzip: compressed segments or captured_packets.csv.gz
+    private static RetentionManager retentionManager = null; // Set with --rolling --tiered-retention
+    private static ColumnarCaptureWriter columnarWriter = null; // Set with --columnar
+    private static SegmentedCaptureStore captureStore = null; // Set with --store for crash-safe capture
+    private static FlightRecorderBuffer flightRecorder = null; // Set with --flight-recorder
+    private static PartitionedExporter partitionedExporter = null; // Set with --partitioned
+    private static StarSchemaExporter starExporter = null; // Set with --star
+    private static JdbcSink databaseSink = null; // Set with --jdbc <url>
+    private static StatsHttpServer statsServer = null; // Set with --http-port N
+    private static RollingWindowAggregator rollingAggregator = null; // Set with --feed-port N or --alerts
+    private static LiveFeedServer feedServer = null; // Set with --feed-port N
+    private static AlertEngine alertEngine = null; // Set with --alerts
+    private static boolean flightRecording = false; // Set with --jfr
+    private static ProcessingCostTracker costTracker = null; // Set with --cost
     private static String[] localIPs = null;
     private static Timer captureTimer;
-    private static boolean isCapturing = false;
+    private static volatile boolean isCapturing = false; // Cleared by stopCapture on the timer thread
+    private static long captureStartMillis = 0; // When the live capture started, for the observed rate
     
     public static void main(String[] args) {
+        // Re-analyse a stored capture instead of capturing live traffic
+        if (args.length > 0 && "--replay".equals(args[0])) {
+            replayCapture(args);
+            return;
+        }
+        
+        if (!parseCaptureOptions(args)) {
+            return;
+        }
+        
         try {
             System.out.println("=== Live Packet Capture ===");
-            System.out.println("Starting packet capture for " + CAPTURE_DURATION_MINUTES + " minutes...\n");
+            if (metrics.register()) {
+                System.out.println("Live metrics: JMX " + CaptureMetrics.OBJECT_NAME + " (jconsole, or CaptureMetrics <host:port>)");
+            }
+            if (captureDurationMinutes > 0) {
+                System.out.println("Starting packet capture for " + captureDurationMinutes + " minutes...\n");
+            } else {
+                System.out.println("Starting packet capture until stopped (Ctrl+C)...\n");
+            }
             
             // Get local machine IP addresses for direction detection
             localIPs = getLocalIPAddresses();
@@ -90,41 +135,50 @@ public class PacketCapture {
             // Add a listener to process captured packets
             pcap.addPacketListener(new PacketListener() {
                 public void packetArrived(Packet packet) {
+                    packetsReceived.increment();
                     if (!isCapturing) {
+                        packetsDropped.increment();
                         return; // Ignore packets if capture has stopped
                     }
                     
-                    packetCount++;
-                    
                     // Create a new PacketRecord for this packet
-                    PacketRecord record = processPacket(packet);
-                    
-                    // Store the record in our list
-                    packetRecords.add(record);
-                    
-                    // Print the packet details (every 10th packet to reduce spam)
-                    if (packetCount % 10 == 0) {
-                        System.out.println("--- Packet #" + packetCount + " ---");
-                        System.out.println(record.toCompactString());
+                    if (costTracker == null) {
+                        recordArrived(processPacket(packet));
+                        return;
                     }
+                    ProcessingCostTracker.Stage decode = costTracker.stage("decode");
+                    decode.begin();
+                    PacketRecord record = processPacket(packet);
+                    decode.end(1);
+                    ProcessingCostTracker.Stage output = costTracker.stage("output");
+                    output.begin();
+                    recordArrived(record);
+                    output.end(1);
                 }
             });
             
             // Set up timer to stop capture after specified duration
             captureTimer = new Timer();
-            captureTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    stopCapture();
-                }
-            }, CAPTURE_DURATION_MS);
+            if (captureDurationMinutes > 0) {
+                captureTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        stopCapture();
+                    }
+                }, captureDurationMinutes * 60L * 1000L);
+            }
             
             // Start capturing packets
+            if (flightRecording) {
+                startFlightRecording();
+            }
+            captureStartMillis = System.currentTimeMillis();
             isCapturing = true;
             System.out.println("Capture started at: " + new Date());
             System.out.println("Capturing packets... (Press Ctrl+C to stop early)\n");
             
-            pcap.capture(-1); // -1 means capture indefinitely
+            pcap.capture(-1); // -1 means capture until stopCapture ends the loop
+            finishCapture();
             
         } catch (Exception e) {
             System.err.println("Error capturing packets:");
@@ -142,17 +196,485 @@ public class PacketCapture {
     }
     
     /**
-     * Stops the packet capture and processes the results
+     * Adds a decoded record to the capture results (shared by live capture and replay)
+     */
+    private static void recordArrived(PacketRecord record) {
+        packetCount++;
+        
+        // Stream the record to the output sinks and live views, and keep it in our list unless a sink writes it out
+        for (PacketRecordListener sink : sinks) {
+            sink.recordArrived(record);
+        }
+        if (bufferInMemory) {
+            packetRecords.add(record);
+        }
+        packetsProcessed.increment();
+        bytesReceived.add(record.getPacketLength());
+    }
+    
+    /**
+     * Feeds every captured record to a sink
+     * @param sink The sink, fed after those added before it
+     * @param writesRecords true if the sink writes the records out, so they are no longer kept in memory
+     */
+    private static void addSink(PacketRecordListener sink, boolean writesRecords) {
+        sinks.add(sink);
+        if (writesRecords) {
+            bufferInMemory = false;
+        }
+    }
+    
+    /**
+     * Parses the live capture options
+     * Usage: PacketCapture [--duration <minutes>] [--rolling [--segment-mb N] [--segment-minutes N] [--keep N]
+     *                      [--tiered-retention]] [--gzip] [--columnar] [--index] [--validate]
+     *                      [--store [--no-sync]] [--flight-recorder [--ring-mb N]] [--partitioned] [--star] [--jdbc <url>] [--http-port N] [--feed-port N] [--alerts] [--jfr] [--cost]
+     * @return false if the options are invalid or the rolling output cannot be opened
+     */
+    private static boolean parseCaptureOptions(String[] args) {
+        boolean rolling = false;
+        long segmentBytes = RollingCsvWriter.DEFAULT_SEGMENT_BYTES;
+        long segmentMillis = RollingCsvWriter.DEFAULT_SEGMENT_MILLIS;
+        int keepSegments = 0;
+        boolean tiered = false;
+        boolean columnar = false;
+        boolean validate = false;
+        boolean store = false;
+        boolean sync = true;
+        boolean flight = false;
+        long ringBytes = FlightRecorderBuffer.DEFAULT_RING_BYTES;
+        boolean partitioned = false;
+        boolean star = false;
+        String jdbcUrl = null;
+        int httpPort = -1;
+        int feedPort = -1;
+        boolean alerts = false;
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--duration": captureDurationMinutes = Integer.parseInt(args[++i]); break;
+                    case "--rolling": rolling = true; break;
+                    case "--segment-mb": segmentBytes = Long.parseLong(args[++i]) * 1024 * 1024; break;
+                    case "--segment-minutes": segmentMillis = Long.parseLong(args[++i]) * 60 * 1000; break;
+                    case "--keep": keepSegments = Integer.parseInt(args[++i]); break;
+                    case "--gzip": gzipExport = true; break;
+                    case "--tiered-retention": tiered = true; break;
+                    case "--columnar": columnar = true; break;
+                    case "--index": CsvExporter.setWriteIndexes(true); break;
+                    case "--validate": validate = true; break;
+                    case "--store": store = true; break;
+                    case "--no-sync": sync = false; break;
+                    case "--flight-recorder": flight = true; break;
+                    case "--ring-mb": ringBytes = Long.parseLong(args[++i]) * 1024 * 1024; break;
+                    case "--partitioned": partitioned = true; break;
+                    case "--star": star = true; break;
+                    case "--jdbc": jdbcUrl = args[++i]; break;
+                    case "--http-port": httpPort = Integer.parseInt(args[++i]); break;
+                    case "--feed-port": feedPort = Integer.parseInt(args[++i]); break;
+                    case "--alerts": alerts = true; break;
+                    case "--jfr": flightRecording = true; break;
+                    case "--cost": costTracker = new ProcessingCostTracker(); break;
+                    default:
+                        System.out.println("Unknown option: " + args[i]);
+                        return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: PacketCapture [--duration <minutes, 0 = until Ctrl+C>] " +
+                             "[--rolling [--segment-mb N] [--segment-minutes N] [--keep N] [--tiered-retention]] [--gzip] [--columnar] [--index] [--validate] " +
+                             "[--store [--no-sync]] [--flight-recorder [--ring-mb N]] [--partitioned] [--star] [--jdbc <url>] [--http-port N] [--feed-port N] [--alerts] [--jfr] [--cost]");
+            return false;
+        }
+        
+        if (rolling) {
+            try {
+                rollingWriter = new RollingCsvWriter("captured_packets", segmentBytes, segmentMillis);
+                rollingWriter.setRetention(keepSegments, 0);
+                rollingWriter.setCompressed(gzipExport);
+                if (validate) {
+                    rollingWriter.setValidator(new CsvValidator());
+                }
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening rolling CSV output: " + e.getMessage());
+                return false;
+            }
+            addSink(rollingWriter, true);
+            // Complete the open segment when the capture is stopped with Ctrl+C
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closeRollingWriter));
+            System.out.println("Rolling CSV output: segments of " + (segmentBytes / (1024 * 1024)) + " MB / " +
+                             (segmentMillis / 60000) + " minutes in " + CsvExporter.getOutputDirectory() + "/");
+        }
+        if (validate) {
+            // Checked as written: rolling segments, or the CSV exports at the end of the capture
+            if (rollingWriter == null) {
+                CsvExporter.setInlineValidator(new CsvValidator());
+            }
+            System.out.println("Inline CSV validation: on");
+        }
+        if (tiered) {
+            if (rollingWriter == null) {
+                System.out.println("--tiered-retention needs --rolling");
+                return false;
+            }
+            try {
+                retentionManager = new RetentionManager(rollingWriter);
+                if (new java.io.File(RetentionManager.DEFAULT_POLICY_FILE).exists()) {
+                    retentionManager.loadPolicy(RetentionManager.DEFAULT_POLICY_FILE);
+                }
+            } catch (java.io.IOException e) {
+                System.err.println("Error setting up tiered retention: " + e.getMessage());
+                return false;
+            }
+            retentionManager.start(RetentionManager.DEFAULT_INTERVAL_MILLIS);
+            System.out.println("Tiered retention: " + retentionManager.describePolicy() + " (" +
+                             retentionManager.getDirectory() + "/)");
+        }
+        
+        if (columnar) {
+            String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            String filename = CsvExporter.getOutputDirectory() + "/captured_packets_" + timestamp + ".pcol";
+            try {
+                if (!CsvExporter.createOutputDirectory()) {
+                    return false;
+                }
+                columnarWriter = new ColumnarCaptureWriter(filename);
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening columnar output: " + e.getMessage());
+                return false;
+            }
+            addSink(columnarWriter, true);
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closeColumnarWriter));
+            System.out.println("Columnar output: " + filename);
+        }
+        
+        if (store) {
+            try {
+                captureStore = new SegmentedCaptureStore();
+                captureStore.setGroupCommit(SegmentedCaptureStore.DEFAULT_BATCH_RECORDS, sync);
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening capture store: " + e.getMessage());
+                return false;
+            }
+            addSink(captureStore, true);
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closeCaptureStore));
+            System.out.println("Capture store: " + captureStore.getDirectory() + " (committed every second" +
+                             (sync ? ", fsync on commit)" : ")"));
+            if (captureStore.getSegmentsRecovered() > 0) {
+                System.out.println("Recovered previous capture: truncated " + captureStore.getRecoveredBytesTruncated() +
+                                 " bytes of incomplete batches");
+            }
+        }
+        
+        if (flight) {
+            try {
+                flightRecorder = new FlightRecorderBuffer(CsvExporter.getOutputDirectory() + "/flight_recorder.ring", ringBytes);
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening flight recorder: " + e.getMessage());
+                return false;
+            }
+            addSink(flightRecorder, false); // Keeps a recent window only, so the capture is still exported
+            // Dump the window on a burst of resets (e.g. a port scan or a failing service)
+            flightRecorder.addThresholdTrigger("rst_burst",
+                record -> record.getTcpFlags() != null && record.getTcpFlags().contains("RST"), 200, 10_000);
+            System.out.println("Flight recorder: last " + flightRecorder.getCapacity() + " packets in " +
+                             flightRecorder.getFilename());
+            System.out.println("  Dump with: java -cp classes FlightRecorderBuffer --trigger");
+        }
+        
+        if (partitioned) {
+            try {
+                partitionedExporter = new PartitionedExporter();
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening partitioned output: " + e.getMessage());
+                return false;
+            }
+            addSink(partitionedExporter, true);
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closePartitionedExporter));
+            System.out.println("Partitioned output: " + partitionedExporter.getDirectory() +
+                             "/date=.../hour=.../protocol=.../ (manifest " + partitionedExporter.getManifestPath() + ")");
+        }
+        
+        if (star) {
+            try {
+                starExporter = new StarSchemaExporter();
+            } catch (java.io.IOException e) {
+                System.err.println("Error opening star schema output: " + e.getMessage());
+                return false;
+            }
+            addSink(starExporter, true);
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closeStarExporter));
+            System.out.println("Star schema output: " + starExporter.getDirectory() + "/" +
+                             StarSchemaExporter.FACT_FILE + " + dim_*.csv");
+        }
+        
+        if (jdbcUrl != null) {
+            try {
+                databaseSink = new JdbcSink(jdbcUrl);
+            } catch (java.sql.SQLException e) {
+                System.err.println("Error opening database: " + e.getMessage());
+                return false;
+            }
+            addSink(databaseSink, true);
+            Runtime.getRuntime().addShutdownHook(new Thread(PacketCapture::closeDatabaseSink));
+            System.out.println("Database output: " + jdbcUrl + " (batches of " + JdbcSink.DEFAULT_BATCH_ROWS +
+                             " packets, commit every " + JdbcSink.DEFAULT_COMMIT_ROWS + " rows)");
+        }
+        
+        if (httpPort >= 0) {
+            try {
+                statsServer = new StatsHttpServer(httpPort);
+            } catch (java.io.IOException e) {
+                System.err.println("Error starting stats HTTP server: " + e.getMessage());
+                return false;
+            }
+            addSink(statsServer, false);
+            System.out.println("Live stats: " + statsServer.getAddress() + "/stats (JSON), " +
+                             statsServer.getAddress() + "/metrics (Prometheus)");
+        }
+        
+        if (feedPort >= 0 || alerts) {
+            rollingAggregator = new RollingWindowAggregator();
+            addSink(rollingAggregator, false);
+        }
+        if (feedPort >= 0) {
+            try {
+                feedServer = new LiveFeedServer(rollingAggregator, feedPort);
+            } catch (java.io.IOException e) {
+                rollingAggregator.close();
+                System.err.println("Error starting live feed server: " + e.getMessage());
+                return false;
+            }
+            System.out.println("Live feed: " + feedServer.getAddress() + "/feed (Server-Sent Events, one per second)");
+        }
+        if (alerts) {
+            try {
+                alertEngine = AlertEngine.fromFile(AlertEngine.DEFAULT_RULES_FILE);
+            } catch (java.io.IOException | IllegalArgumentException e) {
+                rollingAggregator.close();
+                System.err.println("Error setting up alerts: " + e.getMessage());
+                return false;
+            }
+            rollingAggregator.addSnapshotListener(alertEngine::evaluate);
+            System.out.println("Alerts: " + alertEngine.getRuleCount() + " rules from " +
+                             (new java.io.File(AlertEngine.DEFAULT_RULES_FILE).exists() ? AlertEngine.DEFAULT_RULES_FILE : "defaults") +
+                             ", written to " + alertEngine.getLogFile() +
+                             (alertEngine.getWebhookUrl() != null ? " and " + alertEngine.getWebhookUrl() : ""));
+        }
+        return true;
+    }
+    
+    /**
+     * Completes the current rolling segment (safe to call more than once)
+     */
+    private static void closeRollingWriter() {
+        if (rollingWriter != null) {
+            try {
+                rollingWriter.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing rolling CSV output: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Writes the remaining rows and the footer of the columnar capture (safe to call more than once)
+     */
+    private static void closeColumnarWriter() {
+        if (columnarWriter != null) {
+            try {
+                columnarWriter.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing columnar output: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Commits the pending records and seals the current store segment (safe to call more than once)
+     */
+    private static void closeCaptureStore() {
+        if (captureStore != null) {
+            try {
+                captureStore.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing capture store: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Completes the open partition files (safe to call more than once)
+     */
+    private static void closePartitionedExporter() {
+        if (partitionedExporter != null) {
+            try {
+                partitionedExporter.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing partitioned output: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Flushes and closes the star schema files (safe to call more than once)
+     */
+    private static void closeStarExporter() {
+        if (starExporter != null) {
+            try {
+                starExporter.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing star schema output: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Writes the queued packets, flows and rollups and closes the database connection (safe to call more than once)
+     */
+    private static void closeDatabaseSink() {
+        if (databaseSink != null) {
+            try {
+                databaseSink.close();
+            } catch (java.sql.SQLException e) {
+                System.err.println("Error closing database output: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Replays a stored capture through the same summary and export steps as a live capture; the
+     * packets are exported to replay_<source>.csv so the last live capture's export (and the
+     * replayed file itself) are left as they are
+     * Usage: PacketCapture --replay <captured_packets.csv | trace.pcap> [--speed N | --asap] [--jfr] [--cost]
+     */
+    private static void replayCapture(String[] args) {
+        String usage = "Usage: PacketCapture --replay <captured_packets.csv | trace.pcap> [--speed N | --asap] [--jfr] [--cost]";
+        if (args.length < 2) {
+            System.out.println(usage);
+            return;
+        }
+        
+        double speed = 1.0;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--asap": speed = TraceReplayer.AS_FAST_AS_POSSIBLE; break;
+                    case "--jfr": flightRecording = true; break;
+                    case "--cost": costTracker = new ProcessingCostTracker(); break;
+                    case "--speed":
+                        speed = Double.parseDouble(args[++i]);
+                        if (!(speed > 0) || Double.isInfinite(speed)) {
+                            throw new IllegalArgumentException("--speed must be greater than 0");
+                        }
+                        break;
+                    default:
+                        System.out.println("Unknown option: " + args[i]);
+                        System.out.println(usage);
+                        return;
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println(usage);
+            return;
+        }
+        
+        System.out.println("=== Replayed Packet Capture ===");
+        System.out.println("Replaying " + args[1] + "...\n");
+        localIPs = getLocalIPAddresses();
+        if (flightRecording) {
+            startFlightRecording();
+        }
+        
+        try (PacketRecordSource source = TraceReplayer.openSource(args[1], localIPs)) {
+            TraceReplayer replayer = new TraceReplayer(speed);
+            replayer.addListener(record -> {
+                packetsReceived.increment();
+                if (costTracker == null) {
+                    recordArrived(record);
+                    return;
+                }
+                ProcessingCostTracker.Stage output = costTracker.stage("output");
+                output.begin();
+                recordArrived(record);
+                output.end(1);
+            });
+            isCapturing = true;
+            replayer.replay(source);
+            isCapturing = false;
+            replayer.printReport();
+            metrics.printSummary();
+            if (costTracker != null) {
+                costTracker.printSummary(replayer.getAchievedRate());
+            }
+        } catch (Exception e) {
+            System.err.println("Error replaying capture: " + e.getMessage());
+            return;
+        }
+        
+        printSummary();
+        exportToCsv(replayExportName(args[1]), false);
+        stopFlightRecording();
+    }
+    
+    /**
+     * Export name for a replayed file: "replay_" plus its name without the extension(s)
+     */
+    private static String replayExportName(String source) {
+        String name = new java.io.File(source).getName().replaceFirst("(?i)(\\.csv|\\.pcap|\\.cap)?(\\.gz)?$", "");
+        return "replay_" + name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+    
+    /**
+     * Starts the JFR recording of the session (logs/capture_<yyyyMMdd_HHmmss>.jfr)
+     */
+    private static void startFlightRecording() {
+        String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        String filename = "logs/capture_" + timestamp + ".jfr";
+        if (CaptureEvents.startRecording(filename)) {
+            System.out.println("Flight recording: " + filename);
+        }
+    }
+    
+    /**
+     * Saves the JFR recording of the session, if one is running
+     */
+    private static void stopFlightRecording() {
+        String filename = CaptureEvents.stopRecording();
+        if (filename != null) {
+            System.out.println("Flight recording saved to: " + filename);
+        }
+    }
+    
+    /**
+     * Stops the packet capture (called on the timer thread). Only ends the capture loop: the sinks
+     * are closed by finishCapture on the capture thread once pcap.capture has returned, so no sink
+     * is closed while the packet callback may still be writing to it.
      */
     private static void stopCapture() {
         if (!isCapturing) {
             return; // Already stopped
         }
         
+        isCapturing = false; // Packets still delivered before the loop ends are dropped
+        if (pcap != null) {
+            pcap.endCapture();
+        }
+    }
+    
+    /**
+     * Closes the sinks and processes the results (on the capture thread, after the capture loop returned)
+     */
+    private static void finishCapture() {
         isCapturing = false;
         System.out.println("\n=== CAPTURE COMPLETE ===");
         System.out.println("Capture ended at: " + new Date());
         System.out.println("Total packets captured: " + packetCount);
+        metrics.printSummary();
+        if (costTracker != null) {
+            double elapsedSeconds = (System.currentTimeMillis() - captureStartMillis) / 1000.0;
+            costTracker.printSummary(elapsedSeconds > 0 ? packetCount / elapsedSeconds : 0);
+        }
         
         // Close the capture
         if (pcap != null) {
@@ -165,8 +687,63 @@ public class PacketCapture {
         }
         
         // Process and export results
-        printSummary();
-        exportToCsv();
+        if (rollingWriter != null) {
+            closeRollingWriter();
+            rollingWriter.printSummary();
+        }
+        if (retentionManager != null) {
+            retentionManager.close();
+            retentionManager.printSummary();
+        }
+        if (columnarWriter != null) {
+            closeColumnarWriter();
+            System.out.println("Columnar capture: " + columnarWriter.getRowsWritten() + " packets written " +
+                             "(convert with ColumnarCaptureReader for Power BI)");
+        }
+        if (captureStore != null) {
+            closeCaptureStore();
+            captureStore.printSummary();
+        }
+        if (flightRecorder != null) {
+            try {
+                flightRecorder.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Error closing flight recorder: " + e.getMessage());
+            }
+            flightRecorder.printSummary();
+        }
+        if (partitionedExporter != null) {
+            closePartitionedExporter();
+            partitionedExporter.printSummary();
+        }
+        if (starExporter != null) {
+            closeStarExporter();
+            starExporter.printSummary();
+        }
+        if (databaseSink != null) {
+            closeDatabaseSink();
+            databaseSink.printSummary();
+        }
+        if (statsServer != null) {
+            statsServer.close();
+            statsServer.printSummary();
+        }
+        if (rollingAggregator != null) {
+            rollingAggregator.close();
+        }
+        if (feedServer != null) {
+            feedServer.close();
+            feedServer.printSummary();
+        }
+        if (alertEngine != null) {
+            alertEngine.close();
+            alertEngine.printSummary();
+        }
+        if (bufferInMemory) {
+            printSummary();
+            exportToCsv("captured_packets", true);
+        }
+        stopFlightRecording();
         
         System.out.println("\n=== CAPTURE SESSION ENDED ===");
         System.exit(0);
@@ -213,6 +790,8 @@ public class PacketCapture {
      * Processes a captured packet and creates a PacketRecord with all details
      */
     private static PacketRecord processPacket(Packet packet) {
+        CaptureEvents.PacketDecodeEvent decodeEvent = new CaptureEvents.PacketDecodeEvent();
+        decodeEvent.begin();
         PacketRecord record = new PacketRecord();
         
         // Set timestamp (best effort; some packet APIs may not expose timeval)
@@ -256,6 +835,14 @@ public class PacketCapture {
             record.setSourcePort(-1);
             record.setDestinationPort(-1);
         }
+        decodeEvent.end();
+        if (decodeEvent.shouldCommit()) {
+            decodeEvent.protocol = record.getProtocol();
+            decodeEvent.commit();
+        }
+        
+        CaptureEvents.EnrichmentEvent enrichmentEvent = new CaptureEvents.EnrichmentEvent();
+        enrichmentEvent.begin();
         
         // Determine direction based on local IPs
         record.determineDirection(localIPs);
@@ -263,6 +850,11 @@ public class PacketCapture {
         // Guess application based on port
         record.guessApplication();
         
+        enrichmentEvent.end();
+        if (enrichmentEvent.shouldCommit()) {
+            enrichmentEvent.destinationPort = record.getDestinationPort();
+            enrichmentEvent.commit();
+        }
         return record;
     }
     
@@ -319,8 +911,10 @@ public class PacketCapture {
     
     /**
      * Exports captured packets to CSV file with Power BI compatibility
+     * @param baseName Name of the main file (without extension)
+     * @param filteredCopies Whether to also write the per-protocol and per-direction files
      */
-    private static void exportToCsv() {
+    private static void exportToCsv(String baseName, boolean filteredCopies) {
         if (packetRecords.isEmpty()) {
             System.out.println("No packets to export to CSV.");
             return;
@@ -328,27 +922,31 @@ public class PacketCapture {
         
         System.out.println("\n=== EXPORTING TO CSV ===");
         
-        // Export all packets to the main CSV file (Power BI optimized)
-        boolean success = CsvExporter.exportToCsvForPowerBI(packetRecords, "captured_packets");
+        // Export all packets to the main CSV file (Power BI optimized, gzip-compressed with --gzip)
+        String mainFile = baseName + (gzipExport ? ".csv.gz" : ".csv");
+        boolean success = gzipExport ? CsvExporter.exportToCsvGzip(packetRecords, baseName)
+                                     : CsvExporter.exportToCsvForPowerBI(packetRecords, baseName);
         if (success) {
-            System.out.println("✓ All packets exported to captured_packets.csv successfully.");
-            System.out.println("  File location: " + CsvExporter.getOutputDirectory() + "/captured_packets.csv");
-            System.out.println("  Format: Power BI optimized with UTF-8 BOM");
+            System.out.println("✓ All packets exported to " + mainFile + " successfully.");
+            System.out.println("  File location: " + CsvExporter.getOutputDirectory() + "/" + mainFile);
+            System.out.println("  Format: Power BI optimized with UTF-8 BOM" + (gzipExport ? ", gzip-compressed" : ""));
         } else {
             System.out.println("✗ Failed to export packets to CSV.");
         }
         
         // Export additional filtered files for analysis
-        System.out.println("\nExporting filtered data for analysis...");
-        
-        // Export by protocol
-        CsvExporter.exportToCsvByProtocol(packetRecords, "TCP");
-        CsvExporter.exportToCsvByProtocol(packetRecords, "UDP");
-        CsvExporter.exportToCsvByProtocol(packetRecords, "ARP");
-        
-        // Export by direction
-        CsvExporter.exportToCsvByDirection(packetRecords, "Incoming");
-        CsvExporter.exportToCsvByDirection(packetRecords, "Outgoing");
+        if (filteredCopies) {
+            System.out.println("\nExporting filtered data for analysis...");
+            
+            // Export by protocol
+            CsvExporter.exportToCsvByProtocol(packetRecords, "TCP");
+            CsvExporter.exportToCsvByProtocol(packetRecords, "UDP");
+            CsvExporter.exportToCsvByProtocol(packetRecords, "ARP");
+            
+            // Export by direction
+            CsvExporter.exportToCsvByDirection(packetRecords, "Incoming");
+            CsvExporter.exportToCsvByDirection(packetRecords, "Outgoing");
+        }
         
         // List all generated CSV files
         String[] csvFiles = CsvExporter.listCsvFiles();
@@ -360,6 +958,6 @@ public class PacketCapture {
         }
         
         System.out.println("\n=== CSV EXPORT COMPLETE ===");
-        System.out.println("Main file for Power BI: captured_packets.csv");
+        System.out.println("Main file for Power BI: " + mainFile);
     }
 }
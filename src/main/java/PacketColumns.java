@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * PacketColumns.java
+ *
+ * A columnar batch of packet data: one array per CSV column instead of one
+ * object per packet. Analysis code that only needs a few columns (e.g.
+ * timestamps and lengths) can scan them without touching the rest, and no
+ * PacketRecord objects are created unless asked for.
+ *
+ * Repeated strings (IPs, protocols, applications) share a single String
+ * instance per distinct value within the chunk that produced them.
+ */
+public class PacketColumns {
+
+    private int size;
+    long[] timestamps;
+    String[] sourceIPs;
+    String[] destinationIPs;
+    int[] sourcePorts;
+    int[] destinationPorts;
+    String[] protocols;
+    int[] packetLengths;
+    String[] directions;
+    String[] tcpFlags;
+    String[] applications;
+
+    /**
+     * Creates an empty batch with room for the given number of rows
+     */
+    public PacketColumns(int capacity) {
+        timestamps = new long[capacity];
+        sourceIPs = new String[capacity];
+        destinationIPs = new String[capacity];
+        sourcePorts = new int[capacity];
+        destinationPorts = new int[capacity];
+        protocols = new String[capacity];
+        packetLengths = new int[capacity];
+        directions = new String[capacity];
+        tcpFlags = new String[capacity];
+        applications = new String[capacity];
+    }
+
+    /**
+     * Concatenates several batches (in order) into one
+     */
+    public static PacketColumns concat(List<PacketColumns> parts) {
+        int total = 0;
+        for (PacketColumns part : parts) {
+            total += part.size;
+        }
+        PacketColumns result = new PacketColumns(total);
+        int offset = 0;
+        for (PacketColumns part : parts) {
+            int n = part.size;
+            System.arraycopy(part.timestamps, 0, result.timestamps, offset, n);
+            System.arraycopy(part.sourceIPs, 0, result.sourceIPs, offset, n);
+            System.arraycopy(part.destinationIPs, 0, result.destinationIPs, offset, n);
+            System.arraycopy(part.sourcePorts, 0, result.sourcePorts, offset, n);
+            System.arraycopy(part.destinationPorts, 0, result.destinationPorts, offset, n);
+            System.arraycopy(part.protocols, 0, result.protocols, offset, n);
+            System.arraycopy(part.packetLengths, 0, result.packetLengths, offset, n);
+            System.arraycopy(part.directions, 0, result.directions, offset, n);
+            System.arraycopy(part.tcpFlags, 0, result.tcpFlags, offset, n);
+            System.arraycopy(part.applications, 0, result.applications, offset, n);
+            offset += n;
+        }
+        result.size = total;
+        return result;
+    }
+
+    /**
+     * Creates a batch holding the given records
+     */
+    public static PacketColumns fromRecords(List<PacketRecord> records) {
+        PacketColumns columns = new PacketColumns(records.size());
+        for (PacketRecord record : records) {
+            columns.add(record);
+        }
+        return columns;
+    }
+
+    /**
+     * Appends one record's values
+     */
+    public void add(PacketRecord record) {
+        if (size == capacity()) {
+            grow();
+        }
+        int row = size++;
+        timestamps[row] = record.getTimestamp().getTime();
+        sourceIPs[row] = record.getSourceIP();
+        destinationIPs[row] = record.getDestinationIP();
+        sourcePorts[row] = record.getSourcePort();
+        destinationPorts[row] = record.getDestinationPort();
+        protocols[row] = record.getProtocol();
+        packetLengths[row] = record.getPacketLength();
+        directions[row] = record.getDirection();
+        tcpFlags[row] = record.getTcpFlags();
+        applications[row] = record.getApplicationGuess();
+    }
+
+    /**
+     * Doubles the capacity of every column
+     */
+    void grow() {
+        int newCapacity = Math.max(16, capacity() * 2);
+        timestamps = java.util.Arrays.copyOf(timestamps, newCapacity);
+        sourceIPs = java.util.Arrays.copyOf(sourceIPs, newCapacity);
+        destinationIPs = java.util.Arrays.copyOf(destinationIPs, newCapacity);
+        sourcePorts = java.util.Arrays.copyOf(sourcePorts, newCapacity);
+        destinationPorts = java.util.Arrays.copyOf(destinationPorts, newCapacity);
+        protocols = java.util.Arrays.copyOf(protocols, newCapacity);
+        packetLengths = java.util.Arrays.copyOf(packetLengths, newCapacity);
+        directions = java.util.Arrays.copyOf(directions, newCapacity);
+        tcpFlags = java.util.Arrays.copyOf(tcpFlags, newCapacity);
+        applications = java.util.Arrays.copyOf(applications, newCapacity);
+    }
+
+    /**
+     * Marks the next row as filled (used by parsers that write the arrays directly)
+     */
+    void commitRow() {
+        size++;
+    }
+
+    /**
+     * Sets the number of filled rows (used by readers and writers that fill the arrays directly)
+     */
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    // Column accessors
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    public String getSourceIP(int row) {
+        return sourceIPs[row];
+    }
+
+    public String getDestinationIP(int row) {
+        return destinationIPs[row];
+    }
+
+    public int getSourcePort(int row) {
+        return sourcePorts[row];
+    }
+
+    public int getDestinationPort(int row) {
+        return destinationPorts[row];
+    }
+
+    public String getProtocol(int row) {
+        return protocols[row];
+    }
+
+    public int getPacketLength(int row) {
+        return packetLengths[row];
+    }
+
+    public String getDirection(int row) {
+        return directions[row];
+    }
+
+    public String getTcpFlags(int row) {
+        return tcpFlags[row];
+    }
+
+    public String getApplication(int row) {
+        return applications[row];
+    }
+
+    /**
+     * Materializes one row as a PacketRecord
+     */
+    public PacketRecord toPacketRecord(int row) {
+        PacketRecord record = new PacketRecord(sourceIPs[row], destinationIPs[row], sourcePorts[row],
+                                               destinationPorts[row], protocols[row], packetLengths[row]);
+        record.setTimestamp(new Date(timestamps[row]));
+        record.setDirection(directions[row]);
+        record.setTcpFlags(tcpFlags[row]);
+        record.setApplicationGuess(applications[row]);
+        return record;
+    }
+
+    /**
+     * Materializes all rows as PacketRecords
+     */
+    public List<PacketRecord> toPacketRecords() {
+        List<PacketRecord> records = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            records.add(toPacketRecord(row));
+        }
+        return records;
+    }
+}
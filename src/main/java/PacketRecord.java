@@ -24,6 +24,9 @@ public class PacketRecord {
     // Application identification
     private String applicationGuess;
     
+    // TCP flag names in the order PacketCapture writes them; bit i of a flag mask is TCP_FLAG_NAMES[i]
+    private static final String[] TCP_FLAG_NAMES = {"SYN", "ACK", "FIN", "RST", "PSH", "URG"};
+    
     /**
      * Constructor for creating a new PacketRecord
      */
@@ -245,6 +248,50 @@ public class PacketRecord {
         }
     }
     
+    /**
+     * Converts a flag string such as "SYN ACK" to a bit mask (bit i = TCP_FLAG_NAMES[i])
+     * @param tcpFlags Space-separated flag names
+     * @return The mask, or -1 if the string contains an unknown flag name
+     */
+    public static int tcpFlagsToMask(String tcpFlags) {
+        if (tcpFlags == null || tcpFlags.isEmpty()) {
+            return 0;
+        }
+        int mask = 0;
+        for (String flag : tcpFlags.trim().split("\\s+")) {
+            int bit = -1;
+            for (int i = 0; i < TCP_FLAG_NAMES.length; i++) {
+                if (TCP_FLAG_NAMES[i].equals(flag)) {
+                    bit = i;
+                    break;
+                }
+            }
+            if (bit < 0) {
+                return -1;
+            }
+            mask |= 1 << bit;
+        }
+        return mask;
+    }
+    
+    /**
+     * Converts a flag mask back to the flag string PacketCapture would write
+     * @param mask Bit mask from tcpFlagsToMask
+     * @return Space-separated flag names in capture order ("" for 0)
+     */
+    public static String maskToTcpFlags(int mask) {
+        StringBuilder flags = new StringBuilder();
+        for (int i = 0; i < TCP_FLAG_NAMES.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                if (flags.length() > 0) {
+                    flags.append(' ');
+                }
+                flags.append(TCP_FLAG_NAMES[i]);
+            }
+        }
+        return flags.toString();
+    }
+    
     /**
      * Returns a formatted string representation of the packet record
      */
@@ -276,6 +323,6 @@ public class PacketRecord {
         return String.format("[%s] %s %s:%d -> %s:%d (%s, %d bytes, %s, %s)", 
                            timestamp, direction, sourceIP, sourcePort, 
                            destinationIP, destinationPort, protocol, 
-                           packetLength, applicationGuess);
+                           packetLength, tcpFlags, applicationGuess);
     }
 }
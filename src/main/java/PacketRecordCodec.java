@@ -0,0 +1,410 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PacketRecordCodec.java
+ *
+ * Binary serialization of PacketRecord batches for spill files, checkpoints
+ * and inter-process transfer. Every record is a fixed-width 40-byte slot, so
+ * a batch is encoded and decoded with plain ByteBuffer reads and writes and
+ * record i can be located directly. Strings are stored once per batch in a
+ * string table; IPv4 addresses are stored inline as 4-byte integers.
+ *
+ * Batch layout (big-endian):
+ *   header   "PREC" version(2) recordSize(2) recordCount(4) stringCount(4) stringBytes(4)
+ *   strings  stringCount x (length(2) UTF-8 bytes)
+ *   records  recordCount x RECORD_SIZE bytes:
+ *     0  timestamp (8)          24 packet length (4)
+ *     8  source IP (4)          28 protocol string id (2)
+ *     12 destination IP (4)     30 direction string id (2)
+ *     16 source port (4)        32 application string id (2)
+ *     20 destination port (4)   34 TCP flags (2): flag mask, or FLAGS_STRING | string id
+ *                               36 address kinds (1), reserved (3)
+ *
+ * An IP that is not a dotted IPv4 address (IPv6, "Unknown", ...) is stored
+ * as a string id and flagged in the address kinds byte. The version is
+ * checked on decode; readers reject batches written by a newer codec.
+ */
+public final class PacketRecordCodec {
+
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 40;
+    static final int HEADER_SIZE = 20;
+    private static final byte[] MAGIC = {'P', 'R', 'E', 'C'};
+
+    private static final int SOURCE_IS_STRING = 0x01;
+    private static final int DESTINATION_IS_STRING = 0x02;
+    private static final int FLAGS_STRING = 0x8000;
+    private static final int MAX_STRINGS = 0x7FFF;
+
+    private PacketRecordCodec() {
+    }
+
+    /**
+     * Encodes a batch of records into a new buffer (position 0, limit = encoded length)
+     */
+    public static ByteBuffer encode(List<PacketRecord> records) {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        Map<String, Integer> addresses = new HashMap<>();
+        ByteBuffer recordData = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+
+        for (PacketRecord record : records) {
+            int kinds = 0;
+            int base = recordData.position();
+            recordData.putLong(record.getTimestamp().getTime());
+
+            Integer source = addressOf(record.getSourceIP(), addresses);
+            if (source == null) {
+                source = stringId(record.getSourceIP(), stringIds, strings);
+                kinds |= SOURCE_IS_STRING;
+            }
+            recordData.putInt(source);
+            Integer destination = addressOf(record.getDestinationIP(), addresses);
+            if (destination == null) {
+                destination = stringId(record.getDestinationIP(), stringIds, strings);
+                kinds |= DESTINATION_IS_STRING;
+            }
+            recordData.putInt(destination);
+
+            recordData.putInt(record.getSourcePort());
+            recordData.putInt(record.getDestinationPort());
+            recordData.putInt(record.getPacketLength());
+            recordData.putShort((short) stringId(record.getProtocol(), stringIds, strings));
+            recordData.putShort((short) stringId(record.getDirection(), stringIds, strings));
+            recordData.putShort((short) stringId(record.getApplicationGuess(), stringIds, strings));
+
+            String flags = record.getTcpFlags() == null ? "" : record.getTcpFlags();
+            int mask = PacketRecord.tcpFlagsToMask(flags);
+            if (mask < 0 || !PacketRecord.maskToTcpFlags(mask).equals(flags)) {
+                mask = FLAGS_STRING | stringId(flags, stringIds, strings);
+            }
+            recordData.putShort((short) mask);
+            recordData.put((byte) kinds);
+            recordData.position(base + RECORD_SIZE);
+        }
+
+        int stringBytes = 0;
+        for (byte[] string : strings) {
+            stringBytes += 2 + string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + stringBytes + recordData.capacity());
+        buffer.put(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) RECORD_SIZE);
+        buffer.putInt(records.size());
+        buffer.putInt(strings.size());
+        buffer.putInt(stringBytes);
+        for (byte[] string : strings) {
+            buffer.putShort((short) string.length);
+            buffer.put(string);
+        }
+        recordData.flip();
+        buffer.put(recordData);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes one batch starting at the buffer's position; the position is moved past the batch
+     * @throws IOException if the buffer does not hold a supported batch
+     */
+    public static List<PacketRecord> decode(ByteBuffer buffer) throws IOException {
+        int[] header = readHeader(buffer);
+        int recordCount = header[0];
+        int stringCount = header[1];
+        int recordSize = header[2];
+
+        try {
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            Map<Integer, String> addresses = new HashMap<>();
+            String[] flagNames = new String[64];
+            List<PacketRecord> records = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                int base = buffer.position();
+                long timestamp = buffer.getLong();
+                int source = buffer.getInt();
+                int destination = buffer.getInt();
+                int sourcePort = buffer.getInt();
+                int destinationPort = buffer.getInt();
+                int packetLength = buffer.getInt();
+                String protocol = strings[buffer.getShort()];
+                String direction = strings[buffer.getShort()];
+                String application = strings[buffer.getShort()];
+                int flags = buffer.getShort() & 0xFFFF;
+                int kinds = buffer.get();
+
+                PacketRecord record = new PacketRecord(
+                    (kinds & SOURCE_IS_STRING) != 0 ? strings[source] : formatIPv4(source, addresses),
+                    (kinds & DESTINATION_IS_STRING) != 0 ? strings[destination] : formatIPv4(destination, addresses),
+                    sourcePort, destinationPort, protocol, packetLength);
+                record.setTimestamp(new Date(timestamp));
+                record.setDirection(direction);
+                record.setApplicationGuess(application);
+                if ((flags & FLAGS_STRING) != 0) {
+                    record.setTcpFlags(strings[flags & ~FLAGS_STRING]);
+                } else {
+                    if (flagNames[flags & 0x3F] == null) {
+                        flagNames[flags & 0x3F] = PacketRecord.maskToTcpFlags(flags & 0x3F);
+                    }
+                    record.setTcpFlags(flagNames[flags & 0x3F]);
+                }
+                records.add(record);
+                buffer.position(base + recordSize);
+            }
+            return records;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt packet record batch: " + e, e);
+        }
+    }
+
+    /**
+     * Validates the header at the buffer's position and moves past it
+     * @return {recordCount, stringCount, recordSize, stringBytes}
+     */
+    private static int[] readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Packet record batch too short");
+        }
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a packet record batch");
+            }
+        }
+        int version = buffer.getShort() & 0xFFFF;
+        int recordSize = buffer.getShort() & 0xFFFF;
+        if (version > VERSION || recordSize < RECORD_SIZE) {
+            throw new IOException("Unsupported packet record batch version " + version + " (record size " + recordSize + ")");
+        }
+        int recordCount = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int stringBytes = buffer.getInt();
+        if (recordCount < 0 || stringCount < 0 || stringCount > MAX_STRINGS + 1 || stringBytes < 0 ||
+            (long) recordCount * recordSize + stringBytes > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Corrupt packet record batch header");
+        }
+        return new int[] {recordCount, stringCount, recordSize, stringBytes};
+    }
+
+    /**
+     * Writes one batch to a channel (file, socket or pipe)
+     */
+    public static void writeBatch(WritableByteChannel channel, List<PacketRecord> records) throws IOException {
+        ByteBuffer buffer = encode(records);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the next batch from a channel
+     * @return The records, or null if the channel is at end of stream
+     * @throws EOFException if the stream ends inside a batch
+     */
+    public static List<PacketRecord> readBatch(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+        header.flip();
+        int[] counts = readHeader(header.duplicate());
+
+        ByteBuffer batch = ByteBuffer.allocate(HEADER_SIZE + counts[3] + counts[0] * counts[2]);
+        batch.put(header);
+        readFully(channel, batch, false);
+        batch.flip();
+        return decode(batch);
+    }
+
+    /**
+     * @return false if the channel was already at end of stream (only when allowEof is set)
+     */
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean allowEof) throws IOException {
+        boolean first = true;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (allowEof && first && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of packet record stream");
+            }
+            first = false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes records to a file as batches of at most batchSize records (an existing file is replaced)
+     */
+    public static void writeFile(String filename, List<PacketRecord> records, int batchSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < records.size(); i += batchSize) {
+                writeBatch(channel, records.subList(i, Math.min(records.size(), i + batchSize)));
+            }
+        }
+    }
+
+    /**
+     * Reads all batches of a file written by writeFile
+     */
+    public static List<PacketRecord> readFile(String filename) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            java.nio.MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+                records.addAll(decode(buffer));
+            }
+        }
+        return records;
+    }
+
+    private static int stringId(String value, Map<String, Integer> ids, List<byte[]> strings) {
+        String key = value == null ? "" : value;
+        Integer id = ids.get(key);
+        if (id == null) {
+            if (strings.size() > MAX_STRINGS) {
+                throw new IllegalArgumentException("Too many distinct strings in one batch; use smaller batches");
+            }
+            id = strings.size();
+            ids.put(key, id);
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("String too long for packet record batch");
+            }
+            strings.add(bytes);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the IPv4 address as an int, or null if it must be stored as a string (cached per batch)
+     */
+    private static Integer addressOf(String address, Map<String, Integer> cache) {
+        if (address == null) {
+            return null;
+        }
+        Integer value = cache.get(address);
+        if (value == null && !cache.containsKey(address)) {
+            long parsed = parseIPv4(address);
+            value = parsed < 0 ? null : (int) parsed;
+            cache.put(address, value);
+        }
+        return value;
+    }
+
+    /**
+     * Parses a dotted IPv4 address
+     * @return The address as an unsigned value, or -1 if the string is not a canonical dotted IPv4 address
+     */
+    static long parseIPv4(String address) {
+        long result = 0;
+        int parts = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c == '.') {
+                // Leading zeros would not round-trip ("010" -> "10")
+                if (digits == 0 || value > 255 || (digits > 1 && address.charAt(i - digits) == '0')) {
+                    return -1;
+                }
+                result = (result << 8) | value;
+                parts++;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else {
+                return -1;
+            }
+        }
+        return parts == 4 ? result : -1;
+    }
+
+    private static String formatIPv4(int address, Map<Integer, String> cache) {
+        String formatted = cache.get(address);
+        if (formatted == null) {
+            formatted = ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." +
+                        ((address >>> 8) & 0xff) + "." + (address & 0xff);
+            cache.put(address, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Compares binary and CSV save/load times for an export
+     * Usage: PacketRecordCodec <captured_packets.csv>
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: PacketRecordCodec <captured_packets.csv>");
+            return;
+        }
+        System.out.println("=== Binary PacketRecord Serialization ===");
+        try {
+            List<PacketRecord> records = new ParallelCsvReader().readRecords(args[0]);
+            System.out.println("Records: " + records.size());
+            String binaryFile = CsvExporter.getOutputDirectory() + "/codec_benchmark.prec";
+            if (!CsvExporter.createOutputDirectory()) {
+                return;
+            }
+
+            // Best of three rounds, so the first round's JIT warm-up is not counted
+            String csvFile = CsvExporter.getOutputDirectory() + "/codec_benchmark.csv";
+            long binaryWrite = Long.MAX_VALUE, binaryRead = Long.MAX_VALUE;
+            long csvWrite = Long.MAX_VALUE, csvRead = Long.MAX_VALUE;
+            List<PacketRecord> decoded = null;
+            long csvRecords = 0;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                writeFile(binaryFile, records, 65536);
+                binaryWrite = Math.min(binaryWrite, System.nanoTime() - start);
+                start = System.nanoTime();
+                decoded = readFile(binaryFile);
+                binaryRead = Math.min(binaryRead, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                CsvExporter.exportToCsv(records, "codec_benchmark");
+                csvWrite = Math.min(csvWrite, System.nanoTime() - start);
+                start = System.nanoTime();
+                csvRecords = 0;
+                try (CsvPacketReader reader = new CsvPacketReader(csvFile)) {
+                    while (reader.readNext() != null) {
+                        csvRecords++;
+                    }
+                }
+                csvRead = Math.min(csvRead, System.nanoTime() - start);
+            }
+
+            System.out.println("Binary: write " + binaryWrite / 1_000_000 + " ms, read " + binaryRead / 1_000_000 + " ms, " +
+                             new java.io.File(binaryFile).length() + " bytes (" + decoded.size() + " records)");
+            System.out.println("CSV:    write " + csvWrite / 1_000_000 + " ms, read " + csvRead / 1_000_000 + " ms, " +
+                             new java.io.File(csvFile).length() +
+                             " bytes (" + csvRecords + " records)");
+            System.out.println("Speedup: write " + String.format("%.1f", (double) csvWrite / binaryWrite) + "x, read " +
+                             String.format("%.1f", (double) csvRead / binaryRead) + "x");
+        } catch (IOException e) {
+            System.err.println("Error running serialization benchmark: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * PacketRecordListener.java
+ * 
+ * Receives decoded packet records as they enter the analysis pipeline.
+ * Mirrors JPcap's PacketListener, but at the PacketRecord level so the same
+ * consumers can be fed by live capture, trace replay or simulation.
+ */
+public interface PacketRecordListener {
+    
+    /**
+     * Called once for every packet record, in arrival order
+     * @param record The decoded packet record
+     */
+    void recordArrived(PacketRecord record);
+}
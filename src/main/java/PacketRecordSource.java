@@ -0,0 +1,23 @@
+import java.io.IOException;
+
+/**
+ * PacketRecordSource.java
+ * 
+ * A sequential source of previously captured packet records, such as an
+ * exported CSV file or a pcap trace.
+ */
+public interface PacketRecordSource extends AutoCloseable {
+    
+    /**
+     * Reads the next packet record
+     * @return The next record, or null when the source is exhausted
+     * @throws IOException if the underlying data cannot be read
+     */
+    PacketRecord readNext() throws IOException;
+    
+    /**
+     * Closes the underlying file
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,583 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelCsvReader.java
+ *
+ * High-throughput loader for CSV files written by CsvExporter.
+ * The file is memory-mapped, split into newline-aligned chunks and the
+ * chunks are parsed in parallel on a fork-join pool. Parsing works directly
+ * on the mapped bytes: numbers and timestamps are decoded without creating
+ * intermediate Strings, and repeated text values (IPs, protocols,
+ * applications) are turned into one shared String per distinct value.
+ *
+ * Results are available as a columnar PacketColumns batch or as a list of
+ * PacketRecord objects, in file order.
+ */
+public class ParallelCsvReader {
+
+    private static final long DEFAULT_CHUNK_SIZE = 16L * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    private static final int ESTIMATED_ROW_BYTES = 100;
+    private static final int MAX_HEADER_BYTES = 4096;
+    private static final int COLUMN_COUNT = 10;
+
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+
+    // Statistics from the last read
+    private long rowsParsed;
+    private long rowsSkipped;
+    private long bytesRead;
+    private long elapsedNanos;
+
+    /**
+     * Creates a reader using the common fork-join pool and 16 MB chunks
+     */
+    public ParallelCsvReader() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool Pool on which chunks are parsed
+     * @param chunkSize Target chunk size in bytes (chunks end on the next newline)
+     */
+    public ParallelCsvReader(ForkJoinPool pool, long chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 byte and 1 GB");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads a CSV export into a single columnar batch
+     * @param filename Path of the CSV file
+     * @return All parsed rows in file order
+     * @throws IOException if the file cannot be mapped
+     */
+    public PacketColumns readColumns(String filename) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long dataStart = findDataStart(channel);
+            List<long[]> chunks = splitIntoChunks(channel, dataStart, channel.size(), chunkSize);
+
+            List<ChunkParser> tasks = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                tasks.add(new ChunkParser(channel, chunk[0], chunk[1]));
+            }
+            pool.invoke(new ForkAll(tasks));
+
+            List<PacketColumns> parts = new ArrayList<>();
+            rowsSkipped = 0;
+            for (ChunkParser task : tasks) {
+                parts.add(task.join());
+                rowsSkipped += task.skippedRows;
+            }
+
+            PacketColumns result = PacketColumns.concat(parts);
+            rowsParsed = result.size();
+            bytesRead = channel.size();
+            elapsedNanos = System.nanoTime() - start;
+            return result;
+        }
+    }
+
+    /**
+     * Loads a CSV export as PacketRecord objects
+     */
+    public List<PacketRecord> readRecords(String filename) throws IOException {
+        return readColumns(filename).toPacketRecords();
+    }
+
+    // Statistics getters
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public long getRowsSkipped() {
+        return rowsSkipped;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsParsed / (elapsedNanos / 1e9);
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytesRead / (1024.0 * 1024.0) / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Returns the offset of the first data row, skipping a UTF-8 BOM and the header row if present
+     */
+    static long findDataStart(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(MAX_HEADER_BYTES, channel.size()));
+        channel.read(head, 0);
+        head.flip();
+
+        int offset = 0;
+        if (head.remaining() >= 3 && (head.get(0) & 0xff) == 0xEF &&
+            (head.get(1) & 0xff) == 0xBB && (head.get(2) & 0xff) == 0xBF) {
+            offset = 3;
+        }
+
+        byte[] marker = "Timestamp,".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        boolean hasHeader = head.limit() - offset >= marker.length;
+        for (int i = 0; hasHeader && i < marker.length; i++) {
+            hasHeader = head.get(offset + i) == marker[i];
+        }
+        if (!hasHeader) {
+            return offset;
+        }
+        for (int i = offset; i < head.limit(); i++) {
+            if (head.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return channel.size(); // Header only
+    }
+
+    /**
+     * Parses the rows in [start, end) on the calling thread
+     * @param start Offset of the first byte of a line
+     * @param end Offset just after the last line
+     */
+    static PacketColumns parseRange(FileChannel channel, long start, long end) throws IOException {
+        try {
+            return new ChunkParser(channel, start, end).compute();
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits [start, end) into ranges of roughly chunkSize bytes, each ending just after a newline
+     * @return List of {chunkStart, chunkEnd} pairs in file order
+     */
+    static List<long[]> splitIntoChunks(FileChannel channel, long start, long end, long chunkSize) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long chunkStart = start;
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+
+        while (chunkStart < end) {
+            long chunkEnd = Math.min(end, chunkStart + chunkSize);
+            // Move the boundary forward to just after the next newline
+            while (chunkEnd < end) {
+                probe.clear();
+                int n = channel.read(probe, chunkEnd);
+                if (n <= 0) {
+                    chunkEnd = end;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    chunkEnd += newline + 1;
+                    break;
+                }
+                chunkEnd = Math.min(end, chunkEnd + n);
+            }
+            chunks.add(new long[] {chunkStart, chunkEnd});
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    /**
+     * Forks all chunk tasks and waits for them
+     */
+    private static class ForkAll extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ChunkParser> tasks;
+
+        ForkAll(List<ChunkParser> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected Void compute() {
+            invokeAll(tasks);
+            return null;
+        }
+    }
+
+    /**
+     * Parses one newline-aligned chunk of the mapped file
+     */
+    private static class ChunkParser extends RecursiveTask<PacketColumns> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final ByteStringCache strings = new ByteStringCache();
+        private final TimestampDecoder timestamps = new TimestampDecoder();
+        long skippedRows;
+
+        // Current field bounds within the mapped chunk
+        private int cursor;
+        private int fieldStart;
+        private int fieldEnd;
+        private boolean fieldEscaped;
+
+        ChunkParser(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected PacketColumns compute() {
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                return parse(buffer);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+
+        private PacketColumns parse(ByteBuffer buffer) {
+            int limit = buffer.limit();
+            PacketColumns out = new PacketColumns(limit / ESTIMATED_ROW_BYTES + 16);
+            int pos = 0;
+
+            while (pos < limit) {
+                int lineEnd = pos;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd;
+                if (contentEnd > pos && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (contentEnd > pos) {
+                    if (out.size() == out.capacity()) {
+                        out.grow();
+                    }
+                    if (parseRow(buffer, pos, contentEnd, out)) {
+                        out.commitRow();
+                    } else {
+                        skippedRows++;
+                    }
+                }
+                pos = lineEnd + 1;
+            }
+            return out;
+        }
+
+        /**
+         * Parses one line into the next free row of the batch
+         * @return false if the line is malformed (the row is then left unused)
+         */
+        private boolean parseRow(ByteBuffer buffer, int lineStart, int lineEnd, PacketColumns out) {
+            int row = out.size();
+            cursor = lineStart;
+
+            if (!nextField(buffer, lineEnd)) return false;
+            long timestamp = timestamps.decode(buffer, fieldStart, fieldEnd);
+            if (timestamp == Long.MIN_VALUE) return false;
+            out.timestamps[row] = timestamp;
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.sourceIPs[row] = fieldString(buffer);
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.destinationIPs[row] = fieldString(buffer);
+
+            if (!nextField(buffer, lineEnd)) return false;
+            int sourcePort = parseInt(buffer, fieldStart, fieldEnd, -1);
+            if (sourcePort == Integer.MIN_VALUE) return false;
+            out.sourcePorts[row] = sourcePort;
+
+            if (!nextField(buffer, lineEnd)) return false;
+            int destinationPort = parseInt(buffer, fieldStart, fieldEnd, -1);
+            if (destinationPort == Integer.MIN_VALUE) return false;
+            out.destinationPorts[row] = destinationPort;
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.protocols[row] = fieldString(buffer);
+
+            if (!nextField(buffer, lineEnd)) return false;
+            int length = parseInt(buffer, fieldStart, fieldEnd, Integer.MIN_VALUE);
+            if (length == Integer.MIN_VALUE) return false;
+            out.packetLengths[row] = length;
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.directions[row] = fieldString(buffer);
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.tcpFlags[row] = fieldString(buffer);
+
+            if (!nextField(buffer, lineEnd)) return false;
+            out.applications[row] = fieldString(buffer);
+
+            // Exactly COLUMN_COUNT fields: the cursor must have consumed the whole line
+            return cursor == lineEnd + 1;
+        }
+
+        /**
+         * Locates the next (optionally quoted) field and advances past its delimiter
+         */
+        private boolean nextField(ByteBuffer buffer, int lineEnd) {
+            if (cursor > lineEnd) {
+                return false;
+            }
+            fieldEscaped = false;
+            if (cursor < lineEnd && buffer.get(cursor) == '"') {
+                int i = cursor + 1;
+                while (true) {
+                    if (i >= lineEnd) {
+                        return false; // Unterminated quote
+                    }
+                    if (buffer.get(i) == '"') {
+                        if (i + 1 < lineEnd && buffer.get(i + 1) == '"') {
+                            fieldEscaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fieldStart = cursor + 1;
+                fieldEnd = i;
+                i++;
+                if (i < lineEnd && buffer.get(i) != ',') {
+                    return false;
+                }
+                cursor = i + 1;
+            } else {
+                int i = cursor;
+                while (i < lineEnd && buffer.get(i) != ',') {
+                    i++;
+                }
+                fieldStart = cursor;
+                fieldEnd = i;
+                cursor = i + 1;
+            }
+            return true;
+        }
+
+        private String fieldString(ByteBuffer buffer) {
+            String value = strings.get(buffer, fieldStart, fieldEnd);
+            return fieldEscaped ? value.replace("\"\"", "\"") : value;
+        }
+    }
+
+    /**
+     * Parses a decimal integer from bytes
+     * @param emptyValue Value returned for an empty field
+     * @return The value, or Integer.MIN_VALUE if the field is not a valid integer
+     */
+    static int parseInt(ByteBuffer buffer, int from, int to, int emptyValue) {
+        if (from == to) {
+            return emptyValue;
+        }
+        boolean negative = buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to || to - i > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes "yyyy-MM-dd HH:mm:ss[.SSS]" in the JVM's default time zone (as written by
+     * CsvExporter's SimpleDateFormat) to epoch milliseconds, without allocating per row.
+     * The zone offset is looked up once per distinct local hour.
+     */
+    static class TimestampDecoder {
+        private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+        private long cachedHourKey = Long.MIN_VALUE;
+        private long cachedOffsetMillis;
+
+        /**
+         * @return Epoch milliseconds, or Long.MIN_VALUE if the field is not a valid timestamp
+         */
+        long decode(ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length != 19 && (length < 21 || length > 23)) {
+                return Long.MIN_VALUE;
+            }
+            if (buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-' || buffer.get(from + 10) != ' ' ||
+                buffer.get(from + 13) != ':' || buffer.get(from + 16) != ':') {
+                return Long.MIN_VALUE;
+            }
+
+            int year = digits(buffer, from, 4);
+            int month = digits(buffer, from + 5, 2);
+            int day = digits(buffer, from + 8, 2);
+            int hour = digits(buffer, from + 11, 2);
+            int minute = digits(buffer, from + 14, 2);
+            int second = digits(buffer, from + 17, 2);
+            int millis = 0;
+            if (length > 19) {
+                if (buffer.get(from + 19) != '.') {
+                    return Long.MIN_VALUE;
+                }
+                int fractionDigits = length - 20;
+                millis = digits(buffer, from + 20, fractionDigits);
+                if (millis >= 0) {
+                    millis *= fractionDigits == 1 ? 100 : fractionDigits == 2 ? 10 : 1;
+                }
+            }
+            if ((year | month | day | hour | minute | second | millis) < 0 ||
+                month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+                return Long.MIN_VALUE;
+            }
+
+            long epochDay = epochDay(year, month, day);
+            long hourKey = epochDay * 24 + hour;
+            if (hourKey != cachedHourKey) {
+                LocalDateTime local = LocalDateTime.ofEpochSecond(hourKey * 3600, 0, ZoneOffset.UTC);
+                cachedOffsetMillis = zoneRules.getOffset(local).getTotalSeconds() * 1000L;
+                cachedHourKey = hourKey;
+            }
+            long localMillis = epochDay * 86_400_000L + hour * 3_600_000L + minute * 60_000L + second * 1000L + millis;
+            return localMillis - cachedOffsetMillis;
+        }
+
+        private static int digits(ByteBuffer buffer, int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        /**
+         * Days since 1970-01-01 for a proleptic Gregorian date
+         */
+        private static long epochDay(int year, int month, int day) {
+            long y = month <= 2 ? year - 1 : year;
+            long era = Math.floorDiv(y, 400);
+            long yearOfEra = y - era * 400;
+            long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
+    }
+
+    /**
+     * Small open-addressing table that maps byte ranges to shared String instances,
+     * so a value repeated on every row is decoded only once per chunk
+     */
+    static class ByteStringCache {
+        private static final int TABLE_SIZE = 4096;
+        private static final int MAX_CACHED_LENGTH = 64;
+        private final byte[][] keys = new byte[TABLE_SIZE][];
+        private final String[] values = new String[TABLE_SIZE];
+        private int entries;
+
+        String get(ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length == 0) {
+                return "";
+            }
+            if (length > MAX_CACHED_LENGTH) {
+                return decode(buffer, from, to);
+            }
+
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buffer, from, to)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+
+            String value = decode(buffer, from, to);
+            if (entries < TABLE_SIZE / 2) {
+                byte[] key = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    key[i] = buffer.get(from + i);
+                }
+                keys[slot] = key;
+                values[slot] = value;
+                entries++;
+            }
+            return value;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String decode(ByteBuffer buffer, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) {
+        String filename = args.length > 0 ? args[0] : CsvExporter.getOutputDirectory() + "/captured_packets.csv";
+        System.out.println("=== Parallel CSV Reader ===");
+        System.out.println("Loading " + filename + " with " + ForkJoinPool.commonPool().getParallelism() + " workers...");
+
+        ParallelCsvReader reader = new ParallelCsvReader();
+        try {
+            PacketColumns columns = reader.readColumns(filename);
+            System.out.println("Rows loaded: " + reader.getRowsParsed());
+            System.out.println("Rows skipped (malformed): " + reader.getRowsSkipped());
+            System.out.println("Throughput: " + String.format("%.0f rows/s, %.1f MB/s",
+                             reader.getRowsPerSecond(), reader.getMegabytesPerSecond()));
+
+            // Column scan without materializing PacketRecords
+            Map<String, Long> bytesByProtocol = new TreeMap<>();
+            for (int row = 0; row < columns.size(); row++) {
+                bytesByProtocol.merge(columns.getProtocol(row), (long) columns.getPacketLength(row), Long::sum);
+            }
+            System.out.println("\nBytes by protocol:");
+            bytesByProtocol.forEach((protocol, bytes) -> System.out.println("  " + protocol + ": " + bytes));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading CSV file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,653 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PartitionedExporter.java
+ *
+ * Writes packets in a Hive-style partitioned layout, so Power BI incremental
+ * refresh can load only new partitions and old partitions can be dropped by
+ * deleting a directory:
+ *
+ *   output/partitioned/date=2025-10-10/hour=14/protocol=TCP/part-<run>-<seq>.csv
+ *   output/partitioned/_partitions.csv        manifest of completed part files
+ *
+ * Partition values come from the packet timestamp (local time) and protocol.
+ * Every run writes its own part files (<run> is the yyyyMMdd_HHmmss start
+ * time, <seq> counts the files the run opened in that partition), so a
+ * completed file is never rewritten and keeps its name. Files are written
+ * as .csv.inprogress and renamed once complete: when the exporter is closed,
+ * when the partition received nothing for a minute (its hour is over or the
+ * protocol went quiet), or when too many partitions are open at once. Only
+ * completed files are listed in the manifest.
+ *
+ * Part files use the Power BI CSV format and get TimeRangeIndex and
+ * SecondaryIndex sidecars, like rolling segments.
+ */
+public class PartitionedExporter implements PacketRecordListener, AutoCloseable {
+
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final String MANIFEST_NAME = "_partitions.csv";
+    private static final String MANIFEST_HEADER = "File,Date,Hour,Protocol,Records,Bytes,FirstPacket,LastPacket,Completed";
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    public static final String DEFAULT_DIRECTORY_NAME = "partitioned";
+    public static final int DEFAULT_MAX_OPEN_PARTITIONS = 64;
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String directory;
+    private final String runId;
+    private final int maxOpenPartitions;
+    private final long idleMillis;
+    private final Map<String, PartFile> openParts = new LinkedHashMap<>(16, 0.75f, true); // Least recently written first
+    private final Map<String, Integer> sequences = new HashMap<>();
+    private final List<PartFile> completedParts = new ArrayList<>();
+    private final ScheduledExecutorService idleTimer;
+    private boolean closed = false;
+    private boolean manifestDirty = false;
+
+    // date=/hour= directory prefixes by local hour number (hours since the epoch in local time)
+    private final Map<Long, String> hourPrefixes = new HashMap<>();
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    // Statistics
+    private long recordsWritten = 0;
+    private long filesCompleted = 0;
+    private long partitionsDropped = 0;
+
+    /**
+     * Creates an exporter writing to output/partitioned
+     * @throws IOException if the directory or manifest cannot be read
+     */
+    public PartitionedExporter() throws IOException {
+        this(CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME, DEFAULT_MAX_OPEN_PARTITIONS, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * @param directory Root of the partition tree
+     * @param maxOpenPartitions Part files kept open at once (the least recently written one is completed first)
+     * @param idleMillis Completes part files that received nothing for this long (0 = only on close)
+     */
+    public PartitionedExporter(String directory, int maxOpenPartitions, long idleMillis) throws IOException {
+        if (maxOpenPartitions < 1) {
+            throw new IllegalArgumentException("At least one partition must be open");
+        }
+        this.directory = directory;
+        this.runId = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        this.maxOpenPartitions = maxOpenPartitions;
+        this.idleMillis = idleMillis;
+
+        Files.createDirectories(Paths.get(directory));
+        loadManifest();
+        recoverInProgressParts();
+
+        idleTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "partition-idle-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (idleMillis > 0) {
+            idleTimer.scheduleAtFixedRate(this::completeIdleParts, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Exports a list of records into output/partitioned (one completed file per partition)
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean export(List<PacketRecord> packetRecords) {
+        if (packetRecords == null || packetRecords.isEmpty()) {
+            System.out.println("No packet records to export.");
+            return false;
+        }
+        try {
+            PartitionedExporter exporter = new PartitionedExporter(
+                CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME, Integer.MAX_VALUE, 0);
+            try {
+                exporter.writeAll(packetRecords);
+            } finally {
+                exporter.close(); // Completes every partition file before the counts are reported
+            }
+            System.out.println("Successfully exported " + exporter.getRecordsWritten() + " packet records to " +
+                             exporter.getFilesCompleted() + " partition file(s) in " + exporter.getDirectory());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing partitioned export: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes a batch of records grouped by partition, so unordered input opens every partition once
+     */
+    public synchronized void writeAll(List<PacketRecord> records) throws IOException {
+        Map<String, List<PacketRecord>> byPartition = new TreeMap<>();
+        for (PacketRecord record : records) {
+            String partition = partitionOf(record.getTimestamp().getTime(), protocolValue(record.getProtocol()));
+            byPartition.computeIfAbsent(partition, k -> new ArrayList<>()).add(record);
+        }
+        for (List<PacketRecord> partition : byPartition.values()) {
+            for (PacketRecord record : partition) {
+                recordArrived(record);
+            }
+        }
+        writeManifestIfDirty();
+    }
+
+    /**
+     * Appends one record to the part file of its partition
+     */
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        if (closed) {
+            return;
+        }
+        try {
+            long timestamp = record.getTimestamp().getTime();
+            PartFile part = partFor(timestamp, protocolValue(record.getProtocol()));
+
+            String line = CsvExporter.formatRecordForPowerBI(record);
+            part.writer.write(line);
+            part.writer.write("\n");
+            part.index.addRow(part.bytes, timestamp);
+            part.secondaryIndex.addRow(record);
+            part.bytes += TimeRangeIndex.utf8Length(line) + 1;
+            part.records++;
+            part.firstPacket = Math.min(part.firstPacket, timestamp);
+            part.lastPacket = Math.max(part.lastPacket, timestamp);
+            part.lastWrite = System.currentTimeMillis();
+            recordsWritten++;
+        } catch (IOException e) {
+            System.err.println("Error writing partitioned CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relative directory of the partition of a packet: date=yyyy-MM-dd/hour=HH/protocol=P
+     */
+    private String partitionOf(long timestamp, String protocol) {
+        long localHour = Math.floorDiv(timestamp + timeZone.getOffset(timestamp), HOUR_MILLIS);
+        String prefix = hourPrefixes.get(localHour);
+        if (prefix == null) {
+            Date date = new Date(timestamp);
+            prefix = "date=" + new SimpleDateFormat("yyyy-MM-dd").format(date) + "/hour=" + new SimpleDateFormat("HH").format(date) + "/";
+            hourPrefixes.put(localHour, prefix);
+        }
+        return prefix + "protocol=" + protocol;
+    }
+
+    private PartFile partFor(long timestamp, String protocol) throws IOException {
+        String partition = partitionOf(timestamp, protocol);
+        PartFile part = openParts.get(partition);
+        if (part != null) {
+            return part;
+        }
+
+        if (openParts.size() >= maxOpenPartitions) {
+            Iterator<PartFile> eldest = openParts.values().iterator();
+            PartFile evicted = eldest.next();
+            eldest.remove();
+            completePart(evicted);
+        }
+        String[] values = partition.split("/");
+        part = openPart(partition, values[0].substring(5), values[1].substring(5), protocol);
+        openParts.put(partition, part);
+        return part;
+    }
+
+    /**
+     * Turns a protocol into a directory-safe partition value
+     */
+    static String protocolValue(String protocol) {
+        if (protocol == null || protocol.trim().isEmpty()) {
+            return "UNKNOWN";
+        }
+        StringBuilder value = new StringBuilder();
+        for (char c : protocol.trim().toUpperCase(Locale.ROOT).toCharArray()) {
+            value.append((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' ? c : '_');
+        }
+        return value.toString();
+    }
+
+    private PartFile openPart(String partition, String date, String hour, String protocol) throws IOException {
+        Path partitionDirectory = Paths.get(directory, partition);
+        Files.createDirectories(partitionDirectory);
+
+        // Stable names: the run id plus a per-partition sequence that skips names already taken
+        int sequence = sequences.getOrDefault(partition, 0);
+        String fileName;
+        do {
+            fileName = String.format("part-%s-%04d.csv", runId, sequence++);
+        } while (Files.exists(partitionDirectory.resolve(fileName)) ||
+                 Files.exists(partitionDirectory.resolve(fileName + IN_PROGRESS_SUFFIX)));
+        sequences.put(partition, sequence);
+
+        PartFile part = new PartFile();
+        part.path = partition + "/" + fileName;
+        part.date = date;
+        part.hour = hour;
+        part.protocol = protocol;
+        part.writer = new BufferedWriter(new OutputStreamWriter(
+            Files.newOutputStream(partitionDirectory.resolve(fileName + IN_PROGRESS_SUFFIX)), StandardCharsets.UTF_8), 1 << 16);
+        part.writer.write('\ufeff');
+        part.writer.write(CsvExporter.CSV_HEADER);
+        part.writer.write("\n");
+        part.bytes = 3 + CsvExporter.CSV_HEADER.length() + 1;
+        part.index = new TimeRangeIndex();
+        part.secondaryIndex = new SecondaryIndex();
+        return part;
+    }
+
+    /**
+     * Closes a part file, writes its indexes, renames it to its final name and adds it to the manifest entries
+     */
+    private void completePart(PartFile part) throws IOException {
+        part.writer.close();
+        part.writer = null;
+        part.completed = System.currentTimeMillis();
+
+        Path inProgress = Paths.get(directory, part.path + IN_PROGRESS_SUFFIX);
+        Path target = Paths.get(directory, part.path);
+        part.bytes = Files.size(inProgress);
+        try {
+            part.index.finish(part.bytes);
+            part.index.save(target + TimeRangeIndex.SUFFIX);
+            part.secondaryIndex.finish(part.bytes);
+            part.secondaryIndex.save(target + SecondaryIndex.SUFFIX);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write indexes for " + part.path + ": " + e.getMessage());
+        }
+        part.index = null;
+        part.secondaryIndex = null;
+        RollingCsvWriter.moveAtomically(inProgress, target);
+
+        completedParts.add(part);
+        filesCompleted++;
+        manifestDirty = true;
+    }
+
+    /**
+     * Completes the part files that received nothing for idleMillis and publishes
+     * the manifest (called every second)
+     */
+    private synchronized void completeIdleParts() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<PartFile> parts = openParts.values().iterator();
+        while (parts.hasNext()) {
+            PartFile part = parts.next();
+            if (now - part.lastWrite >= idleMillis) {
+                parts.remove();
+                try {
+                    completePart(part);
+                } catch (IOException e) {
+                    System.err.println("Error completing partition file " + part.path + ": " + e.getMessage());
+                }
+            }
+        }
+        try {
+            writeManifestIfDirty();
+        } catch (IOException e) {
+            System.err.println("Error writing partition manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes all hour partitions that end at or before the cutoff, with their files and manifest entries
+     * @return Number of hour partitions deleted
+     */
+    public synchronized int dropPartitionsBefore(long cutoffMillis) throws IOException {
+        // Open part files of expiring hours are completed first so nothing is written into a deleted directory
+        Iterator<PartFile> parts = openParts.values().iterator();
+        while (parts.hasNext()) {
+            PartFile part = parts.next();
+            if (hourEnd(part.date, part.hour) <= cutoffMillis) {
+                parts.remove();
+                completePart(part);
+            }
+        }
+
+        int dropped = 0;
+        File[] dates = new File(directory).listFiles(file -> file.isDirectory() && file.getName().startsWith("date="));
+        if (dates == null) {
+            return 0;
+        }
+        Arrays.sort(dates);
+        for (File date : dates) {
+            File[] hours = date.listFiles(file -> file.isDirectory() && file.getName().startsWith("hour="));
+            for (File hour : hours == null ? new File[0] : hours) {
+                long end = hourEnd(date.getName().substring(5), hour.getName().substring(5));
+                if (end > cutoffMillis) {
+                    continue;
+                }
+                deleteRecursively(hour);
+                String prefix = date.getName() + "/" + hour.getName() + "/";
+                completedParts.removeIf(part -> part.path.startsWith(prefix));
+                dropped++;
+            }
+            String[] remaining = date.list();
+            if (remaining != null && remaining.length == 0) {
+                Files.deleteIfExists(date.toPath());
+            }
+        }
+        if (dropped > 0) {
+            partitionsDropped += dropped;
+            manifestDirty = true;
+        }
+        writeManifestIfDirty();
+        return dropped;
+    }
+
+    /**
+     * End of an hour partition in epoch milliseconds (Long.MAX_VALUE if the values cannot be parsed)
+     */
+    private static long hourEnd(String date, String hour) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH").parse(date + " " + hour).getTime() + HOUR_MILLIS;
+        } catch (ParseException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void writeManifestIfDirty() throws IOException {
+        if (manifestDirty) {
+            writeManifest();
+        }
+    }
+
+    /**
+     * Rewrites the manifest via a temporary file so readers never see a partial manifest
+     */
+    private void writeManifest() throws IOException {
+        Path manifest = getManifestPath();
+        Path temp = Paths.get(directory, MANIFEST_NAME + ".tmp");
+        completedParts.sort((a, b) -> a.path.compareTo(b.path));
+        StringBuilder content = new StringBuilder(MANIFEST_HEADER).append('\n');
+        for (PartFile part : completedParts) {
+            content.append(part.toCsvLine()).append('\n');
+        }
+        Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+        RollingCsvWriter.moveAtomically(temp, manifest);
+        manifestDirty = false;
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifest = getManifestPath();
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("File,")) {
+                continue;
+            }
+            try {
+                PartFile part = PartFile.parse(line);
+                if (Files.exists(Paths.get(directory, part.path))) {
+                    completedParts.add(part);
+                }
+            } catch (RuntimeException | ParseException e) {
+                System.err.println("Skipping invalid manifest line: " + line);
+            }
+        }
+    }
+
+    /**
+     * Completes part files left behind by a crash, dropping any partially written last line
+     */
+    private void recoverInProgressParts() throws IOException {
+        List<Path> orphans = new ArrayList<>();
+        try (java.util.stream.Stream<Path> files = Files.walk(Paths.get(directory), 4)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".csv" + IN_PROGRESS_SUFFIX)).forEach(orphans::add);
+        }
+        if (orphans.isEmpty()) {
+            return;
+        }
+        orphans.sort(null);
+
+        for (Path orphan : orphans) {
+            long lines;
+            try {
+                lines = RollingCsvWriter.truncateToCompleteLines(orphan.toFile());
+            } catch (IOException e) {
+                System.err.println("Error recovering partition file " + orphan + ": " + e.getMessage());
+                continue;
+            }
+            String relative = Paths.get(directory).relativize(orphan).toString().replace(File.separatorChar, '/');
+            String[] levels = relative.split("/");
+            if (levels.length != 4) {
+                continue;
+            }
+
+            PartFile part = new PartFile();
+            part.path = relative.substring(0, relative.length() - IN_PROGRESS_SUFFIX.length());
+            part.date = levels[0].substring(levels[0].indexOf('=') + 1);
+            part.hour = levels[1].substring(levels[1].indexOf('=') + 1);
+            part.protocol = levels[2].substring(levels[2].indexOf('=') + 1);
+            part.records = Math.max(0, lines - 1); // Minus the header
+            part.bytes = Files.size(orphan);
+            part.completed = orphan.toFile().lastModified();
+            Path target = Paths.get(directory, part.path);
+            RollingCsvWriter.moveAtomically(orphan, target);
+            if (part.records > 0) {
+                // Rebuild the time index, which also gives the packet time bounds for the manifest
+                TimeRangeIndex index = TimeRangeIndex.forFile(target.toString());
+                part.firstPacket = index.getMinTimestamp();
+                part.lastPacket = index.getMaxTimestamp();
+            }
+            completedParts.add(part);
+            System.out.println("Recovered incomplete partition file " + part.path + " (" + part.records + " records)");
+        }
+        writeManifest();
+    }
+
+    /**
+     * Completes all open part files and stops the idle timer
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        idleTimer.shutdownNow();
+        IOException failure = null;
+        for (PartFile part : new ArrayList<>(openParts.values())) {
+            try {
+                completePart(part);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        openParts.clear();
+        writeManifestIfDirty();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Getters
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public Path getManifestPath() {
+        return Paths.get(directory, MANIFEST_NAME);
+    }
+
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized long getFilesCompleted() {
+        return filesCompleted;
+    }
+
+    public synchronized int getOpenPartitions() {
+        return openParts.size();
+    }
+
+    /**
+     * Completed part files as paths relative to the partition root, in partition order
+     */
+    public synchronized List<String> getCompletedFiles() {
+        List<String> files = new ArrayList<>();
+        for (PartFile part : completedParts) {
+            files.add(part.path);
+        }
+        return files;
+    }
+
+    /**
+     * Prints the partitioned output summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== PARTITIONED OUTPUT ===");
+        System.out.println("Records written: " + recordsWritten);
+        System.out.println("Part files completed: " + filesCompleted + " (" + openParts.size() + " still open)");
+        System.out.println("Part files in manifest: " + completedParts.size() +
+                         (partitionsDropped > 0 ? " (" + partitionsDropped + " hour partitions dropped)" : ""));
+        System.out.println("Manifest: " + getManifestPath());
+    }
+
+    /**
+     * One part file and its manifest entry
+     */
+    private static class PartFile {
+        String path; // Relative to the partition root
+        String date;
+        String hour;
+        String protocol;
+        long records;
+        long bytes;
+        long firstPacket = Long.MAX_VALUE;
+        long lastPacket = Long.MIN_VALUE;
+        long lastWrite;
+        long completed;
+        Writer writer; // Open while the file is in progress
+        TimeRangeIndex index;
+        SecondaryIndex secondaryIndex;
+
+        String toCsvLine() {
+            synchronized (DATE_FORMAT) {
+                return path + "," + date + "," + hour + "," + protocol + "," + records + "," + bytes + "," +
+                       (records > 0 && firstPacket != Long.MAX_VALUE ? DATE_FORMAT.format(new Date(firstPacket)) : "") + "," +
+                       (records > 0 && lastPacket != Long.MIN_VALUE ? DATE_FORMAT.format(new Date(lastPacket)) : "") + "," +
+                       DATE_FORMAT.format(new Date(completed));
+            }
+        }
+
+        static PartFile parse(String line) throws ParseException {
+            String[] fields = line.split(",", -1);
+            PartFile part = new PartFile();
+            synchronized (DATE_FORMAT) {
+                part.path = fields[0];
+                part.date = fields[1];
+                part.hour = fields[2];
+                part.protocol = fields[3];
+                part.records = Long.parseLong(fields[4]);
+                part.bytes = Long.parseLong(fields[5]);
+                if (!fields[6].isEmpty()) {
+                    part.firstPacket = DATE_FORMAT.parse(fields[6]).getTime();
+                }
+                if (!fields[7].isEmpty()) {
+                    part.lastPacket = DATE_FORMAT.parse(fields[7]).getTime();
+                }
+                part.completed = DATE_FORMAT.parse(fields[8]).getTime();
+            }
+            return part;
+        }
+    }
+
+    private static List<PacketRecord> readAll(String file) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        try (CsvPacketReader reader = new CsvPacketReader(file)) {
+            PacketRecord record;
+            while ((record = reader.readNext()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Repartitions existing CSV exports, or drops old partitions
+     * Usage: PartitionedExporter <file.csv>... | --drop-before <yyyy-MM-dd[ HH:mm:ss]>
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: PartitionedExporter <file.csv>... | --drop-before <yyyy-MM-dd[ HH:mm:ss]>");
+            return;
+        }
+        System.out.println("=== Partitioned Export ===");
+        try {
+            if (args[0].equals("--drop-before")) {
+                if (args.length < 2) {
+                    System.out.println("Usage: PartitionedExporter --drop-before <yyyy-MM-dd[ HH:mm:ss]>");
+                    return;
+                }
+                long cutoff = new SimpleDateFormat(args[1].contains(":") ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd")
+                                  .parse(args[1]).getTime();
+                try (PartitionedExporter exporter = new PartitionedExporter()) {
+                    int dropped = exporter.dropPartitionsBefore(cutoff);
+                    System.out.println("Dropped " + dropped + " hour partition(s) before " + args[1]);
+                    exporter.printSummary();
+                }
+                return;
+            }
+
+            PartitionedExporter exporter = new PartitionedExporter(
+                CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME, DEFAULT_MAX_OPEN_PARTITIONS, 0);
+            long start = System.nanoTime();
+            try {
+                for (String file : args) {
+                    exporter.writeAll(file.endsWith(".gz") ? readAll(file) : new ParallelCsvReader().readRecords(file));
+                }
+            } finally {
+                exporter.close();
+            }
+            System.out.printf("Partitioned %d records in %.1f s%n", exporter.getRecordsWritten(),
+                            (System.nanoTime() - start) / 1e9);
+            exporter.printSummary();
+        } catch (ParseException e) {
+            System.err.println("Error: invalid date " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Error writing partitioned export: " + e.getMessage());
+        }
+    }
+}
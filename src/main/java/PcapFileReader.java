@@ -0,0 +1,228 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Date;
+
+/**
+ * PcapFileReader.java
+ *
+ * Reads packets from classic libpcap trace files (as written by tcpdump,
+ * Wireshark's "pcap" format, etc.) and decodes them into PacketRecord
+ * objects using the same conventions as PacketCapture.processPacket.
+ *
+ * Supported:
+ * - microsecond and nanosecond timestamp variants, either byte order
+ * - link types Ethernet, BSD loopback (null), raw IP and Linux cooked capture
+ * - IPv4 TCP/UDP (ports, TCP flags) and ARP; anything else becomes "Other"
+ */
+public class PcapFileReader implements PacketRecordSource {
+
+    private static final int MAGIC_MICROS = 0xa1b2c3d4;
+    private static final int MAGIC_NANOS = 0xa1b23c4d;
+
+    // Link-layer header types
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_ARP = 0x0806;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+
+    private final DataInputStream input;
+    private final ByteOrder byteOrder;
+    private final boolean nanosecondTimestamps;
+    private final int linkType;
+    private final String[] localIPs;
+    private final byte[] recordHeader = new byte[16];
+    private byte[] packetBuffer = new byte[65536];
+    private long packetsRead = 0;
+
+    /**
+     * Opens a pcap file and reads its global header
+     * @param filename Path of the pcap file
+     * @param localIPs Local addresses used for direction detection (may be null)
+     * @throws IOException if the file cannot be read or is not a pcap file
+     */
+    public PcapFileReader(String filename, String[] localIPs) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+        this.localIPs = localIPs;
+
+        byte[] globalHeader = new byte[24];
+        try {
+            input.readFully(globalHeader);
+        } catch (EOFException e) {
+            input.close();
+            throw new IOException("File too short to be a pcap trace: " + filename);
+        }
+
+        int magic = ByteBuffer.wrap(globalHeader).order(ByteOrder.BIG_ENDIAN).getInt();
+        int swappedMagic = Integer.reverseBytes(magic);
+        if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+            byteOrder = ByteOrder.BIG_ENDIAN;
+            nanosecondTimestamps = magic == MAGIC_NANOS;
+        } else if (swappedMagic == MAGIC_MICROS || swappedMagic == MAGIC_NANOS) {
+            byteOrder = ByteOrder.LITTLE_ENDIAN;
+            nanosecondTimestamps = swappedMagic == MAGIC_NANOS;
+        } else {
+            input.close();
+            throw new IOException("Not a pcap file (pcapng is not supported): " + filename);
+        }
+
+        linkType = ByteBuffer.wrap(globalHeader).order(byteOrder).getInt(20) & 0x0fffffff;
+    }
+
+    /**
+     * Reads and decodes the next packet
+     * @return The decoded record, or null at end of file
+     */
+    @Override
+    public PacketRecord readNext() throws IOException {
+        try {
+            input.readFully(recordHeader);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(recordHeader).order(byteOrder);
+        long seconds = header.getInt(0) & 0xffffffffL;
+        long fraction = header.getInt(4) & 0xffffffffL;
+        int capturedLength = header.getInt(8);
+        int originalLength = header.getInt(12);
+        if (capturedLength < 0 || capturedLength > 256 * 1024 * 1024) {
+            throw new IOException("Corrupt pcap record header at packet " + (packetsRead + 1));
+        }
+
+        if (capturedLength > packetBuffer.length) {
+            packetBuffer = new byte[capturedLength];
+        }
+        try {
+            input.readFully(packetBuffer, 0, capturedLength);
+        } catch (EOFException e) {
+            return null; // Truncated final packet
+        }
+        packetsRead++;
+
+        long millis = seconds * 1000 + (nanosecondTimestamps ? fraction / 1_000_000 : fraction / 1000);
+        PacketRecord record = decode(ByteBuffer.wrap(packetBuffer, 0, capturedLength).order(ByteOrder.BIG_ENDIAN));
+        record.setTimestamp(new Date(millis));
+        record.setPacketLength(originalLength);
+        record.determineDirection(localIPs);
+        record.guessApplication();
+        return record;
+    }
+
+    /**
+     * Decodes the link layer and dispatches on the network protocol
+     */
+    private PacketRecord decode(ByteBuffer packet) {
+        PacketRecord record = new PacketRecord();
+        record.setProtocol("Other");
+        record.setSourceIP("Unknown");
+        record.setDestinationIP("Unknown");
+
+        try {
+            int etherType;
+            int offset;
+            switch (linkType) {
+                case LINKTYPE_ETHERNET:
+                    etherType = packet.getShort(12) & 0xffff;
+                    offset = 14;
+                    if (etherType == ETHERTYPE_VLAN) {
+                        etherType = packet.getShort(16) & 0xffff;
+                        offset = 18;
+                    }
+                    break;
+                case LINKTYPE_LINUX_SLL:
+                    etherType = packet.getShort(14) & 0xffff;
+                    offset = 16;
+                    break;
+                case LINKTYPE_NULL:
+                    etherType = ETHERTYPE_IPV4; // Protocol family is host-order; only IPv4 is decoded
+                    offset = 4;
+                    break;
+                case LINKTYPE_RAW:
+                    etherType = ETHERTYPE_IPV4;
+                    offset = 0;
+                    break;
+                default:
+                    return record;
+            }
+
+            if (etherType == ETHERTYPE_IPV4) {
+                decodeIPv4(packet, offset, record);
+            } else if (etherType == ETHERTYPE_ARP) {
+                decodeArp(packet, offset, record);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Snap length cut the headers short; keep what was decoded
+        }
+        return record;
+    }
+
+    private void decodeIPv4(ByteBuffer packet, int offset, PacketRecord record) {
+        int versionAndLength = packet.get(offset) & 0xff;
+        if ((versionAndLength >> 4) != 4) {
+            return;
+        }
+        int headerLength = (versionAndLength & 0x0f) * 4;
+        int protocol = packet.get(offset + 9) & 0xff;
+        record.setSourceIP(formatIPv4(packet.getInt(offset + 12)));
+        record.setDestinationIP(formatIPv4(packet.getInt(offset + 16)));
+
+        int transport = offset + headerLength;
+        if (protocol == 6) {
+            record.setProtocol("TCP");
+            record.setSourcePort(packet.getShort(transport) & 0xffff);
+            record.setDestinationPort(packet.getShort(transport + 2) & 0xffff);
+            int flags = packet.get(transport + 13) & 0xff;
+
+            // Same flag order as PacketCapture.processPacket
+            StringBuilder flagNames = new StringBuilder();
+            if ((flags & 0x02) != 0) flagNames.append("SYN ");
+            if ((flags & 0x10) != 0) flagNames.append("ACK ");
+            if ((flags & 0x01) != 0) flagNames.append("FIN ");
+            if ((flags & 0x04) != 0) flagNames.append("RST ");
+            if ((flags & 0x08) != 0) flagNames.append("PSH ");
+            if ((flags & 0x20) != 0) flagNames.append("URG ");
+            record.setTcpFlags(flagNames.toString().trim());
+        } else if (protocol == 17) {
+            record.setProtocol("UDP");
+            record.setSourcePort(packet.getShort(transport) & 0xffff);
+            record.setDestinationPort(packet.getShort(transport + 2) & 0xffff);
+        } else if (protocol == 1) {
+            record.setProtocol("ICMP");
+        }
+    }
+
+    private void decodeArp(ByteBuffer packet, int offset, PacketRecord record) {
+        record.setProtocol("ARP");
+        int hardwareLength = packet.get(offset + 4) & 0xff;
+        int protocolLength = packet.get(offset + 5) & 0xff;
+        if (protocolLength == 4) {
+            int senderIp = offset + 8 + hardwareLength;
+            int targetIp = senderIp + 4 + hardwareLength;
+            record.setSourceIP(formatIPv4(packet.getInt(senderIp)));
+            record.setDestinationIP(formatIPv4(packet.getInt(targetIp)));
+        }
+    }
+
+    private static String formatIPv4(int address) {
+        return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." +
+               ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+
+    public long getPacketsRead() {
+        return packetsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
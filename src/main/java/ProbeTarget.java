@@ -0,0 +1,151 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ProbeTarget.java
+ *
+ * A single endpoint probed by LatencyProber, together with the statistics
+ * collected for it. Targets are written as "tcp://host:port" (TCP connect
+ * probe) or "udp://host:port" (UDP echo probe).
+ */
+public class ProbeTarget {
+
+    private final String type;
+    private final String host;
+    private final int port;
+
+    // Statistics (updated concurrently by probe workers)
+    private final LatencyHistogram rttHistogram = new LatencyHistogram();
+    private final AtomicLong probesSent = new AtomicLong();
+    private final AtomicLong probesSucceeded = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String lastError = "";
+
+    public ProbeTarget(String type, String host, int port) {
+        this.type = type;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses a target specification such as "tcp://127.0.0.1:80"
+     * @param spec The target specification
+     * @return The parsed target
+     * @throws IllegalArgumentException if the specification is malformed
+     */
+    public static ProbeTarget parse(String spec) {
+        String trimmed = spec.trim();
+        int schemeEnd = trimmed.indexOf("://");
+        int portStart = trimmed.lastIndexOf(':');
+        if (schemeEnd < 0 || portStart <= schemeEnd + 3) {
+            throw new IllegalArgumentException("Invalid probe target: " + spec);
+        }
+
+        String type = trimmed.substring(0, schemeEnd).toLowerCase();
+        if (!"tcp".equals(type) && !"udp".equals(type)) {
+            throw new IllegalArgumentException("Unsupported probe type: " + type);
+        }
+
+        String host = trimmed.substring(schemeEnd + 3, portStart);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1); // IPv6 literal
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(trimmed.substring(portStart + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port in probe target: " + spec);
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Port out of range in probe target: " + spec);
+        }
+        return new ProbeTarget(type, host, port);
+    }
+
+    // Getters
+    public String getType() {
+        return type;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public LatencyHistogram getRttHistogram() {
+        return rttHistogram;
+    }
+
+    public long getProbesSent() {
+        return probesSent.get();
+    }
+
+    public long getProbesSucceeded() {
+        return probesSucceeded.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // Result recording
+    void recordSuccess(long rttNanos) {
+        probesSent.incrementAndGet();
+        probesSucceeded.incrementAndGet();
+        rttHistogram.record(rttNanos);
+    }
+
+    void recordTimeout() {
+        probesSent.incrementAndGet();
+        timeouts.incrementAndGet();
+    }
+
+    void recordError(String message) {
+        probesSent.incrementAndGet();
+        errors.incrementAndGet();
+        lastError = message == null ? "" : message;
+    }
+
+    /**
+     * Fraction of probes that got no successful answer (timeouts plus errors)
+     */
+    public double getLossRate() {
+        long sent = probesSent.get();
+        return sent == 0 ? 0 : (double) (sent - probesSucceeded.get()) / sent;
+    }
+
+    /**
+     * Fraction of probes that timed out
+     */
+    public double getTimeoutRate() {
+        long sent = probesSent.get();
+        return sent == 0 ? 0 : (double) timeouts.get() / sent;
+    }
+
+    /**
+     * Returns a compact string representation for logging
+     */
+    public String toCompactString() {
+        return String.format("%s sent=%d ok=%d loss=%.2f%% timeouts=%.2f%% | %s",
+                           this, getProbesSent(), getProbesSucceeded(),
+                           getLossRate() * 100, getTimeoutRate() * 100,
+                           rttHistogram.toSummaryString());
+    }
+
+    @Override
+    public String toString() {
+        return type + "://" + (host.contains(":") ? "[" + host + "]" : host) + ":" + port;
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ProcessingCostTracker.java
+ *
+ * Measures what processing a packet costs, per pipeline stage, so a run can
+ * report how close the analyzer is to saturation instead of only the
+ * packets per second it happened to see:
+ *
+ *   - thread CPU time of each stage (ThreadMXBean), in total and per packet
+ *   - wall time per packet as a nanosecond LatencyHistogram
+ *   - bytes allocated per packet (HotSpot thread allocation counters)
+ *   - GC count and total collection time since the tracker started
+ *
+ * A stage is measured between begin() and end(packets) on the same thread;
+ * a call may cover one packet (decoding) or a whole batch (an export).
+ * Reading the CPU and allocation counters costs a few hundred nanoseconds,
+ * so the tracker calibrates that overhead when it is created, subtracts it
+ * from every measurement and reports it separately.
+ *
+ * Only per-packet stages (stage(), the work every packet goes through on
+ * the capture path) count towards the headroom. Work that runs once per run
+ * or off that path, such as an end-of-run export or a traffic simulator, is
+ * a batch stage (batchStage()): it is reported with its total cost, since
+ * dividing it by the packets of a short run says nothing about the cost of
+ * a packet.
+ *
+ * The headroom estimate assumes the per-packet stages run one after another
+ * on one thread (as on the capture thread): sustainable pps = 1 s / CPU cost
+ * per packet of those stages, reduced by the fraction of the run spent in GC.
+ */
+public class ProcessingCostTracker {
+
+    private static final int CALIBRATION_ROUNDS = 10_000;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean allocations;
+    private final boolean cpuSupported;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+    private final List<String> stageOrder = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private final long startGcCount;
+    private final long startGcMillis;
+    // What an empty begin/end pair measures, subtracted from every measurement
+    private long cpuOverheadNanos = 0;
+    private long wallOverheadNanos = 0;
+
+    public ProcessingCostTracker() {
+        cpuSupported = threads.isCurrentThreadCpuTimeSupported();
+        if (cpuSupported && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        com.sun.management.ThreadMXBean hotspot = threads instanceof com.sun.management.ThreadMXBean
+                                                  ? (com.sun.management.ThreadMXBean) threads : null;
+        if (hotspot != null && hotspot.isThreadAllocatedMemorySupported()) {
+            if (!hotspot.isThreadAllocatedMemoryEnabled()) {
+                hotspot.setThreadAllocatedMemoryEnabled(true);
+            }
+            allocations = hotspot;
+        } else {
+            allocations = null;
+        }
+        long[] gc = gcTotals();
+        startGcCount = gc[0];
+        startGcMillis = gc[1];
+        calibrate();
+    }
+
+    /**
+     * The per-packet stage with this name, created on first use (stages are reported in order of creation)
+     */
+    public Stage stage(String name) {
+        return stage(name, true);
+    }
+
+    /**
+     * The batch stage with this name, created on first use: reported, but not counted in the headroom
+     */
+    public Stage batchStage(String name) {
+        return stage(name, false);
+    }
+
+    private Stage stage(String name, boolean perPacket) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            synchronized (stageOrder) {
+                stage = stages.computeIfAbsent(name, n -> new Stage(n, perPacket));
+                if (!stageOrder.contains(name)) {
+                    stageOrder.add(name);
+                }
+            }
+        }
+        if (stage.perPacket != perPacket) {
+            throw new IllegalArgumentException("Stage " + name + " is already a " +
+                                               (stage.perPacket ? "per-packet" : "batch") + " stage");
+        }
+        return stage;
+    }
+
+    /**
+     * Measures an empty stage many times: what it reports is the cost of the measurement itself
+     */
+    private void calibrate() {
+        Stage probe = null;
+        for (int pass = 0; pass < 2; pass++) { // The first pass only warms up the JIT
+            probe = new Stage("calibration", true);
+            for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+                probe.begin();
+                probe.end(1);
+            }
+        }
+        cpuOverheadNanos = probe.cpuNanos.sum() / CALIBRATION_ROUNDS;
+        wallOverheadNanos = probe.wallNanos.sum() / CALIBRATION_ROUNDS;
+    }
+
+    private long cpuNow() {
+        return cpuSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private long allocatedNow() {
+        return allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] { count, millis };
+    }
+
+    /**
+     * One measured pipeline stage
+     */
+    public class Stage {
+        private final String name;
+        private final boolean perPacket;
+        private final ThreadLocal<long[]> marks = ThreadLocal.withInitial(() -> new long[3]);
+        private final LatencyHistogram nanosPerPacket = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        Stage(String name, boolean perPacket) {
+            this.name = name;
+            this.perPacket = perPacket;
+        }
+
+        /**
+         * Marks the start of the stage on the calling thread
+         */
+        public void begin() {
+            long[] mark = marks.get();
+            mark[1] = cpuNow();
+            mark[2] = allocatedNow();
+            mark[0] = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of the stage on the calling thread
+         * @param packetCount Packets processed since begin()
+         */
+        public void end(int packetCount) {
+            long wallEnd = System.nanoTime();
+            long cpuEnd = cpuNow();
+            long allocatedEnd = allocatedNow();
+            long[] mark = marks.get();
+            long wall = Math.max(0, wallEnd - mark[0] - wallOverheadNanos);
+            long cpu = Math.max(0, cpuEnd - mark[1] - cpuOverheadNanos);
+            calls.increment();
+            packets.add(packetCount);
+            wallNanos.add(wall);
+            cpuNanos.add(cpu);
+            allocatedBytes.add(Math.max(0, allocatedEnd - mark[2]));
+            if (packetCount > 0) {
+                nanosPerPacket.record(wall / packetCount);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Whether the stage counts towards the per-packet cost and the headroom
+         */
+        public boolean isPerPacket() {
+            return perPacket;
+        }
+
+        public long getPackets() {
+            return packets.sum();
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos.sum();
+        }
+
+        public double getCpuNanosPerPacket() {
+            long count = packets.sum();
+            return count > 0 ? (double) cpuNanos.sum() / count : 0.0;
+        }
+
+        public double getAllocatedBytesPerPacket() {
+            long count = packets.sum();
+            return count > 0 ? (double) allocatedBytes.sum() / count : 0.0;
+        }
+
+        public LatencyHistogram getNanosPerPacket() {
+            return nanosPerPacket;
+        }
+
+        String toReportLine() {
+            return String.format("%-12s %,10d packets  CPU %,10.0f ns/packet  wall p50 %,8d / p99 %,8d ns/packet  " +
+                                 "%,8.0f B/packet  (%d calls, %.1f ms CPU)",
+                                 name, packets.sum(), getCpuNanosPerPacket(), nanosPerPacket.getPercentile(50),
+                                 nanosPerPacket.getPercentile(99), getAllocatedBytesPerPacket(), calls.sum(),
+                                 cpuNanos.sum() / 1e6);
+        }
+
+        String toBatchReportLine() {
+            return String.format("%-12s %,10d packets  CPU %,10.1f ms  wall %,10.1f ms  %,12d B allocated  (%d calls)",
+                                 name, packets.sum(), cpuNanos.sum() / 1e6, wallNanos.sum() / 1e6,
+                                 allocatedBytes.sum(), calls.sum());
+        }
+    }
+
+    // Statistics
+
+    /**
+     * The per-packet or the batch stages, in order of creation
+     */
+    private List<Stage> orderedStages(boolean perPacket) {
+        List<Stage> ordered = new ArrayList<>();
+        synchronized (stageOrder) {
+            for (String name : stageOrder) {
+                Stage stage = stages.get(name);
+                if (stage.perPacket == perPacket) {
+                    ordered.add(stage);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Names of the per-packet stages, joined with " + " (the work the headroom estimate covers)
+     */
+    public String describePerPacketStages() {
+        List<String> names = new ArrayList<>();
+        for (Stage stage : orderedStages(true)) {
+            names.add(stage.getName());
+        }
+        return String.join(" + ", names);
+    }
+
+    /**
+     * CPU nanoseconds one packet costs across the per-packet stages
+     */
+    public double getCpuNanosPerPacket() {
+        double total = 0;
+        for (Stage stage : orderedStages(true)) {
+            total += stage.getCpuNanosPerPacket();
+        }
+        return total;
+    }
+
+    public long getGcCount() {
+        return gcTotals()[0] - startGcCount;
+    }
+
+    public long getGcMillis() {
+        return gcTotals()[1] - startGcMillis;
+    }
+
+    /**
+     * Share of the time since the tracker started that was spent in garbage collection
+     */
+    public double getGcFraction() {
+        double elapsedMillis = (System.nanoTime() - startNanos) / 1e6;
+        return elapsedMillis > 0 ? Math.min(1.0, getGcMillis() / elapsedMillis) : 0.0;
+    }
+
+    /**
+     * Estimated maximum packets per second this host sustains: one second of CPU on one thread divided by
+     * the CPU cost of a packet, less the time lost to GC (0 if nothing was measured)
+     */
+    public double getSustainablePacketsPerSecond() {
+        double cost = getCpuNanosPerPacket();
+        return cost > 0 ? 1e9 / cost * (1.0 - getGcFraction()) : 0.0;
+    }
+
+    /**
+     * The same estimate from the p99 wall time per packet of each stage (a conservative bound)
+     */
+    public double getSustainablePacketsPerSecondP99() {
+        long total = 0;
+        for (Stage stage : orderedStages(true)) {
+            total += stage.getNanosPerPacket().getPercentile(99);
+        }
+        return total > 0 ? 1e9 / total * (1.0 - getGcFraction()) : 0.0;
+    }
+
+    /**
+     * CPU nanoseconds one begin/end pair adds to the calling thread (not counted in the stages)
+     */
+    public long getOverheadNanos() {
+        return cpuOverheadNanos;
+    }
+
+    /**
+     * Writes the per-stage costs and the headroom estimate (also used for the experiment log)
+     * @param observedPacketsPerSecond The rate the run actually saw, for the utilization figure (0 to omit)
+     */
+    public void writeReport(Writer writer, double observedPacketsPerSecond) throws IOException {
+        List<Stage> perPacket = orderedStages(true);
+        List<Stage> batch = orderedStages(false);
+        if (!perPacket.isEmpty()) {
+            writer.write("  Per-packet stages:\n");
+            for (Stage stage : perPacket) {
+                writer.write("    " + stage.toReportLine() + "\n");
+            }
+        }
+        if (!batch.isEmpty()) {
+            writer.write("  Batch stages (not per-packet cost, not in the headroom):\n");
+            for (Stage stage : batch) {
+                writer.write("    " + stage.toBatchReportLine() + "\n");
+            }
+        }
+        writer.write(String.format("  GC: %d collections, %d ms (%.2f%% of the run)%n",
+                                   getGcCount(), getGcMillis(), getGcFraction() * 100));
+        writer.write(String.format("  Measurement overhead: %d ns CPU per stage call (subtracted)%s%n", cpuOverheadNanos,
+                                   cpuSupported ? "" : ", thread CPU time unsupported: wall time used"));
+        double sustainable = getSustainablePacketsPerSecond();
+        if (sustainable > 0) {
+            writer.write(String.format("  Headroom: ~%,.0f packets/s sustainable on one thread (%,.0f at p99 cost), " +
+                                       "counting %s only%n",
+                                       sustainable, getSustainablePacketsPerSecondP99(), describePerPacketStages()));
+        } else {
+            writer.write("  Headroom: no per-packet stage measured\n");
+        }
+        if (observedPacketsPerSecond > 0 && sustainable > 0) {
+            writer.write(String.format("  Observed %,.1f packets/s = %.3f%% of sustainable%n",
+                                       observedPacketsPerSecond, observedPacketsPerSecond / sustainable * 100));
+        }
+    }
+
+    /**
+     * Prints the processing cost report to the console
+     */
+    public void printSummary(double observedPacketsPerSecond) {
+        System.out.println("\n=== PROCESSING COST ===");
+        java.io.StringWriter report = new java.io.StringWriter();
+        try {
+            writeReport(report, observedPacketsPerSecond);
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        System.out.print(report);
+    }
+}
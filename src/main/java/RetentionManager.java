@@ -0,0 +1,555 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RetentionManager.java
+ *
+ * Keeps rolling capture output bounded by downsampling it in tiers instead of
+ * keeping raw packets forever:
+ *
+ *   raw      rolling segments (captured_packets_*.csv)            kept for 1 day
+ *   flows    output/retention/flows/<day>/flows_<segment>.csv      kept for 7 days
+ *   minutes  output/retention/minutes/<day>/minutes_<segment>.csv  kept for 30 days
+ *   hours    output/retention/hours/hours_<day>.csv                kept for 365 days
+ *
+ * A raw segment whose packets are all older than the raw age (or the oldest
+ * segments, while the raw segments exceed their byte budget) is read once
+ * and turned into its flows and per-minute rollups, both computed from the
+ * packets so neither tier is an approximation of the other; then the
+ * segment, its sidecars and its manifest entry are deleted. The flow tier of
+ * a day is dropped when it ages out, a day of minute rollups is summed into
+ * one hourly file, and hourly files are deleted at the end of the policy.
+ * Every tier file is written under a temporary name and renamed, and each
+ * step only deletes its input after its output is complete, so an
+ * interrupted run is simply redone by the next one. Summing minutes into
+ * hours is the one step that is not safe to redo, since the hourly file
+ * may already include the minutes: the new hourly file is staged as
+ * hours_<day>.csv.pending, and renaming the day's minute directory to
+ * <day>.merged commits it. The next run finishes a committed step
+ * (publishes the pending file, deletes the merged minutes) instead of
+ * adding the same minutes again.
+ *
+ * The manager works through the RollingCsvWriter that owns the segments, so
+ * it runs inside the capture (PacketCapture --rolling --tiered-retention) or
+ * standalone while no capture is writing the segments. Ages are measured
+ * from the packet timestamps, and days are local calendar days.
+ */
+public class RetentionManager implements AutoCloseable {
+
+    private static final String FLOWS_DIRECTORY = "flows";
+    private static final String MINUTES_DIRECTORY = "minutes";
+    private static final String HOURS_DIRECTORY = "hours";
+    private static final String MERGED_SUFFIX = ".merged";   // Minute day directory already summed into its hourly file
+    private static final String PENDING_SUFFIX = ".pending"; // Hourly file waiting to replace hours_<day>.csv
+
+    public static final String DEFAULT_DIRECTORY_NAME = "retention";
+    public static final String DEFAULT_POLICY_FILE = "retention.properties";
+    public static final long DEFAULT_RAW_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long DEFAULT_FLOW_MILLIS = TimeUnit.DAYS.toMillis(7);
+    public static final long DEFAULT_MINUTE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    public static final long DEFAULT_HOUR_MILLIS = TimeUnit.DAYS.toMillis(365);
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final RollingCsvWriter segments;
+    private final String directory;
+    private final ScheduledExecutorService timer;
+    private long rawMillis = DEFAULT_RAW_MILLIS;
+    private long flowMillis = DEFAULT_FLOW_MILLIS;
+    private long minuteMillis = DEFAULT_MINUTE_MILLIS;
+    private long hourMillis = DEFAULT_HOUR_MILLIS;
+    private long maxRawBytes = 0; // 0 = no budget
+    private long flowIdleMillis = IncrementalExporter.DEFAULT_FLOW_IDLE_MILLIS;
+    private boolean closed = false;
+
+    // Statistics
+    private long segmentsConverted = 0;
+    private long packetsConverted = 0;
+    private long flowsWritten = 0;
+    private long flowDaysDropped = 0;
+    private long minuteDaysDownsampled = 0;
+    private long hourDaysDropped = 0;
+
+    /**
+     * Manages the segments of a rolling writer, writing the tiers to output/retention
+     */
+    public RetentionManager(RollingCsvWriter segments) throws IOException {
+        this(segments, CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME);
+    }
+
+    /**
+     * @param segments The rolling writer whose completed segments are downsampled
+     * @param directory Root of the flow, minute and hour tiers
+     * @throws IOException if the tier directories cannot be created
+     */
+    public RetentionManager(RollingCsvWriter segments, String directory) throws IOException {
+        this.segments = segments;
+        this.directory = directory;
+        Files.createDirectories(Paths.get(directory, FLOWS_DIRECTORY));
+        Files.createDirectories(Paths.get(directory, MINUTES_DIRECTORY));
+        Files.createDirectories(Paths.get(directory, HOURS_DIRECTORY));
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "retention-manager");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets how long each tier is kept (each must be longer than the one before)
+     * @param rawMillis Age at which raw segments are converted to flows and minute rollups
+     * @param flowMillis Age at which flows are dropped
+     * @param minuteMillis Age at which minute rollups are summed into hourly rollups
+     * @param hourMillis Age at which hourly rollups are deleted (0 = never)
+     */
+    public synchronized void setPolicy(long rawMillis, long flowMillis, long minuteMillis, long hourMillis) {
+        if (rawMillis <= 0 || flowMillis < rawMillis || minuteMillis < flowMillis ||
+            (hourMillis > 0 && hourMillis < minuteMillis)) {
+            throw new IllegalArgumentException("Tier ages must increase from raw to flows, minutes and hours");
+        }
+        this.rawMillis = rawMillis;
+        this.flowMillis = flowMillis;
+        this.minuteMillis = minuteMillis;
+        this.hourMillis = hourMillis;
+    }
+
+    /**
+     * Converts the oldest raw segments early while the raw segments exceed this size (0 = no budget)
+     */
+    public synchronized void setRawBudget(long maxRawBytes) {
+        this.maxRawBytes = maxRawBytes;
+    }
+
+    /**
+     * Applies a policy file with any of: raw.hours, flows.days, minutes.days, hours.days, raw.max.mb
+     * @throws IOException if the file cannot be read or holds an invalid value
+     */
+    public synchronized void loadPolicy(String file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            setPolicy(hours(properties, "raw.hours", rawMillis), days(properties, "flows.days", flowMillis),
+                      days(properties, "minutes.days", minuteMillis), days(properties, "hours.days", hourMillis));
+            String budget = properties.getProperty("raw.max.mb");
+            if (budget != null) {
+                setRawBudget(Long.parseLong(budget.trim()) * 1024 * 1024);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid retention policy " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static long hours(Properties properties, String key, long fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : (long) (Double.parseDouble(value.trim()) * TimeUnit.HOURS.toMillis(1));
+    }
+
+    private static long days(Properties properties, String key, long fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : (long) (Double.parseDouble(value.trim()) * TimeUnit.DAYS.toMillis(1));
+    }
+
+    /**
+     * Runs the retention pass in the background at a fixed interval
+     */
+    public void start(long intervalMillis) {
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce(System.currentTimeMillis());
+            } catch (IOException e) {
+                System.err.println("Error applying retention policy: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Retention
+
+    /**
+     * Applies the policy once: converts aged raw segments, then ages the flow, minute and hour tiers
+     * @param now Reference time for the tier ages
+     */
+    public synchronized void runOnce(long now) throws IOException {
+        if (closed) {
+            return;
+        }
+        recoverDownsampling();
+        for (String segment : segments.getSegmentsBefore(now - rawMillis)) {
+            convertSegment(segment);
+        }
+        while (maxRawBytes > 0 && segments.getRetainedBytes() > maxRawBytes) {
+            List<String> oldest = segments.getSegmentsBefore(Long.MAX_VALUE);
+            if (oldest.isEmpty()) {
+                break;
+            }
+            convertSegment(oldest.get(0));
+        }
+
+        for (String day : listDays(FLOWS_DIRECTORY, false)) {
+            if (endOfDay(day) <= now - flowMillis) {
+                deleteRecursively(Paths.get(directory, FLOWS_DIRECTORY, day));
+                flowDaysDropped++;
+            }
+        }
+        for (String day : listDays(MINUTES_DIRECTORY, false)) {
+            if (endOfDay(day) <= now - minuteMillis) {
+                downsampleMinutes(day);
+            }
+        }
+        if (hourMillis > 0) {
+            for (String day : listDays(HOURS_DIRECTORY, true)) {
+                if (endOfDay(day) <= now - hourMillis) {
+                    Files.deleteIfExists(hourlyFile(day));
+                    hourDaysDropped++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the flows and minute rollups of one raw segment (split by day) and deletes the segment
+     */
+    private void convertSegment(String file) throws IOException {
+        List<PacketRecord> records = readSegment(file);
+        TrafficAggregator aggregator = new TrafficAggregator(flowIdleMillis);
+        for (PacketRecord record : records) {
+            aggregator.add(record);
+        }
+
+        String name = Paths.get(file).getFileName().toString();
+        String base = name.substring(0, name.indexOf(".csv"));
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+        Map<String, List<TrafficAggregator.Flow>> flowsByDay = new TreeMap<>();
+        for (TrafficAggregator.Flow flow : aggregator.getFlows()) {
+            flowsByDay.computeIfAbsent(dayFormat.format(new Date(flow.first)), d -> new ArrayList<>()).add(flow);
+        }
+        Map<String, TreeMap<String, long[]>> rollupsByDay = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : aggregator.getRollups().entrySet()) {
+            rollupsByDay.computeIfAbsent(TrafficAggregator.dayOf(entry.getKey()), d -> new TreeMap<>())
+                        .put(entry.getKey(), entry.getValue());
+        }
+
+        // Re-running an interrupted conversion rewrites the same files
+        for (Map.Entry<String, List<TrafficAggregator.Flow>> day : flowsByDay.entrySet()) {
+            Path target = Paths.get(directory, FLOWS_DIRECTORY, day.getKey(), "flows_" + base + ".csv");
+            Files.createDirectories(target.getParent());
+            Path temp = Paths.get(target + ".tmp");
+            TrafficAggregator.writeFlows(temp, day.getValue());
+            RollingCsvWriter.moveAtomically(temp, target);
+            flowsWritten += day.getValue().size();
+        }
+        for (Map.Entry<String, TreeMap<String, long[]>> day : rollupsByDay.entrySet()) {
+            Path target = Paths.get(directory, MINUTES_DIRECTORY, day.getKey(), "minutes_" + base + ".csv");
+            Files.createDirectories(target.getParent());
+            Path temp = Paths.get(target + ".tmp");
+            TrafficAggregator.writeRollups(temp, TrafficAggregator.MINUTE_HEADER, day.getValue());
+            RollingCsvWriter.moveAtomically(temp, target);
+        }
+
+        segments.deleteSegment(file);
+        segmentsConverted++;
+        packetsConverted += records.size();
+    }
+
+    private static List<PacketRecord> readSegment(String file) throws IOException {
+        if (!file.endsWith(".gz")) {
+            return new ParallelCsvReader().readRecords(file);
+        }
+        List<PacketRecord> records = new ArrayList<>();
+        try (CsvPacketReader reader = new CsvPacketReader(file)) {
+            PacketRecord record;
+            while ((record = reader.readNext()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Sums a day of minute rollups into its hourly file, then deletes the minute files
+     */
+    private void downsampleMinutes(String day) throws IOException {
+        Path dayDirectory = Paths.get(directory, MINUTES_DIRECTORY, day);
+        TreeMap<String, long[]> minutes = readMinuteDay(dayDirectory);
+        Path target = hourlyFile(day);
+        if (Files.exists(target)) {
+            // Late minute files for a day already summarized (e.g. a policy change) are added to it
+            TrafficAggregator.readRollups(target, minutes);
+        }
+        Path temp = Paths.get(target + ".tmp");
+        TrafficAggregator.writeRollups(temp, TrafficAggregator.HOUR_HEADER, TrafficAggregator.toHourly(minutes));
+        RollingCsvWriter.moveAtomically(temp, Paths.get(target + PENDING_SUFFIX));
+        // Commit point: from here on the pending file includes these minutes, and a rerun only completes the step
+        RollingCsvWriter.moveAtomically(dayDirectory, Paths.get(directory, MINUTES_DIRECTORY, day + MERGED_SUFFIX));
+        completeDownsampling(day);
+        minuteDaysDownsampled++;
+    }
+
+    /**
+     * Publishes the pending hourly file of a committed downsampling step and deletes its merged minutes
+     */
+    private void completeDownsampling(String day) throws IOException {
+        Path pending = Paths.get(hourlyFile(day) + PENDING_SUFFIX);
+        if (Files.exists(pending)) {
+            RollingCsvWriter.moveAtomically(pending, hourlyFile(day));
+        }
+        deleteRecursively(Paths.get(directory, MINUTES_DIRECTORY, day + MERGED_SUFFIX));
+    }
+
+    /**
+     * Finishes the downsampling steps an earlier run committed, and drops pending hourly files it did not commit
+     */
+    private void recoverDownsampling() throws IOException {
+        String[] merged = new File(directory, MINUTES_DIRECTORY).list((dir, name) -> name.endsWith(MERGED_SUFFIX));
+        if (merged != null) {
+            for (String name : merged) {
+                completeDownsampling(name.substring(0, name.length() - MERGED_SUFFIX.length()));
+            }
+        }
+        String[] pending = new File(directory, HOURS_DIRECTORY).list((dir, name) -> name.endsWith(PENDING_SUFFIX));
+        if (pending != null) {
+            for (String name : pending) {
+                // Not committed: the minute files are still in place and are summed again
+                Files.deleteIfExists(Paths.get(directory, HOURS_DIRECTORY, name));
+            }
+        }
+    }
+
+    private Path hourlyFile(String day) {
+        return Paths.get(directory, HOURS_DIRECTORY, "hours_" + day + ".csv");
+    }
+
+    private static TreeMap<String, long[]> readMinuteDay(Path dayDirectory) throws IOException {
+        TreeMap<String, long[]> minutes = new TreeMap<>();
+        File[] files = dayDirectory.toFile().listFiles((dir, name) -> name.endsWith(".csv"));
+        if (files != null) {
+            for (File file : files) {
+                TrafficAggregator.readRollups(file.toPath(), minutes);
+            }
+        }
+        return minutes;
+    }
+
+    // Queries
+
+    /**
+     * Per-hour rollups for the days from..to (inclusive, yyyy-MM-dd), read from the hourly files and,
+     * for days still in the minute tier, summed from the minute rollups. Raw segments are not included.
+     * @return {packets, bytes} by hourly rollup key ("yyyy-MM-dd HH:00","TCP","HTTPS","Outgoing")
+     */
+    public synchronized TreeMap<String, long[]> readHourly(String fromDay, String toDay) throws IOException {
+        recoverDownsampling();
+        TreeMap<String, long[]> hourly = new TreeMap<>();
+        for (String day : listDays(HOURS_DIRECTORY, true)) {
+            if (day.compareTo(fromDay) >= 0 && day.compareTo(toDay) <= 0) {
+                TrafficAggregator.readRollups(hourlyFile(day), hourly);
+            }
+        }
+        for (String day : listDays(MINUTES_DIRECTORY, false)) {
+            if (day.compareTo(fromDay) >= 0 && day.compareTo(toDay) <= 0) {
+                for (Map.Entry<String, long[]> entry :
+                         TrafficAggregator.toHourly(readMinuteDay(Paths.get(directory, MINUTES_DIRECTORY, day))).entrySet()) {
+                    long[] totals = hourly.computeIfAbsent(entry.getKey(), k -> new long[2]);
+                    totals[0] += entry.getValue()[0];
+                    totals[1] += entry.getValue()[1];
+                }
+            }
+        }
+        return hourly;
+    }
+
+    // Files
+
+    /**
+     * The yyyy-MM-dd days present in a tier, oldest first (day directories, or hours_<day>.csv files)
+     */
+    private List<String> listDays(String tier, boolean files) {
+        String[] names = new File(directory, tier).list((dir, name) ->
+            files ? name.startsWith("hours_") && name.endsWith(".csv") : new File(dir, name).isDirectory());
+        List<String> days = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                String day = files ? name.substring("hours_".length(), name.length() - ".csv".length()) : name;
+                if (day.matches("\\d{4}-\\d{2}-\\d{2}")) {
+                    days.add(day);
+                }
+            }
+        }
+        days.sort(null);
+        return days;
+    }
+
+    /**
+     * Start of the local day after the given yyyy-MM-dd day
+     */
+    private static long endOfDay(String day) {
+        try {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(new SimpleDateFormat("yyyy-MM-dd").parse(day));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            return calendar.getTimeInMillis();
+        } catch (ParseException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        File[] children = path.toFile().listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child.toPath());
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private long tierBytes(String tier) {
+        long[] total = {0};
+        try (java.util.stream.Stream<Path> walk = Files.walk(Paths.get(directory, tier))) {
+            walk.filter(Files::isRegularFile).forEach(p -> total[0] += p.toFile().length());
+        } catch (IOException e) {
+            System.err.println("Warning: could not measure " + tier + " tier: " + e.getMessage());
+        }
+        return total[0];
+    }
+
+    /**
+     * Stops the background pass (the tiers stay as they are)
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        timer.shutdownNow();
+    }
+
+    // Getters
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getSegmentsConverted() {
+        return segmentsConverted;
+    }
+
+    public synchronized long getPacketsConverted() {
+        return packetsConverted;
+    }
+
+    public synchronized String describePolicy() {
+        return String.format("raw %.0f h, flows %.0f d, minute rollups %.0f d, hourly rollups %s%s",
+                             rawMillis / 3_600_000.0, flowMillis / 86_400_000.0, minuteMillis / 86_400_000.0,
+                             hourMillis > 0 ? String.format("%.0f d", hourMillis / 86_400_000.0) : "forever",
+                             maxRawBytes > 0 ? ", raw budget " + maxRawBytes / (1024 * 1024) + " MB" : "");
+    }
+
+    /**
+     * Prints the retention summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== TIERED RETENTION ===");
+        System.out.println("Policy: " + describePolicy());
+        System.out.println("Raw segments converted: " + segmentsConverted + " (" + packetsConverted + " packets, " +
+                         flowsWritten + " flows)");
+        System.out.println("Days aged out: " + flowDaysDropped + " flow, " + minuteDaysDownsampled +
+                         " minute (to hourly), " + hourDaysDropped + " hourly");
+        System.out.printf("Storage: raw %.1f MB, flows %.1f MB, minutes %.1f MB, hours %.1f MB%n",
+                          segments.getRetainedBytes() / 1048576.0, tierBytes(FLOWS_DIRECTORY) / 1048576.0,
+                          tierBytes(MINUTES_DIRECTORY) / 1048576.0, tierBytes(HOURS_DIRECTORY) / 1048576.0);
+        System.out.println("Directory: " + directory);
+    }
+
+    /**
+     * Applies the retention policy to output/captured_packets_* once (while no capture writes them),
+     * or prints hourly traffic totals from the rollup tiers
+     * Usage: RetentionManager [--policy <file>] [--raw-hours N] [--flow-days N] [--minute-days N] [--hour-days N]
+     *                         [--raw-mb N] [--trend <from yyyy-MM-dd> <to yyyy-MM-dd>]
+     */
+    public static void main(String[] args) {
+        System.out.println("=== Tiered Retention ===");
+        String policyFile = new File(DEFAULT_POLICY_FILE).exists() ? DEFAULT_POLICY_FILE : null;
+        Long raw = null;
+        Long flows = null;
+        Long minutes = null;
+        Long hours = null;
+        Long rawBudget = null;
+        String[] trend = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--policy": policyFile = args[++i]; break;
+                    case "--raw-hours": raw = TimeUnit.HOURS.toMillis(Long.parseLong(args[++i])); break;
+                    case "--flow-days": flows = TimeUnit.DAYS.toMillis(Long.parseLong(args[++i])); break;
+                    case "--minute-days": minutes = TimeUnit.DAYS.toMillis(Long.parseLong(args[++i])); break;
+                    case "--hour-days": hours = TimeUnit.DAYS.toMillis(Long.parseLong(args[++i])); break;
+                    case "--raw-mb": rawBudget = Long.parseLong(args[++i]) * 1024 * 1024; break;
+                    case "--trend": trend = new String[] {args[++i], args[++i]}; break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: RetentionManager [--policy <file>] [--raw-hours N] [--flow-days N] [--minute-days N] " +
+                             "[--hour-days N] [--raw-mb N] [--trend <from yyyy-MM-dd> <to yyyy-MM-dd>]");
+            return;
+        }
+
+        try (RollingCsvWriter writer = new RollingCsvWriter("captured_packets", 0, 0);
+             RetentionManager manager = new RetentionManager(writer)) {
+            if (policyFile != null) {
+                manager.loadPolicy(policyFile);
+            }
+            try {
+                manager.setPolicy(raw != null ? raw : manager.rawMillis, flows != null ? flows : manager.flowMillis,
+                                  minutes != null ? minutes : manager.minuteMillis, hours != null ? hours : manager.hourMillis);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid policy: " + e.getMessage());
+                return;
+            }
+            if (rawBudget != null) {
+                manager.setRawBudget(rawBudget);
+            }
+
+            if (trend != null) {
+                long start = System.nanoTime();
+                TreeMap<String, long[]> byHour = new TreeMap<>();
+                for (Map.Entry<String, long[]> entry : manager.readHourly(trend[0], trend[1]).entrySet()) {
+                    long[] totals = byHour.computeIfAbsent(entry.getKey().substring(1, 17), k -> new long[2]);
+                    totals[0] += entry.getValue()[0];
+                    totals[1] += entry.getValue()[1];
+                }
+                System.out.println("Hour              Packets        Bytes");
+                for (Map.Entry<String, long[]> entry : byHour.entrySet()) {
+                    System.out.printf("%s %10d %12d%n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                }
+                System.out.printf("%d hours in %.1f ms%n", byHour.size(), (System.nanoTime() - start) / 1e6);
+                return;
+            }
+
+            System.out.println("Policy: " + manager.describePolicy());
+            long start = System.nanoTime();
+            manager.runOnce(System.currentTimeMillis());
+            System.out.printf("Retention pass took %.1f s%n", (System.nanoTime() - start) / 1e9);
+            manager.printSummary();
+        } catch (IOException e) {
+            System.err.println("Error applying retention policy: " + e.getMessage());
+        }
+    }
+}
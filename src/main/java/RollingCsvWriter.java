@@ -0,0 +1,641 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RollingCsvWriter.java
+ *
+ * A CSV sink for always-on capture. Records are written in the Power BI
+ * format (UTF-8 BOM + header) to a sequence of segment files in output/:
+ *
+ *   <base>_<yyyyMMdd_HHmmss>_<seq>.csv.inprogress   segment being written
+ *   <base>_<yyyyMMdd_HHmmss>_<seq>.csv              completed segment (.csv.gz if compressed)
+ *   <base>_manifest.csv                             completed segments, oldest first
+ *
+ * A segment is closed when it reaches the size limit or when the wall clock
+ * crosses the next time boundary (boundaries are aligned to the interval,
+ * e.g. every full 5 minutes), even if no packets arrive. Closing renames the
+ * file atomically, so a file without the .inprogress suffix is always
+ * complete and downstream loaders can pick it up while capture continues.
+ *
+ * Uncompressed segments get TimeRangeIndex and SecondaryIndex sidecars
+ * (<segment>.csv.tidx, <segment>.csv.sidx) and the manifest records each segment's first and last packet time, so
+ * time range reads open only the overlapping segments and blocks.
+ *
+ * Retention limits (segment count and total bytes) delete the oldest
+ * completed segments. Segments left .inprogress by a crash are truncated to
+ * their last complete line and completed on startup.
+ */
+public class RollingCsvWriter implements PacketRecordListener, AutoCloseable {
+
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final String MANIFEST_HEADER = "SegmentFile,Opened,Closed,Records,Bytes,FirstPacket,LastPacket";
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String directory;
+    private final String baseName;
+    private final long maxSegmentBytes;
+    private final long segmentMillis;
+    private int maxSegments = 0;       // 0 = unlimited
+    private long maxTotalBytes = 0;    // 0 = unlimited
+
+    private final List<Segment> completedSegments = new ArrayList<>();
+    private final ScheduledExecutorService rollTimer;
+    private Segment current;
+    private Writer writer;
+    private int sequence = 0;
+    private boolean closed = false;
+    private boolean compressed = false;
+    private CsvValidator validator = null; // Checks each written line if set
+
+    // Statistics
+    private long recordsWritten = 0;
+    private long segmentsCompleted = 0;
+    private long segmentsDeleted = 0;
+
+    /**
+     * Creates a rolling writer in the CsvExporter output directory
+     * @param baseName Prefix of the segment files (e.g. "captured_packets")
+     * @param maxSegmentBytes Size limit of one segment (0 = no size limit)
+     * @param segmentMillis Time boundary interval (0 = no time limit)
+     * @throws IOException if the output directory or manifest cannot be read
+     */
+    public RollingCsvWriter(String baseName, long maxSegmentBytes, long segmentMillis) throws IOException {
+        this(CsvExporter.getOutputDirectory(), baseName, maxSegmentBytes, segmentMillis);
+    }
+
+    public RollingCsvWriter(String directory, String baseName, long maxSegmentBytes, long segmentMillis) throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.segmentMillis = segmentMillis;
+
+        Files.createDirectories(Paths.get(directory));
+        loadManifest();
+        recoverInProgressSegments();
+
+        rollTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rolling-csv-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (segmentMillis > 0) {
+            rollTimer.scheduleAtFixedRate(this::rollIfDue, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Sets the retention limits applied whenever a segment completes
+     * @param maxSegments Completed segments to keep (0 = unlimited)
+     * @param maxTotalBytes Total size of completed segments to keep (0 = unlimited)
+     */
+    public synchronized void setRetention(int maxSegments, long maxTotalBytes) {
+        this.maxSegments = maxSegments;
+        this.maxTotalBytes = maxTotalBytes;
+        applyRetention();
+    }
+
+    /**
+     * Writes the following segments gzip-compressed (.csv.gz, see BlockGzipOutputStream).
+     * The segment size limit then applies to the uncompressed data.
+     */
+    public synchronized void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Validates every line as it is written (null disables it); the summary then
+     * includes the validation result of all segments
+     */
+    public synchronized void setValidator(CsvValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Appends one record to the current segment, rolling first if a limit was reached
+     */
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        if (closed) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (current != null && (isTimeDue(now) || isSizeDue())) {
+                completeSegment();
+            }
+            if (current == null) {
+                openSegment(now);
+            }
+
+            String line = CsvExporter.formatRecordForPowerBI(record);
+            if (validator != null) {
+                validator.validateLine(line);
+            }
+            writer.write(line);
+            writer.write("\n");
+            long timestamp = record.getTimestamp().getTime();
+            if (current.index != null) {
+                current.index.addRow(current.bytes, timestamp);
+                current.secondaryIndex.addRow(record);
+            }
+            current.bytes += TimeRangeIndex.utf8Length(line) + 1;
+            current.records++;
+            current.firstPacket = Math.min(current.firstPacket, timestamp);
+            current.lastPacket = Math.max(current.lastPacket, timestamp);
+            recordsWritten++;
+        } catch (IOException e) {
+            System.err.println("Error writing rolling CSV segment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Completes the current segment if its time boundary has passed (called every second)
+     */
+    private synchronized void rollIfDue() {
+        if (!closed && current != null && isTimeDue(System.currentTimeMillis())) {
+            try {
+                completeSegment();
+            } catch (IOException e) {
+                System.err.println("Error completing rolling CSV segment: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean isTimeDue(long now) {
+        return segmentMillis > 0 && now >= current.deadline;
+    }
+
+    private boolean isSizeDue() {
+        return maxSegmentBytes > 0 && current.bytes >= maxSegmentBytes;
+    }
+
+    private void openSegment(long now) throws IOException {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(now));
+        Segment segment = new Segment();
+        segment.fileName = String.format("%s_%s_%04d.csv%s", baseName, stamp, sequence++, compressed ? ".gz" : "");
+        segment.opened = now;
+        segment.deadline = segmentMillis > 0 ? (now / segmentMillis + 1) * segmentMillis : Long.MAX_VALUE;
+
+        File file = new File(directory, segment.fileName + IN_PROGRESS_SUFFIX);
+        java.io.OutputStream out = Files.newOutputStream(file.toPath());
+        if (compressed) {
+            out = new BlockGzipOutputStream(out);
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        writer.write('\ufeff');
+        writer.write(CsvExporter.CSV_HEADER);
+        writer.write("\n");
+        segment.bytes = 3 + CsvExporter.CSV_HEADER.length() + 1;
+        segment.index = compressed ? null : new TimeRangeIndex();
+        segment.secondaryIndex = compressed ? null : new SecondaryIndex();
+        current = segment;
+    }
+
+    /**
+     * Closes the current segment, renames it to its final name and records it in the manifest
+     */
+    private void completeSegment() throws IOException {
+        long start = System.nanoTime();
+        CaptureEvents.CsvWriteEvent csvEvent = new CaptureEvents.CsvWriteEvent();
+        csvEvent.begin();
+        Segment segment = current;
+        current = null;
+        writer.close();
+        writer = null;
+
+        segment.closed = System.currentTimeMillis();
+        Path inProgress = Paths.get(directory, segment.fileName + IN_PROGRESS_SUFFIX);
+        segment.bytes = Files.size(inProgress);
+        if (segment.index != null) {
+            try {
+                segment.index.finish(segment.bytes);
+                segment.index.save(Paths.get(directory, segment.fileName + TimeRangeIndex.SUFFIX).toString());
+                segment.secondaryIndex.finish(segment.bytes);
+                segment.secondaryIndex.save(Paths.get(directory, segment.fileName + SecondaryIndex.SUFFIX).toString());
+            } catch (IOException e) {
+                System.err.println("Warning: could not write indexes for " + segment.fileName + ": " + e.getMessage());
+            }
+            segment.index = null;
+            segment.secondaryIndex = null;
+        }
+        moveAtomically(inProgress, Paths.get(directory, segment.fileName));
+
+        completedSegments.add(segment);
+        segmentsCompleted++;
+        applyRetention();
+        writeManifest();
+        CaptureMetrics.get().recordExport(start, segment.records);
+        CaptureEvents.csvWritten(csvEvent, segment.fileName, segment.records, segment.bytes);
+    }
+
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the oldest completed segments until both retention limits hold
+     */
+    private void applyRetention() {
+        long totalBytes = 0;
+        for (Segment segment : completedSegments) {
+            totalBytes += segment.bytes;
+        }
+        boolean changed = false;
+        while (!completedSegments.isEmpty() &&
+               ((maxSegments > 0 && completedSegments.size() > maxSegments) ||
+                (maxTotalBytes > 0 && totalBytes > maxTotalBytes))) {
+            Segment oldest = completedSegments.remove(0);
+            totalBytes -= oldest.bytes;
+            try {
+                Files.deleteIfExists(Paths.get(directory, oldest.fileName));
+                Files.deleteIfExists(Paths.get(directory, oldest.fileName + TimeRangeIndex.SUFFIX));
+                Files.deleteIfExists(Paths.get(directory, oldest.fileName + SecondaryIndex.SUFFIX));
+                segmentsDeleted++;
+                changed = true;
+            } catch (IOException e) {
+                System.err.println("Error deleting expired segment " + oldest.fileName + ": " + e.getMessage());
+            }
+        }
+        if (changed) {
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                System.err.println("Error writing segment manifest: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rewrites the manifest via a temporary file so readers never see a partial manifest
+     */
+    private void writeManifest() throws IOException {
+        Path manifest = getManifestPath();
+        Path temp = Paths.get(directory, manifest.getFileName() + ".tmp");
+        StringBuilder content = new StringBuilder(MANIFEST_HEADER).append('\n');
+        for (Segment segment : completedSegments) {
+            content.append(segment.toCsvLine()).append('\n');
+        }
+        Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+        moveAtomically(temp, manifest);
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifest = getManifestPath();
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("SegmentFile")) {
+                continue;
+            }
+            try {
+                Segment segment = Segment.parse(line);
+                if (Files.exists(Paths.get(directory, segment.fileName))) {
+                    completedSegments.add(segment);
+                }
+            } catch (RuntimeException | java.text.ParseException e) {
+                System.err.println("Skipping invalid manifest line: " + line);
+            }
+        }
+    }
+
+    /**
+     * Completes segments left behind by a crash, dropping any partially written last line
+     */
+    private void recoverInProgressSegments() throws IOException {
+        File[] orphans = new File(directory).listFiles((dir, name) ->
+            name.startsWith(baseName + "_") &&
+            (name.endsWith(".csv" + IN_PROGRESS_SUFFIX) || name.endsWith(".csv.gz" + IN_PROGRESS_SUFFIX)));
+        if (orphans == null || orphans.length == 0) {
+            return;
+        }
+        java.util.Arrays.sort(orphans);
+
+        for (File orphan : orphans) {
+            long lastModified = orphan.lastModified();
+            long lines;
+            try {
+                lines = orphan.getName().endsWith(".gz" + IN_PROGRESS_SUFFIX)
+                        ? recompressCompleteLines(orphan) : truncateToCompleteLines(orphan);
+            } catch (IOException e) {
+                System.err.println("Error recovering segment " + orphan.getName() + ": " + e.getMessage());
+                continue;
+            }
+            long records = Math.max(0, lines - 1); // Minus the header
+
+            Segment segment = new Segment();
+            segment.fileName = orphan.getName().substring(0, orphan.getName().length() - IN_PROGRESS_SUFFIX.length());
+            segment.opened = lastModified;
+            segment.closed = lastModified;
+            segment.records = records;
+            segment.bytes = orphan.length();
+            moveAtomically(orphan.toPath(), Paths.get(directory, segment.fileName));
+            if (!segment.fileName.endsWith(".gz") && records > 0) {
+                // Rebuild the time index, which also gives the packet time bounds for the manifest
+                TimeRangeIndex index = TimeRangeIndex.forFile(Paths.get(directory, segment.fileName).toString());
+                segment.firstPacket = index.getMinTimestamp();
+                segment.lastPacket = index.getMaxTimestamp();
+            }
+            completedSegments.add(segment);
+            System.out.println("Recovered incomplete segment " + segment.fileName + " (" + records + " records)");
+        }
+        writeManifest();
+    }
+
+    /**
+     * Cuts a plain segment after its last newline
+     * @return Number of complete lines
+     */
+    static long truncateToCompleteLines(File segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long completeLength = 0;
+            long lines = 0;
+            byte[] buffer = new byte[1 << 16];
+            long position = 0;
+            int n;
+            while ((n = file.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                        completeLength = position + i + 1;
+                    }
+                }
+                position += n;
+            }
+            file.setLength(completeLength);
+            return lines;
+        }
+    }
+
+    /**
+     * Rewrites a compressed segment with the complete lines of its complete gzip blocks
+     * @return Number of complete lines
+     */
+    private static long recompressCompleteLines(File segment) throws IOException {
+        File recovered = new File(segment.getPath() + ".recovered");
+        long lines = 0;
+        try (java.io.InputStream in = new BlockGzipInputStream(Files.newInputStream(segment.toPath()));
+             java.io.OutputStream out = new BlockGzipOutputStream(Files.newOutputStream(recovered.toPath()))) {
+            java.io.ByteArrayOutputStream partialLine = new java.io.ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            try {
+                while ((n = in.read(buffer)) > 0) {
+                    int lineStart = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (buffer[i] == '\n') {
+                            partialLine.writeTo(out);
+                            partialLine.reset();
+                            out.write(buffer, lineStart, i + 1 - lineStart);
+                            lineStart = i + 1;
+                            lines++;
+                        }
+                    }
+                    partialLine.write(buffer, lineStart, n - lineStart);
+                }
+            } catch (IOException e) {
+                // Torn final block: keep everything before it
+            }
+        }
+        moveAtomically(recovered.toPath(), segment.toPath());
+        return lines;
+    }
+
+    public Path getManifestPath() {
+        return Paths.get(directory, baseName + "_manifest.csv");
+    }
+
+    // Statistics getters
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized long getSegmentsCompleted() {
+        return segmentsCompleted;
+    }
+
+    public synchronized long getSegmentsDeleted() {
+        return segmentsDeleted;
+    }
+
+    public synchronized List<String> getCompletedSegmentFiles() {
+        List<String> files = new ArrayList<>();
+        for (Segment segment : completedSegments) {
+            files.add(segment.fileName);
+        }
+        return files;
+    }
+
+    /**
+     * Completed segments whose packets may fall in [fromMillis, toMillis] (from the manifest time bounds), oldest first
+     */
+    public synchronized List<String> getSegmentsOverlapping(long fromMillis, long toMillis) {
+        List<String> files = new ArrayList<>();
+        for (Segment segment : completedSegments) {
+            boolean unknownBounds = segment.firstPacket == Long.MAX_VALUE || segment.lastPacket == Long.MIN_VALUE;
+            if (segment.records > 0 &&
+                (unknownBounds || (segment.lastPacket >= fromMillis && segment.firstPacket <= toMillis))) {
+                files.add(Paths.get(directory, segment.fileName).toString());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Completed segments whose packets all precede cutoffMillis, oldest first. Segments without
+     * packet time bounds (recovered gzip segments) are aged by the time they were closed.
+     */
+    public synchronized List<String> getSegmentsBefore(long cutoffMillis) {
+        List<String> files = new ArrayList<>();
+        for (Segment segment : completedSegments) {
+            long last = segment.lastPacket != Long.MIN_VALUE ? segment.lastPacket : segment.closed;
+            if (last < cutoffMillis) {
+                files.add(Paths.get(directory, segment.fileName).toString());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Total size of the completed segments
+     */
+    public synchronized long getRetainedBytes() {
+        long total = 0;
+        for (Segment segment : completedSegments) {
+            total += segment.bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Deletes a completed segment with its sidecars and removes it from the manifest
+     * (RetentionManager calls this once the segment has been downsampled)
+     * @param file Segment file name or path
+     * @return false if the file is not a completed segment of this writer
+     */
+    public synchronized boolean deleteSegment(String file) throws IOException {
+        String fileName = Paths.get(file).getFileName().toString();
+        for (int i = 0; i < completedSegments.size(); i++) {
+            if (completedSegments.get(i).fileName.equals(fileName)) {
+                completedSegments.remove(i);
+                Files.deleteIfExists(Paths.get(directory, fileName));
+                Files.deleteIfExists(Paths.get(directory, fileName + TimeRangeIndex.SUFFIX));
+                Files.deleteIfExists(Paths.get(directory, fileName + SecondaryIndex.SUFFIX));
+                segmentsDeleted++;
+                writeManifest();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the packets in [fromMillis, toMillis] from the completed segments,
+     * skipping segments by their time bounds and blocks by their time index
+     */
+    public List<PacketRecord> readRange(long fromMillis, long toMillis) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        for (String file : getSegmentsOverlapping(fromMillis, toMillis)) {
+            if (file.endsWith(".gz")) {
+                try (CsvPacketReader reader = new CsvPacketReader(file)) {
+                    PacketRecord record;
+                    while ((record = reader.readNext()) != null) {
+                        long timestamp = record.getTimestamp().getTime();
+                        if (timestamp >= fromMillis && timestamp <= toMillis) {
+                            records.add(record);
+                        }
+                    }
+                }
+            } else {
+                records.addAll(TimeRangeIndex.readRange(file, fromMillis, toMillis));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the packets to or from an IP in the completed uncompressed segments, skipping segments
+     * by Bloom filter and blocks by the host bitmap (see SecondaryIndex)
+     */
+    public List<PacketRecord> readHost(String ip) throws IOException {
+        return SecondaryIndex.readHost(getPlainSegmentFiles(), ip);
+    }
+
+    /**
+     * Reads the packets using a port in the completed uncompressed segments (see SecondaryIndex)
+     */
+    public List<PacketRecord> readPort(int port) throws IOException {
+        return SecondaryIndex.readPort(getPlainSegmentFiles(), port);
+    }
+
+    private List<String> getPlainSegmentFiles() {
+        List<String> files = new ArrayList<>();
+        for (String file : getCompletedSegmentFiles()) {
+            if (!file.endsWith(".gz")) {
+                files.add(Paths.get(directory, file).toString());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Completes the current segment and stops the rotation timer
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        rollTimer.shutdownNow();
+        if (current != null) {
+            completeSegment();
+        }
+    }
+
+    /**
+     * Prints the rolling output summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== ROLLING CSV OUTPUT ===");
+        System.out.println("Records written: " + recordsWritten);
+        System.out.println("Segments completed: " + segmentsCompleted + " (" + segmentsDeleted + " deleted by retention)");
+        System.out.println("Segments retained: " + completedSegments.size());
+        System.out.println("Manifest: " + getManifestPath());
+        if (validator != null) {
+            System.out.println("Inline validation: " + validator.getRowsChecked() + " rows checked, " +
+                             validator.getInvalidRows() + " invalid");
+            for (String issue : validator.getIssues()) {
+                System.out.println("   " + issue);
+            }
+        }
+    }
+
+    /**
+     * One segment file and its manifest entry
+     */
+    private static class Segment {
+        String fileName;
+        long opened;
+        long closed;
+        long deadline;
+        long records;
+        long bytes;
+        long firstPacket = Long.MAX_VALUE;
+        long lastPacket = Long.MIN_VALUE;
+        TimeRangeIndex index; // Built while an uncompressed segment is written
+        SecondaryIndex secondaryIndex;
+
+        String toCsvLine() {
+            synchronized (DATE_FORMAT) {
+                return fileName + "," + DATE_FORMAT.format(new Date(opened)) + "," + DATE_FORMAT.format(new Date(closed)) +
+                       "," + records + "," + bytes + "," +
+                       (records > 0 && firstPacket != Long.MAX_VALUE ? DATE_FORMAT.format(new Date(firstPacket)) : "") + "," +
+                       (records > 0 && lastPacket != Long.MIN_VALUE ? DATE_FORMAT.format(new Date(lastPacket)) : "");
+            }
+        }
+
+        static Segment parse(String line) throws java.text.ParseException {
+            String[] fields = line.split(",", -1);
+            Segment segment = new Segment();
+            synchronized (DATE_FORMAT) {
+                segment.fileName = fields[0];
+                segment.opened = DATE_FORMAT.parse(fields[1]).getTime();
+                segment.closed = DATE_FORMAT.parse(fields[2]).getTime();
+                segment.records = Long.parseLong(fields[3]);
+                segment.bytes = Long.parseLong(fields[4]);
+                if (!fields[5].isEmpty()) {
+                    segment.firstPacket = DATE_FORMAT.parse(fields[5]).getTime();
+                }
+                if (!fields[6].isEmpty()) {
+                    segment.lastPacket = DATE_FORMAT.parse(fields[6]).getTime();
+                }
+            }
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * RollingWindowAggregator.java
+ *
+ * Aggregates packets into one-second windows and, once a second, publishes
+ * a snapshot of the rolling aggregates to its listeners (e.g. LiveFeedServer):
+ *
+ *   pps, bps                      the second that just ended
+ *   pps_10s, bps_10s, pps_60s...  averages over the last 10 and 60 seconds
+ *   protocols                     packets per protocol over the last 10 seconds
+ *   top_talkers                   source hosts by bytes over the last 10 seconds
+ *   handshake_rtt_ms              TCP SYN to SYN-ACK time percentiles over the last 60 seconds
+ *
+ * Snapshot.getMetrics() flattens the same figures into named values for
+ * rules (AlertEngine), adding per-protocol and per-application rates of
+ * the last second: protocol.<name>.pps, app.<name>.pps and app.<name>.bps.
+ *
+ * The packet path only adds to LongAdders of the current window (a map
+ * insert happens the first time a protocol or host is seen in a second);
+ * the publisher thread swaps in a fresh window each second and summarizes
+ * the finished one, so the capture thread never waits for it or for the
+ * listeners.
+ *
+ * Handshake RTT pairs a SYN with the SYN-ACK of the reverse 5-tuple using
+ * the packet timestamps, so it is as precise as the capture timestamps
+ * (milliseconds for live capture). Unanswered SYNs expire by packet time
+ * too, so replayed traces pair their handshakes like live capture does.
+ */
+public class RollingWindowAggregator implements PacketRecordListener, AutoCloseable {
+
+    static final int HISTORY_SECONDS = 60;
+    static final int TOP_TALKERS = 10;
+    static final int MAX_HOSTS_PER_WINDOW = 10_000; // Later hosts count as "other"
+    static final long SYN_TIMEOUT_MILLIS = 10_000; // Unanswered SYNs are forgotten after this
+    static final int MAX_PENDING_SYNS = 100_000;
+
+    private volatile Window current = new Window(System.currentTimeMillis());
+    private final ArrayDeque<Window> history = new ArrayDeque<>(); // Finished windows, newest last (publisher thread only)
+    private final ConcurrentHashMap<String, Long> pendingSyns = new ConcurrentHashMap<>();
+    private final LongAccumulator newestSyn = new LongAccumulator(Math::max, Long.MIN_VALUE); // Clock for expireSyns
+    private final List<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService publisher;
+    private volatile Snapshot latest = null;
+    private boolean closed = false;
+
+    // Statistics
+    private long snapshotsPublished = 0;
+
+    public RollingWindowAggregator() {
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rolling-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long untilNextSecond = 1000 - System.currentTimeMillis() % 1000;
+        publisher.scheduleAtFixedRate(this::publish, untilNextSecond, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called with every snapshot on the publisher thread (listeners must not block)
+     */
+    public void addSnapshotListener(Consumer<Snapshot> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void recordArrived(PacketRecord record) {
+        Window window = current;
+        window.packets.increment();
+        window.bytes.add(record.getPacketLength());
+        String protocol = record.getProtocol() == null ? "Other" : record.getProtocol();
+        count(window.protocols, protocol, 1);
+        String host = record.getSourceIP() == null ? "" : record.getSourceIP();
+        if (!window.talkers.containsKey(host) && window.talkers.size() >= MAX_HOSTS_PER_WINDOW) {
+            host = "other";
+        }
+        count(window.talkers, host, record.getPacketLength());
+        String application = record.getApplicationGuess() == null ? "Unknown" : record.getApplicationGuess();
+        count(window.applications, application, 1);
+        count(window.applicationBytes, application, record.getPacketLength());
+
+        String flags = record.getTcpFlags();
+        if (flags != null && flags.contains("SYN")) {
+            long timestamp = record.getTimestamp().getTime();
+            newestSyn.accumulate(timestamp);
+            if (flags.contains("ACK")) {
+                // SYN-ACK: answer to the SYN sent the other way
+                Long synTime = pendingSyns.remove(tupleKey(record.getDestinationIP(), record.getSourceIP(),
+                                                           record.getDestinationPort(), record.getSourcePort()));
+                if (synTime != null) {
+                    window.handshakeRtt.record(Math.max(0, timestamp - synTime) * 1_000_000L);
+                }
+            } else if (pendingSyns.size() < MAX_PENDING_SYNS) {
+                // Keep the first SYN of a retransmitted handshake
+                pendingSyns.putIfAbsent(tupleKey(record.getSourceIP(), record.getDestinationIP(),
+                                                 record.getSourcePort(), record.getDestinationPort()), timestamp);
+            }
+        }
+    }
+
+    private static void count(ConcurrentHashMap<String, LongAdder> counts, String key, long amount) {
+        LongAdder adder = counts.get(key);
+        if (adder == null) {
+            adder = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        adder.add(amount);
+    }
+
+    private static String tupleKey(String source, String destination, int sourcePort, int destinationPort) {
+        return source + "|" + destination + "|" + sourcePort + "|" + destinationPort;
+    }
+
+    /**
+     * Closes the current window, summarizes the history and hands the snapshot to the listeners
+     */
+    private void publish() {
+        try {
+            long now = System.currentTimeMillis();
+            Window finished = current;
+            current = new Window(now);
+            finished.end = now;
+            history.addLast(finished);
+            while (history.size() > HISTORY_SECONDS) {
+                history.removeFirst();
+            }
+            expireSyns();
+
+            Snapshot snapshot = new Snapshot(finished, history);
+            latest = snapshot;
+            synchronized (this) {
+                snapshotsPublished++;
+            }
+            for (Consumer<Snapshot> listener : listeners) {
+                try {
+                    listener.accept(snapshot);
+                } catch (RuntimeException e) {
+                    // One failing listener must not starve the others
+                    System.err.println("Error in rolling aggregate listener: " + e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep publishing: an exception would cancel the schedule
+            System.err.println("Error publishing rolling aggregates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets SYNs older than the timeout as of the newest SYN or SYN-ACK seen. Packet time, not the
+     * wall clock, so a replayed trace keeps handshakes that straddle a publish tick.
+     */
+    private void expireSyns() {
+        long newest = newestSyn.get();
+        if (newest == Long.MIN_VALUE) {
+            return;
+        }
+        Iterator<Map.Entry<String, Long>> entries = pendingSyns.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (newest - entries.next().getValue() > SYN_TIMEOUT_MILLIS) {
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * The last snapshot published, or null before the first second has ended
+     */
+    public Snapshot getLatest() {
+        return latest;
+    }
+
+    public synchronized long getSnapshotsPublished() {
+        return snapshotsPublished;
+    }
+
+    /**
+     * Stops publishing (safe to call more than once)
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        publisher.shutdownNow();
+    }
+
+    /**
+     * Counts of one second; updated by the packet path, read once it has been replaced
+     */
+    private static class Window {
+        final long start;
+        long end;
+        final LongAdder packets = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final ConcurrentHashMap<String, LongAdder> protocols = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> talkers = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> applications = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> applicationBytes = new ConcurrentHashMap<>();
+        final LatencyHistogram handshakeRtt = new LatencyHistogram();
+
+        Window(long start) {
+            this.start = start;
+            this.end = start;
+        }
+
+        double seconds() {
+            return Math.max(0.001, (end - start) / 1000.0);
+        }
+    }
+
+    /**
+     * Immutable rolling aggregates at the end of one second
+     */
+    public static class Snapshot {
+        private final long time;
+        private final double pps;
+        private final double bps;
+        private final double[] pps10And60 = new double[2];
+        private final double[] bps10And60 = new double[2];
+        private final Map<String, Long> protocols = new HashMap<>();
+        private final List<Map.Entry<String, Long>> topTalkers;
+        private final long handshakes;
+        private final long[] rttMicros; // p50, p90, p99
+        private final Map<String, Double> metrics = new java.util.LinkedHashMap<>();
+
+        Snapshot(Window last, ArrayDeque<Window> history) {
+            time = last.end;
+            pps = last.packets.sum() / last.seconds();
+            bps = last.bytes.sum() * 8 / last.seconds();
+
+            Map<String, Long> talkers = new HashMap<>();
+            LatencyHistogram rtt = new LatencyHistogram();
+            long[] packets = new long[2];
+            long[] bytes = new long[2];
+            double[] seconds = new double[2];
+            int age = history.size();
+            for (Window window : history) {
+                age--; // 0 for the newest
+                rtt.merge(window.handshakeRtt);
+                if (age >= 10) {
+                    accumulate(window, 1, packets, bytes, seconds);
+                    continue;
+                }
+                accumulate(window, 0, packets, bytes, seconds);
+                accumulate(window, 1, packets, bytes, seconds);
+                for (Map.Entry<String, LongAdder> entry : window.protocols.entrySet()) {
+                    protocols.merge(entry.getKey(), entry.getValue().sum(), Long::sum);
+                }
+                for (Map.Entry<String, LongAdder> entry : window.talkers.entrySet()) {
+                    talkers.merge(entry.getKey(), entry.getValue().sum(), Long::sum);
+                }
+            }
+            for (int i = 0; i < 2; i++) {
+                pps10And60[i] = seconds[i] > 0 ? packets[i] / seconds[i] : 0.0;
+                bps10And60[i] = seconds[i] > 0 ? bytes[i] * 8 / seconds[i] : 0.0;
+            }
+            topTalkers = new ArrayList<>(talkers.entrySet());
+            topTalkers.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            if (topTalkers.size() > TOP_TALKERS) {
+                topTalkers.subList(TOP_TALKERS, topTalkers.size()).clear();
+            }
+            handshakes = rtt.getCount();
+            rttMicros = new long[] { rtt.getPercentile(50) / 1000, rtt.getPercentile(90) / 1000,
+                                     rtt.getPercentile(99) / 1000 };
+            collectMetrics(last);
+        }
+
+        private void collectMetrics(Window last) {
+            metrics.put("pps", pps);
+            metrics.put("bps", bps);
+            metrics.put("pps_10s", pps10And60[0]);
+            metrics.put("bps_10s", bps10And60[0]);
+            metrics.put("pps_60s", pps10And60[1]);
+            metrics.put("bps_60s", bps10And60[1]);
+            metrics.put("handshakes_60s", (double) handshakes);
+            if (handshakes > 0) { // Percentiles of no handshakes would read as 0 ms
+                metrics.put("handshake_rtt_p50_ms", rttMicros[0] / 1000.0);
+                metrics.put("handshake_rtt_p90_ms", rttMicros[1] / 1000.0);
+                metrics.put("handshake_rtt_p99_ms", rttMicros[2] / 1000.0);
+            }
+            double seconds = last.seconds();
+            for (Map.Entry<String, LongAdder> entry : last.protocols.entrySet()) {
+                metrics.put("protocol." + entry.getKey() + ".pps", entry.getValue().sum() / seconds);
+            }
+            for (Map.Entry<String, LongAdder> entry : last.applications.entrySet()) {
+                metrics.put("app." + entry.getKey() + ".pps", entry.getValue().sum() / seconds);
+            }
+            for (Map.Entry<String, LongAdder> entry : last.applicationBytes.entrySet()) {
+                metrics.put("app." + entry.getKey() + ".bps", entry.getValue().sum() * 8 / seconds);
+            }
+        }
+
+        private static void accumulate(Window window, int slot, long[] packets, long[] bytes, double[] seconds) {
+            packets[slot] += window.packets.sum();
+            bytes[slot] += window.bytes.sum();
+            seconds[slot] += window.seconds();
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public double getPacketsPerSecond() {
+            return pps;
+        }
+
+        public double getBitsPerSecond() {
+            return bps;
+        }
+
+        /**
+         * The aggregates as named values (per-protocol and per-application ones only for those seen last second)
+         */
+        public Map<String, Double> getMetrics() {
+            return java.util.Collections.unmodifiableMap(metrics);
+        }
+
+        /**
+         * One JSON object per snapshot (a flat row plus the protocol mix and talkers)
+         */
+        public String toJson() {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+            StringBuilder json = new StringBuilder(512);
+            json.append("{\"time\":\"").append(format.format(new Date(time))).append('"');
+            json.append(",\"pps\":").append(round(pps)).append(",\"bps\":").append(round(bps));
+            json.append(",\"pps_10s\":").append(round(pps10And60[0])).append(",\"bps_10s\":").append(round(bps10And60[0]));
+            json.append(",\"pps_60s\":").append(round(pps10And60[1])).append(",\"bps_60s\":").append(round(bps10And60[1]));
+            json.append(",\"protocols\":{");
+            String separator = "";
+            for (Map.Entry<String, Long> entry : protocols.entrySet()) {
+                json.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue());
+                separator = ",";
+            }
+            json.append("},\"top_talkers\":[");
+            separator = "";
+            for (Map.Entry<String, Long> entry : topTalkers) {
+                json.append(separator).append("{\"host\":").append(quote(entry.getKey()))
+                    .append(",\"bytes\":").append(entry.getValue()).append('}');
+                separator = ",";
+            }
+            json.append("],\"handshakes_60s\":").append(handshakes);
+            json.append(",\"handshake_rtt_ms\":{\"p50\":").append(rttMicros[0] / 1000.0)
+                .append(",\"p90\":").append(rttMicros[1] / 1000.0)
+                .append(",\"p99\":").append(rttMicros[2] / 1000.0).append("}}");
+            return json.toString();
+        }
+
+        private static String round(double value) {
+            return String.valueOf(Math.round(value * 10) / 10.0);
+        }
+
+        private static String quote(String value) {
+            return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+}
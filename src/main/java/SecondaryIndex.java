@@ -0,0 +1,623 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * SecondaryIndex.java
+ *
+ * Host and port indexes for CSV exports, stored next to the file as
+ * <file>.csv.sidx. Rows are grouped into the same blocks as TimeRangeIndex;
+ * for every IP address (source or destination) and every port the index
+ * keeps a bitmap of the blocks that contain it. A Bloom filter over all IPs
+ * and ports sits at the start of the file, so a lookup across many files or
+ * rolling segments reads only the header and filter of each sidecar to skip
+ * files that cannot contain the host or port.
+ *
+ * CsvExporter and RollingCsvWriter build the index while writing (addRow).
+ * For other files ensureIndex() builds it from the file's time index blocks
+ * and saves it; build(csvFile, timeIndex) builds it in memory only. Lookups map the sidecar and binary-search the sorted IP or
+ * port table, so an index is never loaded as a whole.
+ *
+ * Index layout (big-endian): "SIDX" version(4) sourceLength(8) blockCount(4)
+ *   bloom: bitCount(4) hashCount(4) words(8 each)
+ *   IPs:   count(4), entry offsets(4 each), then per IP in sorted order: length(2) UTF-8 bytes bitmap
+ *   ports: count(4), sorted ports(4 each), entry offsets(4 each), then per port: bitmap
+ *   bitmap: word count(4) words(8 each), bit i set = block i contains the key
+ */
+public class SecondaryIndex {
+
+    private static final byte[] MAGIC = {'S', 'I', 'D', 'X'};
+    private static final int VERSION = 1;
+    public static final String SUFFIX = ".sidx";
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final int blockRows;
+    private final Map<String, BitSet> ipBlocks = new HashMap<>();
+    private final Map<Integer, BitSet> portBlocks = new HashMap<>();
+    private long sourceLength;
+    private int blockCount;
+    private long rows = 0;
+    private BloomFilter bloom;
+
+    public SecondaryIndex() {
+        this(TimeRangeIndex.DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates an empty index to be filled with addRow() while a file is written
+     * @param blockRows Rows per block (must match the file's TimeRangeIndex)
+     */
+    public SecondaryIndex(int blockRows) {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockRows);
+        }
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * Adds the next data row (rows must be added in file order, like TimeRangeIndex.addRow)
+     */
+    public void addRow(PacketRecord record) {
+        add((int) (rows++ / blockRows), record.getSourceIP(), record.getDestinationIP(),
+            record.getSourcePort(), record.getDestinationPort());
+    }
+
+    private void add(int block, String sourceIP, String destinationIP, int sourcePort, int destinationPort) {
+        ipBlocks.computeIfAbsent(sourceIP == null ? "" : sourceIP, k -> new BitSet()).set(block);
+        ipBlocks.computeIfAbsent(destinationIP == null ? "" : destinationIP, k -> new BitSet()).set(block);
+        portBlocks.computeIfAbsent(sourcePort, k -> new BitSet()).set(block);
+        portBlocks.computeIfAbsent(destinationPort, k -> new BitSet()).set(block);
+        blockCount = Math.max(blockCount, block + 1);
+    }
+
+    /**
+     * Completes the index
+     * @param fileLength File length after the last row
+     */
+    public void finish(long fileLength) {
+        sourceLength = fileLength;
+        bloom = new BloomFilter(ipBlocks.size() + portBlocks.size());
+        for (String ip : ipBlocks.keySet()) {
+            bloom.add(ipKey(ip));
+        }
+        for (int port : portBlocks.keySet()) {
+            bloom.add(portKey(port));
+        }
+    }
+
+    private static String ipKey(String ip) {
+        return "ip:" + ip;
+    }
+
+    private static String portKey(int port) {
+        return "port:" + port;
+    }
+
+    /**
+     * Writes the index to a sidecar file (via a temporary file, so readers never see a partial index).
+     * Keys are sorted and preceded by an offset table, so readers binary-search the mapped file.
+     */
+    public void save(String indexFile) throws IOException {
+        List<String> ips = new ArrayList<>(new TreeMap<>(ipBlocks).keySet());
+        List<Integer> ports = new ArrayList<>(new TreeMap<>(portBlocks).keySet());
+
+        File temp = new File(indexFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceLength);
+            out.writeInt(blockCount);
+            bloom.writeTo(out);
+
+            // IPs: count, entry offsets, entries (length, UTF-8 bytes, bitmap)
+            long offset = out.size() + 4 + 4L * ips.size();
+            out.writeInt(ips.size());
+            List<byte[]> ipBytes = new ArrayList<>();
+            for (String ip : ips) {
+                byte[] bytes = ip.getBytes(StandardCharsets.UTF_8);
+                ipBytes.add(bytes);
+                out.writeInt((int) offset);
+                offset += 2 + bytes.length + bitmapLength(ipBlocks.get(ip));
+            }
+            for (int i = 0; i < ips.size(); i++) {
+                out.writeShort(ipBytes.get(i).length);
+                out.write(ipBytes.get(i));
+                writeBitmap(out, ipBlocks.get(ips.get(i)));
+            }
+
+            // Ports: count, sorted ports, entry offsets, bitmaps
+            offset = out.size() + 4 + 8L * ports.size();
+            out.writeInt(ports.size());
+            for (int port : ports) {
+                out.writeInt(port);
+            }
+            for (int port : ports) {
+                out.writeInt((int) offset);
+                offset += bitmapLength(portBlocks.get(port));
+            }
+            for (int port : ports) {
+                writeBitmap(out, portBlocks.get(port));
+            }
+        }
+        Files.move(temp.toPath(), Paths.get(indexFile), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int bitmapLength(BitSet bitmap) {
+        return 4 + 8 * ((bitmap.length() + 63) / 64);
+    }
+
+    private static void writeBitmap(DataOutputStream out, BitSet bitmap) throws IOException {
+        long[] words = bitmap.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readBitmap(ByteBuffer index, int offset) {
+        long[] words = new long[index.getInt(offset)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = index.getLong(offset + 4 + 8 * i);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Whether the sidecar of a CSV file exists and matches the file
+     */
+    public static boolean isCurrent(String csvFile) {
+        File sidecar = new File(csvFile + SUFFIX);
+        if (!sidecar.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar), 64))) {
+            return readHeader(in, new File(csvFile).length()) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the sidecar header
+     * @return The block count, or -1 if the sidecar is not a current index for a file of sourceLength bytes
+     */
+    private static int readHeader(DataInputStream in, long sourceLength) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION || in.readLong() != sourceLength) {
+            return -1;
+        }
+        return in.readInt();
+    }
+
+    /**
+     * Builds and saves the sidecar of a CSV file unless it is already current
+     */
+    public static void ensureIndex(String csvFile) throws IOException {
+        if (!isCurrent(csvFile)) {
+            build(csvFile).save(csvFile + SUFFIX);
+        }
+    }
+
+    /**
+     * Builds the index of an existing CSV file from the blocks of its time index
+     */
+    public static SecondaryIndex build(String csvFile) throws IOException {
+        return build(csvFile, TimeRangeIndex.forFile(csvFile));
+    }
+
+    /**
+     * Builds the index of an existing CSV file in memory from the given blocks of the file
+     */
+    public static SecondaryIndex build(String csvFile, TimeRangeIndex timeIndex) throws IOException {
+        SecondaryIndex index = new SecondaryIndex();
+        List<String> fields = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            List<TimeRangeIndex.Block> blocks = timeIndex.getBlocks();
+            for (int block = 0; block < blocks.size(); block++) {
+                ByteBuffer data = ByteBuffer.allocate(blocks.get(block).getLength());
+                while (data.hasRemaining()) {
+                    if (channel.read(data, blocks.get(block).getOffset() + data.position()) < 0) {
+                        throw new IOException("Time index does not match the file " + csvFile);
+                    }
+                }
+                String text = new String(data.array(), StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    CsvPacketReader.splitCsvLine(line, fields);
+                    if (fields.size() == 10) {
+                        try {
+                            index.add(block, fields.get(1), fields.get(2), parsePort(fields.get(3)), parsePort(fields.get(4)));
+                        } catch (NumberFormatException e) {
+                            // Malformed row; CsvPacketReader skips it as well
+                        }
+                    }
+                }
+            }
+        }
+        index.blockCount = Math.max(index.blockCount, timeIndex.getBlocks().size());
+        index.finish(new File(csvFile).length());
+        return index;
+    }
+
+    private static int parsePort(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? -1 : Integer.parseInt(trimmed);
+    }
+
+    // Queries
+
+    /**
+     * Whether a file may contain the IP (false = certainly not), reading only the sidecar's Bloom filter.
+     * Files without a current sidecar are reported as possible matches.
+     */
+    public static boolean mightContainIP(String csvFile, String ip) {
+        return mightContain(csvFile, ipKey(ip));
+    }
+
+    public static boolean mightContainPort(String csvFile, int port) {
+        return mightContain(csvFile, portKey(port));
+    }
+
+    private static boolean mightContain(String csvFile, String key) {
+        File sidecar = new File(csvFile + SUFFIX);
+        if (!sidecar.isFile()) {
+            return true;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar), 8192))) {
+            return readHeader(in, new File(csvFile).length()) < 0 || BloomFilter.readFrom(in).mightContain(key);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Blocks of a file containing the IP as source or destination (building the sidecar if needed)
+     */
+    public static BitSet blocksForIP(String csvFile, String ip) throws IOException {
+        return lookup(csvFile, ip, 0);
+    }
+
+    /**
+     * Blocks of a file containing the port as source or destination port (building the sidecar if needed)
+     */
+    public static BitSet blocksForPort(String csvFile, int port) throws IOException {
+        return lookup(csvFile, null, port);
+    }
+
+    /**
+     * Blocks containing the IP as source or destination, from an index in memory
+     */
+    public BitSet getBlocksForIP(String ip) {
+        BitSet blocks = ipBlocks.get(ip);
+        return blocks == null ? new BitSet() : (BitSet) blocks.clone();
+    }
+
+    /**
+     * Blocks containing the port as source or destination port, from an index in memory
+     */
+    public BitSet getBlocksForPort(int port) {
+        BitSet blocks = portBlocks.get(port);
+        return blocks == null ? new BitSet() : (BitSet) blocks.clone();
+    }
+
+    /**
+     * Checks the Bloom filter, then binary-searches the IP or port table of the mapped sidecar
+     */
+    private static BitSet lookup(String csvFile, String ip, int port) throws IOException {
+        ensureIndex(csvFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile + SUFFIX), StandardOpenOption.READ)) {
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 20; // Magic, version, source length, block count
+            int bloomWords = index.getInt(position) / 64;
+            BloomFilter bloom = BloomFilter.readFrom(index, position);
+            position += 8 + 8 * bloomWords;
+            if (!bloom.mightContain(ip != null ? ipKey(ip) : portKey(port))) {
+                return new BitSet();
+            }
+
+            int ipCount = index.getInt(position);
+            int ipOffsets = position + 4;
+            if (ip != null) {
+                int low = 0;
+                int high = ipCount - 1;
+                while (low <= high) {
+                    int middle = (low + high) >>> 1;
+                    int entry = index.getInt(ipOffsets + 4 * middle);
+                    byte[] key = new byte[index.getShort(entry) & 0xFFFF];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = index.get(entry + 2 + i);
+                    }
+                    int compare = new String(key, StandardCharsets.UTF_8).compareTo(ip);
+                    if (compare == 0) {
+                        return readBitmap(index, entry + 2 + key.length);
+                    } else if (compare < 0) {
+                        low = middle + 1;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                return new BitSet();
+            }
+
+            // Skip the IP entries: the port section follows the last one
+            position = ipOffsets + 4 * ipCount;
+            if (ipCount > 0) {
+                int last = index.getInt(ipOffsets + 4 * (ipCount - 1));
+                int lastBitmap = last + 2 + (index.getShort(last) & 0xFFFF);
+                position = lastBitmap + 4 + 8 * index.getInt(lastBitmap);
+            }
+            int portCount = index.getInt(position);
+            int ports = position + 4;
+            int offsets = ports + 4 * portCount;
+            int low = 0;
+            int high = portCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int value = index.getInt(ports + 4 * middle);
+                if (value == port) {
+                    return readBitmap(index, index.getInt(offsets + 4 * middle));
+                } else if (value < port) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return new BitSet();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt secondary index " + csvFile + SUFFIX);
+        }
+    }
+
+    /**
+     * Reads all rows of the files that involve the IP, skipping files by Bloom filter and blocks by bitmap
+     */
+    public static List<PacketRecord> readHost(List<String> csvFiles, String ip) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        byte[][] needles = hostNeedles(Collections.singletonList(ip));
+        for (String csvFile : csvFiles) {
+            if (!mightContainIP(csvFile, ip)) {
+                continue;
+            }
+            records.addAll(readBlocks(csvFile, blocksForIP(csvFile, ip), needles,
+                                      record -> ip.equals(record.getSourceIP()) || ip.equals(record.getDestinationIP())));
+        }
+        return records;
+    }
+
+    /**
+     * Reads all rows of the files that use the port, skipping files by Bloom filter and blocks by bitmap
+     */
+    public static List<PacketRecord> readPort(List<String> csvFiles, int port) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        byte[][] needles = portNeedles(Collections.singletonList(port));
+        for (String csvFile : csvFiles) {
+            if (!mightContainPort(csvFile, port)) {
+                continue;
+            }
+            records.addAll(readBlocks(csvFile, blocksForPort(csvFile, port), needles,
+                                      record -> record.getSourcePort() == port || record.getDestinationPort() == port));
+        }
+        return records;
+    }
+
+    /**
+     * Byte sequences of which every CSV line involving one of the IPs contains at least one
+     */
+    static byte[][] hostNeedles(Collection<String> ips) {
+        byte[][] needles = new byte[ips.size()][];
+        int i = 0;
+        for (String ip : ips) {
+            needles[i++] = ip.getBytes(StandardCharsets.UTF_8);
+        }
+        return needles;
+    }
+
+    /**
+     * Byte sequences of which every CSV line using one of the ports contains at least one
+     * @return The needles, or null if the ports cannot be matched on raw bytes
+     */
+    static byte[][] portNeedles(Collection<Integer> ports) {
+        // Ports are written unquoted by CsvExporter; -1 is written as an empty field in the Power BI format
+        byte[][] needles = new byte[2 * ports.size()][];
+        int i = 0;
+        for (int port : ports) {
+            if (port < 0) {
+                return null;
+            }
+            needles[i++] = ("," + port + ",").getBytes(StandardCharsets.US_ASCII);
+            needles[i++] = (",\"" + port + "\",").getBytes(StandardCharsets.US_ASCII);
+        }
+        return needles;
+    }
+
+    private static List<PacketRecord> readBlocks(String csvFile, BitSet blockNumbers, byte[][] needles,
+                                                 Predicate<PacketRecord> filter) throws IOException {
+        if (blockNumbers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TimeRangeIndex timeIndex = TimeRangeIndex.forFile(csvFile);
+        List<TimeRangeIndex.Block> blocks = new ArrayList<>();
+        for (int i = blockNumbers.nextSetBit(0); i >= 0 && i < timeIndex.getBlocks().size(); i = blockNumbers.nextSetBit(i + 1)) {
+            blocks.add(timeIndex.getBlock(i));
+        }
+        return TimeRangeIndex.readBlocks(csvFile, blocks, Long.MIN_VALUE, Long.MAX_VALUE, needles, filter);
+    }
+
+    // Getters
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getDistinctIPs() {
+        return ipBlocks.size();
+    }
+
+    public int getDistinctPorts() {
+        return portBlocks.size();
+    }
+
+    /**
+     * A Bloom filter over strings (double hashing of a 64-bit FNV-1a hash)
+     */
+    static class BloomFilter {
+        private final long[] words;
+        private final int bitCount;
+        private final int hashCount;
+
+        BloomFilter(int expectedKeys) {
+            this(new long[(Math.max(64, expectedKeys * BLOOM_BITS_PER_KEY) + 63) / 64], BLOOM_HASHES);
+        }
+
+        private BloomFilter(long[] words, int hashCount) {
+            this.words = words;
+            this.bitCount = words.length * 64;
+            this.hashCount = hashCount;
+        }
+
+        void add(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                words[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(bitCount);
+            out.writeInt(hashCount);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        static BloomFilter readFrom(ByteBuffer index, int position) throws IOException {
+            int bits = index.getInt(position);
+            int hashes = index.getInt(position + 4);
+            if (bits <= 0 || bits % 64 != 0 || hashes <= 0) {
+                throw new IOException("Corrupt Bloom filter");
+            }
+            long[] words = new long[bits / 64];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = index.getLong(position + 8 + 8 * i);
+            }
+            return new BloomFilter(words, hashes);
+        }
+
+        static BloomFilter readFrom(DataInputStream in) throws IOException {
+            int bits = in.readInt();
+            int hashes = in.readInt();
+            if (bits <= 0 || bits % 64 != 0 || hashes <= 0) {
+                throw new IOException("Corrupt Bloom filter");
+            }
+            long[] words = new long[bits / 64];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new BloomFilter(words, hashes);
+        }
+    }
+
+    /**
+     * Looks up a host or port across CSV files (or directories of rolling segments)
+     * Usage: SecondaryIndex (--host <ip> | --port <n>) <file.csv | directory>... [--export name]
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || (!args[0].equals("--host") && !args[0].equals("--port"))) {
+            System.out.println("Usage: SecondaryIndex (--host <ip> | --port <n>) <file.csv | directory>... [--export name]");
+            return;
+        }
+        List<String> files = new ArrayList<>();
+        String exportName = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--export") && i + 1 < args.length) {
+                exportName = args[++i];
+                continue;
+            }
+            File file = new File(args[i]);
+            File[] csvFiles = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".csv")) : new File[] {file};
+            if (csvFiles != null) {
+                Arrays.sort(csvFiles);
+                for (File csv : csvFiles) {
+                    files.add(csv.getPath());
+                }
+            }
+        }
+
+        System.out.println("=== Secondary Index Lookup ===");
+        try {
+            // Make sure every file has its indexes, so the lookup below measures only the lookup
+            long start = System.nanoTime();
+            for (String file : files) {
+                ensureIndex(file);
+            }
+            System.out.println("Indexes ready for " + files.size() + " file(s) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            start = System.nanoTime();
+            int candidates = 0;
+            for (String file : files) {
+                if (args[0].equals("--host") ? mightContainIP(file, args[1]) : mightContainPort(file, Integer.parseInt(args[1]))) {
+                    candidates++;
+                }
+            }
+            List<PacketRecord> records = args[0].equals("--host") ? readHost(files, args[1])
+                                                                 : readPort(files, Integer.parseInt(args[1]));
+            System.out.println("Rows for " + args[1] + ": " + records.size() + " (" + candidates + " of " + files.size() +
+                             " file(s) passed the Bloom filter, " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            if (exportName != null) {
+                CsvExporter.exportToCsvForPowerBI(records, exportName);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading secondary index: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.err.println("Error: invalid port " + args[1]);
+        }
+    }
+}
@@ -0,0 +1,723 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * SegmentedCaptureStore.java
+ *
+ * An append-only, log-structured store for packet records, so a capture
+ * survives a JVM crash. Records are grouped into batches (group commit) and
+ * appended to segment files in the store directory:
+ *
+ *   segment_00000001.pseg   "PSEG" version(2) reserved(2) created(8)
+ *                           batch*: "PBAT" payloadLength(4) recordCount(4) minTimestamp(8) maxTimestamp(8)
+ *                                   payloadCrc(4) headerCrc(4) payload (a PacketRecordCodec batch)
+ *                           footer: "PIDX" batchCount(4) then per batch: offset(8) recordCount(4) min/max timestamp(8+8)
+ *                           trailer: footerOffset(8) footerCrc(4) "PEND"
+ *
+ * A batch is committed when it reaches the batch size or when the commit
+ * interval elapses; with sync enabled every commit is forced to disk, so at
+ * most one commit interval of packets can be lost. A segment is sealed with
+ * its footer index once it reaches the size limit, so readers of sealed
+ * segments load the index without scanning the file.
+ *
+ * On open, segments without a valid trailer are scanned batch by batch and
+ * truncated after the last batch whose checksums match (a torn write from a
+ * crash). Earlier segments are then sealed and appending resumes in the
+ * last one.
+ */
+public class SegmentedCaptureStore implements PacketRecordListener, AutoCloseable {
+
+    private static final byte[] SEGMENT_MAGIC = {'P', 'S', 'E', 'G'};
+    private static final byte[] BATCH_MAGIC = {'P', 'B', 'A', 'T'};
+    private static final byte[] FOOTER_MAGIC = {'P', 'I', 'D', 'X'};
+    private static final byte[] TRAILER_MAGIC = {'P', 'E', 'N', 'D'};
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = 16;
+    private static final int BATCH_HEADER_LENGTH = 36;
+    private static final int INDEX_ENTRY_LENGTH = 28;
+    private static final int TRAILER_LENGTH = 16;
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".pseg";
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_BATCH_RECORDS = 4096;
+    public static final long DEFAULT_COMMIT_MILLIS = 1000;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<PacketRecord> pending = new ArrayList<>();
+    private final ScheduledExecutorService commitTimer;
+    private Segment current;
+    private FileChannel channel;
+    private int batchRecords = DEFAULT_BATCH_RECORDS;
+    private boolean syncOnCommit = true;
+    private boolean closed = false;
+
+    // Statistics
+    private long recordsAppended = 0;
+    private long batchesCommitted = 0;
+    private long syncs = 0;
+    private long recoveredBytesTruncated = 0;
+    private int segmentsRecovered = 0;
+
+    /**
+     * Opens (or creates) a store in output/capture_store
+     */
+    public SegmentedCaptureStore() throws IOException {
+        this(CsvExporter.getOutputDirectory() + "/capture_store", DEFAULT_SEGMENT_BYTES, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Opens (or creates) a store, recovering any segment left incomplete by a crash
+     * @param directory Store directory
+     * @param maxSegmentBytes Size at which a segment is sealed and the next one started
+     * @param commitMillis Interval at which pending records are committed (0 = only on full batches)
+     * @throws IOException if the directory or a segment cannot be read
+     */
+    public SegmentedCaptureStore(String directory, long maxSegmentBytes, long commitMillis) throws IOException {
+        if (maxSegmentBytes <= SEGMENT_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Invalid segment size: " + maxSegmentBytes);
+        }
+        this.directory = Paths.get(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+
+        Files.createDirectories(this.directory);
+        recover();
+
+        commitTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "capture-store-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (commitMillis > 0) {
+            commitTimer.scheduleAtFixedRate(this::commitQuietly, commitMillis, commitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Configures group commit
+     * @param batchRecords Records per batch; a full batch is committed immediately
+     * @param syncOnCommit Whether each commit is forced to disk (fsync)
+     */
+    public synchronized void setGroupCommit(int batchRecords, boolean syncOnCommit) {
+        if (batchRecords <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchRecords);
+        }
+        this.batchRecords = batchRecords;
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        try {
+            append(record);
+        } catch (IOException e) {
+            System.err.println("Error appending to capture store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds one record to the pending batch, committing it when full
+     */
+    public synchronized void append(PacketRecord record) throws IOException {
+        if (closed) {
+            throw new IOException("Capture store already closed: " + directory);
+        }
+        pending.add(record);
+        recordsAppended++;
+        if (pending.size() >= batchRecords) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes the pending records as one checksummed batch (and forces it to disk if sync is enabled)
+     */
+    public synchronized void commit() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        CaptureEvents.BatchHandoffEvent handoffEvent = new CaptureEvents.BatchHandoffEvent();
+        handoffEvent.begin();
+        if (current == null || current.length >= maxSegmentBytes) {
+            if (current != null) {
+                sealCurrent();
+            }
+            openSegment();
+        }
+
+        ByteBuffer payload = PacketRecordCodec.encode(pending);
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (PacketRecord record : pending) {
+            long timestamp = record.getTimestamp().getTime();
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        Batch batch = new Batch(current.length, pending.size(), minTimestamp, maxTimestamp);
+        ByteBuffer header = batch.header(payload);
+        try {
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(new ByteBuffer[] {header, payload});
+            }
+        } catch (IOException e) {
+            // Drop the partial batch so later commits are not appended after it
+            channel.truncate(current.length);
+            channel.position(current.length);
+            throw e;
+        }
+        if (syncOnCommit) {
+            channel.force(false);
+            syncs++;
+        }
+        current.length = channel.position();
+        current.batches.add(batch);
+        batchesCommitted++;
+        CaptureEvents.batchHandedOff(handoffEvent, "capture_store", pending.size(), 0);
+        pending.clear();
+    }
+
+    private void commitQuietly() {
+        try {
+            synchronized (this) {
+                if (!closed) {
+                    commit();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error committing capture store batch: " + e.getMessage());
+        }
+    }
+
+    private void openSegment() throws IOException {
+        int sequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).sequence + 1;
+        Segment segment = new Segment(directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)),
+                                      sequence);
+        channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+        header.put(SEGMENT_MAGIC).putShort((short) VERSION).putShort((short) 0).putLong(System.currentTimeMillis());
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        segment.length = SEGMENT_HEADER_LENGTH;
+        segments.add(segment);
+        current = segment;
+    }
+
+    /**
+     * Writes the footer index of the current segment and closes it
+     */
+    private void sealCurrent() throws IOException {
+        channel.position(current.length);
+        writeFooter(channel, current);
+        channel.force(true);
+        channel.close();
+        current.sealed = true;
+        current = null;
+        channel = null;
+    }
+
+    private static void writeFooter(FileChannel channel, Segment segment) throws IOException {
+        long footerOffset = channel.position();
+        ByteBuffer footer = ByteBuffer.allocate(8 + segment.batches.size() * INDEX_ENTRY_LENGTH + TRAILER_LENGTH);
+        footer.put(FOOTER_MAGIC).putInt(segment.batches.size());
+        for (Batch batch : segment.batches) {
+            footer.putLong(batch.offset).putInt(batch.recordCount).putLong(batch.minTimestamp).putLong(batch.maxTimestamp);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(footer.array(), 0, footer.position());
+        footer.putLong(footerOffset).putInt((int) crc.getValue()).put(TRAILER_MAGIC);
+        footer.flip();
+        while (footer.hasRemaining()) {
+            channel.write(footer);
+        }
+        segment.length = channel.position();
+    }
+
+    // Recovery
+
+    /**
+     * Loads the segment indexes, repairing torn tails, and reopens the last segment for appending
+     */
+    private void recover() throws IOException {
+        List<Segment> found = listSegments(directory);
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            boolean last = i == found.size() - 1;
+            boolean headerMissing = false;
+            try (FileChannel file = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (readFooter(file, segment)) {
+                    segments.add(segment);
+                    continue;
+                }
+                if (file.size() < SEGMENT_HEADER_LENGTH || !hasSegmentHeader(file)) {
+                    // Crashed before the segment header reached the disk (deleted once the file is closed)
+                    recoveredBytesTruncated += file.size();
+                    headerMissing = true;
+                } else {
+                    repairTail(file, segment, last);
+                }
+            }
+            if (headerMissing) {
+                Files.delete(segment.path);
+                segmentsRecovered++;
+                continue;
+            }
+            segments.add(segment);
+        }
+
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail != null && !tail.sealed) {
+            current = tail;
+            channel = FileChannel.open(tail.path, StandardOpenOption.WRITE);
+            channel.position(tail.length);
+        }
+    }
+
+    /**
+     * Truncates a segment without a footer after its last complete batch, and seals it unless it is the last one
+     */
+    private void repairTail(FileChannel file, Segment segment, boolean last) throws IOException {
+        long validLength = scanBatches(file, segment);
+        if (validLength < file.size()) {
+            recoveredBytesTruncated += file.size() - validLength;
+            file.truncate(validLength);
+            file.force(true);
+            segmentsRecovered++;
+        }
+        segment.length = validLength;
+        if (!last) {
+            file.position(validLength);
+            writeFooter(file, segment);
+            file.force(true);
+            segment.sealed = true;
+        }
+    }
+
+    /**
+     * The segment files of a store directory in sequence order (nothing is read yet)
+     */
+    private static List<Segment> listSegments(Path directory) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Segment> found = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    int sequence = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length(),
+                                                    file.getName().length() - SEGMENT_SUFFIX.length()));
+                    found.add(new Segment(file.toPath(), sequence));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unexpected file in capture store: " + file.getName());
+                }
+            }
+        }
+        found.sort((a, b) -> Integer.compare(a.sequence, b.sequence));
+        return found;
+    }
+
+    private static boolean hasSegmentHeader(FileChannel file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+        if (readFully(file, header, 0) < SEGMENT_HEADER_LENGTH) {
+            return false;
+        }
+        header.flip();
+        return startsWith(header, SEGMENT_MAGIC) && (header.getShort(4) & 0xFFFF) <= VERSION;
+    }
+
+    /**
+     * Loads the footer index of a sealed segment
+     * @return false if the segment has no valid trailer
+     */
+    private static boolean readFooter(FileChannel file, Segment segment) throws IOException {
+        long size = file.size();
+        if (size < SEGMENT_HEADER_LENGTH + 8 + TRAILER_LENGTH) {
+            return false;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        if (readFully(file, trailer, size - TRAILER_LENGTH) < TRAILER_LENGTH) {
+            return false;
+        }
+        trailer.flip();
+        long footerOffset = trailer.getLong();
+        int expectedCrc = trailer.getInt();
+        if (!startsWith(trailer, TRAILER_MAGIC) ||
+            footerOffset < SEGMENT_HEADER_LENGTH || footerOffset > size - TRAILER_LENGTH - 8) {
+            return false;
+        }
+
+        ByteBuffer footer = ByteBuffer.allocate((int) (size - TRAILER_LENGTH - footerOffset));
+        if (readFully(file, footer, footerOffset) < footer.capacity()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(footer.array(), 0, footer.capacity());
+        footer.flip();
+        if ((int) crc.getValue() != expectedCrc || !startsWith(footer, FOOTER_MAGIC)) {
+            return false;
+        }
+        footer.position(4);
+        int count = footer.getInt();
+        if (footer.remaining() != count * INDEX_ENTRY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            Batch batch = new Batch(footer.getLong(), footer.getInt(), footer.getLong(), footer.getLong());
+            segment.batches.add(batch);
+        }
+        segment.length = size;
+        segment.sealed = true;
+        return true;
+    }
+
+    /**
+     * Walks the batches of an unsealed segment, verifying both checksums of each
+     * @return The length of the segment up to the end of the last valid batch
+     */
+    private static long scanBatches(FileChannel file, Segment segment) throws IOException {
+        long position = SEGMENT_HEADER_LENGTH;
+        long size = file.size();
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_LENGTH);
+        while (position + BATCH_HEADER_LENGTH <= size) {
+            header.clear();
+            if (readFully(file, header, position) < BATCH_HEADER_LENGTH) {
+                break;
+            }
+            header.flip();
+            Batch batch = Batch.parseHeader(header, position);
+            if (batch == null || position + BATCH_HEADER_LENGTH + batch.payloadLength > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(batch.payloadLength);
+            if (readFully(file, payload, position + BATCH_HEADER_LENGTH) < batch.payloadLength ||
+                !batch.payloadMatches(payload)) {
+                break;
+            }
+            segment.batches.add(batch);
+            position += BATCH_HEADER_LENGTH + batch.payloadLength;
+        }
+        return position;
+    }
+
+    private static int readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = file.read(buffer, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] magic) {
+        if (buffer.remaining() < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(buffer.position() + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reading
+
+    /**
+     * Reads all committed records with timestamps in [fromMillis, toMillis], in append order.
+     * Batches whose indexed time range does not overlap are skipped without being read.
+     */
+    public synchronized List<PacketRecord> readRecords(long fromMillis, long toMillis) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        for (Segment segment : segments) {
+            try (FileChannel file = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                for (Batch batch : segment.batches) {
+                    if (batch.maxTimestamp < fromMillis || batch.minTimestamp > toMillis) {
+                        continue;
+                    }
+                    for (PacketRecord record : readBatch(file, batch)) {
+                        long timestamp = record.getTimestamp().getTime();
+                        if (timestamp >= fromMillis && timestamp <= toMillis) {
+                            records.add(record);
+                        }
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    public List<PacketRecord> readAll() throws IOException {
+        return readRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads committed records of a store without opening it for writing, so it is safe while a
+     * capture is appending to it. Records are numbered from 0 in append order; batches before
+     * fromSequence are skipped without being decoded, and a batch still being written (or torn
+     * by a crash) ends the read, so it is picked up by a later call once it is complete.
+     * @param directory Store directory
+     * @param fromSequence Number of the first record wanted
+     * @param consumer Receives the records from fromSequence on, one batch at a time
+     * @return The number of committed records in the store, i.e. the fromSequence of the next call
+     *         (less than fromSequence if the store was replaced by a smaller one)
+     * @throws IOException if a segment cannot be read
+     */
+    public static long readCommitted(String directory, long fromSequence, Consumer<List<PacketRecord>> consumer)
+            throws IOException {
+        long sequence = 0;
+        for (Segment segment : listSegments(Paths.get(directory))) {
+            try (FileChannel file = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                boolean sealed = readFooter(file, segment);
+                if (!sealed) {
+                    if (file.size() < SEGMENT_HEADER_LENGTH || !hasSegmentHeader(file)) {
+                        break;
+                    }
+                    scanBatches(file, segment);
+                }
+                for (Batch batch : segment.batches) {
+                    if (sequence + batch.recordCount > fromSequence) {
+                        List<PacketRecord> records = readBatch(file, batch);
+                        int skip = (int) Math.max(0, fromSequence - sequence);
+                        consumer.accept(skip > 0 ? records.subList(skip, records.size()) : records);
+                    }
+                    sequence += batch.recordCount;
+                }
+                if (!sealed) {
+                    break; // Later segments cannot exist before this one is sealed
+                }
+            }
+        }
+        return sequence;
+    }
+
+    private static List<PacketRecord> readBatch(FileChannel file, Batch batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER_LENGTH);
+        if (readFully(file, buffer, batch.offset) < BATCH_HEADER_LENGTH) {
+            throw new IOException("Truncated batch at offset " + batch.offset);
+        }
+        buffer.flip();
+        Batch stored = Batch.parseHeader(buffer, batch.offset);
+        if (stored == null) {
+            throw new IOException("Corrupt batch header at offset " + batch.offset);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(stored.payloadLength);
+        if (readFully(file, payload, batch.offset + BATCH_HEADER_LENGTH) < stored.payloadLength ||
+            !stored.payloadMatches(payload)) {
+            throw new IOException("Corrupt batch payload at offset " + batch.offset);
+        }
+        payload.flip();
+        return PacketRecordCodec.decode(payload);
+    }
+
+    // Getters
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getRecordsAppended() {
+        return recordsAppended;
+    }
+
+    /**
+     * Committed records in the store, including those written before this instance was opened
+     */
+    public synchronized long getCommittedRecords() {
+        long count = 0;
+        for (Segment segment : segments) {
+            for (Batch batch : segment.batches) {
+                count += batch.recordCount;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getBatchesCommitted() {
+        return batchesCommitted;
+    }
+
+    public synchronized long getRecoveredBytesTruncated() {
+        return recoveredBytesTruncated;
+    }
+
+    public synchronized int getSegmentsRecovered() {
+        return segmentsRecovered;
+    }
+
+    /**
+     * Commits the pending records and seals the current segment (the next session starts a new segment)
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        commitTimer.shutdownNow();
+        try {
+            commit();
+            if (current != null) {
+                sealCurrent();
+            }
+        } finally {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Prints the store summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== CAPTURE STORE ===");
+        System.out.println("Directory: " + directory);
+        System.out.println("Records appended: " + recordsAppended + " in " + batchesCommitted + " batches (" +
+                         syncs + " syncs)");
+        System.out.println("Committed records in store: " + getCommittedRecords() + " in " + segments.size() + " segment(s)");
+        if (segmentsRecovered > 0) {
+            System.out.println("Recovered " + segmentsRecovered + " segment(s), truncated " + recoveredBytesTruncated +
+                             " bytes of incomplete batches");
+        }
+    }
+
+    /**
+     * One segment file and its batch index
+     */
+    private static class Segment {
+        final Path path;
+        final int sequence;
+        final List<Batch> batches = new ArrayList<>();
+        long length;
+        boolean sealed;
+
+        Segment(Path path, int sequence) {
+            this.path = path;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Index entry and header of one committed batch
+     */
+    private static class Batch {
+        long offset;
+        final int recordCount;
+        final long minTimestamp;
+        final long maxTimestamp;
+        int payloadLength;
+        int payloadCrc;
+
+        Batch(long offset, int recordCount, long minTimestamp, long maxTimestamp) {
+            this.offset = offset;
+            this.recordCount = recordCount;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        /**
+         * Builds the batch header for the payload (the payload's position is unchanged)
+         */
+        ByteBuffer header(ByteBuffer payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            payloadLength = payload.remaining();
+            payloadCrc = (int) crc.getValue();
+
+            ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_LENGTH);
+            header.put(BATCH_MAGIC).putInt(payloadLength).putInt(recordCount)
+                  .putLong(minTimestamp).putLong(maxTimestamp).putInt(payloadCrc);
+            crc.reset();
+            crc.update(header.array(), 0, BATCH_HEADER_LENGTH - 4);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            return header;
+        }
+
+        /**
+         * @return The batch, or null if the header is not a valid batch header
+         */
+        static Batch parseHeader(ByteBuffer header, long offset) {
+            if (!startsWith(header, BATCH_MAGIC)) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, BATCH_HEADER_LENGTH - 4);
+            if ((int) crc.getValue() != header.getInt(BATCH_HEADER_LENGTH - 4)) {
+                return null;
+            }
+            Batch batch = new Batch(offset, header.getInt(8), header.getLong(12), header.getLong(20));
+            batch.payloadLength = header.getInt(4);
+            batch.payloadCrc = header.getInt(28);
+            return batch.payloadLength >= 0 ? batch : null;
+        }
+
+        /**
+         * Checks the payload CRC (the buffer holds the payload between 0 and its position)
+         */
+        boolean payloadMatches(ByteBuffer payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, payloadLength);
+            return (int) crc.getValue() == payloadCrc;
+        }
+    }
+
+    /**
+     * Opens a store (recovering it if needed), prints its contents and optionally exports it to CSV
+     * Usage: SegmentedCaptureStore [store directory] [export name]
+     */
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : CsvExporter.getOutputDirectory() + "/capture_store";
+        System.out.println("=== Segmented Capture Store ===");
+        try (SegmentedCaptureStore store = new SegmentedCaptureStore(directory, DEFAULT_SEGMENT_BYTES, 0)) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            for (Segment segment : store.segments) {
+                long records = 0;
+                long first = Long.MAX_VALUE;
+                long last = Long.MIN_VALUE;
+                for (Batch batch : segment.batches) {
+                    records += batch.recordCount;
+                    first = Math.min(first, batch.minTimestamp);
+                    last = Math.max(last, batch.maxTimestamp);
+                }
+                System.out.println(segment.path.getFileName() + ": " + segment.batches.size() + " batches, " + records +
+                                 " records, " + segment.length + " bytes" + (segment.sealed ? "" : " (open)") +
+                                 (records > 0 ? ", " + format.format(new Date(first)) + " - " + format.format(new Date(last)) : ""));
+            }
+            store.printSummary();
+
+            if (args.length > 1) {
+                long start = System.nanoTime();
+                List<PacketRecord> records = store.readAll();
+                System.out.println("Read " + records.size() + " records in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                CsvExporter.exportToCsv(records, args[1]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening capture store: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,408 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StarSchemaExporter.java
+ *
+ * Writes packets as a star schema for Power BI instead of one wide CSV:
+ *
+ *   output/star/fact_packets.csv      Timestamp,SourceHostKey,DestinationHostKey,SourcePort,DestinationPort,
+ *                                     ProtocolKey,ApplicationKey,DirectionKey,PacketLength,TCPFlagMask
+ *   output/star/dim_host.csv          HostKey,IP,Subnet,Scope
+ *   output/star/dim_protocol.csv      ProtocolKey,Protocol
+ *   output/star/dim_application.csv   ApplicationKey,Application
+ *   output/star/dim_direction.csv     DirectionKey,Direction
+ *   output/star/dim_tcp_flags.csv     TCPFlagMask,TCPFlags
+ *
+ * The fact table holds only numbers, so it is about half the size of the
+ * Power BI export and its low-cardinality key columns compress far better
+ * in the Power BI model. Everything is written in one streaming pass: the dictionaries are
+ * maintained as packets arrive, and a value seen for the first time gets
+ * the next integer key and is appended to its dimension file right away.
+ * Keys start at 1 and are only valid within one export; the files are
+ * complete once the exporter is closed.
+ *
+ * In Power BI, relate each *Key column (and TCPFlagMask) of the fact table
+ * to the dimension with the same key column; SourceHostKey and
+ * DestinationHostKey both relate to dim_host (one of them as an inactive
+ * relationship, or load dim_host twice).
+ */
+public class StarSchemaExporter implements PacketRecordListener, AutoCloseable {
+
+    public static final String DEFAULT_DIRECTORY_NAME = "star";
+    public static final String FACT_FILE = "fact_packets.csv";
+    static final String FACT_HEADER = "Timestamp,SourceHostKey,DestinationHostKey,SourcePort,DestinationPort," +
+                                      "ProtocolKey,ApplicationKey,DirectionKey,PacketLength,TCPFlagMask";
+
+    private final String directory;
+    private final Writer factWriter;
+    private final Dimension hosts;
+    private final Dimension protocols;
+    private final Dimension applications;
+    private final Dimension directions;
+    private final Dimension tcpFlags;
+    private final Map<Integer, String> flagNames = new HashMap<>();
+    private boolean closed = false;
+
+    // "yyyy-MM-dd HH:mm:ss." of the last second written, so rows only append the millis
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.");
+    private long lastSecond = Long.MIN_VALUE;
+    private String lastSecondText = "";
+
+    // Statistics
+    private long recordsWritten = 0;
+
+    /**
+     * Creates an exporter writing to output/star (existing star files are replaced)
+     * @throws IOException if the files cannot be created
+     */
+    public StarSchemaExporter() throws IOException {
+        this(CsvExporter.getOutputDirectory() + "/" + DEFAULT_DIRECTORY_NAME);
+    }
+
+    /**
+     * @param directory Directory of the fact and dimension files (existing star files are replaced)
+     */
+    public StarSchemaExporter(String directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(Paths.get(directory));
+        factWriter = open(FACT_FILE, FACT_HEADER);
+        hosts = new Dimension(open("dim_host.csv", "HostKey,IP,Subnet,Scope"));
+        protocols = new Dimension(open("dim_protocol.csv", "ProtocolKey,Protocol"));
+        applications = new Dimension(open("dim_application.csv", "ApplicationKey,Application"));
+        directions = new Dimension(open("dim_direction.csv", "DirectionKey,Direction"));
+        tcpFlags = new Dimension(open("dim_tcp_flags.csv", "TCPFlagMask,TCPFlags"));
+    }
+
+    /**
+     * Exports a list of records as a star schema into output/star
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean export(List<PacketRecord> packetRecords) {
+        if (packetRecords == null || packetRecords.isEmpty()) {
+            System.out.println("No packet records to export.");
+            return false;
+        }
+        try {
+            StarSchemaExporter exporter = new StarSchemaExporter();
+            try {
+                for (PacketRecord record : packetRecords) {
+                    exporter.recordArrived(record);
+                }
+            } finally {
+                exporter.close(); // Writes the dimension tables before the counts are reported
+            }
+            System.out.println("Successfully exported " + exporter.getRecordsWritten() + " packet records to " +
+                             exporter.getDirectory() + " (star schema, " + exporter.getHostCount() + " hosts)");
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing star schema export: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Appends one fact row, adding any new host, protocol, application, direction or flag combination
+     * to its dimension first
+     */
+    @Override
+    public synchronized void recordArrived(PacketRecord record) {
+        if (closed) {
+            return;
+        }
+        try {
+            int sourceHost = hostKey(record.getSourceIP());
+            int destinationHost = hostKey(record.getDestinationIP());
+            int protocol = protocols.keyOf(record.getProtocol());
+            int application = applications.keyOf(record.getApplicationGuess());
+            int direction = directions.keyOf(record.getDirection());
+            int flagMask = flagMask(record.getTcpFlags());
+
+            StringBuilder row = new StringBuilder(64);
+            long timestamp = record.getTimestamp().getTime();
+            long second = Math.floorDiv(timestamp, 1000);
+            if (second != lastSecond) {
+                lastSecond = second;
+                lastSecondText = secondFormat.format(new Date(second * 1000));
+            }
+            int millis = (int) Math.floorMod(timestamp, 1000L);
+            row.append(lastSecondText);
+            if (millis < 100) {
+                row.append(millis < 10 ? "00" : "0");
+            }
+            row.append(millis).append(',');
+            row.append(sourceHost).append(',').append(destinationHost).append(',');
+            appendPort(row, record.getSourcePort());
+            appendPort(row, record.getDestinationPort());
+            row.append(protocol).append(',').append(application).append(',').append(direction).append(',');
+            row.append(record.getPacketLength()).append(',').append(flagMask).append('\n');
+            factWriter.write(row.toString());
+            recordsWritten++;
+        } catch (IOException e) {
+            System.err.println("Error writing star schema CSV: " + e.getMessage());
+        }
+    }
+
+    private int hostKey(String value) throws IOException {
+        String ip = value == null ? "" : value;
+        Integer key = hosts.keys.get(ip);
+        if (key != null) {
+            return key;
+        }
+        return hosts.add(ip, quote(ip) + "," + quote(subnetOf(ip)) + "," + quote(scopeOf(ip)));
+    }
+
+    /**
+     * The flag mask is its own key; unknown flag names (mask -1) share one dimension row
+     */
+    private int flagMask(String flags) throws IOException {
+        String text = flags == null ? "" : flags;
+        Integer known = tcpFlags.keys.get(text);
+        if (known != null) {
+            return known;
+        }
+        int mask = PacketRecord.tcpFlagsToMask(text);
+        tcpFlags.keys.put(text, mask);
+        if (!flagNames.containsKey(mask)) {
+            flagNames.put(mask, text);
+            tcpFlags.writer.write(mask + "," + quote(mask < 0 ? text : PacketRecord.maskToTcpFlags(mask)) + "\n");
+        }
+        return mask;
+    }
+
+    private static void appendPort(StringBuilder row, int port) {
+        if (port != -1) {
+            row.append(port);
+        }
+        row.append(',');
+    }
+
+    /**
+     * The /24 network of an IPv4 address ("10.0.0.0/24"), or "" for anything else
+     */
+    static String subnetOf(String ip) {
+        int[] octets = parseIPv4(ip);
+        return octets == null ? "" : octets[0] + "." + octets[1] + "." + octets[2] + ".0/24";
+    }
+
+    /**
+     * Address scope: Loopback, Private, Link-local, Multicast, Broadcast, Public or Other
+     */
+    static String scopeOf(String ip) {
+        int[] octets = parseIPv4(ip);
+        if (octets == null) {
+            return ip != null && ip.contains(":") ? (ip.equals("::1") ? "Loopback" : "IPv6") : "Other";
+        }
+        int a = octets[0];
+        int b = octets[1];
+        if (a == 127) {
+            return "Loopback";
+        }
+        if (a == 10 || (a == 172 && b >= 16 && b <= 31) || (a == 192 && b == 168)) {
+            return "Private";
+        }
+        if (a == 169 && b == 254) {
+            return "Link-local";
+        }
+        if (a >= 224 && a <= 239) {
+            return "Multicast";
+        }
+        if (a == 255 || octets[3] == 255) {
+            return "Broadcast";
+        }
+        return a == 0 ? "Other" : "Public";
+    }
+
+    private static int[] parseIPv4(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        int[] octets = new int[4];
+        try {
+            for (int i = 0; i < 4; i++) {
+                octets[i] = Integer.parseInt(parts[i]);
+                if (octets[i] < 0 || octets[i] > 255) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return octets;
+    }
+
+    private static String quote(String value) {
+        String text = value == null ? "" : value;
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    private Writer open(String name, String header) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(new File(directory, name)), StandardCharsets.UTF_8), 1 << 16);
+        // UTF-8 BOM for Power BI, like the other exports
+        writer.write('\ufeff');
+        writer.write(header);
+        writer.write("\n");
+        return writer;
+    }
+
+    /**
+     * Flushes and closes the fact and dimension files (safe to call more than once)
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        for (Writer writer : new Writer[] {
+                hosts.writer, protocols.writer, applications.writer, directions.writer, tcpFlags.writer, factWriter }) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Getters
+    public String getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public synchronized int getHostCount() {
+        return hosts.keys.size();
+    }
+
+    public synchronized int getProtocolCount() {
+        return protocols.keys.size();
+    }
+
+    public synchronized int getApplicationCount() {
+        return applications.keys.size();
+    }
+
+    /**
+     * Total size of the fact and dimension files written so far
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".csv"));
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Prints the star schema output summary to the console
+     */
+    public synchronized void printSummary() {
+        System.out.println("\n=== STAR SCHEMA OUTPUT ===");
+        System.out.println("Fact rows written: " + recordsWritten);
+        System.out.println("Dimensions: " + hosts.keys.size() + " hosts, " + protocols.keys.size() + " protocols, " +
+                         applications.keys.size() + " applications, " + directions.keys.size() + " directions, " +
+                         flagNames.size() + " flag combinations");
+        System.out.println("Directory: " + directory + " (" + FACT_FILE + " + dim_*.csv)");
+    }
+
+    /**
+     * Dictionary of one dimension, with its open file
+     */
+    private static class Dimension {
+        final Map<String, Integer> keys = new HashMap<>();
+        final Writer writer;
+
+        Dimension(Writer writer) {
+            this.writer = writer;
+        }
+
+        int keyOf(String value) throws IOException {
+            String text = value == null ? "" : value;
+            Integer key = keys.get(text);
+            if (key != null) {
+                return key;
+            }
+            return add(text, quote(text));
+        }
+
+        int add(String value, String columns) throws IOException {
+            int key = keys.size() + 1;
+            keys.put(value, key);
+            writer.write(key + "," + columns + "\n");
+            return key;
+        }
+    }
+
+    /**
+     * Converts existing CSV exports into a star schema in output/star
+     * Usage: StarSchemaExporter <file.csv>...
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: StarSchemaExporter <file.csv>...");
+            return;
+        }
+        System.out.println("=== Star Schema Export ===");
+        long inputBytes = 0;
+        long start = System.nanoTime();
+        try {
+            StarSchemaExporter exporter = new StarSchemaExporter();
+            try {
+                for (String file : args) {
+                    inputBytes += new File(file).length();
+                    if (file.endsWith(".gz")) {
+                        try (CsvPacketReader reader = new CsvPacketReader(file)) {
+                            PacketRecord record;
+                            while ((record = reader.readNext()) != null) {
+                                exporter.recordArrived(record);
+                            }
+                        }
+                    } else {
+                        for (PacketRecord record : new ParallelCsvReader().readRecords(file)) {
+                            exporter.recordArrived(record);
+                        }
+                    }
+                }
+            } finally {
+                exporter.close();
+            }
+            System.out.printf("Converted %d records in %.1f s%n", exporter.getRecordsWritten(),
+                            (System.nanoTime() - start) / 1e9);
+            long starBytes = exporter.getTotalBytes();
+            System.out.printf("Input: %,d bytes, star schema: %,d bytes (%.0f%%)%n", inputBytes, starBytes,
+                            inputBytes > 0 ? 100.0 * starBytes / inputBytes : 0.0);
+            exporter.printSummary();
+        } catch (IOException e) {
+            System.err.println("Error writing star schema export: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,413 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StatsHttpServer.java
+ *
+ * Small built-in HTTP server for watching a running capture from a
+ * monitoring stack:
+ *
+ *   GET /stats     JSON: CaptureMetrics counters, gauges and histograms, packet and byte
+ *                  rates over the last 1, 10 and 60 seconds, and the top talkers
+ *   GET /metrics   the same in the Prometheus text exposition format
+ *
+ * Nothing here locks on the packet path: rates come from a sampler thread
+ * that reads the CaptureMetrics counters once a second, and talkers are
+ * counted in LongAdders of a concurrent map (a map insert only happens the
+ * first time a host is seen in a window). The talker map is replaced every
+ * TALKER_WINDOW_MILLIS, and the top talkers cover the current and the
+ * previous window. Requests are served on virtual threads when the JVM has
+ * them (Java 21+) and on a small daemon pool otherwise.
+ *
+ * The server binds to localhost unless another address is given.
+ */
+public class StatsHttpServer implements PacketRecordListener, AutoCloseable {
+
+    public static final int DEFAULT_PORT = 9095;
+    public static final int DEFAULT_TOP_TALKERS = 10;
+    static final long TALKER_WINDOW_MILLIS = 60_000;
+    static final int MAX_TALKERS = 10_000; // Hosts tracked per window; later hosts count as "other"
+    private static final int SAMPLES = 61; // One per second, enough for the 60 s rate
+    private static final String PROMETHEUS_PREFIX = "packet_analyzer_";
+
+    private final CaptureMetrics metrics = CaptureMetrics.get();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sampler;
+    private final int topTalkers;
+    private boolean closed = false;
+
+    // Talkers: host -> {packets, bytes}, swapped by the sampler
+    private volatile ConcurrentHashMap<String, LongAdder[]> talkers = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, LongAdder[]> previousTalkers = new ConcurrentHashMap<>();
+    private long talkerWindowStart = System.currentTimeMillis();
+
+    // Counter samples {millis, packets, bytes} taken once a second (ring buffer, guarded by this)
+    private final long[][] samples = new long[SAMPLES][];
+    private int sampleCount = 0;
+
+    // Statistics
+    private final LongAdder requestsServed = new LongAdder();
+
+    /**
+     * Starts a server on localhost:port
+     * @throws IOException if the port cannot be bound
+     */
+    public StatsHttpServer(int port) throws IOException {
+        this(new InetSocketAddress("127.0.0.1", port), DEFAULT_TOP_TALKERS);
+    }
+
+    /**
+     * @param address Address and port to bind (port 0 picks a free port)
+     * @param topTalkers Number of talkers reported
+     */
+    public StatsHttpServer(InetSocketAddress address, int topTalkers) throws IOException {
+        this.topTalkers = topTalkers;
+        server = HttpServer.create(address, 0);
+        server.createContext("/stats", exchange -> respond(exchange, "application/json", this::statsJson));
+        server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4", this::prometheusText));
+        executor = newRequestExecutor("stats-http", 2);
+        server.setExecutor(executor);
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stats-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sample();
+        sampler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+        server.start();
+    }
+
+    /**
+     * Virtual thread per request when available (Java 21+), otherwise a bounded daemon pool
+     * (also used by LiveFeedServer)
+     */
+    static ExecutorService newRequestExecutor(String threadName, int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads, r -> {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Counts the packet for its source host (lock-free once the host is known in this window)
+     */
+    @Override
+    public void recordArrived(PacketRecord record) {
+        Map<String, LongAdder[]> window = talkers;
+        String host = record.getSourceIP() == null ? "" : record.getSourceIP();
+        LongAdder[] totals = window.get(host);
+        if (totals == null) {
+            if (window.size() >= MAX_TALKERS) {
+                host = "other";
+            }
+            totals = window.computeIfAbsent(host, k -> new LongAdder[] { new LongAdder(), new LongAdder() });
+        }
+        totals[0].increment();
+        totals[1].add(record.getPacketLength());
+    }
+
+    /**
+     * Takes the once-a-second counter sample and rotates the talker window when due
+     */
+    private void sample() {
+        Map<String, Long> counters = metrics.counterValues();
+        long now = System.currentTimeMillis();
+        long[] sample = { now, counters.getOrDefault(CaptureMetrics.PACKETS_PROCESSED, 0L),
+                          counters.getOrDefault(CaptureMetrics.BYTES_RECEIVED, 0L) };
+        synchronized (this) {
+            samples[sampleCount % SAMPLES] = sample;
+            sampleCount++;
+        }
+        if (now - talkerWindowStart >= TALKER_WINDOW_MILLIS) {
+            previousTalkers = talkers;
+            talkers = new ConcurrentHashMap<>();
+            talkerWindowStart = now;
+        }
+    }
+
+    /**
+     * Packets and bytes per second over the last seconds (as far back as samples exist)
+     * @return {packets per second, bytes per second}
+     */
+    synchronized double[] rate(int seconds) {
+        if (sampleCount < 2) {
+            return new double[2];
+        }
+        long[] latest = samples[(sampleCount - 1) % SAMPLES];
+        int back = Math.min(seconds, Math.min(sampleCount - 1, SAMPLES - 1));
+        long[] earlier = samples[(sampleCount - 1 - back) % SAMPLES];
+        double elapsed = (latest[0] - earlier[0]) / 1000.0;
+        if (elapsed <= 0) {
+            return new double[2];
+        }
+        return new double[] { (latest[1] - earlier[1]) / elapsed, (latest[2] - earlier[2]) / elapsed };
+    }
+
+    /**
+     * The hosts that sent the most bytes in the current and previous talker window
+     * @return {host, packets, bytes} rows, largest first
+     */
+    List<Object[]> getTopTalkers() {
+        Map<String, long[]> merged = new HashMap<>();
+        addTalkers(merged, previousTalkers);
+        addTalkers(merged, talkers);
+        List<Object[]> rows = new ArrayList<>();
+        merged.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+            .limit(topTalkers)
+            .forEach(entry -> rows.add(new Object[] { entry.getKey(), entry.getValue()[0], entry.getValue()[1] }));
+        return rows;
+    }
+
+    private static void addTalkers(Map<String, long[]> merged, Map<String, LongAdder[]> window) {
+        for (Map.Entry<String, LongAdder[]> entry : window.entrySet()) {
+            long[] totals = merged.computeIfAbsent(entry.getKey(), k -> new long[2]);
+            totals[0] += entry.getValue()[0].sum();
+            totals[1] += entry.getValue()[1].sum();
+        }
+    }
+
+    // Responses
+
+    private interface Body {
+        String render();
+    }
+
+    private void respond(HttpExchange exchange, String contentType, Body body) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] bytes = body.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            requestsServed.increment();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    String statsJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n  \"uptime_seconds\": ")
+            .append((System.currentTimeMillis() - metrics.getStartMillis()) / 1000).append(",\n");
+        json.append("  \"counters\": ");
+        appendObject(json, metrics.counterValues());
+        json.append(",\n  \"gauges\": ");
+        appendObject(json, metrics.gaugeValues());
+        json.append(",\n  \"histograms\": {");
+        String separator = "";
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.histograms().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            json.append(separator).append(quote(entry.getKey())).append(": {\"count\": ").append(histogram.getCount())
+                .append(", \"p50_us\": ").append(histogram.getPercentile(50) / 1000)
+                .append(", \"p99_us\": ").append(histogram.getPercentile(99) / 1000)
+                .append(", \"max_us\": ").append(histogram.getMax() / 1000).append('}');
+            separator = ", ";
+        }
+        json.append("},\n  \"rates\": {");
+        separator = "";
+        for (int seconds : new int[] { 1, 10, 60 }) {
+            double[] rate = rate(seconds);
+            json.append(separator).append("\"").append(seconds).append("s\": {\"packets_per_second\": ")
+                .append(format(rate[0])).append(", \"bytes_per_second\": ").append(format(rate[1])).append('}');
+            separator = ", ";
+        }
+        json.append("},\n  \"top_talkers\": [");
+        separator = "";
+        for (Object[] talker : getTopTalkers()) {
+            json.append(separator).append("\n    {\"host\": ").append(quote((String) talker[0]))
+                .append(", \"packets\": ").append(talker[1]).append(", \"bytes\": ").append(talker[2]).append('}');
+            separator = ",";
+        }
+        json.append(separator.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    String prometheusText() {
+        StringBuilder text = new StringBuilder(2048);
+        for (Map.Entry<String, Long> entry : metrics.counterValues().entrySet()) {
+            String name = PROMETHEUS_PREFIX + entry.getKey() + "_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : metrics.gaugeValues().entrySet()) {
+            String name = PROMETHEUS_PREFIX + entry.getKey();
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            text.append(name).append(' ').append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : metrics.histograms().entrySet()) {
+            String name = PROMETHEUS_PREFIX + entry.getKey() + "_seconds";
+            LatencyHistogram histogram = entry.getValue();
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : new double[] { 0.5, 0.99 }) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(format(histogram.getPercentile(quantile * 100) / 1e9)).append('\n');
+            }
+            text.append(name).append("_sum ").append(format(histogram.getMean() * histogram.getCount() / 1e9)).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        // Each metric's samples must follow its own TYPE line as one group
+        int[] windows = { 1, 10, 60 };
+        double[][] rates = new double[windows.length][];
+        for (int i = 0; i < windows.length; i++) {
+            rates[i] = rate(windows[i]);
+        }
+        String[] rateNames = { "packets_per_second", "bytes_per_second" };
+        for (int metric = 0; metric < rateNames.length; metric++) {
+            text.append("# TYPE ").append(PROMETHEUS_PREFIX).append(rateNames[metric]).append(" gauge\n");
+            for (int i = 0; i < windows.length; i++) {
+                text.append(PROMETHEUS_PREFIX).append(rateNames[metric]).append("{window=\"").append(windows[i])
+                    .append("s\"} ").append(format(rates[i][metric])).append('\n');
+            }
+        }
+        text.append("# TYPE ").append(PROMETHEUS_PREFIX).append("talker_bytes gauge\n");
+        for (Object[] talker : getTopTalkers()) {
+            text.append(PROMETHEUS_PREFIX).append("talker_bytes{host=\"").append(escapeLabel((String) talker[0]))
+                .append("\"} ").append(talker[2]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, Long> values) {
+        json.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            json.append(separator).append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            separator = ", ";
+        }
+        json.append('}');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Stops the server and the sampler (safe to call more than once)
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.stop(0);
+        sampler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // Getters
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getAddress() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort();
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.sum();
+    }
+
+    /**
+     * Prints the HTTP endpoint summary to the console
+     */
+    public void printSummary() {
+        System.out.println("\n=== STATS HTTP SERVER ===");
+        System.out.println("Endpoints: " + getAddress() + "/stats, " + getAddress() + "/metrics");
+        System.out.println("Requests served: " + getRequestsServed());
+    }
+
+    /**
+     * Replays a capture file in real time while serving its live stats, to try dashboards and scrapers
+     * Usage: StatsHttpServer [--port N] [--speed N] <captured_packets.csv | trace.pcap>
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        double speed = 1.0;
+        String file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--speed": speed = Double.parseDouble(args[++i]); break;
+                    default: file = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            file = null;
+        }
+        if (file == null) {
+            System.out.println("Usage: StatsHttpServer [--port N] [--speed N] <captured_packets.csv | trace.pcap>");
+            return;
+        }
+
+        System.out.println("=== Stats HTTP Server ===");
+        try (StatsHttpServer server = new StatsHttpServer(port);
+             PacketRecordSource source = TraceReplayer.openSource(file, new String[0])) {
+            System.out.println("Serving " + server.getAddress() + "/stats and " + server.getAddress() + "/metrics");
+            LongAdder received = CaptureMetrics.get().counter(CaptureMetrics.PACKETS_RECEIVED);
+            LongAdder processed = CaptureMetrics.get().counter(CaptureMetrics.PACKETS_PROCESSED);
+            LongAdder bytes = CaptureMetrics.get().counter(CaptureMetrics.BYTES_RECEIVED);
+            TraceReplayer replayer = new TraceReplayer(speed);
+            replayer.addListener(record -> {
+                received.increment();
+                processed.increment();
+                bytes.add(record.getPacketLength());
+                server.recordArrived(record);
+            });
+            replayer.replay(source);
+            replayer.printReport();
+            server.printSummary();
+            System.out.println("Replay finished; still serving (Ctrl+C to stop)");
+            new java.util.concurrent.CountDownLatch(1).await();
+        } catch (Exception e) {
+            System.err.println("Error serving stats: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,534 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * TimeRangeIndex.java
+ *
+ * A sparse time index for CSV exports, stored next to the file as
+ * <file>.csv.tidx. The data rows are divided into blocks of consecutive rows
+ * (4096 by default); for each block the index keeps its byte range and the
+ * minimum and maximum timestamp of its rows. Exports are not guaranteed to be
+ * in time order, so a block is described by its time bounds rather than by
+ * its first timestamp; for live captures the bounds are narrow and a time
+ * range query touches only a few blocks.
+ *
+ * CsvExporter and RollingCsvWriter build the index while writing. For other
+ * files (or after the CSV changed) forFile() rebuilds it with one sequential
+ * scan and saves it. readRange() then reads only the blocks whose bounds
+ * overlap the requested window.
+ *
+ * Index layout (big-endian): "TIDX" version(4) sourceLength(8) blockCount(4)
+ * then per block: offset(8) length(4) rowCount(4) minTimestamp(8) maxTimestamp(8)
+ */
+public class TimeRangeIndex {
+
+    private static final byte[] MAGIC = {'T', 'I', 'D', 'X'};
+    private static final int VERSION = 1;
+    public static final String SUFFIX = ".tidx";
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    private final int blockRows;
+    private final List<Block> blocks = new ArrayList<>();
+    private long sourceLength;
+
+    // Block being built
+    private long blockStart = -1;
+    private int blockRowCount = 0;
+    private long blockMin = Long.MAX_VALUE;
+    private long blockMax = Long.MIN_VALUE;
+
+    public TimeRangeIndex() {
+        this(DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates an empty index to be filled with addRow() while a file is written
+     * @param blockRows Rows per block
+     */
+    public TimeRangeIndex(int blockRows) {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockRows);
+        }
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * Adds a data row
+     * @param offset Byte offset of the row in the file
+     * @param timestamp Row timestamp in epoch milliseconds
+     */
+    public void addRow(long offset, long timestamp) {
+        if (blockRowCount == blockRows) {
+            closeBlock(offset);
+        }
+        if (blockRowCount == 0) {
+            blockStart = offset;
+        }
+        blockRowCount++;
+        blockMin = Math.min(blockMin, timestamp);
+        blockMax = Math.max(blockMax, timestamp);
+    }
+
+    /**
+     * Completes the last block
+     * @param endOffset File length after the last row
+     */
+    public void finish(long endOffset) {
+        closeBlock(endOffset);
+        sourceLength = endOffset;
+    }
+
+    private void closeBlock(long endOffset) {
+        if (blockRowCount > 0) {
+            blocks.add(new Block(blockStart, (int) (endOffset - blockStart), blockRowCount, blockMin, blockMax));
+        }
+        blockRowCount = 0;
+        blockMin = Long.MAX_VALUE;
+        blockMax = Long.MIN_VALUE;
+    }
+
+    /**
+     * Writes the index to a sidecar file (via a temporary file, so readers never see a partial index)
+     */
+    public void save(String indexFile) throws IOException {
+        File temp = new File(indexFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceLength);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeLong(block.offset);
+                out.writeInt(block.length);
+                out.writeInt(block.rowCount);
+                out.writeLong(block.minTimestamp);
+                out.writeLong(block.maxTimestamp);
+            }
+        }
+        Files.move(temp.toPath(), Paths.get(indexFile), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a sidecar index
+     * @return The index, or null if the file is missing, corrupt or not for a file of sourceLength bytes
+     */
+    public static TimeRangeIndex load(String indexFile, long sourceLength) {
+        File file = new File(indexFile);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION || in.readLong() != sourceLength) {
+                return null;
+            }
+            TimeRangeIndex index = new TimeRangeIndex();
+            index.sourceLength = sourceLength;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                index.blocks.add(new Block(in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong()));
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the index of a CSV file, loading the sidecar if it is current or rebuilding (and saving) it otherwise
+     */
+    public static TimeRangeIndex forFile(String csvFile) throws IOException {
+        long length = new File(csvFile).length();
+        TimeRangeIndex index = load(csvFile + SUFFIX, length);
+        if (index == null) {
+            index = build(csvFile, DEFAULT_BLOCK_ROWS);
+            try {
+                index.save(csvFile + SUFFIX);
+            } catch (IOException e) {
+                System.err.println("Warning: could not save time index: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of a CSV file from its sidecar if it is current, or builds it in memory
+     * otherwise (no sidecar is written, for readers that must not add files next to the data)
+     */
+    public static TimeRangeIndex loadOrBuild(String csvFile) throws IOException {
+        TimeRangeIndex index = load(csvFile + SUFFIX, new File(csvFile).length());
+        return index != null ? index : build(csvFile, DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Builds the index of an existing CSV file with one sequential scan
+     */
+    public static TimeRangeIndex build(String csvFile, int blockRows) throws IOException {
+        TimeRangeIndex index = new TimeRangeIndex(blockRows);
+        ParallelCsvReader.TimestampDecoder decoder = new ParallelCsvReader.TimestampDecoder();
+        long dataStart;
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            dataStart = ParallelCsvReader.findDataStart(channel);
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(csvFile), 1 << 16)) {
+            long skipped = 0;
+            while (skipped < dataStart) {
+                long n = in.skip(dataStart - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+
+            // Only the first field of each line is needed
+            byte[] field = new byte[32];
+            ByteBuffer fieldBuffer = ByteBuffer.wrap(field);
+            long offset = dataStart;
+            long lineStart = dataStart;
+            int fieldLength = 0;
+            int state = 0; // 0 = line start, 1 = in timestamp, 2 = rest of line
+            boolean quoted = false;
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++, offset++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        if (state != 0 || fieldLength > 0) {
+                            index.addParsedRow(lineStart, decoder, fieldBuffer, fieldLength);
+                        }
+                        lineStart = offset + 1;
+                        fieldLength = 0;
+                        state = 0;
+                        continue;
+                    }
+                    if (state == 0) {
+                        quoted = b == '"';
+                        state = 1;
+                        if (quoted) {
+                            continue;
+                        }
+                    }
+                    if (state == 1) {
+                        if ((quoted && b == '"') || (!quoted && b == ',') || b == '\r') {
+                            state = 2;
+                        } else if (fieldLength < field.length) {
+                            field[fieldLength++] = b;
+                        }
+                    }
+                }
+            }
+            if (state != 0) {
+                index.addParsedRow(lineStart, decoder, fieldBuffer, fieldLength);
+            }
+            index.finish(offset);
+        }
+        return index;
+    }
+
+    private void addParsedRow(long lineStart, ParallelCsvReader.TimestampDecoder decoder, ByteBuffer field, int length) {
+        long timestamp = decoder.decode(field, 0, length);
+        if (timestamp != Long.MIN_VALUE) {
+            addRow(lineStart, timestamp);
+        }
+    }
+
+    // Queries
+
+    /**
+     * Block i of the file
+     */
+    public Block getBlock(int i) {
+        return blocks.get(i);
+    }
+
+    /**
+     * Blocks that may contain rows in [fromMillis, toMillis], in file order
+     */
+    public List<Block> blocksOverlapping(long fromMillis, long toMillis) {
+        List<Block> result = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.maxTimestamp >= fromMillis && block.minTimestamp <= toMillis) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the rows of a CSV file with timestamps in [fromMillis, toMillis], reading only overlapping blocks
+     */
+    public static List<PacketRecord> readRange(String csvFile, long fromMillis, long toMillis) throws IOException {
+        TimeRangeIndex index = forFile(csvFile);
+        return readBlocks(csvFile, index.blocksOverlapping(fromMillis, toMillis), fromMillis, toMillis, null, null);
+    }
+
+    /**
+     * Reads the rows of the given blocks with timestamps in [fromMillis, toMillis] that pass the filter
+     * @param needles Only lines containing one of these byte sequences are parsed (null = all lines)
+     * @param filter Applied to parsed rows (null = all rows in the time range)
+     */
+    static List<PacketRecord> readBlocks(String csvFile, List<Block> blocks, long fromMillis, long toMillis,
+                                         byte[][] needles, Predicate<PacketRecord> filter) throws IOException {
+        List<PacketRecord> records = new ArrayList<>();
+        scanBlocks(csvFile, blocks, fromMillis, toMillis, needles, record -> {
+            if (filter == null || filter.test(record)) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Parses the rows of the given blocks with timestamps in [fromMillis, toMillis] and hands them to the consumer
+     * @param needles Only lines containing one of these byte sequences are parsed (null = all lines)
+     */
+    static void scanBlocks(String csvFile, List<Block> blocks, long fromMillis, long toMillis,
+                           byte[][] needles, Consumer<PacketRecord> consumer) throws IOException {
+        ParallelCsvReader.TimestampDecoder decoder = new ParallelCsvReader.TimestampDecoder();
+        CsvPacketReader parser = new CsvPacketReader(csvFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            for (Block block : blocks) {
+                if (needles == null) {
+                    // Nothing to skip on raw bytes: parse the whole block with the fast byte-level parser
+                    PacketColumns rows = ParallelCsvReader.parseRange(channel, block.offset, block.offset + block.length);
+                    for (int row = 0; row < rows.size(); row++) {
+                        long timestamp = rows.getTimestamp(row);
+                        if (timestamp >= fromMillis && timestamp <= toMillis) {
+                            consumer.accept(rows.toPacketRecord(row));
+                        }
+                    }
+                    continue;
+                }
+                ByteBuffer data = readBlock(channel, block);
+                int start = 0;
+                while (start < data.limit()) {
+                    int end = start;
+                    while (end < data.limit() && data.get(end) != '\n') {
+                        end++;
+                    }
+                    int lineEnd = end > start && data.get(end - 1) == '\r' ? end - 1 : end;
+                    // Check the timestamp and needles on the raw bytes; only matching rows are parsed
+                    long timestamp = lineTimestamp(data, start, lineEnd, decoder);
+                    if (timestamp >= fromMillis && timestamp <= toMillis && containsAny(data, start, lineEnd, needles)) {
+                        PacketRecord record = parser.parseLine(
+                            new String(data.array(), start, lineEnd - start, StandardCharsets.UTF_8));
+                        if (record != null) {
+                            consumer.accept(record);
+                        }
+                    }
+                    start = end + 1;
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Whether the line contains one of the byte sequences (null = no needles, always true)
+     */
+    private static boolean containsAny(ByteBuffer data, int start, int end, byte[][] needles) {
+        if (needles == null) {
+            return true;
+        }
+        for (byte[] needle : needles) {
+            for (int i = start; i + needle.length <= end; i++) {
+                int j = 0;
+                while (j < needle.length && data.get(i + j) == needle[j]) {
+                    j++;
+                }
+                if (j == needle.length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuffer readBlock(FileChannel channel, Block block) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(block.length);
+        while (data.hasRemaining()) {
+            if (channel.read(data, block.offset + data.position()) < 0) {
+                throw new IOException("Time index does not match the file (block at offset " + block.offset + ")");
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Decodes the (optionally quoted) first field of a line
+     * @return Epoch milliseconds, or Long.MIN_VALUE if it is not a timestamp
+     */
+    private static long lineTimestamp(ByteBuffer data, int start, int end, ParallelCsvReader.TimestampDecoder decoder) {
+        if (start < end && data.get(start) == '"') {
+            int close = start + 1;
+            while (close < end && data.get(close) != '"') {
+                close++;
+            }
+            return close < end ? decoder.decode(data, start + 1, close) : Long.MIN_VALUE;
+        }
+        int comma = start;
+        while (comma < end && data.get(comma) != ',') {
+            comma++;
+        }
+        return decoder.decode(data, start, comma);
+    }
+
+    /**
+     * Byte length of a string in UTF-8 (used by writers to track row offsets)
+     */
+    static int utf8Length(String text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length++;
+                } else if (Character.isHighSurrogate(c)) {
+                    length += 2;
+                    i++;
+                } else {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    // Getters
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public long getRowCount() {
+        long rows = 0;
+        for (Block block : blocks) {
+            rows += block.rowCount;
+        }
+        return rows;
+    }
+
+    /**
+     * Earliest timestamp in the file (Long.MAX_VALUE if empty)
+     */
+    public long getMinTimestamp() {
+        long min = Long.MAX_VALUE;
+        for (Block block : blocks) {
+            min = Math.min(min, block.minTimestamp);
+        }
+        return min;
+    }
+
+    /**
+     * Latest timestamp in the file (Long.MIN_VALUE if empty)
+     */
+    public long getMaxTimestamp() {
+        long max = Long.MIN_VALUE;
+        for (Block block : blocks) {
+            max = Math.max(max, block.maxTimestamp);
+        }
+        return max;
+    }
+
+    /**
+     * One block of consecutive rows
+     */
+    public static class Block {
+        private final long offset;
+        private final int length;
+        private final int rowCount;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+
+        Block(long offset, int length, int rowCount, long minTimestamp, long maxTimestamp) {
+            this.offset = offset;
+            this.length = length;
+            this.rowCount = rowCount;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        public long getOffset() { return offset; }
+        public int getLength() { return length; }
+        public int getRowCount() { return rowCount; }
+        public long getMinTimestamp() { return minTimestamp; }
+        public long getMaxTimestamp() { return maxTimestamp; }
+    }
+
+    /**
+     * Builds or loads the index of a CSV file and optionally reads a time range
+     * Usage: TimeRangeIndex <file.csv> ["yyyy-MM-dd HH:mm:ss" "yyyy-MM-dd HH:mm:ss" [export name]]
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length < 3) {
+            System.out.println("Usage: TimeRangeIndex <file.csv> [\"yyyy-MM-dd HH:mm:ss\" \"yyyy-MM-dd HH:mm:ss\" [export name]]");
+            return;
+        }
+        System.out.println("=== Time Range Index ===");
+        try {
+            long start = System.nanoTime();
+            TimeRangeIndex index = forFile(args[0]);
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            System.out.println("Index: " + args[0] + SUFFIX + " (" + index.blocks.size() + " blocks, " +
+                             index.getRowCount() + " rows, " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            if (!index.blocks.isEmpty()) {
+                System.out.println("Time span: " + format.format(new java.util.Date(index.getMinTimestamp())) + " - " +
+                                 format.format(new java.util.Date(index.getMaxTimestamp())));
+            }
+
+            if (args.length >= 3) {
+                SimpleDateFormat input = new SimpleDateFormat(args[1].contains(".") ? "yyyy-MM-dd HH:mm:ss.SSS" : "yyyy-MM-dd HH:mm:ss");
+                long from = input.parse(args[1]).getTime();
+                input = new SimpleDateFormat(args[2].contains(".") ? "yyyy-MM-dd HH:mm:ss.SSS" : "yyyy-MM-dd HH:mm:ss");
+                long to = input.parse(args[2]).getTime();
+                if (!args[2].contains(".")) {
+                    to += 999; // Include the whole last second
+                }
+                List<Block> touched = index.blocksOverlapping(from, to);
+                long touchedBytes = 0;
+                for (Block block : touched) {
+                    touchedBytes += block.length;
+                }
+                start = System.nanoTime();
+                List<PacketRecord> records = readRange(args[0], from, to);
+                System.out.println("Rows in range: " + records.size() + " (read " + touched.size() + " of " +
+                                 index.blocks.size() + " blocks, " + touchedBytes + " bytes, " +
+                                 (System.nanoTime() - start) / 1_000_000 + " ms)");
+                if (args.length > 3) {
+                    CsvExporter.exportToCsvForPowerBI(records, args[3]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading time index: " + e.getMessage());
+        } catch (ParseException e) {
+            System.err.println("Error: invalid time " + e.getMessage());
+        }
+    }
+}
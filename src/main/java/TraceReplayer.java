@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TraceReplayer.java
+ *
+ * Re-emits stored captures (CsvExporter exports or pcap traces) into the
+ * analysis pipeline, so earlier traffic can be re-analysed with new settings.
+ *
+ * Replay speeds:
+ * - 1.0    original inter-arrival timing
+ * - N      N times faster than the original (e.g. 10 for 10x)
+ * - 0      as fast as possible (no pacing)
+ *
+ * After a replay the achieved rate and the lag behind schedule are available
+ * through the getters and printReport(). Records whose timestamps go
+ * backwards (the simulators write unsorted exports) are emitted immediately.
+ */
+public class TraceReplayer {
+
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    private static final long BEHIND_SCHEDULE_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final double speed;
+    private final List<PacketRecordListener> listeners = new ArrayList<>();
+
+    // Replay report
+    private long recordsReplayed;
+    private long traceSpanMs;
+    private long elapsedNanos;
+    private long recordsBehindSchedule;
+    private final LatencyHistogram lagHistogram = new LatencyHistogram();
+
+    /**
+     * @param speed Replay speed multiplier (1.0 = original timing, 0 = as fast as possible)
+     */
+    public TraceReplayer(double speed) {
+        if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Adds a pipeline stage that receives every replayed record
+     */
+    public void addListener(PacketRecordListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Opens a stored capture, choosing the reader by file extension
+     * @param filename A .pcap/.cap trace, a .pcol columnar capture or a CSV export
+     * @param localIPs Local addresses for direction detection in pcap traces (may be null)
+     */
+    public static PacketRecordSource openSource(String filename, String[] localIPs) throws IOException {
+        String lower = filename.toLowerCase();
+        if (lower.endsWith(".pcap") || lower.endsWith(".cap")) {
+            return new PcapFileReader(filename, localIPs);
+        }
+        if (lower.endsWith(".pcol")) {
+            return new ColumnarCaptureReader(filename);
+        }
+        return new CsvPacketReader(filename);
+    }
+
+    /**
+     * Replays every record of the source to the listeners
+     * @param source The stored capture to replay
+     * @throws IOException if the source cannot be read
+     */
+    public void replay(PacketRecordSource source) throws IOException {
+        recordsReplayed = 0;
+        recordsBehindSchedule = 0;
+        lagHistogram.reset();
+
+        long startNanos = System.nanoTime();
+        long firstTimestamp = -1;
+        long lastOffsetMs = 0;
+
+        PacketRecord record;
+        while ((record = source.readNext()) != null) {
+            long timestamp = record.getTimestamp().getTime();
+            if (firstTimestamp < 0) {
+                firstTimestamp = timestamp;
+            }
+
+            if (speed != AS_FAST_AS_POSSIBLE) {
+                // Never schedule backwards: out-of-order records go out immediately
+                lastOffsetMs = Math.max(lastOffsetMs, timestamp - firstTimestamp);
+                long scheduledNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(lastOffsetMs) / speed);
+                waitUntil(scheduledNanos);
+
+                long lag = System.nanoTime() - scheduledNanos;
+                lagHistogram.record(lag);
+                if (lag > BEHIND_SCHEDULE_THRESHOLD_NANOS) {
+                    recordsBehindSchedule++;
+                }
+            }
+
+            for (PacketRecordListener listener : listeners) {
+                listener.recordArrived(record);
+            }
+            recordsReplayed++;
+        }
+
+        elapsedNanos = System.nanoTime() - startNanos;
+        traceSpanMs = lastOffsetMs;
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    // Report getters
+    public long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    public long getElapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public long getTraceSpanMs() {
+        return traceSpanMs;
+    }
+
+    public long getRecordsBehindSchedule() {
+        return recordsBehindSchedule;
+    }
+
+    public LatencyHistogram getLagHistogram() {
+        return lagHistogram;
+    }
+
+    /**
+     * Records emitted per second of wall-clock replay time
+     */
+    public double getAchievedRate() {
+        return elapsedNanos == 0 ? 0 : recordsReplayed / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Trace time covered per second of wall-clock time (1.0 = real time)
+     */
+    public double getEffectiveSpeed() {
+        return elapsedNanos == 0 ? 0 : traceSpanMs / (elapsedNanos / 1e6);
+    }
+
+    /**
+     * Prints the replay report to the console
+     */
+    public void printReport() {
+        System.out.println("\n=== REPLAY REPORT ===");
+        System.out.println("Requested speed: " + (speed == AS_FAST_AS_POSSIBLE ? "as fast as possible" : speed + "x"));
+        System.out.println("Records replayed: " + recordsReplayed);
+        System.out.println("Wall-clock time: " + getElapsedMs() + " ms");
+        System.out.println("Achieved rate: " + String.format("%.1f", getAchievedRate()) + " records/s");
+        if (speed != AS_FAST_AS_POSSIBLE) {
+            System.out.println("Trace span: " + traceSpanMs + " ms (effective speed " +
+                             String.format("%.2f", getEffectiveSpeed()) + "x)");
+            System.out.println("Records behind schedule (>1 ms): " + recordsBehindSchedule);
+            System.out.println("Lag behind schedule: " + lagHistogram.toSummaryString());
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: TraceReplayer <captured_packets.csv | trace.pcap> [--speed N | --asap]");
+            return;
+        }
+
+        String filename = args[0];
+        double speed = 1.0;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if ("--asap".equals(args[i])) {
+                    speed = AS_FAST_AS_POSSIBLE;
+                } else if ("--speed".equals(args[i])) {
+                    speed = Double.parseDouble(args[++i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Invalid replay speed.");
+            return;
+        }
+
+        System.out.println("=== Trace Replay ===");
+        System.out.println("Source: " + filename);
+
+        List<PacketRecord> replayedPackets = new ArrayList<>();
+        try (PacketRecordSource source = openSource(filename, null)) {
+            TraceReplayer replayer = new TraceReplayer(speed);
+            replayer.addListener(replayedPackets::add);
+            replayer.replay(source);
+            replayer.printReport();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error replaying trace: " + e.getMessage());
+            return;
+        }
+
+        // Re-run the standard export on the replayed records
+        CsvExporter.exportToCsvForPowerBI(replayedPackets, "replayed_packets");
+    }
+}
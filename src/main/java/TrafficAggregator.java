@@ -0,0 +1,358 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * TrafficAggregator.java
+ *
+ * Summarizes packets into flows and per-minute rollups, and reads, merges and
+ * writes those summaries as CSV files (shared by IncrementalExporter and
+ * RetentionManager):
+ *
+ *   flows     FirstPacket,LastPacket,SourceIP,DestinationIP,SourcePort,DestinationPort,Protocol,Application,Packets,Bytes
+ *   rollups   Minute,Protocol,Application,Direction,Packets,Bytes   (or Hour,... for hourly rollups)
+ *
+ * A flow is the packets of one 5-tuple without a gap longer than the idle
+ * timeout. Rollup rows are kept keyed by their quoted leading columns
+ * ("2025-10-10 14:03","TCP","HTTPS","Outgoing"), so sorting the keys sorts
+ * by time and rows of the same key from several files are simply summed.
+ */
+final class TrafficAggregator {
+
+    static final String FLOW_HEADER = "FirstPacket,LastPacket,SourceIP,DestinationIP,SourcePort,DestinationPort," +
+                                      "Protocol,Application,Packets,Bytes";
+    static final String MINUTE_HEADER = "Minute,Protocol,Application,Direction,Packets,Bytes";
+    static final String HOUR_HEADER = "Hour,Protocol,Application,Direction,Packets,Bytes";
+
+    private final long flowIdleMillis;
+    private final Map<String, Flow> activeFlows = new HashMap<>();
+    private final List<Flow> completedFlows = new ArrayList<>();
+    private final TreeMap<String, long[]> rollups = new TreeMap<>();
+    private final SimpleDateFormat minuteFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    private long lastMinute = Long.MIN_VALUE; // Rollup minute of the previous packet and its quoted text
+    private String lastMinuteText = "";
+    private long packets = 0;
+    private long newestPacket = Long.MIN_VALUE; // Time of the newest packet, the clock for takeClosedFlows
+    private volatile int openFlows = 0; // Size of activeFlows, readable from other threads
+
+    /**
+     * @param flowIdleMillis Gap after which packets of the same 5-tuple start a new flow
+     */
+    TrafficAggregator(long flowIdleMillis) {
+        this.flowIdleMillis = flowIdleMillis;
+    }
+
+    void add(PacketRecord record) {
+        long timestamp = record.getTimestamp().getTime();
+        String key = record.getSourceIP() + "|" + record.getDestinationIP() + "|" + record.getSourcePort() + "|" +
+                     record.getDestinationPort() + "|" + record.getProtocol();
+        Flow flow = activeFlows.get(key);
+        if (flow != null && timestamp - flow.last > flowIdleMillis) {
+            completedFlows.add(flow);
+            flow = null;
+        }
+        if (flow == null) {
+            flow = new Flow(record.getSourceIP(), record.getDestinationIP(), record.getSourcePort(),
+                            record.getDestinationPort(), record.getProtocol(), record.getApplicationGuess(), timestamp);
+            activeFlows.put(key, flow);
+            openFlows = activeFlows.size();
+        }
+        flow.first = Math.min(flow.first, timestamp);
+        flow.last = Math.max(flow.last, timestamp);
+        flow.packets++;
+        flow.bytes += record.getPacketLength();
+
+        long minute = Math.floorDiv(timestamp, 60_000L);
+        if (minute != lastMinute) {
+            lastMinute = minute;
+            lastMinuteText = quote(minuteFormat.format(new Date(minute * 60_000L)));
+        }
+        String rollupKey = lastMinuteText + "," + quote(record.getProtocol()) + "," +
+                           quote(record.getApplicationGuess()) + "," + quote(record.getDirection());
+        long[] totals = rollups.computeIfAbsent(rollupKey, k -> new long[2]);
+        totals[0]++;
+        totals[1] += record.getPacketLength();
+        packets++;
+        newestPacket = Math.max(newestPacket, timestamp);
+    }
+
+    long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Flows whose 5-tuple has not yet been idle for the timeout (safe to read from any thread)
+     */
+    int getOpenFlowCount() {
+        return openFlows;
+    }
+
+    /**
+     * All flows seen so far (including those still active), ordered by first packet
+     */
+    List<Flow> getFlows() {
+        List<Flow> flows = new ArrayList<>(completedFlows);
+        flows.addAll(activeFlows.values());
+        flows.sort((a, b) -> Long.compare(a.first, b.first));
+        return flows;
+    }
+
+    /**
+     * Per-minute rollup totals ({packets, bytes}) by rollup key
+     */
+    TreeMap<String, long[]> getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Removes and returns the flows that can no longer grow: those already ended and those idle for
+     * longer than the timeout as of the newest packet, ordered by first packet. A later packet of the
+     * same 5-tuple starts a new flow.
+     */
+    List<Flow> takeClosedFlows() {
+        List<Flow> closed = new ArrayList<>(completedFlows);
+        completedFlows.clear();
+        Iterator<Flow> active = activeFlows.values().iterator();
+        while (active.hasNext()) {
+            Flow flow = active.next();
+            if (newestPacket - flow.last > flowIdleMillis) {
+                closed.add(flow);
+                active.remove();
+            }
+        }
+        openFlows = activeFlows.size();
+        closed.sort((a, b) -> Long.compare(a.first, b.first));
+        return closed;
+    }
+
+    /**
+     * Removes and returns the rollups of the minutes before the previous minute of the newest packet
+     * (one minute of grace for packets that arrive slightly out of order). A packet arriving later
+     * still for a returned minute starts a new rollup row for that minute.
+     */
+    TreeMap<String, long[]> takeFinishedRollups() {
+        TreeMap<String, long[]> finished = new TreeMap<>();
+        if (newestPacket == Long.MIN_VALUE) {
+            return finished;
+        }
+        long openMinute = Math.floorDiv(newestPacket, 60_000L) - 1;
+        // Keys start with the quoted minute, so keys of earlier minutes sort before it
+        Map<String, long[]> earlier = rollups.headMap(quote(minuteFormat.format(new Date(openMinute * 60_000L))));
+        finished.putAll(earlier);
+        earlier.clear();
+        return finished;
+    }
+
+    // Flow files
+
+    static void writeFlows(Path path, List<Flow> flows) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        try (Writer writer = openCsv(path, FLOW_HEADER)) {
+            for (Flow flow : flows) {
+                writer.write(flow.toCsvLine(format));
+                writer.write("\n");
+            }
+        }
+    }
+
+    static List<Flow> readFlows(Path path) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        List<Flow> flows = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        for (String line : readRows(path)) {
+            CsvPacketReader.splitCsvLine(line, fields);
+            if (fields.size() < 10) {
+                continue;
+            }
+            try {
+                Flow flow = new Flow(fields.get(2), fields.get(3), parsePort(fields.get(4)), parsePort(fields.get(5)),
+                                     fields.get(6), fields.get(7), format.parse(fields.get(0)).getTime());
+                flow.last = format.parse(fields.get(1)).getTime();
+                flow.packets = Long.parseLong(fields.get(8));
+                flow.bytes = Long.parseLong(fields.get(9));
+                flows.add(flow);
+            } catch (ParseException | NumberFormatException e) {
+                System.err.println("Warning: skipping malformed flow row in " + path.getFileName() + ": " + line);
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * Joins flows of the same 5-tuple that are less than the idle timeout apart
+     * (a flow split across files or deltas), ordered by first packet
+     */
+    static List<Flow> mergeFlows(List<Flow> flows, long flowIdleMillis) {
+        Map<String, List<Flow>> byTuple = new HashMap<>();
+        for (Flow flow : flows) {
+            byTuple.computeIfAbsent(flow.tupleKey(), k -> new ArrayList<>()).add(flow);
+        }
+        List<Flow> merged = new ArrayList<>();
+        for (List<Flow> parts : byTuple.values()) {
+            parts.sort((a, b) -> Long.compare(a.first, b.first));
+            Flow current = null;
+            for (Flow part : parts) {
+                if (current != null && part.first - current.last <= flowIdleMillis) {
+                    current.last = Math.max(current.last, part.last);
+                    current.packets += part.packets;
+                    current.bytes += part.bytes;
+                } else {
+                    current = part;
+                    merged.add(current);
+                }
+            }
+        }
+        merged.sort((a, b) -> Long.compare(a.first, b.first));
+        return merged;
+    }
+
+    // Rollup files
+
+    static void writeRollups(Path path, String header, TreeMap<String, long[]> rollups) throws IOException {
+        try (Writer writer = openCsv(path, header)) {
+            for (Map.Entry<String, long[]> entry : rollups.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue()[0] + "," + entry.getValue()[1] + "\n");
+            }
+        }
+    }
+
+    /**
+     * Adds the rows of a rollup file to the totals (rows with the same key are summed)
+     */
+    static void readRollups(Path path, TreeMap<String, long[]> rollups) throws IOException {
+        for (String line : readRows(path)) {
+            int bytesComma = line.lastIndexOf(',');
+            int packetsComma = line.lastIndexOf(',', bytesComma - 1);
+            if (packetsComma <= 0) {
+                continue;
+            }
+            try {
+                long packets = Long.parseLong(line.substring(packetsComma + 1, bytesComma));
+                long bytes = Long.parseLong(line.substring(bytesComma + 1).trim());
+                long[] totals = rollups.computeIfAbsent(line.substring(0, packetsComma), k -> new long[2]);
+                totals[0] += packets;
+                totals[1] += bytes;
+            } catch (NumberFormatException e) {
+                System.err.println("Warning: skipping malformed rollup row in " + path.getFileName() + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * Sums per-minute rollups into per-hour rollups ("2025-10-10 14:03" becomes "2025-10-10 14:00")
+     */
+    static TreeMap<String, long[]> toHourly(TreeMap<String, long[]> minuteRollups) {
+        TreeMap<String, long[]> hourly = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : minuteRollups.entrySet()) {
+            String key = entry.getKey();
+            // Key: "yyyy-MM-dd HH:mm",... - replace the minutes
+            String hourKey = key.length() > 17 && key.charAt(0) == '"' && key.charAt(17) == '"'
+                             ? key.substring(0, 15) + "00" + key.substring(17) : key;
+            long[] totals = hourly.computeIfAbsent(hourKey, k -> new long[2]);
+            totals[0] += entry.getValue()[0];
+            totals[1] += entry.getValue()[1];
+        }
+        return hourly;
+    }
+
+    /**
+     * The yyyy-MM-dd day of a rollup key, or "" if the key does not start with a quoted time
+     */
+    static String dayOf(String rollupKey) {
+        return rollupKey.length() > 11 && rollupKey.charAt(0) == '"' ? rollupKey.substring(1, 11) : "";
+    }
+
+    // CSV helpers
+
+    static Writer openCsv(Path path, String header) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(path.toFile()), StandardCharsets.UTF_8), 1 << 16);
+        // UTF-8 BOM for Power BI, like the other exports
+        writer.write('\ufeff');
+        writer.write(header);
+        writer.write("\n");
+        return writer;
+    }
+
+    /**
+     * The data rows of a CSV file (BOM and header skipped)
+     */
+    static List<String> readRows(Path path) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path.toFile()), StandardCharsets.UTF_8), 1 << 16)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    rows.add(line);
+                }
+            }
+        }
+        return rows;
+    }
+
+    static String quote(String value) {
+        return "\"" + (value == null ? "" : value.replace("\"", "\"\"")) + "\"";
+    }
+
+    private static int parsePort(String value) {
+        return value.isEmpty() ? -1 : Integer.parseInt(value);
+    }
+
+    /**
+     * One flow: packets of a 5-tuple without a gap longer than the idle timeout
+     */
+    static class Flow {
+        final String source;
+        final String destination;
+        final int sourcePort;
+        final int destinationPort;
+        final String protocol;
+        final String application;
+        long first;
+        long last;
+        long packets;
+        long bytes;
+
+        Flow(String source, String destination, int sourcePort, int destinationPort, String protocol,
+             String application, long timestamp) {
+            this.source = source;
+            this.destination = destination;
+            this.sourcePort = sourcePort;
+            this.destinationPort = destinationPort;
+            this.protocol = protocol;
+            this.application = application;
+            this.first = timestamp;
+            this.last = timestamp;
+        }
+
+        String tupleKey() {
+            return source + "|" + destination + "|" + sourcePort + "|" + destinationPort + "|" + protocol;
+        }
+
+        String toCsvLine(SimpleDateFormat format) {
+            return quote(format.format(new Date(first))) + "," + quote(format.format(new Date(last))) + "," +
+                   quote(source) + "," + quote(destination) + "," +
+                   (sourcePort == -1 ? "" : String.valueOf(sourcePort)) + "," +
+                   (destinationPort == -1 ? "" : String.valueOf(destinationPort)) + "," +
+                   quote(protocol) + "," + quote(application) + "," + packets + "," + bytes;
+        }
+    }
+}
@@ -1,27 +1,31 @@
 @echo off
 echo Running CSV Validation for Power BI Compatibility...
 
-REM Check if Python is available
-python --version >nul 2>&1
-if %errorlevel% neq 0 (
-    echo ERROR: Python not found!
-    echo Please install Python to run the validation script.
-    echo Alternatively, you can manually check the CSV file.
-    pause
-    exit /b 1
-)
+set CSV_FILE=%~1
+if "%CSV_FILE%"=="" set CSV_FILE=output\captured_packets.csv
 
 REM Check if CSV file exists
-if not exist "output\captured_packets.csv" (
-    echo ERROR: CSV file not found!
+if not exist "%CSV_FILE%" (
+    echo ERROR: CSV file not found: %CSV_FILE%
     echo Please run the simulation or packet capture first.
     echo Run: run-localhost-sim.bat or run-capture.bat
     pause
     exit /b 1
 )
 
+REM Create classes directory if it doesn't exist
+if not exist "classes" mkdir classes
+
+REM Compile the validator and the classes it depends on
+javac -cp classes -sourcepath src\main\java -d classes src\main\java\CsvValidator.java
+if %errorlevel% neq 0 (
+    echo Compilation of CsvValidator.java failed!
+    pause
+    exit /b 1
+)
+
 REM Run validation
-python validate-csv.py
+java -cp classes CsvValidator "%CSV_FILE%" %2
 
 echo.
 echo Validation complete!
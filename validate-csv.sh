@@ -2,30 +2,30 @@
 
 echo "Running CSV Validation for Power BI Compatibility..."
 
-# Check if Python is available
-if ! command -v python3 &> /dev/null; then
-    if ! command -v python &> /dev/null; then
-        echo "ERROR: Python not found!"
-        echo "Please install Python to run the validation script."
-        echo "Alternatively, you can manually check the CSV file."
-        exit 1
-    else
-        PYTHON_CMD="python"
-    fi
-else
-    PYTHON_CMD="python3"
-fi
+CSV_FILE="${1:-output/captured_packets.csv}"
 
 # Check if CSV file exists
-if [ ! -f "output/captured_packets.csv" ]; then
-    echo "ERROR: CSV file not found!"
+if [ ! -f "$CSV_FILE" ]; then
+    echo "ERROR: CSV file not found: $CSV_FILE"
     echo "Please run the simulation or packet capture first."
     echo "Run: ./run-localhost-sim.sh or ./run-capture.sh"
     exit 1
 fi
 
+# Create classes directory if it doesn't exist
+mkdir -p classes
+
+# Compile the validator and the classes it depends on
+javac -cp classes -sourcepath src/main/java -d classes src/main/java/CsvValidator.java
+if [ $? -ne 0 ]; then
+    echo "Compilation of CsvValidator.java failed!"
+    exit 1
+fi
+
 # Run validation
-$PYTHON_CMD validate-csv.py
+java -cp classes CsvValidator "$CSV_FILE" "${@:2}"
+STATUS=$?
 
 echo ""
 echo "Validation complete!"
+exit $STATUS